@@ -0,0 +1,103 @@
+package jsheets.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import jsheets.EvaluatedSnippet;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+
+/**
+ * Snippet sources that are checked in under {@code corpus/} and shared by
+ * all benchmarks, so that results of different runs are comparable.
+ * <p>
+ * Every file is one snippet, its code components are separated by lines that
+ * only contain {@code //---}.
+ */
+public final class Corpus {
+  /** Imports that every snippet of the corpus relies on. */
+  public static final List<String> builtinImports = List.of(
+    "java.lang.*",
+    "java.math.*",
+    "java.time.*",
+    "java.text.*",
+    "java.util.*",
+    "java.util.function.*",
+    "java.util.stream.*"
+  );
+
+  private static final String componentSeparator = "//---";
+
+  public static Corpus load(String name) {
+    Objects.requireNonNull(name, "name");
+    var path = "/corpus/%s.jsh".formatted(name);
+    try (var input = Corpus.class.getResourceAsStream(path)) {
+      if (input == null) {
+        throw new IllegalArgumentException("unknown snippet: " + name);
+      }
+      return new Corpus(name, splitComponents(read(input)));
+    } catch (IOException failedRead) {
+      throw new UncheckedIOException(failedRead);
+    }
+  }
+
+  private static String read(InputStream input) throws IOException {
+    return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+  }
+
+  private static List<String> splitComponents(String content) {
+    var components = new ArrayList<String>();
+    var component = new StringBuilder();
+    for (var line : content.lines().toList()) {
+      if (line.strip().equals(componentSeparator)) {
+        components.add(component.toString());
+        component.setLength(0);
+      } else {
+        component.append(line).append('\n');
+      }
+    }
+    components.add(component.toString());
+    return List.copyOf(components);
+  }
+
+  private final String name;
+  private final List<String> components;
+
+  private Corpus(String name, List<String> components) {
+    this.name = name;
+    this.components = components;
+  }
+
+  public List<String> components() {
+    return components;
+  }
+
+  public StartEvaluationRequest createRequest() {
+    var reference = Snippet.Reference.newBuilder()
+      .setSheetId("corpus")
+      .setSnippetId(name)
+      .build();
+    var sources = SnippetSources.newBuilder().setReference(reference);
+    for (int index = 0; index < components.size(); index++) {
+      sources.addCodeComponents(SnippetSources.CodeComponent.newBuilder()
+        .setId(String.valueOf(index))
+        .setOrder(index)
+        .setCode(components.get(index)));
+    }
+    return StartEvaluationRequest.newBuilder()
+      .setSnippet(EvaluatedSnippet.newBuilder().setReference(reference))
+      .addSources(sources)
+      .build();
+  }
+
+  @Override
+  public String toString() {
+    return "Corpus(name=%s, components=%d)".formatted(name, components.size());
+  }
+}
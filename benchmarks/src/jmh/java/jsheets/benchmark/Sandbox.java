@@ -0,0 +1,35 @@
+package jsheets.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import jsheets.evaluation.sandbox.access.AccessGraph;
+import jsheets.evaluation.sandbox.validation.ForbiddenMemberFilter;
+import jsheets.evaluation.sandbox.validation.Rule;
+
+/** Sandbox configuration that the runtime ships with. */
+public final class Sandbox {
+  private Sandbox() {}
+
+  public static AccessGraph loadAccessGraph() {
+    return AccessGraph.of(loadAccessGraphSource().split("\n"));
+  }
+
+  /** Text form of the access graph, as it is configured in the runtime. */
+  public static String loadAccessGraphSource() {
+    try (var input = Sandbox.class.getResourceAsStream("/accessGraph.txt")) {
+      if (input == null) {
+        throw new IllegalStateException("access graph is not on the classpath");
+      }
+      return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException failedRead) {
+      throw new UncheckedIOException(failedRead);
+    }
+  }
+
+  public static List<Rule> createRules() {
+    return List.of(ForbiddenMemberFilter.create(loadAccessGraph()));
+  }
+}
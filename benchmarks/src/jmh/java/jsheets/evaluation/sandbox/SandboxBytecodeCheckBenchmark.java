@@ -0,0 +1,63 @@
+package jsheets.evaluation.sandbox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+import jsheets.benchmark.Sandbox;
+import jsheets.evaluation.sandbox.validation.Analysis;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of the {@link SandboxBytecodeCheck} with the
+ * rules of the runtime. Classes of the JDK are used as input, since they are
+ * larger and call more members than the classes that snippets compile to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SandboxBytecodeCheckBenchmark {
+  @Param({
+    "java.util.ArrayList",
+    "java.util.HashMap",
+    "java.util.concurrent.ConcurrentHashMap",
+    "java.util.stream.Collectors",
+    "java.time.LocalDate"
+  })
+  private String className;
+
+  private SandboxBytecodeCheck check;
+  private byte[] classCode;
+
+  @Setup
+  public void setup() {
+    check = SandboxBytecodeCheck.withRules(Sandbox.createRules());
+    classCode = readClassCode(className);
+  }
+
+  private static byte[] readClassCode(String className) {
+    var path = "/%s.class".formatted(className.replace('.', '/'));
+    try (var input = Object.class.getResourceAsStream(path)) {
+      if (input == null) {
+        throw new IllegalArgumentException("class not found: " + className);
+      }
+      return input.readAllBytes();
+    } catch (IOException failedRead) {
+      throw new UncheckedIOException(failedRead);
+    }
+  }
+
+  @Benchmark
+  public Analysis run() {
+    var analysis = Analysis.create();
+    check.run(analysis, classCode);
+    return analysis;
+  }
+}
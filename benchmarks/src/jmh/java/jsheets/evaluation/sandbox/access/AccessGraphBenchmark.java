@@ -0,0 +1,64 @@
+package jsheets.evaluation.sandbox.access;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import jsheets.benchmark.Sandbox;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures lookups in the access graph of the runtime. The signatures cover
+ * permitted packages, denied classes and methods of permitted classes, as
+ * well as classes that are not mentioned in the graph at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AccessGraphBenchmark {
+  @Param({
+    "java.util.ArrayList#add(java.lang.Object):boolean",
+    "java.lang.Thread#sleep(long):void",
+    "java.lang.System#nanoTime():long",
+    "java.lang.System#exit(int):void",
+    "java.io.PrintStream#println(java.lang.String):void",
+    "java.net.Socket#connect(java.net.SocketAddress):void"
+  })
+  private String method;
+
+  private AccessGraph accessGraph;
+  private CompiledAccessGraph compiledAccessGraph;
+  private AccessGraphImage accessGraphImage;
+  private MethodSignature signature;
+
+  @Setup
+  public void setup() {
+    accessGraph = Sandbox.loadAccessGraph();
+    compiledAccessGraph = accessGraph.compile();
+    accessGraphImage = AccessGraphImage.of(ByteBuffer.wrap(
+      AccessGraphImage.compile(Sandbox.loadAccessGraphSource())
+    ));
+    signature = MethodSignature.parse(method);
+  }
+
+  @Benchmark
+  public boolean isMethodPermitted() {
+    return accessGraph.isMethodPermitted(signature);
+  }
+
+  @Benchmark
+  public boolean isMethodPermittedCompiled() {
+    return compiledAccessGraph.isMethodPermitted(signature);
+  }
+
+  @Benchmark
+  public boolean isMethodPermittedImage() {
+    return accessGraphImage.isMethodPermitted(signature);
+  }
+}
@@ -0,0 +1,97 @@
+package jsheets.evaluation.shell;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jsheets.EvaluateResponse;
+import jsheets.StartEvaluationRequest;
+import jsheets.benchmark.Corpus;
+import jsheets.benchmark.Sandbox;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+import jsheets.evaluation.shell.environment.ExecutionEnvironment;
+import jsheets.evaluation.shell.environment.StandardEnvironment;
+import jsheets.evaluation.shell.environment.fork.ForkedExecutionEnvironment;
+import jsheets.evaluation.shell.environment.inprocess.EmbeddedEnvironment;
+import jsheets.evaluation.shell.environment.sandbox.SandboxClassFileCheck;
+import jsheets.evaluation.shell.environment.sandbox.SandboxedEnvironment;
+import jsheets.event.EventSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the end-to-end latency of {@link ShellEvaluationEngine#start},
+ * from receiving the request until the listener is closed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EvaluationLatencyBenchmark {
+  public enum Environment { Standard, Embedded, Sandboxed, Forked }
+
+  @Param({"Standard", "Embedded", "Sandboxed", "Forked"})
+  private Environment environment;
+
+  @Param({"arithmetic", "collections", "records", "streams", "text"})
+  private String snippet;
+
+  private ExecutionEnvironment.Installation installation;
+  private EvaluationEngine engine;
+  private StartEvaluationRequest request;
+
+  @Setup
+  public void setup() {
+    var executionEnvironment = createEnvironment(environment);
+    installation = executionEnvironment.install();
+    engine = ShellEvaluationEngine.newBuilder()
+      .useEnvironment(executionEnvironment)
+      .useWorkerPool(Runnable::run)
+      .useBuiltinImports(Corpus.builtinImports)
+      .create();
+    request = Corpus.load(snippet).createRequest();
+  }
+
+  private static ExecutionEnvironment createEnvironment(Environment environment) {
+    return switch (environment) {
+      case Standard -> StandardEnvironment.create();
+      case Embedded -> EmbeddedEnvironment.create();
+      case Sandboxed -> SandboxedEnvironment.create(Sandbox.createRules());
+      case Forked -> ForkedExecutionEnvironment.create(
+        SandboxClassFileCheck.of(Sandbox.createRules()),
+        List.of(),
+        EventSink.ignore()
+      );
+    };
+  }
+
+  @TearDown
+  public void tearDown() {
+    installation.close();
+  }
+
+  @Benchmark
+  public void evaluate(Blackhole blackhole) throws InterruptedException {
+    var closed = new CountDownLatch(1);
+    engine.start(request, new Evaluation.Listener() {
+      @Override
+      public void send(EvaluateResponse response) {
+        blackhole.consume(response);
+      }
+
+      @Override
+      public void close() {
+        closed.countDown();
+      }
+    });
+    closed.await();
+  }
+}
@@ -0,0 +1,53 @@
+package jsheets.evaluation.shell;
+
+import java.util.concurrent.TimeUnit;
+
+import jsheets.EvaluateResponse;
+import jsheets.evaluation.Evaluation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the write throughput of the {@link MessageLog}, when a component
+ * writes a number of lines that are flushed at once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MessageLogBenchmark {
+  private static final int linesPerFlush = 100;
+
+  @Param({"16", "256", "4096"})
+  private int lineLength;
+
+  private MessageLog log;
+  private String line;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    log = new MessageLog(new Evaluation.Listener() {
+      @Override
+      public void send(EvaluateResponse response) {
+        blackhole.consume(response);
+      }
+    });
+    line = "x".repeat(lineLength - 1) + "\n";
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(linesPerFlush)
+  public void writeOutput() {
+    for (int index = 0; index < linesPerFlush; index++) {
+      log.writeOutput(line);
+    }
+    log.flush("0");
+  }
+}
@@ -0,0 +1,91 @@
+package jsheets.evaluation.shell;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import jsheets.EvaluateResponse;
+import jsheets.EvaluationResult;
+import jsheets.evaluation.Evaluation;
+import jsheets.output.CapturingOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the cost per printed line of the sinks that shells print to,
+ * from the print call until the output has been flushed into a response.
+ * <p>
+ * {@code bytes} is the sink of the {@link MessageOutput}, {@code strings}
+ * mirrors the previous sink, which captured every write as a string and
+ * appended it to a {@link StringBuffer}. Allocations are reported by the
+ * gc profiler ({@code -Pprofilers=gc}) as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OutputSinkBenchmark {
+  private static final int linesPerFlush = 100;
+
+  @Param({"16", "256"})
+  private int lineLength;
+
+  @Param({"bytes", "strings"})
+  private String sink;
+
+  private PrintStream stream;
+  private Runnable flush;
+  private String line;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    line = "x".repeat(lineLength - 1);
+    if (sink.equals("bytes")) {
+      var log = new MessageLog(new Evaluation.Listener() {
+        @Override
+        public void send(EvaluateResponse response) {
+          blackhole.consume(response);
+        }
+      });
+      stream = new PrintStream(log.outputStream(), false, StandardCharsets.UTF_8);
+      flush = () -> log.flush("0");
+    } else {
+      var buffer = new StringBuffer();
+      stream = CapturingOutput.to(buffer::append);
+      flush = () -> {
+        blackhole.consume(EvaluateResponse.newBuilder()
+          .addResult(EvaluationResult.newBuilder()
+            .setComponentId("0")
+            .setKind(EvaluationResult.Kind.INFO)
+            .setOutput(buffer.toString()))
+          .build());
+        buffer.setLength(0);
+      };
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(linesPerFlush)
+  public void printLines() {
+    for (int index = 0; index < linesPerFlush; index++) {
+      stream.println(line);
+    }
+    flush.run();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(linesPerFlush)
+  public void printNumbers() {
+    for (int index = 0; index < linesPerFlush; index++) {
+      stream.println(index);
+    }
+    flush.run();
+  }
+}
@@ -0,0 +1,73 @@
+package jsheets.evaluation.shell.execution;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jdk.jshell.JShell;
+import jsheets.benchmark.Corpus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares {@link ExhaustiveExecution} with {@link DirectExecution} on the
+ * components of the corpus. Every invocation uses a new shell, so that
+ * declarations of previous invocations are not redefined.
+ * <p>
+ * Components that contain more than one statement are only partially
+ * evaluated by the {@link DirectExecution}, which makes it appear faster
+ * on those snippets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExecutionMethodBenchmark {
+  public enum Method { Direct, Exhaustive }
+
+  @Param({"Direct", "Exhaustive"})
+  private Method method;
+
+  @Param({"arithmetic", "collections", "records", "streams", "text"})
+  private String snippet;
+
+  private List<String> components;
+  private JShell shell;
+  private ExecutionMethod execution;
+
+  @Setup(Level.Trial)
+  public void loadCorpus() {
+    components = Corpus.load(snippet).components();
+  }
+
+  @Setup(Level.Invocation)
+  public void createShell() {
+    shell = JShell.builder().executionEngine("local").build();
+    for (var builtinImport : Corpus.builtinImports) {
+      shell.eval("import %s;".formatted(builtinImport));
+    }
+    execution = switch (method) {
+      case Direct -> DirectExecution.create(shell);
+      case Exhaustive -> ExhaustiveExecution.create(shell);
+    };
+  }
+
+  @TearDown(Level.Invocation)
+  public void closeShell() {
+    shell.close();
+  }
+
+  @Benchmark
+  public void execute(Blackhole blackhole) {
+    for (var component : components) {
+      blackhole.consume(execution.execute(component));
+    }
+  }
+}
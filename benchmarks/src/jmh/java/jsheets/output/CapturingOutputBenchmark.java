@@ -0,0 +1,51 @@
+package jsheets.output;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of writes to a {@link CapturingOutput}, the way
+ * that snippets write to {@code System.out}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CapturingOutputBenchmark {
+  @Param({"16", "256", "4096"})
+  private int lineLength;
+
+  private CapturingOutput output;
+  private String line;
+  private byte[] bytes;
+
+  @Setup
+  public void setup(Blackhole blackhole) {
+    output = CapturingOutput.to(blackhole::consume);
+    line = "x".repeat(lineLength);
+    bytes = line.getBytes();
+  }
+
+  @Benchmark
+  public void println() {
+    output.println(line);
+  }
+
+  @Benchmark
+  public void printCharacter() {
+    output.print('x');
+  }
+
+  @Benchmark
+  public void writeBytes() {
+    output.write(bytes, 0, bytes.length);
+  }
+}
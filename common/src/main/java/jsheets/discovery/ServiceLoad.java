@@ -0,0 +1,118 @@
+package jsheets.discovery;
+
+/**
+ * Load of a runtime, which is published as the payload of its entry in the
+ * service discovery and used by the server to select the least loaded
+ * runtime.
+ * <p>
+ * The discovery serializes payloads as JSON beans, which is why this is a
+ * mutable class with setters instead of a record.
+ */
+public final class ServiceLoad {
+  public static ServiceLoad of(
+    int activeEvaluations,
+    int queuedEvaluations,
+    int maxConcurrency,
+    int warmBoxes,
+    double cpuLoad
+  ) {
+    var load = new ServiceLoad();
+    load.setActiveEvaluations(activeEvaluations);
+    load.setQueuedEvaluations(queuedEvaluations);
+    load.setMaxConcurrency(maxConcurrency);
+    load.setWarmBoxes(warmBoxes);
+    load.setCpuLoad(cpuLoad);
+    return load;
+  }
+
+  private int activeEvaluations;
+  private int queuedEvaluations;
+  private int maxConcurrency;
+  private int warmBoxes;
+  private double cpuLoad;
+
+  public ServiceLoad() {}
+
+  /** Number of evaluations that are running. */
+  public int getActiveEvaluations() {
+    return activeEvaluations;
+  }
+
+  public void setActiveEvaluations(int activeEvaluations) {
+    this.activeEvaluations = activeEvaluations;
+  }
+
+  /** Number of evaluations that wait for a free slot. */
+  public int getQueuedEvaluations() {
+    return queuedEvaluations;
+  }
+
+  public void setQueuedEvaluations(int queuedEvaluations) {
+    this.queuedEvaluations = queuedEvaluations;
+  }
+
+  /** Number of evaluations that may run concurrently. */
+  public int getMaxConcurrency() {
+    return maxConcurrency;
+  }
+
+  public void setMaxConcurrency(int maxConcurrency) {
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Number of prepared boxes, evaluations that find no warm box have to
+   * wait for a JVM to boot. Negative if the runtime does not run snippets
+   * in boxes.
+   */
+  public int getWarmBoxes() {
+    return warmBoxes;
+  }
+
+  public void setWarmBoxes(int warmBoxes) {
+    this.warmBoxes = warmBoxes;
+  }
+
+  /** Recent CPU usage of the host between 0 and 1, negative if unknown. */
+  public double getCpuLoad() {
+    return cpuLoad;
+  }
+
+  public void setCpuLoad(double cpuLoad) {
+    this.cpuLoad = cpuLoad;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    return other instanceof ServiceLoad load
+      && activeEvaluations == load.activeEvaluations
+      && queuedEvaluations == load.queuedEvaluations
+      && maxConcurrency == load.maxConcurrency
+      && warmBoxes == load.warmBoxes
+      && Double.compare(cpuLoad, load.cpuLoad) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = Integer.hashCode(activeEvaluations);
+    hash = 31 * hash + Integer.hashCode(queuedEvaluations);
+    hash = 31 * hash + Integer.hashCode(maxConcurrency);
+    hash = 31 * hash + Integer.hashCode(warmBoxes);
+    return 31 * hash + Double.hashCode(cpuLoad);
+  }
+
+  @Override
+  public String toString() {
+    return ("ServiceLoad(activeEvaluations=%d, queuedEvaluations=%d,"
+      + " maxConcurrency=%d, warmBoxes=%d, cpuLoad=%.2f)").formatted(
+      activeEvaluations,
+      queuedEvaluations,
+      maxConcurrency,
+      warmBoxes,
+      cpuLoad
+    );
+  }
+}
@@ -0,0 +1,324 @@
+package jsheets.admission;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.flogger.FluentLogger;
+
+import jsheets.EvaluateResponse;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+import jsheets.event.EventSink;
+
+/**
+ * Limits the number of evaluations that run concurrently.
+ * <p>
+ * Evaluations that are started while all slots are taken wait in a bounded
+ * queue and are started in order once running evaluations complete. If the
+ * queue is full as well, {@link #start} throws an
+ * {@link AdmissionRejectedException} with a hint after which time the
+ * evaluation should be retried. An evaluation holds its slot until it closes
+ * its listener or is stopped.
+ */
+public final class AdmissionControlledEngine implements EvaluationEngine {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /**
+   * @param maxConcurrency Number of evaluations that may run at once.
+   * @param queueCapacity Number of evaluations that may wait for a slot,
+   *   further evaluations are rejected.
+   * @param retryAfter Time after which rejected evaluations should be
+   *   retried.
+   */
+  public record Options(int maxConcurrency, int queueCapacity, Duration retryAfter) {
+    public Options {
+      Objects.requireNonNull(retryAfter, "retryAfter");
+      if (maxConcurrency < 1) {
+        throw new IllegalArgumentException("maxConcurrency must be positive");
+      }
+      if (queueCapacity < 0) {
+        throw new IllegalArgumentException("queueCapacity must not be negative");
+      }
+    }
+  }
+
+  public static AdmissionControlledEngine of(
+    EvaluationEngine engine,
+    Options options,
+    EventSink events,
+    Clock clock
+  ) {
+    Objects.requireNonNull(engine, "engine");
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(events, "events");
+    Objects.requireNonNull(clock, "clock");
+    return new AdmissionControlledEngine(engine, options, events, clock);
+  }
+
+  private final EvaluationEngine engine;
+  private final Options options;
+  private final EventSink events;
+  private final Clock clock;
+  private final Lock lock = new ReentrantLock();
+  /* Guarded by lock */
+  private final ArrayDeque<Admission> queue = new ArrayDeque<>();
+  private int activeEvaluations;
+
+  private AdmissionControlledEngine(
+    EvaluationEngine engine,
+    Options options,
+    EventSink events,
+    Clock clock
+  ) {
+    this.engine = engine;
+    this.options = options;
+    this.events = events;
+    this.clock = clock;
+  }
+
+  /**
+   * Starts the evaluation if a slot is free and queues it otherwise.
+   *
+   * @throws AdmissionRejectedException If all slots and the queue are taken.
+   */
+  @Override
+  public Evaluation start(
+    StartEvaluationRequest request,
+    Evaluation.Listener listener
+  ) {
+    var admission = new Admission(request, listener, clock.instant());
+    AdmissionEvent.Outcome outcome;
+    lock.lock();
+    try {
+      if (activeEvaluations < options.maxConcurrency()) {
+        activeEvaluations++;
+        outcome = AdmissionEvent.Outcome.Admitted;
+      } else if (queue.size() < options.queueCapacity()) {
+        queue.add(admission);
+        outcome = AdmissionEvent.Outcome.Queued;
+      } else {
+        outcome = AdmissionEvent.Outcome.Rejected;
+      }
+    } finally {
+      lock.unlock();
+    }
+    switch (outcome) {
+      case Admitted -> admission.begin();
+      case Queued -> postEvent(outcome, Duration.ZERO);
+      default -> {
+        postEvent(outcome, Duration.ZERO);
+        throw new AdmissionRejectedException(options.retryAfter());
+      }
+    }
+    return admission;
+  }
+
+  /* The slot of a completed evaluation is handed to the next queued one */
+  private void release() {
+    Admission next;
+    lock.lock();
+    try {
+      next = queue.poll();
+      if (next == null) {
+        activeEvaluations--;
+      }
+    } finally {
+      lock.unlock();
+    }
+    postEvent(AdmissionEvent.Outcome.Completed, Duration.ZERO);
+    if (next != null) {
+      next.begin();
+    }
+  }
+
+  private boolean dequeue(Admission admission) {
+    lock.lock();
+    try {
+      return queue.remove(admission);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Options options() {
+    return options;
+  }
+
+  /** Number of evaluations that currently hold a slot. */
+  public int activeEvaluations() {
+    lock.lock();
+    try {
+      return activeEvaluations;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Number of evaluations that wait for a slot. */
+  public int queuedEvaluations() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void postEvent(AdmissionEvent.Outcome outcome, Duration waitTime) {
+    events.postIfEnabled(() -> AdmissionEventBuilder.builder()
+      .outcome(outcome)
+      .activeEvaluations(activeEvaluations())
+      .queuedEvaluations(queuedEvaluations())
+      .waitTime(waitTime)
+      .labels(Map.of("maxConcurrency", options.maxConcurrency()))
+      .build()
+    );
+  }
+
+  private final class Admission implements Evaluation, Evaluation.Listener {
+    private final StartEvaluationRequest request;
+    private final Evaluation.Listener listener;
+    private final Instant queuedAt;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private Evaluation evaluation;
+    /* Sources that were supplied while the evaluation was starting */
+    private Collection<SnippetSources> pendingSources;
+    private boolean starting;
+    private boolean stopped;
+
+    private Admission(
+      StartEvaluationRequest request,
+      Evaluation.Listener listener,
+      Instant queuedAt
+    ) {
+      this.request = request;
+      this.listener = listener;
+      this.queuedAt = queuedAt;
+    }
+
+    void begin() {
+      postEvent(
+        AdmissionEvent.Outcome.Admitted,
+        Duration.between(queuedAt, clock.instant())
+      );
+      synchronized (this) {
+        starting = true;
+      }
+      Evaluation started;
+      try {
+        started = engine.start(request, this);
+      } catch (RuntimeException failure) {
+        log.atWarning().withCause(failure).log("failed to start evaluation");
+        close();
+        return;
+      }
+      boolean stoppedWhileStarting;
+      Collection<SnippetSources> sources;
+      synchronized (this) {
+        evaluation = started;
+        stoppedWhileStarting = stopped;
+        sources = pendingSources;
+        pendingSources = null;
+      }
+      if (stoppedWhileStarting) {
+        started.stop();
+        releaseSlot();
+      } else if (sources != null) {
+        supplyStarted(started, sources);
+      }
+    }
+
+    private void supplyStarted(
+      Evaluation started,
+      Collection<SnippetSources> sources
+    ) {
+      try {
+        started.supplySources(sources);
+      } catch (IllegalStateException notWaitingForSources) {
+        log.atWarning().log("sources were supplied to an evaluation that does not wait for them");
+        started.stop();
+      }
+    }
+
+    /*
+     * Evaluations may request sources before they are returned from the
+     * engine, the sources that are supplied meanwhile are passed on once it
+     * returned.
+     */
+    @Override
+    public void supplySources(Collection<SnippetSources> sources) {
+      Evaluation evaluation;
+      synchronized (this) {
+        evaluation = this.evaluation;
+        if (evaluation == null && starting && pendingSources == null) {
+          pendingSources = List.copyOf(sources);
+          return;
+        }
+      }
+      if (evaluation == null) {
+        throw new IllegalStateException("evaluation does not wait for sources");
+      }
+      evaluation.supplySources(sources);
+    }
+
+    @Override
+    public void stop() {
+      Evaluation evaluation;
+      synchronized (this) {
+        stopped = true;
+        evaluation = this.evaluation;
+      }
+      if (evaluation != null) {
+        evaluation.stop();
+        releaseSlot();
+      } else if (dequeue(this)) {
+        listener.close();
+      }
+      // Otherwise it is just being started and is stopped once it started
+    }
+
+    private synchronized Evaluation currentEvaluation() {
+      return evaluation;
+    }
+
+    @Override
+    public void send(EvaluateResponse response) {
+      listener.send(response);
+    }
+
+    @Override
+    public void close() {
+      releaseSlot();
+      listener.close();
+    }
+
+    private void releaseSlot() {
+      if (released.compareAndSet(false, true)) {
+        release();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Admission(evaluation=%s, queuedAt=%s)"
+        .formatted(currentEvaluation(), queuedAt);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AdmissionControlledEngine(engine=%s, options=%s)"
+      .formatted(engine, options);
+  }
+}
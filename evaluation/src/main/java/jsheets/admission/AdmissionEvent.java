@@ -0,0 +1,24 @@
+package jsheets.admission;
+
+import java.time.Duration;
+import java.util.Map;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+import jsheets.event.LabeledEvent;
+
+/**
+ * Posted by the {@link AdmissionControlledEngine} whenever an evaluation is
+ * admitted, queued, rejected or completed. The wait time is the time that an
+ * admitted evaluation spent in the queue.
+ */
+@RecordBuilder
+public record AdmissionEvent(
+  Outcome outcome,
+  int activeEvaluations,
+  int queuedEvaluations,
+  Duration waitTime,
+  Map<String, Object> labels
+) implements LabeledEvent {
+
+  public enum Outcome { Admitted, Queued, Rejected, Completed }
+}
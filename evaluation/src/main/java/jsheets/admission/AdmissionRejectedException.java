@@ -0,0 +1,22 @@
+package jsheets.admission;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Thrown when an evaluation is started while all slots and the queue of an
+ * {@link AdmissionControlledEngine} are taken.
+ */
+public final class AdmissionRejectedException extends RuntimeException {
+  private final Duration retryAfter;
+
+  AdmissionRejectedException(Duration retryAfter) {
+    super("too many evaluations, retry after %dms".formatted(retryAfter.toMillis()));
+    this.retryAfter = Objects.requireNonNull(retryAfter, "retryAfter");
+  }
+
+  /** Time after which the rejected evaluation should be retried. */
+  public Duration retryAfter() {
+    return retryAfter;
+  }
+}
@@ -1,6 +1,9 @@
 package jsheets.evaluation;
 
+import java.util.Collection;
+
 import jsheets.EvaluateResponse;
+import jsheets.SnippetSources;
 
 public interface Evaluation {
   interface Listener {
@@ -9,4 +12,13 @@ public interface Evaluation {
   }
 
   void stop();
+
+  /**
+   * Supplies sources that were reported as missing by the evaluation.
+   *
+   * @throws IllegalStateException If the evaluation does not wait for sources.
+   */
+  default void supplySources(Collection<SnippetSources> sources) {
+    throw new IllegalStateException("evaluation does not wait for sources");
+  }
 }
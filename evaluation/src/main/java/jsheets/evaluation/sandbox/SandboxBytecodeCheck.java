@@ -1,8 +1,10 @@
 package jsheets.evaluation.sandbox;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 import jsheets.evaluation.sandbox.validation.Analysis;
 import jsheets.evaluation.sandbox.validation.Rule;
@@ -12,6 +14,16 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
+/**
+ * Runs rules against the calls and field accesses of classes.
+ * <p>
+ * Rules that do not need the access point are run once per member that is
+ * referenced in the constant pool of a class, instead of once per instruction.
+ * Members that are referenced by method handles, for example bootstrap methods
+ * of lambdas, can not be told apart from calls by the constant pool alone.
+ * They are checked by visiting the instructions of the class, like the rules
+ * that need the access point.
+ */
 public final class SandboxBytecodeCheck {
   public static SandboxBytecodeCheck withRules(Rule... rules) {
     Objects.requireNonNull(rules, "rules");
@@ -23,29 +35,136 @@ public final class SandboxBytecodeCheck {
     return new SandboxBytecodeCheck(rules);
   }
 
-  private final Collection<Rule> rules;
+  private final Collection<Rule> instructionRules;
+  private final Collection<Rule> memberRules;
 
   private SandboxBytecodeCheck(Collection<Rule> rules) {
-    this.rules = rules;
+    this.instructionRules = rules.stream()
+      .filter(Rule::needsAccessPoint)
+      .toList();
+    this.memberRules = rules.stream()
+      .filter(rule -> !rule.needsAccessPoint())
+      .toList();
   }
 
   public void run(Analysis analysis, byte[] classCode) {
     var reader = new ClassReader(classCode);
-    reader.accept(new ClassCheck(reader.getClassName(), rules, analysis), 0);
+    var className = reader.getClassName();
+    Set<Member> handleTargets = Set.of();
+    if (!memberRules.isEmpty()) {
+      handleTargets = scanConstantPool(reader, analysis);
+    }
+    if (!instructionRules.isEmpty() || !handleTargets.isEmpty()) {
+      var check = new ClassCheck(
+        className,
+        instructionRules,
+        memberRules,
+        handleTargets,
+        analysis
+      );
+      reader.accept(check, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    }
+  }
+
+  private static final int fieldrefTag = 9;
+  private static final int methodrefTag = 10;
+  private static final int interfaceMethodrefTag = 11;
+  private static final int methodHandleTag = 15;
+
+  /**
+   * Runs the member rules on all members in the constant pool that are not
+   * referenced by method handles and returns the ones that are.
+   */
+  private Set<Member> scanConstantPool(ClassReader reader, Analysis analysis) {
+    var buffer = new char[reader.getMaxStringLength()];
+    var handleTargets = new HashSet<Integer>();
+    for (int item = 1; item < reader.getItemCount(); item++) {
+      int offset = reader.getItem(item);
+      if (offset != 0 && reader.readByte(offset - 1) == methodHandleTag) {
+        handleTargets.add(reader.readUnsignedShort(offset + 1));
+      }
+    }
+    var accessPoint = new Rule.AccessPoint(reader.getClassName(), "");
+    var ambiguousMembers = new HashSet<Member>();
+    for (int item = 1; item < reader.getItemCount(); item++) {
+      // The second entry of longs and doubles has no offset
+      int offset = reader.getItem(item);
+      if (offset == 0) {
+        continue;
+      }
+      int tag = reader.readByte(offset - 1);
+      if (tag != fieldrefTag && tag != methodrefTag && tag != interfaceMethodrefTag) {
+        continue;
+      }
+      var member = readMember(reader, offset, buffer);
+      if (handleTargets.contains(item)) {
+        ambiguousMembers.add(member);
+      } else if (tag == fieldrefTag) {
+        visitFieldAccess(memberRules, analysis, accessPoint, member);
+      } else {
+        visitCall(memberRules, analysis, accessPoint, member);
+      }
+    }
+    return ambiguousMembers;
+  }
+
+  private static Member readMember(ClassReader reader, int offset, char[] buffer) {
+    var owner = reader.readClass(offset, buffer);
+    int nameAndType = reader.getItem(reader.readUnsignedShort(offset + 2));
+    var name = reader.readUTF8(nameAndType, buffer);
+    var descriptor = reader.readUTF8(nameAndType + 2, buffer);
+    return new Member(owner, name, descriptor);
+  }
+
+  private record Member(String owner, String name, String descriptor) {}
+
+  private static void visitCall(
+    Collection<Rule> rules,
+    Analysis analysis,
+    Rule.AccessPoint accessPoint,
+    Member member
+  ) {
+    var type = Type.getMethodType(member.descriptor());
+    var ownerClass = Type.getObjectType(member.owner()).getClassName();
+    var call = new Rule.MethodCall(accessPoint, ownerClass, member.name(), type);
+    for (var rule : rules) {
+      rule.visitCall(analysis, call);
+    }
+  }
+
+  private static void visitFieldAccess(
+    Collection<Rule> rules,
+    Analysis analysis,
+    Rule.AccessPoint accessPoint,
+    Member member
+  ) {
+    var ownerClass = Type.getObjectType(member.owner()).getClassName();
+    var access = new Rule.FieldAccess(accessPoint, ownerClass, member.name());
+    for (var rule : rules) {
+      rule.visitFieldAccess(analysis, access);
+    }
   }
 
   static final class ClassCheck extends ClassVisitor {
     private final String className;
     private final Collection<Rule> rules;
+    private final Collection<Rule> memberRules;
+    private final Set<Member> handleTargets;
+    /* Member rules are run once per member */
+    private final Set<Member> visitedMembers = new HashSet<>();
     private final Analysis analysis;
 
     private ClassCheck(
       String className,
       Collection<Rule> rules,
+      Collection<Rule> memberRules,
+      Set<Member> handleTargets,
       Analysis analysis
     ) {
       super(Opcodes.ASM9);
       this.rules = rules;
+      this.memberRules = memberRules;
+      this.handleTargets = handleTargets;
       this.className = className;
       this.analysis = analysis;
     }
@@ -58,27 +177,22 @@ public final class SandboxBytecodeCheck {
       String signature,
       String[] exceptions
     ) {
-      return new MethodCheck(name, className, rules, analysis);
+      return new MethodCheck(name, this);
+    }
+
+    private boolean shouldVisitMember(Member member) {
+      return handleTargets.contains(member) && visitedMembers.add(member);
     }
   }
 
   static final class MethodCheck extends MethodVisitor {
     private final String name;
-    private final String className;
-    private final Collection<Rule> rules;
-    private final Analysis analysis;
+    private final ClassCheck check;
 
-    private MethodCheck(
-      String name,
-      String className,
-      Collection<Rule> rules,
-      Analysis analysis
-    ) {
+    private MethodCheck(String name, ClassCheck check) {
       super(Opcodes.ASM9);
       this.name = name;
-      this.rules = rules;
-      this.className = className;
-      this.analysis = analysis;
+      this.check = check;
     }
 
     @Override
@@ -89,11 +203,12 @@ public final class SandboxBytecodeCheck {
       String descriptor,
       boolean isInterface
     ) {
-      var type = Type.getMethodType(descriptor);
-      var ownerClass = Type.getObjectType(owner).getClassName();
-      var call = new Rule.MethodCall(createAccessPoint(), ownerClass, name, type);
-      for (var rule : rules) {
-        rule.visitCall(analysis, call);
+      var member = new Member(owner, name, descriptor);
+      if (!check.rules.isEmpty()) {
+        visitCall(check.rules, check.analysis, createAccessPoint(), member);
+      }
+      if (check.shouldVisitMember(member)) {
+        visitCall(check.memberRules, check.analysis, createAccessPoint(), member);
       }
     }
 
@@ -104,15 +219,17 @@ public final class SandboxBytecodeCheck {
       String field,
       String descriptor
     ) {
-      var ownerClass = Type.getObjectType(owner).getClassName();
-      var access = new Rule.FieldAccess(createAccessPoint(), ownerClass, field);
-      for (var rule : rules) {
-        rule.visitFieldAccess(analysis, access);
+      var member = new Member(owner, field, descriptor);
+      if (!check.rules.isEmpty()) {
+        visitFieldAccess(check.rules, check.analysis, createAccessPoint(), member);
+      }
+      if (check.shouldVisitMember(member)) {
+        visitFieldAccess(check.memberRules, check.analysis, createAccessPoint(), member);
       }
     }
 
     private Rule.AccessPoint createAccessPoint() {
-      return new Rule.AccessPoint(className, name);
+      return new Rule.AccessPoint(check.className, name);
     }
   }
-}
\ No newline at end of file
+}
@@ -36,6 +36,18 @@ public final class AccessGraph {
     this.root = root;
   }
 
+  /**
+   * Compiles the graph into an immutable form that is faster to look up.
+   * Later changes to this graph are not reflected by the compiled graph.
+   */
+  public CompiledAccessGraph compile() {
+    return CompiledAccessGraph.compile(root);
+  }
+
+  AccessGraphNode root() {
+    return root;
+  }
+
   private Collection<AccessGraphNode> findClosestMatch(AccessKey key) {
     return findClosestMatch(root, key.split(), 0);
   }
@@ -118,7 +130,9 @@ public final class AccessGraph {
         boolean isMatch = !result.isClassMember() || result.matchesMethod(signature);
         yield isMatch ? result.access() : Access.NotSet;
       }
-      default -> findBestMethodMatch(signature, matches).map(AccessGraphNode::access);
+      default -> findBestMethodMatch(signature, matches)
+        .map(AccessGraphNode::access)
+        .orElse(Access.NotSet);
     };
     return access.equals(Access.Permitted);
   }
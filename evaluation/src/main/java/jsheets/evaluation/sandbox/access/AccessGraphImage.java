@@ -0,0 +1,460 @@
+package jsheets.evaluation.sandbox.access;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Binary image of an {@link AccessGraph} that is looked up without being
+ * loaded into the heap.
+ * <p>
+ * Images are compiled from the text form of the graph once, typically while
+ * the runtime is built, and memory-mapped when the runtime starts. The image
+ * consists of a table of UTF-8 strings that are referenced by their index,
+ * and of nodes whose children are sorted by their key, so that lookups
+ * binary search the children of every level. The image remembers the
+ * SHA-256 digest of its source, which tells if it is outdated.
+ * <p>
+ * Lookups return the same verdicts as {@link CompiledAccessGraph}.
+ */
+public final class AccessGraphImage implements AccessLookup {
+  /*
+   * Layout, all numbers are big-endian:
+   *
+   *   header:  magic, version, source digest (32 bytes), string count,
+   *            string section, node section, root node
+   *   strings: offsets of the strings, then the strings, each being an
+   *            unsigned short length followed by its UTF-8 bytes
+   *   nodes:   key (string), access (byte), kind (byte), parameter count
+   *            (short), child count, offsets of the children and, only for
+   *            methods, class name, return type and parameters (strings)
+   *
+   * Offsets of strings and nodes are relative to their section.
+   */
+  private static final int magic = 0x4A534147;
+  private static final int version = 2;
+  private static final int digestOffset = 8;
+  private static final int digestLength = 32;
+  private static final int stringCountOffset = 40;
+  private static final int stringSectionOffset = 44;
+  private static final int nodeSectionOffset = 48;
+  private static final int rootOffset = 52;
+  private static final int stringTableOffset = 56;
+
+  private static final byte pathKind = 0;
+  private static final byte methodKind = 1;
+
+  private static final Access[] accessValues = Access.values();
+
+  /**
+   * Compiles the text form of an access graph, as it is read by
+   * {@link AccessGraph#of(String...)} line by line, into an image.
+   */
+  public static byte[] compile(String source) {
+    Objects.requireNonNull(source, "source");
+    var graph = AccessGraph.of(source.split("\n"));
+    return new ImageWriter(digest(source)).write(graph.root());
+  }
+
+  /**
+   * Memory-maps the image in the file. The file must not be changed while
+   * the image is used, new images have to replace the file atomically.
+   *
+   * @throws IllegalArgumentException If the file does not contain an image.
+   */
+  public static AccessGraphImage map(Path file) throws IOException {
+    Objects.requireNonNull(file, "file");
+    try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads the image from the remaining bytes of the buffer.
+   *
+   * @throws IllegalArgumentException If the buffer does not contain an image.
+   */
+  public static AccessGraphImage of(ByteBuffer buffer) {
+    Objects.requireNonNull(buffer, "buffer");
+    var image = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    if (image.limit() < stringTableOffset || image.getInt(0) != magic) {
+      throw new IllegalArgumentException("buffer does not contain an access graph image");
+    }
+    if (image.getInt(4) != version) {
+      throw new IllegalArgumentException(
+        "unsupported access graph image version: " + image.getInt(4)
+      );
+    }
+    return new AccessGraphImage(image);
+  }
+
+  /** SHA-256 digest of the text form that identifies the source of an image. */
+  public static byte[] digest(String source) {
+    Objects.requireNonNull(source, "source");
+    try {
+      return MessageDigest.getInstance("SHA-256")
+        .digest(source.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException missingAlgorithm) {
+      throw new IllegalStateException("SHA-256 is not supported", missingAlgorithm);
+    }
+  }
+
+  private final ByteBuffer image;
+  private final int stringSection;
+  private final int nodeSection;
+  private final int root;
+
+  private AccessGraphImage(ByteBuffer image) {
+    this.image = image;
+    this.stringSection = image.getInt(stringSectionOffset);
+    this.nodeSection = image.getInt(nodeSectionOffset);
+    this.root = image.getInt(rootOffset);
+  }
+
+  /** Checks if the image was compiled from the text form. */
+  public boolean isCompiledFrom(String source) {
+    var compiledFrom = new byte[digestLength];
+    image.get(digestOffset, compiledFrom);
+    return Arrays.equals(compiledFrom, digest(source));
+  }
+
+  /** Size of the image in bytes. */
+  public int size() {
+    return image.limit();
+  }
+
+  @Override
+  public boolean isPermitted(AccessKey key) {
+    return isPermitted(key.split());
+  }
+
+  @Override
+  public boolean isFieldPermitted(String owner, String field) {
+    return isPermitted(CompiledAccessGraph.splitMember(owner, field));
+  }
+
+  private boolean isPermitted(String[] key) {
+    return readAccess(findClosestMatch(key).first()) == Access.Permitted;
+  }
+
+  @Override
+  public boolean isMethodPermitted(MethodSignature signature) {
+    var key = CompiledAccessGraph.splitMember(
+      signature.className(),
+      signature.methodName()
+    );
+    var matches = findClosestMatch(key);
+    var access = matches.size() == 1
+      ? checkSingleMatch(matches.first(), signature)
+      : findBestMethodMatch(signature, matches);
+    return access == Access.Permitted;
+  }
+
+  private Access checkSingleMatch(int node, MethodSignature signature) {
+    boolean isMatch = !isMethod(node) || matchesMethod(node, signature);
+    return isMatch ? readAccess(node) : Access.NotSet;
+  }
+
+  private Access findBestMethodMatch(MethodSignature signature, Matches matches) {
+    for (int index = matches.from(); index < matches.to(); index++) {
+      var node = readChild(matches.parent(), index);
+      if (matchesMethod(node, signature)) {
+        return readAccess(node);
+      }
+    }
+    return Access.NotSet;
+  }
+
+  /*
+   * Children of the parent in [from, to) that match the last part of the
+   * key, or only the parent if none match.
+   */
+  private final class Matches {
+    private final int parent;
+    private final int from;
+    private final int to;
+
+    Matches(int parent, int from, int to) {
+      this.parent = parent;
+      this.from = from;
+      this.to = to;
+    }
+
+    int parent() {
+      return parent;
+    }
+
+    int from() {
+      return from;
+    }
+
+    int to() {
+      return to;
+    }
+
+    int size() {
+      return from == to ? 1 : to - from;
+    }
+
+    int first() {
+      return from == to ? parent : readChild(parent, from);
+    }
+  }
+
+  /* Like the compiled graph, paths follow the first child with the key */
+  private Matches findClosestMatch(String[] key) {
+    int node = root;
+    for (int depth = 0; depth < key.length; depth++) {
+      int from = findFirstChild(node, key[depth]);
+      int to = from;
+      int count = readChildCount(node);
+      while (to < count && compareKey(readChild(node, to), key[depth]) == 0) {
+        to++;
+      }
+      if (from == to) {
+        return new Matches(node, 0, 0);
+      }
+      if (depth == key.length - 1) {
+        return new Matches(node, from, to);
+      }
+      node = readChild(node, from);
+    }
+    return new Matches(node, 0, 0);
+  }
+
+  /* Index of the first child whose key is not less than the key */
+  private int findFirstChild(int node, String key) {
+    int low = 0;
+    int high = readChildCount(node);
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compareKey(readChild(node, middle), key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private boolean matchesMethod(int node, MethodSignature signature) {
+    if (compareKey(node, signature.methodName()) != 0) {
+      return false;
+    }
+    if (!isMethod(node)) {
+      return true;
+    }
+    int position = findMethodData(node);
+    return compareString(image.getInt(position), signature.className()) == 0
+      && matchesParameters(node, position + 8, signature.parameterTypes())
+      && matchesWildcardOrEqual(image.getInt(position + 4), signature.returnType());
+  }
+
+  private boolean matchesParameters(
+    int node,
+    int position,
+    Collection<String> parameterTypes
+  ) {
+    int count = Short.toUnsignedInt(image.getShort(nodeSection + node + 6));
+    if (count == 1 && compareString(image.getInt(position), wildcard) == 0) {
+      return true;
+    }
+    if (count != parameterTypes.size()) {
+      return false;
+    }
+    for (var parameterType : parameterTypes) {
+      if (compareString(image.getInt(position), parameterType) != 0) {
+        return false;
+      }
+      position += 4;
+    }
+    return true;
+  }
+
+  private static final String wildcard = "*";
+
+  private boolean matchesWildcardOrEqual(int string, String value) {
+    return compareString(string, wildcard) == 0 || compareString(string, value) == 0;
+  }
+
+  private int compareKey(int node, String key) {
+    return compareString(image.getInt(nodeSection + node), key);
+  }
+
+  private Access readAccess(int node) {
+    return accessValues[image.get(nodeSection + node + 4)];
+  }
+
+  private boolean isMethod(int node) {
+    return image.get(nodeSection + node + 5) == methodKind;
+  }
+
+  private int readChildCount(int node) {
+    return image.getInt(nodeSection + node + 8);
+  }
+
+  private int readChild(int node, int index) {
+    return image.getInt(nodeSection + node + 12 + index * 4);
+  }
+
+  /* Class name, return type and parameters of methods follow the children */
+  private int findMethodData(int node) {
+    return nodeSection + node + 12 + readChildCount(node) * 4;
+  }
+
+  /*
+   * Compares like String#compareTo. ASCII strings are compared without
+   * being decoded, others are decoded first.
+   */
+  private int compareString(int string, String value) {
+    int position = stringSection + image.getInt(stringTableOffset + string * 4);
+    int length = Short.toUnsignedInt(image.getShort(position));
+    position += 2;
+    int common = Math.min(length, value.length());
+    for (int index = 0; index < common; index++) {
+      byte character = image.get(position + index);
+      if (character < 0) {
+        return readString(string).compareTo(value);
+      }
+      int difference = character - value.charAt(index);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    for (int index = common; index < length; index++) {
+      if (image.get(position + index) < 0) {
+        return readString(string).compareTo(value);
+      }
+    }
+    return length - value.length();
+  }
+
+  private String readString(int string) {
+    int position = stringSection + image.getInt(stringTableOffset + string * 4);
+    var bytes = new byte[Short.toUnsignedInt(image.getShort(position))];
+    image.get(position + 2, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return "AccessGraphImage(size=%d, strings=%d)"
+      .formatted(size(), image.getInt(stringCountOffset));
+  }
+
+  /* Writes children before their parents, so that their offsets are known */
+  private static final class ImageWriter {
+    private final byte[] digest;
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+    private final ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream nodes = new DataOutputStream(nodeBytes);
+
+    ImageWriter(byte[] digest) {
+      this.digest = digest;
+    }
+
+    byte[] write(AccessGraphNode root) {
+      try {
+        int rootNode = writeNode(root);
+        return writeImage(rootNode);
+      } catch (IOException failedWrite) {
+        throw new UncheckedIOException(failedWrite);
+      }
+    }
+
+    private int writeNode(AccessGraphNode node) throws IOException {
+      var children = new ArrayList<AccessGraphNode>();
+      node.forEach(children::add);
+      // Stable, so that overloads keep their order
+      children.sort(Comparator.comparing(ImageWriter::indexKey));
+      var childOffsets = new int[children.size()];
+      for (int index = 0; index < childOffsets.length; index++) {
+        childOffsets[index] = writeNode(children.get(index));
+      }
+      int offset = nodes.size();
+      var method = node instanceof AccessGraphNode.Method methodNode
+        ? methodNode.method()
+        : null;
+      var parameterTypes = method == null ? List.<String>of() : method.parameterTypes();
+      if (parameterTypes.size() > 0xFFFF) {
+        throw new IllegalArgumentException("too many parameters: " + method);
+      }
+      nodes.writeInt(intern(indexKey(node)));
+      nodes.writeByte(node.access().ordinal());
+      nodes.writeByte(method == null ? pathKind : methodKind);
+      nodes.writeShort(parameterTypes.size());
+      nodes.writeInt(childOffsets.length);
+      for (var childOffset : childOffsets) {
+        nodes.writeInt(childOffset);
+      }
+      if (method != null) {
+        nodes.writeInt(intern(method.className()));
+        nodes.writeInt(intern(method.returnType()));
+        for (var parameterType : parameterTypes) {
+          nodes.writeInt(intern(parameterType));
+        }
+      }
+      return offset;
+    }
+
+    private static String indexKey(AccessGraphNode node) {
+      return node instanceof AccessGraphNode.Method method
+        ? method.method().methodName()
+        : node.key();
+    }
+
+    private int intern(String string) {
+      return strings.computeIfAbsent(string, key -> strings.size());
+    }
+
+    private byte[] writeImage(int rootNode) throws IOException {
+      var stringBytes = new ByteArrayOutputStream();
+      var stringOutput = new DataOutputStream(stringBytes);
+      var stringOffsets = new ArrayList<Integer>(strings.size());
+      for (var string : strings.keySet()) {
+        var encoded = string.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > 0xFFFF) {
+          throw new IllegalArgumentException("key is too long: " + string);
+        }
+        stringOffsets.add(stringOutput.size());
+        stringOutput.writeShort(encoded.length);
+        stringOutput.write(encoded);
+      }
+      int stringSection = stringTableOffset + stringOffsets.size() * 4;
+      int nodeSection = stringSection + stringOutput.size();
+      var imageBytes = new ByteArrayOutputStream(nodeSection + nodes.size());
+      var image = new DataOutputStream(imageBytes);
+      image.writeInt(magic);
+      image.writeInt(version);
+      image.write(digest);
+      image.writeInt(stringOffsets.size());
+      image.writeInt(stringSection);
+      image.writeInt(nodeSection);
+      image.writeInt(rootNode);
+      for (var stringOffset : stringOffsets) {
+        image.writeInt(stringOffset);
+      }
+      stringBytes.writeTo(image);
+      nodeBytes.writeTo(image);
+      image.flush();
+      return imageBytes.toByteArray();
+    }
+  }
+}
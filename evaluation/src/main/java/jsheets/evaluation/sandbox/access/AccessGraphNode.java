@@ -126,6 +126,10 @@ public abstract class AccessGraphNode implements Iterable<AccessGraphNode> {
 
     private final MethodSignature method;
 
+    public MethodSignature method() {
+      return method;
+    }
+
     private Method(
       MethodSignature method,
       Access access,
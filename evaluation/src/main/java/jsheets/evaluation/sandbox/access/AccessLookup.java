@@ -0,0 +1,21 @@
+package jsheets.evaluation.sandbox.access;
+
+/**
+ * Looks up whether snippets may use packages, classes and their members.
+ * Implementations are immutable and safe to share between threads.
+ */
+public interface AccessLookup {
+  /** See {@link AccessGraph#isPermitted(AccessKey)}. */
+  boolean isPermitted(AccessKey key);
+
+  /**
+   * Checks if the use of the field is permitted.
+   *
+   * @param owner Dot separated name of the class that declares the field.
+   * @param field Name of the field.
+   */
+  boolean isFieldPermitted(String owner, String field);
+
+  /** See {@link AccessGraph#isMethodPermitted(MethodSignature)}. */
+  boolean isMethodPermitted(MethodSignature signature);
+}
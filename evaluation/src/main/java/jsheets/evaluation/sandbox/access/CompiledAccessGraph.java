@@ -0,0 +1,156 @@
+package jsheets.evaluation.sandbox.access;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable form of an {@link AccessGraph} that is built for lookups. The
+ * children of nodes are indexed by their key, keys are interned and split
+ * without regular expressions.
+ * <p>
+ * Lookups return the same verdicts as the graph it was compiled from, except
+ * that method names are matched literally instead of as patterns.
+ */
+public final class CompiledAccessGraph implements AccessLookup {
+  static CompiledAccessGraph compile(AccessGraphNode root) {
+    Objects.requireNonNull(root, "root");
+    return new CompiledAccessGraph(compileNode(root));
+  }
+
+  private static Node compileNode(AccessGraphNode node) {
+    var children = new HashMap<String, List<Node>>();
+    for (var child : node) {
+      var compiled = compileNode(child);
+      children.computeIfAbsent(compiled.indexKey(), key -> new ArrayList<>(1))
+        .add(compiled);
+    }
+    var method = node instanceof AccessGraphNode.Method methodNode
+      ? methodNode.method()
+      : null;
+    var key = method == null ? node.key() : method.methodName();
+    return new Node(key.intern(), node.access(), method, copyChildren(children));
+  }
+
+  private static Map<String, List<Node>> copyChildren(Map<String, List<Node>> children) {
+    var copy = new HashMap<String, List<Node>>(children.size() * 2);
+    children.forEach((key, nodes) -> copy.put(key, List.copyOf(nodes)));
+    return Map.copyOf(copy);
+  }
+
+  private final Node root;
+
+  private CompiledAccessGraph(Node root) {
+    this.root = root;
+  }
+
+  @Override
+  public boolean isPermitted(AccessKey key) {
+    return isPermitted(key.split());
+  }
+
+  @Override
+  public boolean isFieldPermitted(String owner, String field) {
+    return isPermitted(splitMember(owner, field));
+  }
+
+  private boolean isPermitted(String[] key) {
+    var matches = findClosestMatch(root, key, 0);
+    return !matches.isEmpty() && matches.get(0).access() == Access.Permitted;
+  }
+
+  @Override
+  public boolean isMethodPermitted(MethodSignature signature) {
+    var key = splitMember(signature.className(), signature.methodName());
+    var matches = findClosestMatch(root, key, 0);
+    var access = switch (matches.size()) {
+      case 0 -> Access.Denied;
+      case 1 -> {
+        var result = matches.get(0);
+        boolean isMatch = !result.isClassMember() || result.matchesMethod(signature);
+        yield isMatch ? result.access() : Access.NotSet;
+      }
+      default -> findBestMethodMatch(signature, matches);
+    };
+    return access == Access.Permitted;
+  }
+
+  private static Access findBestMethodMatch(
+    MethodSignature signature,
+    Collection<Node> nodes
+  ) {
+    for (var node : nodes) {
+      if (node.matchesMethod(signature)) {
+        return node.access();
+      }
+    }
+    return Access.NotSet;
+  }
+
+  private static List<Node> findClosestMatch(Node node, String[] key, int depth) {
+    while (depth < key.length) {
+      var children = node.children().get(key[depth]);
+      if (depth == key.length - 1) {
+        return children == null ? List.of(node) : children;
+      }
+      if (children == null) {
+        return List.of(node);
+      }
+      node = children.get(0);
+      depth++;
+    }
+    return List.of(node);
+  }
+
+  /* Splits like AccessKey.dotSeparated, class names never contain a '#' */
+  static String[] splitMember(String className, String member) {
+    int parts = 2;
+    for (int index = 0; index < className.length(); index++) {
+      if (className.charAt(index) == '.') {
+        parts++;
+      }
+    }
+    var key = new String[parts];
+    int part = 0;
+    int begin = 0;
+    for (int index = 0; index < className.length(); index++) {
+      if (className.charAt(index) == '.') {
+        key[part++] = className.substring(begin, index);
+        begin = index + 1;
+      }
+    }
+    key[part++] = className.substring(begin);
+    key[part] = member;
+    return key;
+  }
+
+  private record Node(
+    String indexKey,
+    Access access,
+    MethodSignature method,
+    Map<String, List<Node>> children
+  ) {
+    boolean isClassMember() {
+      return method != null;
+    }
+
+    boolean matchesMethod(MethodSignature signature) {
+      return method == null
+        ? signature.methodName().equals(indexKey)
+        : method.matches(signature);
+    }
+
+    @Override
+    public String toString() {
+      return "Node(key=%s, access=%s)".formatted(indexKey, access);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledAccessGraph(root=%s)".formatted(root);
+  }
+}
@@ -4,6 +4,7 @@ import jsheets.EvaluationError;
 import jsheets.evaluation.failure.FailedEvaluation;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -26,6 +27,11 @@ public final class Analysis {
     violations.add(violation);
   }
 
+  /** Lists the violations that were reported so far. */
+  public Collection<Violation> violations() {
+    return List.copyOf(violations);
+  }
+
   public void reportViolations() {
     if (!violations.isEmpty()) {
       throw new FailedAnalysis(Set.copyOf(violations));
@@ -2,28 +2,69 @@ package jsheets.evaluation.sandbox.validation;
 
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 import jsheets.EvaluationError;
 import jsheets.evaluation.sandbox.access.AccessGraph;
-import jsheets.evaluation.sandbox.access.AccessKey;
+import jsheets.evaluation.sandbox.access.AccessLookup;
 import jsheets.evaluation.sandbox.access.MethodSignature;
 import jsheets.evaluation.sandbox.access.MethodSignatureBuilder;
 import org.objectweb.asm.Type;
 
 public final class ForbiddenMemberFilter implements Rule {
   public static ForbiddenMemberFilter create(AccessGraph accessGraph) {
+    Objects.requireNonNull(accessGraph, "accessGraph");
+    return create(accessGraph.compile());
+  }
+
+  public static ForbiddenMemberFilter create(AccessLookup accessGraph) {
     Objects.requireNonNull(accessGraph, "accessGraph");
     return new ForbiddenMemberFilter(accessGraph);
   }
 
-  private final AccessGraph accessGraph;
+  private final AccessLookup accessGraph;
+  /*
+   * Verdicts of members by their owner, name and descriptor. Fields have no
+   * descriptor. The cache is cleared once it is full, the members that are
+   * used by snippets are few and quickly cached again.
+   */
+  private final Map<MemberKey, Boolean> verdicts = new ConcurrentHashMap<>();
+  private static final int maxCachedVerdicts = 1 << 16;
 
-  private ForbiddenMemberFilter(AccessGraph accessGraph) {
+  private record MemberKey(String owner, String name, String descriptor) {}
+
+  private ForbiddenMemberFilter(AccessLookup accessGraph) {
     this.accessGraph = accessGraph;
   }
 
+  /**
+   * Creates a filter that checks members against another access graph. Its
+   * verdicts are filled with the members that are cached by this filter,
+   * checked against the new graph, so that the switch to the new graph
+   * does not start with an empty cache.
+   */
+  public ForbiddenMemberFilter withAccessGraph(AccessLookup accessGraph) {
+    Objects.requireNonNull(accessGraph, "accessGraph");
+    var filter = new ForbiddenMemberFilter(accessGraph);
+    for (var member : verdicts.keySet()) {
+      filter.verdicts.put(member, filter.checkMember(member));
+    }
+    return filter;
+  }
+
+  private boolean checkMember(MemberKey member) {
+    return member.descriptor() == null
+      ? accessGraph.isFieldPermitted(member.owner(), member.name())
+      : accessGraph.isMethodPermitted(createSignature(
+          member.owner(),
+          member.name(),
+          Type.getMethodType(member.descriptor())
+        ));
+  }
+
   public record ForbiddenMethod(MethodSignature method) implements Analysis.Violation {
     @Override
     public Stream<EvaluationError> describe(Locale locale) {
@@ -48,24 +89,45 @@ public final class ForbiddenMemberFilter implements Rule {
     }
   }
 
+  @Override
+  public boolean needsAccessPoint() {
+    return false;
+  }
+
   @Override
   public void visitCall(Analysis analysis, MethodCall call) {
     if (isClassExcluded(call.owner())) {
       return;
     }
-    var signature = createSignatureOfCall(call);
-    if (!accessGraph.isMethodPermitted(signature)) {
-      analysis.report(new ForbiddenMethod(signature));
+    var key = new MemberKey(call.owner(), call.method(), call.type().getDescriptor());
+    var permitted = verdicts.get(key);
+    if (permitted == null) {
+      permitted = checkMember(key);
+      cacheVerdict(key, permitted);
+    }
+    if (!permitted) {
+      analysis.report(new ForbiddenMethod(createSignatureOfCall(call)));
+    }
+  }
+
+  private void cacheVerdict(MemberKey key, boolean permitted) {
+    if (verdicts.size() >= maxCachedVerdicts) {
+      verdicts.clear();
     }
+    verdicts.put(key, permitted);
   }
 
   private MethodSignature createSignatureOfCall(MethodCall call) {
+    return createSignature(call.owner(), call.method(), call.type());
+  }
+
+  private static MethodSignature createSignature(String owner, String method, Type type) {
     return MethodSignatureBuilder.builder()
-      .className(call.owner())
-      .methodName(call.method())
-      .returnType(call.type().getReturnType().getClassName())
+      .className(owner)
+      .methodName(method)
+      .returnType(type.getReturnType().getClassName())
       .parameterTypes(
-        Arrays.stream(call.type().getArgumentTypes())
+        Arrays.stream(type.getArgumentTypes())
           .map(Type::getClassName)
           .toList()
       ).build();
@@ -88,8 +150,13 @@ public final class ForbiddenMemberFilter implements Rule {
     if (isClassExcluded(access.owner())) {
       return;
     }
-    var key = "%s.%s".formatted(access.owner(), access.field());
-    if (!accessGraph.isPermitted(AccessKey.dotSeparated(key))) {
+    var key = new MemberKey(access.owner(), access.field(), null);
+    var permitted = verdicts.get(key);
+    if (permitted == null) {
+      permitted = checkMember(key);
+      cacheVerdict(key, permitted);
+    }
+    if (!permitted) {
       analysis.report(new ForbiddenField(access.owner(), access.field()));
     }
   }
@@ -18,6 +18,14 @@ public interface Rule {
     String field
   ) { }
 
+  /**
+   * Rules that do not need the access point are visited once per member that
+   * a class references, with an access point without a method name.
+   */
+  default boolean needsAccessPoint() {
+    return true;
+  }
+
   default void visitCall(Analysis analysis, MethodCall call) {}
   default void visitFieldAccess(Analysis analysis, FieldAccess access) {}
 }
@@ -0,0 +1,158 @@
+package jsheets.evaluation.shell;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.shell.CompilationCacheEvent.Outcome;
+import jsheets.event.EventSink;
+
+/**
+ * Keeps the classes that JShell compiled for the sources of an evaluation,
+ * so that running unchanged sources again skips the compiler entirely.
+ * <p>
+ * Entries are keyed by a digest of the evaluated code, the builtin imports
+ * and the version of the runtime. The digest is computed from the sources
+ * themselves, hashes that are sent by clients are not trusted.
+ * The cache is bounded by the approximate number of bytes that its entries
+ * retain and evicts the least recently used entries first.
+ */
+public final class CompilationCache {
+  /**
+   * @param capacity Maximum number of bytes that are retained by the cached
+   *   classes. A capacity of zero disables the cache.
+   */
+  public record Options(long capacity) {
+    private static final Options disabled = new Options(0);
+
+    public static Options disabled() {
+      return disabled;
+    }
+
+    public Options {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity may not be negative");
+      }
+    }
+
+    boolean isEnabled() {
+      return capacity > 0;
+    }
+  }
+
+  record Key(String digest) {}
+
+  static CompilationCache create(
+    Options options,
+    Collection<String> builtinImports,
+    EventSink events
+  ) {
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(builtinImports, "builtinImports");
+    Objects.requireNonNull(events, "events");
+    return new CompilationCache(options, builtinImports, events);
+  }
+
+  private final Options options;
+  private final Collection<String> builtinImports;
+  private final EventSink events;
+  private final Cache<Key, CompiledEvaluation> entries;
+
+  private CompilationCache(
+    Options options,
+    Collection<String> builtinImports,
+    EventSink events
+  ) {
+    this.options = options;
+    this.builtinImports = builtinImports;
+    this.events = events;
+    this.entries = CacheBuilder.newBuilder()
+      .maximumWeight(options.capacity())
+      .<Key, CompiledEvaluation>weigher((key, entry) -> weigh(entry))
+      .removalListener(removal -> {
+        if (removal.getCause() == RemovalCause.SIZE) {
+          postEvent(Outcome.Eviction, removal.getValue());
+        }
+      })
+      .build();
+  }
+
+  private static int weigh(CompiledEvaluation entry) {
+    return (int) Math.min(Integer.MAX_VALUE, entry.size());
+  }
+
+  boolean isEnabled() {
+    return options.isEnabled();
+  }
+
+  Key computeKey(StartEvaluationRequest request) {
+    var hasher = Hashing.sha256().newHasher();
+    putString(hasher, Runtime.version().toString());
+    for (var builtinImport : builtinImports) {
+      putString(hasher, builtinImport);
+    }
+    for (var source : request.getSourcesList()) {
+      source.getCodeComponentsList().stream()
+        .sorted(Comparator.comparing(SnippetSources.CodeComponent::getOrder))
+        .forEachOrdered(component -> {
+          putString(hasher, component.getId());
+          putString(hasher, component.getCode());
+        });
+    }
+    return new Key(hasher.hash().toString());
+  }
+
+  /* Strings are prefixed with their length to keep the digest unambiguous */
+  private static void putString(Hasher hasher, String value) {
+    hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+  }
+
+  Optional<CompiledEvaluation> find(Key key) {
+    if (!isEnabled()) {
+      return Optional.empty();
+    }
+    var entry = entries.getIfPresent(key);
+    if (entry == null) {
+      postEvent(Outcome.Miss, null);
+      return Optional.empty();
+    }
+    postEvent(Outcome.Hit, entry);
+    return Optional.of(entry);
+  }
+
+  void store(Key key, CompiledEvaluation entry) {
+    if (isEnabled()) {
+      entries.put(key, entry);
+    }
+  }
+
+  void invalidate(Key key) {
+    entries.invalidate(key);
+  }
+
+  private void postEvent(Outcome outcome, CompiledEvaluation entry) {
+    events.postIfEnabled(() -> CompilationCacheEventBuilder.builder()
+      .outcome(outcome)
+      .size(entry == null ? 0 : entry.size())
+      .labels(Map.of("capacity", options.capacity()))
+      .build()
+    );
+  }
+
+  @Override
+  public String toString() {
+    return "CompilationCache(options=%s, entries=%d)"
+      .formatted(options, entries.size());
+  }
+}
@@ -0,0 +1,20 @@
+package jsheets.evaluation.shell;
+
+import java.util.Map;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+import jsheets.event.LabeledEvent;
+
+/**
+ * Posted by the {@link CompilationCache} on every lookup and whenever an
+ * entry is evicted because the cache exceeded its capacity.
+ */
+@RecordBuilder
+public record CompilationCacheEvent(
+  Outcome outcome,
+  long size,
+  Map<String, Object> labels
+) implements LabeledEvent {
+
+  public enum Outcome { Hit, Miss, Eviction }
+}
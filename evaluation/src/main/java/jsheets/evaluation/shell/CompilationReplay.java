@@ -0,0 +1,133 @@
+package jsheets.evaluation.shell;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import jdk.jshell.spi.ExecutionControl;
+import jdk.jshell.spi.ExecutionControl.EngineTerminationException;
+import jdk.jshell.spi.ExecutionControl.InternalException;
+import jdk.jshell.spi.ExecutionControl.RunException;
+import jdk.jshell.spi.ExecutionEnv;
+import jsheets.EvaluationResult;
+import jsheets.evaluation.shell.CompiledEvaluation.Invoke;
+import jsheets.evaluation.shell.CompiledEvaluation.Load;
+import jsheets.evaluation.shell.CompiledEvaluation.Redefine;
+import jsheets.evaluation.shell.CompiledEvaluation.Step;
+import jsheets.evaluation.shell.environment.ExecutionEnvironment;
+
+/**
+ * Runs a {@link CompiledEvaluation} in a new execution control of the
+ * environment, without creating a shell.
+ * <p>
+ * The control is never shared with a shell, since the recorded classes use
+ * the wrapper names of the shell that compiled them and could otherwise
+ * clash with classes that the shell loaded before.
+ */
+final class CompilationReplay implements AutoCloseable {
+  static CompilationReplay open(
+    ExecutionEnvironment environment,
+    MessageOutput output
+  ) throws Throwable {
+    var replayEnvironment = new ReplayEnvironment(
+      output.createStandardSink(),
+      output.createErrorSink()
+    );
+    var control = environment.control(UUID.randomUUID().toString())
+      .generate(replayEnvironment, Map.of());
+    return new CompilationReplay(control);
+  }
+
+  private final ExecutionControl control;
+
+  private CompilationReplay(ExecutionControl control) {
+    this.control = control;
+  }
+
+  /**
+   * Runs the steps of a component and returns its results. Values are only
+   * reported if their invocation returned, like they are in a shell.
+   */
+  List<EvaluationResult> run(CompiledEvaluation.Component component)
+    throws ExecutionControl.ExecutionControlException {
+    var results = new ArrayList<EvaluationResult>();
+    for (var step : component.steps()) {
+      if (step instanceof Invoke invoke) {
+        invoke(invoke, component.componentId(), results);
+      } else {
+        install(step);
+      }
+    }
+    return results;
+  }
+
+  private void install(Step step)
+    throws ExecutionControl.ExecutionControlException {
+    if (step instanceof Load load) {
+      control.load(load.bytecodes());
+    } else if (step instanceof Redefine redefine) {
+      control.redefine(redefine.bytecodes());
+    }
+  }
+
+  private void invoke(
+    Invoke invoke,
+    String componentId,
+    List<EvaluationResult> results
+  ) throws EngineTerminationException {
+    String value;
+    try {
+      value = control.invoke(invoke.className(), invoke.methodName());
+    } catch (RunException | InternalException failedInvocation) {
+      // The shell does not report a value for failed invocations either
+      return;
+    }
+    var output = switch (invoke.presentation()) {
+      case Value -> value == null ? null : ExecutionRecorder.expunge(value);
+      case Empty -> "";
+    };
+    if (output != null) {
+      results.add(EvaluationResult.newBuilder()
+        .setComponentId(componentId)
+        .setKind(EvaluationResult.Kind.INFO)
+        .setOutput(output)
+        .build());
+    }
+  }
+
+  /** Stops the invocation that is currently running. */
+  void stop() throws ExecutionControl.ExecutionControlException {
+    control.stop();
+  }
+
+  @Override
+  public void close() {
+    control.close();
+  }
+
+  private record ReplayEnvironment(
+    PrintStream userOut,
+    PrintStream userErr
+  ) implements ExecutionEnv {
+    @Override
+    public InputStream userIn() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public List<String> extraRemoteVMOptions() {
+      return List.of();
+    }
+
+    @Override
+    public void closeDown() {}
+  }
+
+  @Override
+  public String toString() {
+    return "CompilationReplay(control=%s)".formatted(control);
+  }
+}
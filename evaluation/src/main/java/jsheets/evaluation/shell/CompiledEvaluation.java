@@ -0,0 +1,74 @@
+package jsheets.evaluation.shell;
+
+import java.util.Arrays;
+import java.util.List;
+
+import jdk.jshell.spi.ExecutionControl.ClassBytecodes;
+import jsheets.EvaluationError;
+
+/**
+ * The classes that JShell compiled for the sources of an evaluation, in the
+ * order in which they have been loaded into the execution control and
+ * interleaved with the invocations of the snippet wrappers.
+ */
+record CompiledEvaluation(List<Component> components) {
+  record Component(
+    String componentId,
+    List<Step> steps,
+    List<EvaluationError> errors
+  ) {
+    long size() {
+      return componentId.length()
+        + steps.stream().mapToLong(Step::size).sum()
+        + errors.stream().mapToLong(EvaluationError::getSerializedSize).sum();
+    }
+  }
+
+  interface Step {
+    /** Approximate number of bytes that are retained by the step. */
+    long size();
+  }
+
+  record Load(ClassBytecodes[] bytecodes) implements Step {
+    @Override
+    public long size() {
+      return sizeOf(bytecodes);
+    }
+  }
+
+  record Redefine(ClassBytecodes[] bytecodes) implements Step {
+    @Override
+    public long size() {
+      return sizeOf(bytecodes);
+    }
+  }
+
+  /** Describes how the value returned by an invocation is reported. */
+  enum Presentation {
+    /** The value is reported without the names of wrapper classes. */
+    Value,
+    /** The snippet has no value, an empty result is reported. */
+    Empty
+  }
+
+  record Invoke(
+    String className,
+    String methodName,
+    Presentation presentation
+  ) implements Step {
+    @Override
+    public long size() {
+      return className.length() + methodName.length();
+    }
+  }
+
+  private static long sizeOf(ClassBytecodes[] bytecodes) {
+    return Arrays.stream(bytecodes)
+      .mapToLong(bytecode -> bytecode.name().length() + bytecode.bytecodes().length)
+      .sum();
+  }
+
+  long size() {
+    return components.stream().mapToLong(Component::size).sum();
+  }
+}
@@ -0,0 +1,78 @@
+package jsheets.evaluation.shell;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jsheets.EvaluatedSnippet;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+
+/**
+ * Orders the sources of a request by the dependencies of its snippet, so
+ * that every snippet is evaluated after the snippets that it depends on.
+ * <p>
+ * Dependencies are traversed depth first in their given order, snippets
+ * that occur multiple times in the tree are only evaluated once, at their
+ * first position. Sources that are not part of the tree keep their order
+ * and are evaluated after the sources of the tree.
+ * <p>
+ * Requests with multiple sources of the same snippet are rejected, since
+ * it is unclear which of them should be evaluated.
+ * <p>
+ * The ordered sources are evaluated one after another in a single shell,
+ * independent subtrees of the dependencies are not evaluated in parallel.
+ */
+final class DependencyOrder {
+  private DependencyOrder() {}
+
+  /**
+   * @throws IllegalArgumentException If the request contains multiple
+   *   sources of the same snippet.
+   */
+  static StartEvaluationRequest sortSources(StartEvaluationRequest request) {
+    var sourcesByReference = new LinkedHashMap<Snippet.Reference, SnippetSources>();
+    for (var source : request.getSourcesList()) {
+      if (sourcesByReference.putIfAbsent(source.getReference(), source) != null) {
+        throw new IllegalArgumentException(
+          "multiple sources of snippet %s".formatted(
+            source.getReference().getSnippetId()
+          )
+        );
+      }
+    }
+    if (request.getSnippet().getDependenciesCount() == 0) {
+      return request;
+    }
+    var ordered = new ArrayList<SnippetSources>(request.getSourcesCount());
+    visit(request.getSnippet(), sourcesByReference, new HashSet<>(), ordered);
+    ordered.addAll(sourcesByReference.values());
+    return request.toBuilder()
+      .clearSources()
+      .addAllSources(ordered)
+      .build();
+  }
+
+  /* Sources are removed once they are ordered, which also breaks cycles */
+  private static void visit(
+    EvaluatedSnippet snippet,
+    Map<Snippet.Reference, SnippetSources> remaining,
+    Set<Snippet.Reference> visited,
+    List<SnippetSources> ordered
+  ) {
+    if (!visited.add(snippet.getReference())) {
+      return;
+    }
+    for (var dependency : snippet.getDependenciesList()) {
+      visit(dependency, remaining, visited, ordered);
+    }
+    var source = remaining.remove(snippet.getReference());
+    if (source != null) {
+      ordered.add(source);
+    }
+  }
+}
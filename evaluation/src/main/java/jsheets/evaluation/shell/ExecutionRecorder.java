@@ -0,0 +1,255 @@
+package jsheets.evaluation.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import jdk.jshell.spi.ExecutionControl;
+import jdk.jshell.spi.ExecutionControlProvider;
+import jdk.jshell.spi.ExecutionEnv;
+import jsheets.EvaluationError;
+import jsheets.evaluation.shell.CompiledEvaluation.Invoke;
+import jsheets.evaluation.shell.CompiledEvaluation.Load;
+import jsheets.evaluation.shell.CompiledEvaluation.Presentation;
+import jsheets.evaluation.shell.CompiledEvaluation.Redefine;
+import jsheets.evaluation.shell.CompiledEvaluation.Step;
+
+/**
+ * Records the classes that a shell loads into its {@link ExecutionControl}
+ * and the wrappers that it invokes, so that an evaluation can be replayed
+ * without compiling its sources again.
+ * <p>
+ * The recorder is only active between {@link #start()} and
+ * {@link #finish()}, every other call to the control is forwarded as is.
+ * A recording is invalidated if it can not be replayed faithfully, for
+ * example because a class failed to install or the user code threw.
+ */
+final class ExecutionRecorder {
+  private List<Step> steps;
+  /* Values returned by the invocations of the current component */
+  private List<String> values;
+  private List<CompiledEvaluation.Component> components;
+  private boolean invalid;
+
+  ExecutionRecorder() {}
+
+  ExecutionControlProvider wrap(ExecutionControlProvider provider) {
+    return new ExecutionControlProvider() {
+      @Override
+      public String name() {
+        return provider.name();
+      }
+
+      @Override
+      public ExecutionControl generate(
+        ExecutionEnv environment,
+        Map<String, String> parameters
+      ) throws Throwable {
+        return new RecordingControl(provider.generate(environment, parameters));
+      }
+    };
+  }
+
+  synchronized void start() {
+    steps = new ArrayList<>();
+    values = new ArrayList<>();
+    components = new ArrayList<>();
+    invalid = false;
+  }
+
+  synchronized boolean isRecording() {
+    return components != null;
+  }
+
+  synchronized void invalidate() {
+    invalid = true;
+  }
+
+  /**
+   * Completes the recording of a component.
+   *
+   * @param reportedValues Values of the results that were reported for the
+   *   component, in the order of their snippet events.
+   * @param errors Errors that were reported for the component, these are
+   *   replayed as they are.
+   */
+  synchronized void completeComponent(
+    String componentId,
+    List<String> reportedValues,
+    List<EvaluationError> errors
+  ) {
+    if (!isRecording() || invalid) {
+      return;
+    }
+    var presentations = presentValues(reportedValues);
+    if (presentations == null) {
+      invalid = true;
+      return;
+    }
+    var componentSteps = new ArrayList<Step>(steps.size());
+    int invocation = 0;
+    for (var step : steps) {
+      if (step instanceof Invoke invoke) {
+        step = new Invoke(
+          invoke.className(),
+          invoke.methodName(),
+          presentations.get(invocation++)
+        );
+      }
+      componentSteps.add(step);
+    }
+    components.add(new CompiledEvaluation.Component(
+      componentId,
+      List.copyOf(componentSteps),
+      List.copyOf(errors)
+    ));
+    steps = new ArrayList<>();
+    values = new ArrayList<>();
+  }
+
+  /*
+   * Every wrapper invocation that returned produces exactly one reported
+   * value: either the expunged return value or an empty string, if the
+   * snippet has no value. Returns null if the values can not be matched.
+   */
+  private List<Presentation> presentValues(List<String> reportedValues) {
+    if (reportedValues.size() != values.size()) {
+      return null;
+    }
+    var presentations = new ArrayList<Presentation>(values.size());
+    for (int index = 0; index < values.size(); index++) {
+      var reported = reportedValues.get(index);
+      var returned = values.get(index);
+      if (returned != null && reported.equals(expunge(returned))) {
+        presentations.add(Presentation.Value);
+      } else if (reported.isEmpty()) {
+        presentations.add(Presentation.Empty);
+      } else {
+        return null;
+      }
+    }
+    return presentations;
+  }
+
+  synchronized Optional<CompiledEvaluation> finish() {
+    var recorded = components;
+    boolean complete = recorded != null && !invalid && steps.isEmpty();
+    steps = null;
+    values = null;
+    components = null;
+    return complete
+      ? Optional.of(new CompiledEvaluation(List.copyOf(recorded)))
+      : Optional.empty();
+  }
+
+  private synchronized void record(Step step) {
+    if (isRecording()) {
+      steps.add(step);
+    }
+  }
+
+  private synchronized void recordInvocation(Invoke invoke, String value) {
+    if (isRecording()) {
+      steps.add(invoke);
+      values.add(value);
+    }
+  }
+
+  /* Mirrors the way that JShell removes wrapper class names from values */
+  private static final Pattern wrapperPrefix =
+    Pattern.compile("(REPL\\.)?(\\Q$JShell$\\E\\w+)[$.]?");
+
+  static String expunge(String value) {
+    return wrapperPrefix.matcher(value).replaceAll("");
+  }
+
+  private final class RecordingControl implements ExecutionControl {
+    private final ExecutionControl delegate;
+
+    private RecordingControl(ExecutionControl delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void load(ClassBytecodes[] bytecodes)
+      throws ClassInstallException, NotImplementedException, EngineTerminationException {
+      try {
+        delegate.load(bytecodes);
+        record(new Load(bytecodes.clone()));
+      } catch (ExecutionControlException failure) {
+        invalidate();
+        throw failure;
+      }
+    }
+
+    @Override
+    public void redefine(ClassBytecodes[] bytecodes)
+      throws ClassInstallException, NotImplementedException, EngineTerminationException {
+      try {
+        delegate.redefine(bytecodes);
+        record(new Redefine(bytecodes.clone()));
+      } catch (ExecutionControlException failure) {
+        invalidate();
+        throw failure;
+      }
+    }
+
+    @Override
+    public String invoke(String className, String methodName)
+      throws RunException, EngineTerminationException, InternalException {
+      try {
+        var value = delegate.invoke(className, methodName);
+        recordInvocation(
+          new Invoke(className, methodName, Presentation.Value),
+          value
+        );
+        return value;
+      } catch (ExecutionControlException failure) {
+        invalidate();
+        throw failure;
+      }
+    }
+
+    @Override
+    public String varValue(String className, String variableName)
+      throws RunException, EngineTerminationException, InternalException {
+      return delegate.varValue(className, variableName);
+    }
+
+    @Override
+    public void addToClasspath(String path)
+      throws EngineTerminationException, InternalException {
+      invalidate();
+      delegate.addToClasspath(path);
+    }
+
+    @Override
+    public void stop() throws EngineTerminationException, InternalException {
+      invalidate();
+      delegate.stop();
+    }
+
+    @Override
+    public Object extensionCommand(String command, Object argument)
+      throws RunException, EngineTerminationException, InternalException {
+      return delegate.extensionCommand(command, argument);
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    @Override
+    public String toString() {
+      return "RecordingControl(delegate=%s)".formatted(delegate);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ExecutionRecorder(recording=%s)".formatted(isRecording());
+  }
+}
@@ -0,0 +1,136 @@
+package jsheets.evaluation.shell;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.flogger.FluentLogger;
+
+/**
+ * Hashed timer wheel that runs the delayed flushes of all evaluations of an
+ * engine. The wheel advances by one slot per tick and runs the tasks of
+ * that slot, tasks with delays beyond one revolution wait for the number of
+ * revolutions that is left.
+ * <p>
+ * Only a single task is scheduled on the scheduler, and only while there
+ * are pending tasks, instead of one periodic task per evaluation.
+ */
+final class FlushWheel {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private static final Duration defaultTick = Duration.ofMillis(10);
+  private static final int defaultSlotCount = 64;
+
+  static FlushWheel create(ScheduledExecutorService scheduler) {
+    return create(scheduler, defaultTick, defaultSlotCount);
+  }
+
+  static FlushWheel create(
+    ScheduledExecutorService scheduler,
+    Duration tick,
+    int slotCount
+  ) {
+    Objects.requireNonNull(scheduler, "scheduler");
+    Objects.requireNonNull(tick, "tick");
+    if (tick.toMillis() < 1) {
+      throw new IllegalArgumentException("tick must be at least 1ms");
+    }
+    if (slotCount < 1) {
+      throw new IllegalArgumentException("slotCount must be positive");
+    }
+    return new FlushWheel(scheduler, tick.toMillis(), slotCount);
+  }
+
+  private record Entry(Runnable task, int rounds) {}
+
+  private final ScheduledExecutorService scheduler;
+  private final long tickMillis;
+  private final List<ArrayDeque<Entry>> slots;
+  private int cursor;
+  private int pending;
+  private ScheduledFuture<?> ticker;
+
+  private FlushWheel(
+    ScheduledExecutorService scheduler,
+    long tickMillis,
+    int slotCount
+  ) {
+    this.scheduler = scheduler;
+    this.tickMillis = tickMillis;
+    this.slots = new ArrayList<>(slotCount);
+    for (int index = 0; index < slotCount; index++) {
+      slots.add(new ArrayDeque<>());
+    }
+  }
+
+  Duration tick() {
+    return Duration.ofMillis(tickMillis);
+  }
+
+  /**
+   * Runs the task once the delay has elapsed, rounded up to the next tick.
+   * Tasks run on the scheduler and should not block.
+   */
+  synchronized void schedule(Runnable task, Duration delay) {
+    Objects.requireNonNull(task, "task");
+    long ticks = Math.max(1, (delay.toMillis() + tickMillis - 1) / tickMillis);
+    int slot = (int) ((cursor + ticks) % slots.size());
+    int rounds = (int) Math.min(Integer.MAX_VALUE, (ticks - 1) / slots.size());
+    slots.get(slot).add(new Entry(task, rounds));
+    pending++;
+    if (ticker == null) {
+      ticker = scheduler.scheduleAtFixedRate(
+        this::advance,
+        tickMillis,
+        tickMillis,
+        TimeUnit.MILLISECONDS
+      );
+    }
+  }
+
+  private void advance() {
+    for (var task : collectDueTasks()) {
+      try {
+        task.run();
+      } catch (RuntimeException failure) {
+        log.atWarning().withCause(failure).log("failed to run task %s", task);
+      }
+    }
+  }
+
+  private synchronized List<Runnable> collectDueTasks() {
+    cursor = (cursor + 1) % slots.size();
+    var due = new ArrayList<Runnable>();
+    var slot = slots.get(cursor);
+    var updated = new ArrayDeque<Entry>();
+    for (var entry : slot) {
+      if (entry.rounds() == 0) {
+        due.add(entry.task());
+      } else {
+        updated.add(new Entry(entry.task(), entry.rounds() - 1));
+      }
+    }
+    slot.clear();
+    slot.addAll(updated);
+    pending -= due.size();
+    if (pending == 0 && ticker != null) {
+      ticker.cancel(/* mayInterrupt */ false);
+      ticker = null;
+    }
+    return due;
+  }
+
+  synchronized int pendingTasks() {
+    return pending;
+  }
+
+  @Override
+  public String toString() {
+    return "FlushWheel(tick=%dms, slots=%d)".formatted(tickMillis, slots.size());
+  }
+}
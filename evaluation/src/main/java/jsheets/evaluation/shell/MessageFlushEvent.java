@@ -0,0 +1,29 @@
+package jsheets.evaluation.shell;
+
+import java.time.Duration;
+import java.util.Map;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+import jsheets.event.LabeledEvent;
+
+/**
+ * Posted whenever buffered output of an evaluation is sent to its listener.
+ * The latency is the time between the first buffered write and the flush.
+ */
+@RecordBuilder
+public record MessageFlushEvent(
+  Trigger trigger,
+  Duration latency,
+  long size,
+  Map<String, Object> labels
+) implements LabeledEvent {
+
+  public enum Trigger {
+    /** The buffered output exceeded the flush threshold. */
+    Size,
+    /** The flush delay of the buffered output elapsed. */
+    Delay,
+    /** The component that wrote the output was completed. */
+    Component
+  }
+}
@@ -1,64 +1,160 @@
 package jsheets.evaluation.shell;
 
+import java.io.OutputStream;
+
 import jsheets.EvaluateResponse;
 import jsheets.EvaluationResult;
 import jsheets.EvaluationResult.Kind;
 import jsheets.evaluation.Evaluation;
+import jsheets.output.OutputBuffer;
 
+/**
+ * Buffers the output of an evaluation until it is flushed to the listener.
+ * Output is kept as UTF-8 bytes, which are sent without being decoded.
+ * <p>
+ * Writes are admitted by the {@link OutputMeter}, truncated output is
+ * replaced by a marker with the number of truncated bytes. Admitted writes
+ * are reported to the {@link WriteObserver}, which decides when to flush.
+ */
 public final class MessageLog {
   private final Evaluation.Listener output;
+  private final OutputMeter meter;
+  private final WriteObserver observer;
+
+  private final OutputBuffer outputBuffer = new OutputBuffer();
+  private final OutputBuffer errorBuffer = new OutputBuffer();
 
-  private final StringBuffer outputBuffer = new StringBuffer();
-  private final StringBuffer errorBuffer = new StringBuffer();
+  private final OutputStream outputStream;
+  private final OutputStream errorStream;
 
   MessageLog(Evaluation.Listener output) {
+    this(output, OutputMeter.unlimited());
+  }
+
+  MessageLog(Evaluation.Listener output, OutputMeter meter) {
+    this(output, meter, ignoreWrites);
+  }
+
+  MessageLog(
+    Evaluation.Listener output,
+    OutputMeter meter,
+    WriteObserver observer
+  ) {
     this.output = output;
+    this.meter = meter;
+    this.observer = observer;
+    outputStream = createMeteredStream(outputBuffer);
+    errorStream = createMeteredStream(errorBuffer);
+  }
+
+  /** Observes the writes that were admitted to the log. */
+  interface WriteObserver {
+    /**
+     * Called after a write was buffered.
+     *
+     * @param bufferedBytes Number of bytes in the buffer that was written.
+     * @param breaksLine Whether the written output contains a line break.
+     */
+    void written(int bufferedBytes, boolean breaksLine);
   }
 
+  private static final WriteObserver ignoreWrites =
+    (bufferedBytes, breaksLine) -> {};
+
+  private OutputStream createMeteredStream(OutputBuffer buffer) {
+    if (meter.isUnlimited() && observer == ignoreWrites) {
+      return buffer;
+    }
+    return new OutputStream() {
+      @Override
+      public void write(int value) {
+        if (meter.admit(1)) {
+          buffer.write(value);
+          observer.written(buffer.size(), value == '\n');
+        }
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length) {
+        if (meter.admit(length)) {
+          buffer.write(bytes, offset, length);
+          observer.written(buffer.size(), containsLineBreak(bytes, offset, length));
+        }
+      }
+    };
+  }
+
+  /* Line breaks usually end a write, so the bytes are searched backwards */
+  private static boolean containsLineBreak(byte[] bytes, int offset, int length) {
+    for (int index = offset + length - 1; index >= offset; index--) {
+      if (bytes[index] == '\n') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /* The length of a string approximates the length of its encoding */
   public void writeError(String message) {
-    errorBuffer.append(message);
+    write(errorBuffer, message);
   }
 
   public void writeOutput(String message) {
-    outputBuffer.append(message);
+    write(outputBuffer, message);
+  }
+
+  private void write(OutputBuffer buffer, String message) {
+    if (meter.admit(message.length())) {
+      buffer.writeUtf8(message);
+      observer.written(buffer.size(), message.indexOf('\n') >= 0);
+    }
+  }
+
+  /** Stream that receives the UTF-8 encoded standard output. */
+  OutputStream outputStream() {
+    return outputStream;
+  }
+
+  /** Stream that receives the UTF-8 encoded error output. */
+  OutputStream errorStream() {
+    return errorStream;
   }
 
-  public void flush(String componentId) {
+  /** Sends the buffered output and returns the number of sent bytes. */
+  public long flush(String componentId) {
+    long truncated = meter.takeTruncatedBytes();
+    if (truncated > 0) {
+      outputBuffer.writeUtf8("[truncated %d bytes]\n".formatted(truncated));
+    }
     var response = EvaluateResponse.newBuilder();
-    flushBuffers(componentId, Kind.INFO, outputBuffer, response);
-    flushBuffers(componentId, Kind.ERROR, errorBuffer, response);
+    long size = flushBuffer(componentId, Kind.INFO, outputBuffer, response)
+      + flushBuffer(componentId, Kind.ERROR, errorBuffer, response);
     if (response.getResultCount() != 0) {
       output.send(response.build());
     }
+    return size;
   }
 
-  private void flushBuffers(
+  private long flushBuffer(
     String componentId,
     Kind kind,
-    StringBuffer buffer,
+    OutputBuffer buffer,
     EvaluateResponse.Builder response
   ) {
-    synchronized (buffer) {
-      if (buffer.isEmpty()) {
-        return;
-      }
-      addResult(response, kind, componentId, buffer.toString());
-      buffer.setLength(0);
+    var drained = buffer.drain();
+    if (drained.isEmpty()) {
+      return 0;
     }
+    var result = EvaluationResult.newBuilder()
+      .setKind(kind)
+      .setComponentId(componentId);
+    // Bytes that were written directly to the streams may not be UTF-8
+    if (drained.isValidUtf8()) {
+      result.setOutputBytes(drained);
+    } else {
+      result.setOutput(drained.toStringUtf8());
+    }
+    response.addResult(result.build());
+    return drained.size();
   }
-
-  private void addResult(
-    EvaluateResponse.Builder response,
-    Kind kind,
-    String componentId,
-    String output
-  ) {
-    response.addResult(
-      EvaluationResult.newBuilder()
-        .setKind(kind)
-        .setComponentId(componentId)
-        .setOutput(output)
-        .build()
-    );
-  }
-}
\ No newline at end of file
+}
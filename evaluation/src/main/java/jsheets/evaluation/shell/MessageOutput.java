@@ -1,78 +1,230 @@
 package jsheets.evaluation.shell;
 
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.Duration;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.flogger.FluentLogger;
 
 import jsheets.evaluation.Evaluation;
-import jsheets.output.CapturingOutput;
+import jsheets.event.EventSink;
 
+/**
+ * Output of a single evaluation, which is flushed to the listener as soon as
+ * it is worth a message.
+ * <p>
+ * Output is flushed immediately once the buffer exceeds the flush threshold.
+ * Otherwise, a flush is scheduled on the shared {@link FlushWheel}. Lines
+ * are flushed after the flush delay and incomplete lines after the maximum
+ * delay. The flush delay starts at one tick of the wheel and doubles
+ * whenever output follows the previous flush within the delay, so that
+ * continuous output is coalesced into fewer, larger messages. Output that
+ * follows a pause resets the delay.
+ */
 final class MessageOutput implements AutoCloseable {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
 
+  /* Output is flushed once a buffer exceeds two chunks */
+  private static final int flushThreshold = 16 * 1024;
+
   private final MessageLog messages;
-  private final Duration flushInterval;
-  private final ScheduledExecutorService scheduler;
+  private final OutputMeter meter;
+  private final FlushWheel wheel;
+  private final Duration maxFlushDelay;
+  private final EventSink events;
+  private final Clock clock;
   private final AtomicReference<String> currentComponentId = new AtomicReference<>(null);
-  private final AtomicReference<ScheduledFuture<?>> flushTask = new AtomicReference<>(null);
+  /* Is held while sending, which does not pin virtual threads unlike monitors */
+  private final Lock flushLock = new ReentrantLock();
+
+  /* Guarded by this */
+  private long firstWrite = -1;
+  private long scheduledDeadline = -1;
+  private long lastFlush;
+  private long flushDelay;
+  private boolean closed;
 
   MessageOutput(
-    Duration flushInterval,
-    ScheduledExecutorService scheduler,
+    FlushWheel wheel,
+    Duration maxFlushDelay,
     Evaluation.Listener listener
   ) {
-    this.flushInterval = flushInterval;
-    this.scheduler = scheduler;
-    messages = new MessageLog(listener);
-  }
-
-  public void open() {
-    flushTask.set(
-      scheduler.scheduleWithFixedDelay(
-        this::flush,
-        flushInterval.toMillis(),
-        flushInterval.toMillis(),
-        TimeUnit.MILLISECONDS
-      )
+    this(
+      wheel,
+      maxFlushDelay,
+      listener,
+      OutputMeter.unlimited(),
+      EventSink.ignore(),
+      Clock.systemUTC()
     );
   }
 
+  MessageOutput(
+    FlushWheel wheel,
+    Duration maxFlushDelay,
+    Evaluation.Listener listener,
+    OutputMeter meter,
+    EventSink events,
+    Clock clock
+  ) {
+    this.wheel = wheel;
+    this.maxFlushDelay = maxFlushDelay;
+    this.meter = meter;
+    this.events = events;
+    this.clock = clock;
+    this.flushDelay = minFlushDelay();
+    messages = new MessageLog(listener, meter, this::recordWrite);
+  }
+
+  OutputMeter meter() {
+    return meter;
+  }
+
   @Override
   public void close() {
-    var task = flushTask.getAndSet(null);
-    if (task != null) {
-      task.cancel(/* mayInterrupt */ false);
+    synchronized (this) {
+      closed = true;
     }
+    meter.close();
   }
 
   public void updateCurrentComponentId(String id) {
     currentComponentId.set(id);
   }
 
+  private long minFlushDelay() {
+    return Math.min(wheel.tick().toMillis(), maxFlushDelay.toMillis());
+  }
+
+  private void recordWrite(int bufferedBytes, boolean breaksLine) {
+    long now = clock.millis();
+    long delay;
+    long deadline;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (firstWrite < 0) {
+        firstWrite = now;
+        adaptFlushDelay(now);
+      }
+      if (bufferedBytes >= flushThreshold) {
+        delay = 0;
+        deadline = -1;
+      } else {
+        delay = breaksLine ? flushDelay : maxFlushDelay.toMillis();
+        deadline = now + delay;
+        if (scheduledDeadline >= 0 && scheduledDeadline <= deadline) {
+          return;
+        }
+        scheduledDeadline = deadline;
+      }
+    }
+    if (deadline < 0) {
+      flush(MessageFlushEvent.Trigger.Size);
+    } else {
+      wheel.schedule(() -> flushIfDue(deadline), Duration.ofMillis(delay));
+    }
+  }
+
+  /* Output that follows the last flush within the delay is continuous */
+  private void adaptFlushDelay(long now) {
+    flushDelay = now - lastFlush < flushDelay
+      ? Math.min(flushDelay * 2, maxFlushDelay.toMillis())
+      : minFlushDelay();
+  }
+
+  /* Flushes scheduled before an earlier flush was scheduled are skipped */
+  private void flushIfDue(long deadline) {
+    synchronized (this) {
+      if (closed || scheduledDeadline != deadline) {
+        return;
+      }
+    }
+    flush(MessageFlushEvent.Trigger.Delay);
+  }
+
+  /** Flushes the output of the component that completed. */
   public void flush() {
+    flush(MessageFlushEvent.Trigger.Component);
+  }
+
+  private void flush(MessageFlushEvent.Trigger trigger) {
     var id = currentComponentId.get();
     if (id == null) {
       return;
     }
+    flushLock.lock();
     try {
-      messages.flush(id);
+      long now = clock.millis();
+      long first = resetPendingFlush(now);
+      long size = messages.flush(id);
+      if (size != 0) {
+        reportFlush(trigger, id, size, first < 0 ? 0 : now - first);
+      }
     } catch (Exception failure) {
       log.atWarning()
         .withCause(failure)
         .log("failed to flush messages of component %s", id);
+    } finally {
+      flushLock.unlock();
     }
   }
 
+  /* The state is reset before draining, writes in between schedule again */
+  private synchronized long resetPendingFlush(long now) {
+    long first = firstWrite;
+    firstWrite = -1;
+    scheduledDeadline = -1;
+    lastFlush = now;
+    return first;
+  }
+
+  private void reportFlush(
+    MessageFlushEvent.Trigger trigger,
+    String componentId,
+    long size,
+    long latency
+  ) {
+    events.postIfEnabled(() -> MessageFlushEventBuilder.builder()
+      .trigger(trigger)
+      .latency(Duration.ofMillis(latency))
+      .size(size)
+      .labels(Map.of("componentId", componentId))
+      .build()
+    );
+  }
+
+  public void writeStandard(String text) {
+    messages.writeOutput(text);
+  }
+
+  public void writeError(String text) {
+    messages.writeError(text);
+  }
+
+  /** Stream that receives UTF-8 encoded standard output. */
+  public OutputStream standardStream() {
+    return messages.outputStream();
+  }
+
+  /** Stream that receives UTF-8 encoded error output. */
+  public OutputStream errorStream() {
+    return messages.errorStream();
+  }
+
+  /* Sinks encode printed text directly into the buffers of the log */
   public PrintStream createStandardSink() {
-    return CapturingOutput.to(messages::writeOutput);
+    return new PrintStream(standardStream(), false, StandardCharsets.UTF_8);
   }
 
   public PrintStream createErrorSink() {
-    return CapturingOutput.to(messages::writeError);
+    return new PrintStream(errorStream(), false, StandardCharsets.UTF_8);
   }
-}
\ No newline at end of file
+}
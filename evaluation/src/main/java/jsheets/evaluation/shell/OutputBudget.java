@@ -0,0 +1,48 @@
+package jsheets.evaluation.shell;
+
+import java.util.Objects;
+
+/**
+ * Limits the output that an evaluation may write per second. Evaluations
+ * may write a burst of up to one second worth of output at once.
+ *
+ * @param bytesPerSecond Number of bytes that may be written per second.
+ * @param writesPerSecond Number of writes, for example calls to
+ *   {@code System.out.print}, that may be made per second.
+ * @param policy Behavior once the budget is exceeded.
+ */
+public record OutputBudget(
+  long bytesPerSecond,
+  long writesPerSecond,
+  Policy policy
+) {
+  public enum Policy {
+    /** The writing thread waits until the budget allows the write. */
+    Block,
+    /** Writes are dropped and replaced by a marker in the output. */
+    Truncate,
+    /** The evaluation is stopped. */
+    Stop
+  }
+
+  public OutputBudget {
+    Objects.requireNonNull(policy, "policy");
+    if (bytesPerSecond < 1) {
+      throw new IllegalArgumentException("bytesPerSecond must be positive");
+    }
+    if (writesPerSecond < 1) {
+      throw new IllegalArgumentException("writesPerSecond must be positive");
+    }
+  }
+
+  private static final OutputBudget unlimited =
+    new OutputBudget(Long.MAX_VALUE, Long.MAX_VALUE, Policy.Block);
+
+  public static OutputBudget unlimited() {
+    return unlimited;
+  }
+
+  boolean isUnlimited() {
+    return equals(unlimited);
+  }
+}
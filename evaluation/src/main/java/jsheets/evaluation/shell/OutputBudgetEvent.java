@@ -0,0 +1,16 @@
+package jsheets.evaluation.shell;
+
+import java.util.Map;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+import jsheets.event.LabeledEvent;
+
+/**
+ * Posted once per evaluation, when its output exceeds the
+ * {@link OutputBudget} for the first time.
+ */
+@RecordBuilder
+public record OutputBudgetEvent(
+  OutputBudget.Policy policy,
+  Map<String, Object> labels
+) implements LabeledEvent {}
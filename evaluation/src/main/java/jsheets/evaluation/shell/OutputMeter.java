@@ -0,0 +1,188 @@
+package jsheets.evaluation.shell;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Meters the output of an evaluation against its {@link OutputBudget},
+ * both output streams of the evaluation share one meter.
+ * <p>
+ * The budget is refilled continuously and a write is admitted as long as
+ * there is some budget left, even if the write is larger than the rest.
+ * Large writes are thus never blocked forever, the debt that they leave
+ * delays the writes that follow them.
+ * <p>
+ * Blocked writers wait on a {@link Lock} instead of a monitor, which does
+ * not pin virtual threads to their carrier.
+ */
+final class OutputMeter {
+  private static final OutputMeter unlimited =
+    new OutputMeter(OutputBudget.unlimited(), Clock.systemUTC());
+
+  static OutputMeter unlimited() {
+    return unlimited;
+  }
+
+  static OutputMeter create(OutputBudget budget, Clock clock) {
+    return budget.isUnlimited() ? unlimited : new OutputMeter(budget, clock);
+  }
+
+  private final OutputBudget budget;
+  private final Clock clock;
+  private final Lock lock = new ReentrantLock();
+  private final Condition refilled = lock.newCondition();
+  private double availableBytes;
+  private double availableWrites;
+  private long lastRefill;
+  private long truncatedBytes;
+  private boolean exceeded;
+  private boolean closed;
+  private volatile Runnable exceededAction = () -> {};
+
+  private OutputMeter(OutputBudget budget, Clock clock) {
+    this.budget = budget;
+    this.clock = clock;
+    availableBytes = budget.bytesPerSecond();
+    availableWrites = budget.writesPerSecond();
+    lastRefill = clock.millis();
+  }
+
+  OutputBudget budget() {
+    return budget;
+  }
+
+  boolean isUnlimited() {
+    return this == unlimited;
+  }
+
+  /** Runs the action once, when the budget is exceeded for the first time. */
+  void whenExceeded(Runnable action) {
+    exceededAction = action;
+  }
+
+  /**
+   * Decides if a write of {@code length} bytes may be written. Writes that
+   * exceed the budget either block until they fit or are rejected,
+   * depending on the policy.
+   */
+  boolean admit(int length) {
+    return isUnlimited() || meter(length);
+  }
+
+  private boolean meter(int length) {
+    lock.lock();
+    try {
+      return meterLocked(length);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean meterLocked(int length) {
+    while (!closed) {
+      refill();
+      if (availableBytes > 0 && availableWrites > 0) {
+        availableBytes -= length;
+        availableWrites--;
+        return true;
+      }
+      markExceeded();
+      switch (budget.policy()) {
+        case Block -> {
+          if (!awaitRefill()) {
+            return false;
+          }
+        }
+        case Truncate -> {
+          truncatedBytes += length;
+          return false;
+        }
+        case Stop -> {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  private void refill() {
+    long now = clock.millis();
+    long elapsed = Math.max(0, now - lastRefill);
+    lastRefill = now;
+    availableBytes = Math.min(
+      budget.bytesPerSecond(),
+      availableBytes + elapsed * (budget.bytesPerSecond() / 1000.0)
+    );
+    availableWrites = Math.min(
+      budget.writesPerSecond(),
+      availableWrites + elapsed * (budget.writesPerSecond() / 1000.0)
+    );
+  }
+
+  /* Returns false if the writing thread has been interrupted */
+  private boolean awaitRefill() {
+    double missingBytes = Math.max(0, 1 - availableBytes);
+    double missingWrites = Math.max(0, 1 - availableWrites);
+    long delay = (long) Math.ceil(Math.max(
+      missingBytes * 1000 / budget.bytesPerSecond(),
+      missingWrites * 1000 / budget.writesPerSecond()
+    ));
+    try {
+      refilled.await(Math.max(1, delay), TimeUnit.MILLISECONDS);
+      return true;
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private void markExceeded() {
+    if (!exceeded) {
+      exceeded = true;
+      exceededAction.run();
+    }
+  }
+
+  boolean isExceeded() {
+    lock.lock();
+    try {
+      return exceeded;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of bytes that were truncated since the last call. */
+  long takeTruncatedBytes() {
+    lock.lock();
+    try {
+      long truncated = truncatedBytes;
+      truncatedBytes = 0;
+      return truncated;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Rejects all further writes and releases blocked writers. */
+  void close() {
+    if (isUnlimited()) {
+      return;
+    }
+    lock.lock();
+    try {
+      closed = true;
+      refilled.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "OutputMeter(budget=%s)".formatted(budget);
+  }
+}
@@ -0,0 +1,54 @@
+package jsheets.evaluation.shell;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Forwards the output of a shell that outlives an evaluation to the
+ * evaluation that currently uses it.
+ */
+final class RedirectedOutput {
+  private static final OutputStream discard = OutputStream.nullOutputStream();
+
+  private final AtomicReference<OutputStream> standard =
+    new AtomicReference<>(discard);
+  private final AtomicReference<OutputStream> error =
+    new AtomicReference<>(discard);
+
+  void bind(MessageOutput output) {
+    standard.set(output.standardStream());
+    error.set(output.errorStream());
+  }
+
+  void unbind() {
+    standard.set(discard);
+    error.set(discard);
+  }
+
+  PrintStream createStandardSink() {
+    return createSink(standard);
+  }
+
+  PrintStream createErrorSink() {
+    return createSink(error);
+  }
+
+  private static PrintStream createSink(AtomicReference<OutputStream> target) {
+    var redirect = new OutputStream() {
+      @Override
+      public void write(int value) throws IOException {
+        target.get().write(value);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length)
+        throws IOException {
+        target.get().write(bytes, offset, length);
+      }
+    };
+    return new PrintStream(redirect, false, StandardCharsets.UTF_8);
+  }
+}
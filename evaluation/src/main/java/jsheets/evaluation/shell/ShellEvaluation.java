@@ -4,9 +4,12 @@ import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
 import jdk.jshell.JShell;
+import jdk.jshell.Snippet;
 import jdk.jshell.SnippetEvent;
 
 import com.google.common.base.MoreObjects;
@@ -31,15 +34,24 @@ final class ShellEvaluation implements Evaluation {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
 
   private volatile JShell shell;
+  private volatile ShellProvider.Lease lease;
+  private volatile ShellSession session;
+  private volatile ShellSession.Run run;
+  private volatile jsheets.Snippet.Reference sessionReference;
+  private volatile boolean stopped;
   private volatile ExecutionMethod executionMethod;
+  private volatile CompilationReplay replay;
+  private volatile boolean reportedExceededBudget;
   private volatile Instant startTime;
-  private final Evaluation.Listener listener;
+  private final Transcript listener;
   private final ExecutionEnvironment environment;
   private final ExecutionMethod.Factory executionMethodFactory;
   private final MessageOutput messageOutput;
   private final EventSink events;
   private final Clock clock;
-  private final Collection<String> builtinImports;
+  private final ShellProvider shells;
+  private final CompilationCache compilations;
+  private final ShellSessions sessions;
   /* Is updated whenever errors occur, otherwise stays successful */
   private volatile EvaluationStopEvent.Status stopStatus =
     EvaluationStopEvent.Status.CompletedSuccessfully;
@@ -48,10 +60,12 @@ final class ShellEvaluation implements Evaluation {
     Clock clock,
     ExecutionEnvironment environment,
     ExecutionMethod.Factory executionMethodFactory,
-    Evaluation.Listener listener,
+    Transcript listener,
     EventSink events,
     MessageOutput messageOutput,
-    Collection<String> builtinImports
+    ShellProvider shells,
+    CompilationCache compilations,
+    ShellSessions sessions
   ) {
     this.clock = clock;
     this.listener = listener;
@@ -59,23 +73,82 @@ final class ShellEvaluation implements Evaluation {
     this.executionMethodFactory = executionMethodFactory;
     this.environment = environment;
     this.events = events;
-    this.builtinImports = builtinImports;
+    this.shells = shells;
+    this.compilations = compilations;
+    this.sessions = sessions;
   }
 
   public void start(StartEvaluationRequest request) {
-    shell = createShell();
-    setupInitialShellState(shell);
-    executionMethod = executionMethodFactory.create(shell);
     startTime = clock.instant();
-    messageOutput.open();
+    messageOutput.meter().whenExceeded(this::exceedOutputBudget);
     var snippetId = request.getSnippet().getReference().getSnippetId();
     postStartEvent(snippetId);
+    boolean closed = false;
     try {
-      listener.send(evaluateSources(request));
+      listener.send(evaluateSorted(request));
+      // Is released before closing, so that the next evaluation of the
+      // snippet, which may be started right after, finds the session
+      releaseSession();
+      closed = true;
       listener.close();
     } finally {
       cleanUp();
+      releaseShell();
+      releaseSession();
       postStopEvent(snippetId);
+      // Listeners are closed even if the evaluation failed unexpectedly,
+      // the caller would otherwise wait for it forever
+      if (!closed) {
+        listener.close();
+      }
+    }
+  }
+
+  private EvaluateResponse evaluateSorted(StartEvaluationRequest request) {
+    StartEvaluationRequest sorted;
+    try {
+      sorted = DependencyOrder.sortSources(request);
+    } catch (IllegalArgumentException invalidSources) {
+      updateStopStatus(EvaluationStopEvent.Status.Failed);
+      return EvaluateResponse.newBuilder()
+        .addError(EvaluationError.newBuilder()
+          .setKind(invalidSourcesErrorKind)
+          .setMessage(invalidSources.getMessage()))
+        .build();
+    }
+    return evaluate(sorted);
+  }
+
+  private static final String invalidSourcesErrorKind = "sources";
+
+  private EvaluateResponse evaluate(StartEvaluationRequest request) {
+    var reference = request.getSnippet().getReference();
+    if (sessions.isEnabled()
+      && !reference.equals(jsheets.Snippet.Reference.getDefaultInstance())) {
+      return evaluateIncrementally(request, reference);
+    }
+    if (!compilations.isEnabled()) {
+      return evaluateSources(request, null);
+    }
+    var key = compilations.computeKey(request);
+    var compiled = compilations.find(key);
+    if (compiled.isPresent()) {
+      var replay = openReplay();
+      if (replay.isPresent()) {
+        return replaySources(replay.get(), compiled.get(), key);
+      }
+    }
+    return evaluateSources(request, key);
+  }
+
+  private Optional<CompilationReplay> openReplay() {
+    try {
+      return Optional.of(CompilationReplay.open(environment, messageOutput));
+    } catch (Throwable failure) {
+      log.atWarning()
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .withCause(failure).log("failed to open replay, compiling instead");
+      return Optional.empty();
     }
   }
 
@@ -108,56 +181,268 @@ final class ShellEvaluation implements Evaluation {
     );
   }
 
-  private EvaluateResponse evaluateSources(StartEvaluationRequest request) {
+  /**
+   * Compiles and runs the sources in a shell. If a {@code key} is given,
+   * the compiled classes are recorded and stored in the cache once the
+   * evaluation completed without failures.
+   */
+  private EvaluateResponse evaluateSources(
+    StartEvaluationRequest request,
+    @Nullable CompilationCache.Key key
+  ) {
+    lease = shells.acquire(
+      request.getSnippet().getReference().getSheetId(),
+      messageOutput
+    );
+    shell = lease.shell();
+    executionMethod = executionMethodFactory.create(shell);
+    var recorder = lease.recorder();
+    if (key != null) {
+      recorder.start();
+    }
     var response = EvaluateResponse.newBuilder();
     for (var source : request.getSourcesList()) {
-      source.getCodeComponentsList().stream()
+      var components = source.getCodeComponentsList().stream()
         .sorted(Comparator.comparing(SnippetSources.CodeComponent::getOrder))
-        .forEachOrdered(component -> evaluateComponent(component, response));
+        .toList();
+      for (var component : components) {
+        if (stopped) {
+          break;
+        }
+        evaluateComponent(component, response, recorder);
+      }
+    }
+    if (key != null) {
+      var recorded = recorder.finish();
+      if (!stopped && !stopStatus.equals(EvaluationStopEvent.Status.Failed)) {
+        recorded.ifPresent(compiled -> compilations.store(key, compiled));
+      }
     }
     return response.build();
   }
 
-  private void evaluateComponent(
-    SnippetSources.CodeComponent component,
+  /**
+   * Evaluates the sources in the snippet's session. Only components that
+   * changed since the session's previous evaluation and the components that
+   * depend on them are evaluated again, the previous results of every other
+   * component are reported instead.
+   */
+  private EvaluateResponse evaluateIncrementally(
+    StartEvaluationRequest request,
+    jsheets.Snippet.Reference reference
+  ) {
+    sessionReference = reference;
+    session = sessions.checkout(
+      reference,
+      request.getSnippet().getSessionToken(),
+      messageOutput
+    );
+    shell = session.shell();
+    executionMethod = executionMethodFactory.create(shell);
+    var recorder = session.recorder();
+    var components = request.getSourcesList().stream()
+      .flatMap(source -> source.getCodeComponentsList().stream()
+        .sorted(Comparator.comparing(SnippetSources.CodeComponent::getOrder)))
+      .toList();
+    run = session.startRun(components);
+    var response = EvaluateResponse.newBuilder()
+      .setSessionToken(session.token());
+    for (var component : components) {
+      if (stopped) {
+        break;
+      }
+      if (run.requiresEvaluation(component)) {
+        var declared = evaluateComponent(component, response, recorder);
+        run.completeEvaluation(component, declared);
+      } else {
+        reuseComponent(run.reuse(component), response);
+      }
+    }
+    return response.build();
+  }
+
+  private void reuseComponent(
+    ShellSession.Component component,
     EvaluateResponse.Builder response
+  ) {
+    response.addAllResult(component.results());
+    if (!component.errors().isEmpty()) {
+      updateStopStatus(EvaluationStopEvent.Status.CompletedWithErrors);
+      response.addAllError(component.errors());
+    }
+  }
+
+  /** Returns the snippets that were declared by the component. */
+  private List<Snippet> evaluateComponent(
+    SnippetSources.CodeComponent component,
+    EvaluateResponse.Builder response,
+    ExecutionRecorder recorder
   ) {
     messageOutput.updateCurrentComponentId(component.getId());
+    int firstResult = response.getResultCount();
+    int firstError = response.getErrorCount();
+    var declared = new ArrayList<Snippet>();
     try {
       for (var snippet : executionMethod.execute(component.getCode())) {
         reportSnippetEvent(component.getId(), snippet, response);
+        if (snippet.causeSnippet() == null
+          && !snippet.status().equals(Snippet.Status.REJECTED)) {
+          declared.add(snippet.snippet());
+        }
       }
       messageOutput.flush();
     } catch (Throwable failedEvaluation) {
-      reportError(component, response, failedEvaluation);
+      recorder.invalidate();
+      reportError(component.getId(), response, failedEvaluation);
+      reportExceededBudget(component.getId(), response);
+      return List.of();
     }
+    reportExceededBudget(component.getId(), response);
+    if (recorder.isRecording()) {
+      recorder.completeComponent(
+        component.getId(),
+        response.getResultList()
+          .subList(firstResult, response.getResultCount())
+          .stream()
+          .map(EvaluationResult::getOutput)
+          .toList(),
+        response.getErrorList()
+          .subList(firstError, response.getErrorCount())
+      );
+    }
+    return declared;
+  }
+
+  /* Runs previously compiled classes, without creating a shell */
+  private EvaluateResponse replaySources(
+    CompilationReplay replay,
+    CompiledEvaluation compiled,
+    CompilationCache.Key key
+  ) {
+    var response = EvaluateResponse.newBuilder();
+    this.replay = replay;
+    try (replay) {
+      for (var component : compiled.components()) {
+        if (stopped) {
+          break;
+        }
+        replayComponent(replay, component, response, key);
+      }
+    }
+    return response.build();
+  }
+
+  private void replayComponent(
+    CompilationReplay replay,
+    CompiledEvaluation.Component component,
+    EvaluateResponse.Builder response,
+    CompilationCache.Key key
+  ) {
+    messageOutput.updateCurrentComponentId(component.componentId());
+    try {
+      response.addAllResult(replay.run(component));
+      if (!component.errors().isEmpty()) {
+        updateStopStatus(EvaluationStopEvent.Status.CompletedWithErrors);
+        response.addAllError(component.errors());
+      }
+      messageOutput.flush();
+    } catch (Throwable failedReplay) {
+      compilations.invalidate(key);
+      reportError(component.componentId(), response, failedReplay);
+    }
+    reportExceededBudget(component.componentId(), response);
+  }
+
+  /*
+   * Is called by the writing thread, while it holds the lock of the meter.
+   * The execution is thus stopped asynchronously.
+   */
+  private void exceedOutputBudget() {
+    var policy = messageOutput.meter().budget().policy();
+    events.postIfEnabled(() -> OutputBudgetEventBuilder.builder()
+      .policy(policy)
+      .labels(createEventLabels())
+      .build()
+    );
+    if (policy == OutputBudget.Policy.Stop) {
+      stop();
+      CompletableFuture.runAsync(this::stopExecution);
+    }
+  }
+
+  private void stopExecution() {
+    try {
+      var currentShell = shell;
+      if (currentShell != null) {
+        currentShell.stop();
+      }
+      var currentReplay = replay;
+      if (currentReplay != null) {
+        currentReplay.stop();
+      }
+    } catch (Exception failure) {
+      log.atWarning()
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .withCause(failure).log("failed to stop execution");
+    }
+  }
+
+  private static final String outputBudgetErrorKind = "output";
+
+  /* Lost output is reported once, on the component that exceeded the budget */
+  private void reportExceededBudget(
+    String componentId,
+    EvaluateResponse.Builder response
+  ) {
+    var meter = messageOutput.meter();
+    var policy = meter.budget().policy();
+    if (reportedExceededBudget
+      || policy == OutputBudget.Policy.Block
+      || !meter.isExceeded()) {
+      return;
+    }
+    reportedExceededBudget = true;
+    updateStopStatus(EvaluationStopEvent.Status.CompletedWithErrors);
+    var consequence = policy == OutputBudget.Policy.Stop
+      ? "the evaluation was stopped"
+      : "further output was truncated";
+    response.addError(EvaluationError.newBuilder()
+      .setComponentId(componentId)
+      .setKind(outputBudgetErrorKind)
+      .setMessage("output exceeded %d bytes or %d writes per second, %s"
+        .formatted(
+          meter.budget().bytesPerSecond(),
+          meter.budget().writesPerSecond(),
+          consequence
+        ))
+      .build());
   }
 
   private void reportError(
-    SnippetSources.CodeComponent component,
+    String componentId,
     EvaluateResponse.Builder response,
     Throwable failure
   ) {
     updateStopStatus(EvaluationStopEvent.Status.Failed);
     FailedEvaluation.capture(failure).ifPresentOrElse(
-      value -> reportFailedEvaluation(component, response, value),
-      () -> reportInternalFailure(component, response, failure)
+      value -> reportFailedEvaluation(componentId, response, value),
+      () -> reportInternalFailure(componentId, response, failure)
     );
   }
 
   private void reportFailedEvaluation(
-    SnippetSources.CodeComponent component,
+    String componentId,
     EvaluateResponse.Builder response,
     FailedEvaluation failedEvaluation
   ) {
     failedEvaluation.describe(Locale.ENGLISH)
       .distinct()
-      .map(error -> error.toBuilder().setComponentId(component.getId()))
+      .map(error -> error.toBuilder().setComponentId(componentId))
       .forEach(response::addError);
   }
 
   private void reportInternalFailure(
-    SnippetSources.CodeComponent component,
+    String componentId,
     EvaluateResponse.Builder response,
     Throwable failure
   ) {
@@ -166,7 +451,7 @@ final class ShellEvaluation implements Evaluation {
       .withCause(failure).log("shell evaluation failed");
     response.addError(
       EvaluationError.newBuilder()
-        .setComponentId(component.getId())
+        .setComponentId(componentId)
         .setKind("internal")
         .build()
     );
@@ -228,31 +513,34 @@ final class ShellEvaluation implements Evaluation {
     }
   }
 
-  private JShell createShell() {
-    var engine = environment.control(UUID.randomUUID().toString());
-    return JShell.builder()
-      .out(messageOutput.createStandardSink())
-      .err(messageOutput.createErrorSink())
-      .executionEngine(engine, Map.of())
-      .build();
+  /* Shells of failed or stopped evaluations may be in an inconsistent state */
+  private void releaseShell() {
+    if (lease == null) {
+      return;
+    }
+    boolean reusable = !stopped
+      && !stopStatus.equals(EvaluationStopEvent.Status.Failed);
+    lease.release(reusable);
   }
 
-  private void setupInitialShellState(JShell shell) {
-    for (var packagePath : builtinImports) {
-      var events = shell.eval("import %s;".formatted(packagePath));
-      for (var event : events) {
-        if (!event.status().isDefined()) {
-          throw new IllegalStateException(
-            "failed to import %s".formatted(packagePath),
-            event.exception()
-          );
-        }
-      }
+  /* Sessions of failed or stopped evaluations are closed for the same reason */
+  private void releaseSession() {
+    var released = session;
+    if (released == null) {
+      return;
+    }
+    session = null;
+    boolean reusable = !stopped
+      && !stopStatus.equals(EvaluationStopEvent.Status.Failed);
+    if (reusable) {
+      run.complete(listener);
     }
+    sessions.checkin(sessionReference, released, reusable);
   }
 
   @Override
   public void stop() {
+    stopped = true;
     cleanUp();
   }
 
@@ -1,5 +1,6 @@
 package jsheets.evaluation.shell;
 
+import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.time.Clock;
@@ -21,33 +22,44 @@ import jsheets.evaluation.shell.execution.SystemBasedExecutionMethodFactory;
 import jsheets.event.EventSink;
 
 public final class ShellEvaluationEngine implements EvaluationEngine {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
   private final Executor workerPool;
-  private final ScheduledExecutorService scheduler;
+  private final FlushWheel flushWheel;
   private final ExecutionEnvironment executionEnvironment;
   private final ExecutionMethod.Factory executionMethodFactory;
   private final Duration messageFlushInterval;
   private final EventSink events;
   private final Clock clock;
-  private final Collection<String> builtinImports;
+  private final ShellProvider shells;
+  private final CompilationCache compilations;
+  private final ShellSessions sessions;
+  private final OutputBudget outputBudget;
 
   private ShellEvaluationEngine(
     Clock clock,
     Executor workerPool,
-    ScheduledExecutorService scheduler,
+    FlushWheel flushWheel,
     ExecutionEnvironment executionEnvironment,
     ExecutionMethod.Factory executionMethodFactory,
     Duration messageFlushInterval,
     EventSink events,
-    Collection<String> builtinImports
+    ShellProvider shells,
+    CompilationCache compilations,
+    ShellSessions sessions,
+    OutputBudget outputBudget
   ) {
     this.clock = clock;
     this.workerPool = workerPool;
-    this.scheduler = scheduler;
+    this.flushWheel = flushWheel;
     this.executionEnvironment = executionEnvironment;
     this.messageFlushInterval = messageFlushInterval;
     this.executionMethodFactory = executionMethodFactory;
     this.events = events;
-    this.builtinImports = builtinImports;
+    this.shells = shells;
+    this.compilations = compilations;
+    this.sessions = sessions;
+    this.outputBudget = outputBudget;
   }
 
   @Override
@@ -61,18 +73,24 @@ public final class ShellEvaluationEngine implements EvaluationEngine {
   }
 
   private ShellEvaluation createEvaluation(Evaluation.Listener listener) {
+    var transcript = new Transcript(listener);
     return new ShellEvaluation(
       clock,
       executionEnvironment,
       executionMethodFactory,
-      listener,
+      transcript,
       events,
       new MessageOutput(
+        flushWheel,
         messageFlushInterval,
-        scheduler,
-        listener
+        transcript,
+        OutputMeter.create(outputBudget, clock),
+        events,
+        clock
       ),
-      builtinImports
+      shells,
+      compilations,
+      sessions
     );
   }
 
@@ -89,6 +107,11 @@ public final class ShellEvaluationEngine implements EvaluationEngine {
     private EventSink events;
     private Clock clock;
     private Collection<String> builtinImports;
+    private ShellPool.Options shellPoolOptions;
+    private CompilationCache.Options compilationCacheOptions;
+    private ShellSessions.Options sessionOptions;
+    private OutputBudget outputBudget;
+    private boolean useVirtualThreads;
 
     public Builder useWorkerPool(Executor pool) {
       Objects.requireNonNull(pool, "workerPool");
@@ -96,6 +119,17 @@ public final class ShellEvaluationEngine implements EvaluationEngine {
       return this;
     }
 
+    /**
+     * Runs every evaluation on its own virtual thread, unless a worker pool
+     * is set. Evaluations mostly wait for their shells and listeners, which
+     * is cheap on virtual threads. Falls back to the default worker pool if
+     * the running JVM does not support virtual threads.
+     */
+    public Builder useVirtualThreads() {
+      this.useVirtualThreads = true;
+      return this;
+    }
+
     public Builder withClock(Clock clock) {
       Objects.requireNonNull(clock, "clock");
       this.clock = clock;
@@ -126,12 +160,59 @@ public final class ShellEvaluationEngine implements EvaluationEngine {
       return this;
     }
 
+    /**
+     * Reuses shells between evaluations, if the environment
+     * {@link ExecutionEnvironment#supportsShellReuse() supports it}.
+     */
+    public Builder reuseShells(ShellPool.Options options) {
+      Objects.requireNonNull(options, "options");
+      this.shellPoolOptions = options;
+      return this;
+    }
+
+    /**
+     * Caches the classes that are compiled for the sources of an evaluation,
+     * evaluations of unchanged sources run them without compiling again.
+     */
+    public Builder cacheCompilations(CompilationCache.Options options) {
+      Objects.requireNonNull(options, "options");
+      this.compilationCacheOptions = options;
+      return this;
+    }
+
+    /**
+     * Keeps the shell of a snippet between its evaluations and only
+     * evaluates the components that changed and those that depend on them,
+     * if the environment {@link ExecutionEnvironment#supportsShellReuse()
+     * supports it}. Evaluations of requests that do not reference a snippet
+     * are not affected.
+     */
+    public Builder evaluateIncrementally(ShellSessions.Options options) {
+      Objects.requireNonNull(options, "options");
+      this.sessionOptions = options;
+      return this;
+    }
+
+    /**
+     * Limits the output of every evaluation, output is unlimited by
+     * default.
+     */
+    public Builder limitOutput(OutputBudget budget) {
+      Objects.requireNonNull(budget, "budget");
+      this.outputBudget = budget;
+      return this;
+    }
+
     public Builder useScheduler(ScheduledExecutorService scheduler) {
       Objects.requireNonNull(scheduler, "scheduler");
       this.scheduler = scheduler;
       return this;
     }
 
+    /**
+     * Sets the longest time that output is buffered before it is flushed.
+     * Complete lines are flushed earlier, unless output is continuous.
+     */
     public Builder withMessageFlushInterval(Duration messageFlushInterval) {
       Objects.requireNonNull(messageFlushInterval, "messageFlushInterval");
       this.messageFlushInterval = messageFlushInterval;
@@ -139,15 +220,22 @@ public final class ShellEvaluationEngine implements EvaluationEngine {
     }
 
     public EvaluationEngine create() {
+      var environment = selectEnvironment();
+      var workerPool = selectWorkerPool();
+      var events = selectEventSink();
+      var shellFactory = new ShellFactory(environment, selectBuiltinImports());
       return new ShellEvaluationEngine(
         selectClock(),
-        selectWorkerPool(),
-        selectScheduler(),
-        selectEnvironment(),
+        workerPool,
+        FlushWheel.create(selectScheduler()),
+        environment,
         selectExecutionMethodFactory(),
         selectMessageFlushInterval(),
-        selectEventSink(),
-        selectBuiltinImports()
+        events,
+        selectShellProvider(shellFactory, workerPool),
+        createCompilationCache(events),
+        createShellSessions(shellFactory),
+        selectOutputBudget()
       );
     }
 
@@ -182,13 +270,59 @@ public final class ShellEvaluationEngine implements EvaluationEngine {
     }
 
     private Executor selectWorkerPool() {
-      return workerPool == null ? createDefaultWorkerPool() : workerPool;
+      if (workerPool != null) {
+        return workerPool;
+      }
+      return useVirtualThreads
+        ? createVirtualWorkerPool()
+        : createDefaultWorkerPool();
+    }
+
+    private Executor createVirtualWorkerPool() {
+      var pool = VirtualThreads.newPerTaskExecutor();
+      if (pool.isEmpty()) {
+        log.atWarning().log(
+          "virtual threads are not supported, using platform threads instead"
+        );
+      }
+      return pool.map(Executor.class::cast)
+        .orElseGet(this::createDefaultWorkerPool);
     }
 
     private Collection<String> selectBuiltinImports() {
       return builtinImports == null ? List.of() : builtinImports;
     }
 
+    private ShellProvider selectShellProvider(
+      ShellFactory factory,
+      Executor workerPool
+    ) {
+      boolean reuseShells = shellPoolOptions != null
+        && factory.environment().supportsShellReuse();
+      return reuseShells
+        ? ShellPool.create(factory, shellPoolOptions, workerPool)
+        : ShellProvider.fresh(factory);
+    }
+
+    private OutputBudget selectOutputBudget() {
+      return outputBudget == null ? OutputBudget.unlimited() : outputBudget;
+    }
+
+    private ShellSessions createShellSessions(ShellFactory factory) {
+      boolean keepSessions = sessionOptions != null
+        && factory.environment().supportsShellReuse();
+      return keepSessions
+        ? ShellSessions.create(factory, sessionOptions)
+        : ShellSessions.disabled();
+    }
+
+    private CompilationCache createCompilationCache(EventSink events) {
+      var options = compilationCacheOptions == null
+        ? CompilationCache.Options.disabled()
+        : compilationCacheOptions;
+      return CompilationCache.create(options, selectBuiltinImports(), events);
+    }
+
     private Executor createDefaultWorkerPool() {
       return Executors.newCachedThreadPool(
         new ThreadFactoryBuilder()
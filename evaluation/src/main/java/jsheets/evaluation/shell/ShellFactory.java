@@ -0,0 +1,82 @@
+package jsheets.evaluation.shell;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import jdk.jshell.JShell;
+import jdk.jshell.Snippet;
+import jsheets.evaluation.shell.environment.ExecutionEnvironment;
+
+/**
+ * Creates shells of an {@link ExecutionEnvironment}, whose state already
+ * contains the builtin imports.
+ */
+final class ShellFactory {
+  private final ExecutionEnvironment environment;
+  private final Collection<String> builtinImports;
+
+  ShellFactory(
+    ExecutionEnvironment environment,
+    Collection<String> builtinImports
+  ) {
+    this.environment = environment;
+    this.builtinImports = builtinImports;
+  }
+
+  /**
+   * A shell with its state after the builtin imports have been evaluated.
+   * The {@code baseline} contains all snippets of that state, the
+   * {@code recorder} observes the shell's execution control.
+   */
+  record PreparedShell(
+    JShell shell,
+    Set<Snippet> baseline,
+    ExecutionRecorder recorder
+  ) {}
+
+  PreparedShell create(PrintStream standard, PrintStream error) {
+    var recorder = new ExecutionRecorder();
+    var engine = recorder.wrap(
+      environment.control(UUID.randomUUID().toString())
+    );
+    var shell = JShell.builder()
+      .out(standard)
+      .err(error)
+      .executionEngine(engine, Map.of())
+      .build();
+    setupInitialShellState(shell);
+    return new PreparedShell(
+      shell,
+      shell.snippets().collect(Collectors.toUnmodifiableSet()),
+      recorder
+    );
+  }
+
+  private void setupInitialShellState(JShell shell) {
+    for (var packagePath : builtinImports) {
+      var events = shell.eval("import %s;".formatted(packagePath));
+      for (var event : events) {
+        if (!event.status().isDefined()) {
+          throw new IllegalStateException(
+            "failed to import %s".formatted(packagePath),
+            event.exception()
+          );
+        }
+      }
+    }
+  }
+
+  ExecutionEnvironment environment() {
+    return environment;
+  }
+
+  @Override
+  public String toString() {
+    return "ShellFactory(environment=%s, builtinImports=%s)"
+      .formatted(environment, builtinImports);
+  }
+}
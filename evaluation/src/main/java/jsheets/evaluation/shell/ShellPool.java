@@ -0,0 +1,243 @@
+package jsheets.evaluation.shell;
+
+import java.util.Deque;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.flogger.FluentLogger;
+
+import jdk.jshell.JShell;
+import jdk.jshell.PersistentSnippet;
+import jsheets.evaluation.shell.ShellFactory.PreparedShell;
+
+/**
+ * Keeps shells that already evaluated the builtin imports, so that the
+ * compiler is warmed up once per shell instead of once per evaluation.
+ * <p>
+ * After an evaluation the shell is reset to its state after the builtin
+ * imports by dropping every snippet that was declared by the evaluation.
+ * Shells are discarded if the reset fails, if the evaluation did not
+ * complete or once they have been used {@link Options#maxUses()} times,
+ * since the classes of dropped snippets are never unloaded.
+ * <p>
+ * The classes of dropped snippets keep their state, so shells are bound to
+ * the tenant of their first evaluation and never passed to evaluations of
+ * other tenants. Shells of evaluations whose tenant is not known are
+ * discarded after a single use. Idle shells of other tenants are evicted
+ * when a tenant finds no shell of its own, so that the pool is refilled
+ * with shells that any tenant can use.
+ * <p>
+ * Only environments that {@link
+ * jsheets.evaluation.shell.environment.ExecutionEnvironment#supportsShellReuse()
+ * support reuse} should be pooled.
+ */
+public final class ShellPool implements ShellProvider {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /**
+   * @param size Number of idle shells that are kept.
+   * @param maxUses Number of evaluations after which a shell is discarded.
+   */
+  public record Options(int size, int maxUses) {
+    public Options {
+      if (size < 1) {
+        throw new IllegalArgumentException("size must be positive");
+      }
+      if (maxUses < 1) {
+        throw new IllegalArgumentException("maxUses must be positive");
+      }
+    }
+  }
+
+  static ShellPool create(
+    ShellFactory factory,
+    Options options,
+    Executor executor
+  ) {
+    Objects.requireNonNull(factory, "factory");
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(executor, "executor");
+    var pool = new ShellPool(factory, options, executor);
+    pool.refill();
+    return pool;
+  }
+
+  private final ShellFactory factory;
+  private final Options options;
+  private final Executor executor;
+  /* Idle shells, ordered from the least to the most recently released */
+  private final Deque<PooledShell> idleShells = new ConcurrentLinkedDeque<>();
+  /* Number of idle and leased shells */
+  private final AtomicInteger ownedShells = new AtomicInteger();
+  private final AtomicInteger pendingShells = new AtomicInteger();
+
+  private ShellPool(ShellFactory factory, Options options, Executor executor) {
+    this.factory = factory;
+    this.options = options;
+    this.executor = executor;
+  }
+
+  @Override
+  public Lease acquire(String tenant, MessageOutput output) {
+    Objects.requireNonNull(tenant, "tenant");
+    var shell = claimIdleShell(idle ->
+      !tenant.isEmpty() && tenant.equals(idle.tenant)
+    );
+    if (shell == null) {
+      shell = claimIdleShell(idle -> idle.tenant == null);
+    }
+    if (shell == null) {
+      shell = createShell();
+      ownedShells.incrementAndGet();
+      evictForeignShell(tenant);
+    }
+    shell.bind(tenant, output);
+    return shell;
+  }
+
+  /* Removal from the deque decides between concurrent claims */
+  private PooledShell claimIdleShell(Predicate<PooledShell> usable) {
+    for (var shell : idleShells) {
+      if (usable.test(shell) && idleShells.remove(shell)) {
+        return shell;
+      }
+    }
+    return null;
+  }
+
+  private void evictForeignShell(String tenant) {
+    var foreign = claimIdleShell(idle ->
+      idle.tenant != null && !idle.tenant.equals(tenant)
+    );
+    if (foreign != null) {
+      discard(foreign);
+    }
+  }
+
+  private void refill() {
+    while (true) {
+      int pending = pendingShells.get();
+      if (ownedShells.get() + pending >= options.size()) {
+        return;
+      }
+      if (pendingShells.compareAndSet(pending, pending + 1)) {
+        executor.execute(this::createIdleShell);
+      }
+    }
+  }
+
+  private void createIdleShell() {
+    try {
+      var shell = createShell();
+      ownedShells.incrementAndGet();
+      idleShells.addLast(shell);
+    } catch (Throwable failure) {
+      log.atWarning()
+        .withCause(failure)
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .log("failed to create pooled shell");
+    } finally {
+      pendingShells.decrementAndGet();
+    }
+  }
+
+  private PooledShell createShell() {
+    var output = new RedirectedOutput();
+    var prepared = factory.create(
+      output.createStandardSink(),
+      output.createErrorSink()
+    );
+    return new PooledShell(prepared, output);
+  }
+
+  /* Shells that exceed the size of the pool are discarded */
+  private void offer(PooledShell shell) {
+    if (ownedShells.get() > options.size()) {
+      discard(shell);
+      return;
+    }
+    idleShells.addLast(shell);
+  }
+
+  private void discard(PooledShell shell) {
+    ownedShells.decrementAndGet();
+    shell.close();
+    refill();
+  }
+
+  private final class PooledShell implements Lease {
+    private final PreparedShell prepared;
+    private final RedirectedOutput output;
+    /* Tenant of the shell's first evaluation, null before it was leased */
+    private volatile String tenant;
+    private int uses;
+
+    private PooledShell(PreparedShell prepared, RedirectedOutput output) {
+      this.prepared = prepared;
+      this.output = output;
+    }
+
+    void bind(String tenant, MessageOutput target) {
+      this.tenant = tenant;
+      uses++;
+      output.bind(target);
+    }
+
+    @Override
+    public JShell shell() {
+      return prepared.shell();
+    }
+
+    @Override
+    public ExecutionRecorder recorder() {
+      return prepared.recorder();
+    }
+
+    @Override
+    public void release(boolean reusable) {
+      output.unbind();
+      boolean knownTenant = !tenant.isEmpty();
+      if (reusable && knownTenant && uses < options.maxUses() && tryReset()) {
+        offer(this);
+      } else {
+        discard(this);
+      }
+    }
+
+    /* Drops all snippets that are not part of the baseline */
+    private boolean tryReset() {
+      var shell = prepared.shell();
+      try {
+        shell.snippets()
+          .filter(snippet -> !prepared.baseline().contains(snippet))
+          .filter(snippet -> snippet instanceof PersistentSnippet)
+          .filter(snippet -> shell.status(snippet).isActive())
+          .toList()
+          .forEach(shell::drop);
+        return prepared.baseline().stream()
+          .allMatch(snippet -> shell.status(snippet).isActive());
+      } catch (Exception failedReset) {
+        log.atFine().withCause(failedReset).log("failed to reset shell");
+        return false;
+      }
+    }
+
+    void close() {
+      try {
+        prepared.shell().close();
+      } catch (Exception failure) {
+        log.atFine().withCause(failure).log("failed to close pooled shell");
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ShellPool(options=%s, ownedShells=%d, factory=%s)"
+      .formatted(options, ownedShells.get(), factory);
+  }
+}
@@ -0,0 +1,57 @@
+package jsheets.evaluation.shell;
+
+import jdk.jshell.JShell;
+
+/**
+ * Provides the shell of an evaluation, the shell's output is written to the
+ * evaluation's {@link MessageOutput}.
+ */
+interface ShellProvider {
+  /**
+   * @param tenant Sheet of the evaluated snippet, shells that are reused
+   *   never pass between tenants. Empty if the tenant is not known.
+   */
+  Lease acquire(String tenant, MessageOutput output);
+
+  interface Lease {
+    JShell shell();
+
+    /** Records what the shell runs in its execution control. */
+    ExecutionRecorder recorder();
+
+    /**
+     * Returns the shell after the evaluation completed.
+     *
+     * @param reusable False if the shell may be in an inconsistent state,
+     *   for example because the evaluation failed or was stopped.
+     */
+    void release(boolean reusable);
+  }
+
+  /** Creates a new shell for every evaluation and closes it afterwards. */
+  static ShellProvider fresh(ShellFactory factory) {
+    return (tenant, output) -> {
+      var prepared = factory.create(
+        output.createStandardSink(),
+        output.createErrorSink()
+      );
+      var shell = prepared.shell();
+      return new Lease() {
+        @Override
+        public JShell shell() {
+          return shell;
+        }
+
+        @Override
+        public ExecutionRecorder recorder() {
+          return prepared.recorder();
+        }
+
+        @Override
+        public void release(boolean reusable) {
+          shell.close();
+        }
+      };
+    };
+  }
+}
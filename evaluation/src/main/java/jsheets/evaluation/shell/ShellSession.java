@@ -0,0 +1,359 @@
+package jsheets.evaluation.shell;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.google.common.flogger.FluentLogger;
+
+import jdk.jshell.JShell;
+import jdk.jshell.PersistentSnippet;
+import jdk.jshell.Snippet;
+import jdk.jshell.SourceCodeAnalysis;
+import jsheets.EvaluationError;
+import jsheets.EvaluationResult;
+import jsheets.SnippetSources;
+import jsheets.evaluation.shell.ShellFactory.PreparedShell;
+
+/**
+ * Shell that is kept alive between the evaluations of a snippet, together
+ * with the state that each of its code components left in the shell.
+ * <p>
+ * A {@link Run} only evaluates the components that changed since the
+ * previous evaluation and the components that depend on them. A component
+ * depends on another one, if it is one of the {@link
+ * jdk.jshell.SourceCodeAnalysis#dependents(Snippet) dependents} that JShell
+ * tracks for its declarations, or if it references a name that the other
+ * component declares. Since JShell only tracks dependents of declarations,
+ * the second rule catches statements and expressions. Replayed and removed
+ * components may also have mutated the state of the components whose
+ * declarations they reference, which are therefore replayed as well.
+ * References are found by scanning the code for identifiers, which can
+ * only overestimate them. Reordered components and changed imports replay
+ * every component. The results of the reused components are reported like
+ * they were in the previous evaluation.
+ * <p>
+ * Sessions are identified by a token that the runtime issues, so that only
+ * the client that created a session can evaluate in it again.
+ */
+final class ShellSession {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /**
+   * State that a component left in the shell.
+   *
+   * @param snippets Snippets that the component declared.
+   * @param results Results that were reported for the component, this
+   *   includes the output that it printed.
+   */
+  record Component(
+    String code,
+    List<Snippet> snippets,
+    List<EvaluationResult> results,
+    List<EvaluationError> errors
+  ) {}
+
+  private final String token;
+  private final PreparedShell prepared;
+  private final RedirectedOutput output;
+  private Map<String, Component> components = Map.of();
+
+  ShellSession(String token, PreparedShell prepared, RedirectedOutput output) {
+    this.token = token;
+    this.prepared = prepared;
+    this.output = output;
+  }
+
+  /** Token that the client presents to evaluate in this session again. */
+  String token() {
+    return token;
+  }
+
+  JShell shell() {
+    return prepared.shell();
+  }
+
+  ExecutionRecorder recorder() {
+    return prepared.recorder();
+  }
+
+  void bind(MessageOutput target) {
+    output.bind(target);
+  }
+
+  void unbind() {
+    output.unbind();
+  }
+
+  void close() {
+    try {
+      prepared.shell().close();
+    } catch (Exception failure) {
+      log.atFine().withCause(failure).log("failed to close session shell");
+    }
+  }
+
+  /**
+   * Starts an evaluation of the components, which are ordered by their
+   * position in the snippet. Declarations of components that were removed
+   * since the previous evaluation are dropped immediately.
+   */
+  Run startRun(List<SnippetSources.CodeComponent> ordered) {
+    return new Run(ordered);
+  }
+
+  private static final Pattern identifier =
+    Pattern.compile("\\p{javaJavaIdentifierStart}\\p{javaJavaIdentifierPart}*");
+
+  private static Set<String> listIdentifiers(String code) {
+    var identifiers = new HashSet<String>();
+    var matcher = identifier.matcher(code);
+    while (matcher.find()) {
+      identifiers.add(matcher.group());
+    }
+    return identifiers;
+  }
+
+  /*
+   * Reused components that declare a name which a replayed component
+   * references are replayed as well, since the replayed component may have
+   * mutated their state.
+   */
+  private static boolean declaresAny(Component component, Set<String> names) {
+    return !Collections.disjoint(listDeclaredNames(component.snippets()), names);
+  }
+
+  private static Set<String> listDeclaredNames(Collection<Snippet> snippets) {
+    var names = new HashSet<String>();
+    for (var snippet : snippets) {
+      if (snippet instanceof PersistentSnippet declaration
+        && snippet.kind() != Snippet.Kind.IMPORT) {
+        names.add(declaration.name());
+      }
+    }
+    return names;
+  }
+
+  private static boolean declaresImport(Collection<Snippet> snippets) {
+    return snippets.stream()
+      .anyMatch(snippet -> snippet.kind() == Snippet.Kind.IMPORT);
+  }
+
+  /* Parses the snippets of the code without evaluating them */
+  private static List<Snippet> parseSnippets(
+    SourceCodeAnalysis analysis,
+    String code
+  ) {
+    var snippets = new ArrayList<Snippet>();
+    var remaining = code;
+    while (!remaining.isBlank()) {
+      var completion = analysis.analyzeCompletion(remaining);
+      if (!completion.completeness().isComplete()) {
+        break;
+      }
+      snippets.addAll(analysis.sourceToSnippets(completion.source()));
+      remaining = completion.remaining();
+    }
+    return snippets;
+  }
+
+  final class Run {
+    private final Map<String, Component> next = new LinkedHashMap<>();
+    /* Components that are evaluated again, every other one is reused */
+    private final Set<String> replayed;
+
+    private Run(List<SnippetSources.CodeComponent> ordered) {
+      var codeById = new LinkedHashMap<String, String>();
+      for (var component : ordered) {
+        codeById.put(component.getId(), component.getCode());
+      }
+      replayed = isReordered(codeById) || changesImports(codeById)
+        ? new HashSet<>(codeById.keySet())
+        : collectReplayed(codeById);
+      for (var entry : components.entrySet()) {
+        if (!codeById.containsKey(entry.getKey())) {
+          drop(entry.getValue());
+        }
+      }
+    }
+
+    /* Reordered components may depend on each other in another way */
+    private boolean isReordered(Map<String, String> codeById) {
+      var retainedIds = codeById.keySet().stream()
+        .filter(components::containsKey)
+        .toList();
+      var previousIds = components.keySet().stream()
+        .filter(codeById::containsKey)
+        .toList();
+      return !retainedIds.equals(previousIds);
+    }
+
+    /* Imports change the meaning of names in every other component */
+    private boolean changesImports(Map<String, String> codeById) {
+      var analysis = shell().sourceCodeAnalysis();
+      for (var entry : components.entrySet()) {
+        var code = codeById.get(entry.getKey());
+        if (!entry.getValue().code().equals(code)
+          && declaresImport(entry.getValue().snippets())) {
+          return true;
+        }
+      }
+      for (var entry : codeById.entrySet()) {
+        var previous = components.get(entry.getKey());
+        if ((previous == null || !previous.code().equals(entry.getValue()))
+          && declaresImport(parseSnippets(analysis, entry.getValue()))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /*
+     * Starts with the changed components and adds the components that
+     * depend on a changed, removed or replayed component until no more are
+     * added. Dependents of declarations are taken from JShell, the other
+     * dependencies are found by their names.
+     */
+    private Set<String> collectReplayed(Map<String, String> codeById) {
+      var replayed = new HashSet<String>();
+      var pending = new ArrayDeque<String>();
+      for (var entry : codeById.entrySet()) {
+        var previous = components.get(entry.getKey());
+        if (previous == null || !previous.code().equals(entry.getValue())) {
+          replayed.add(entry.getKey());
+          pending.add(entry.getKey());
+        }
+      }
+      for (var id : components.keySet()) {
+        if (!codeById.containsKey(id)) {
+          pending.add(id);
+        }
+      }
+      var analysis = shell().sourceCodeAnalysis();
+      var owners = mapSnippetOwners();
+      var identifiers = new HashMap<String, Set<String>>();
+      while (!pending.isEmpty()) {
+        var id = pending.poll();
+        var previous = components.get(id);
+        var code = codeById.get(id);
+        var referenced = new HashSet<String>();
+        var declared = new HashSet<String>();
+        if (previous != null) {
+          referenced.addAll(listIdentifiers(previous.code()));
+          declared.addAll(listDeclaredNames(previous.snippets()));
+          for (var snippet : previous.snippets()) {
+            for (var dependent : analysis.dependents(snippet)) {
+              var owner = owners.get(dependent.id());
+              if (owner != null && codeById.containsKey(owner)
+                && replayed.add(owner)) {
+                pending.add(owner);
+              }
+            }
+          }
+        }
+        if (code != null) {
+          referenced.addAll(listIdentifiers(code));
+          declared.addAll(listDeclaredNames(parseSnippets(analysis, code)));
+        }
+        for (var entry : codeById.entrySet()) {
+          var other = entry.getKey();
+          if (replayed.contains(other)) {
+            continue;
+          }
+          var otherIdentifiers = identifiers.computeIfAbsent(
+            other,
+            key -> listIdentifiers(entry.getValue())
+          );
+          if (declaresAny(components.get(other), referenced)
+            || !Collections.disjoint(otherIdentifiers, declared)) {
+            replayed.add(other);
+            pending.add(other);
+          }
+        }
+      }
+      return replayed;
+    }
+
+    private Map<String, String> mapSnippetOwners() {
+      var owners = new HashMap<String, String>();
+      components.forEach((id, component) -> {
+        for (var snippet : component.snippets()) {
+          owners.put(snippet.id(), id);
+        }
+      });
+      return owners;
+    }
+
+    /**
+     * Checks if the component has to be evaluated. If it does, the
+     * declarations of its previous evaluation are dropped.
+     */
+    boolean requiresEvaluation(SnippetSources.CodeComponent component) {
+      var previous = components.get(component.getId());
+      if (previous != null && !replayed.contains(component.getId())) {
+        return false;
+      }
+      if (previous != null) {
+        drop(previous);
+      }
+      return true;
+    }
+
+    private void drop(Component component) {
+      var shell = shell();
+      for (var snippet : component.snippets()) {
+        if (snippet instanceof PersistentSnippet
+          && shell.status(snippet).isActive()) {
+          shell.drop(snippet);
+        }
+      }
+    }
+
+    /** Updates the state after the component has been evaluated. */
+    void completeEvaluation(
+      SnippetSources.CodeComponent component,
+      List<Snippet> snippets
+    ) {
+      next.put(
+        component.getId(),
+        new Component(component.getCode(), snippets, List.of(), List.of())
+      );
+    }
+
+    /** Returns the state of the component that was not evaluated again. */
+    Component reuse(SnippetSources.CodeComponent component) {
+      var previous = components.get(component.getId());
+      next.put(component.getId(), previous);
+      return previous;
+    }
+
+    /**
+     * Makes the state of this run the base of the next one. The results
+     * are taken from the transcript, after they have been sent.
+     */
+    void complete(Transcript transcript) {
+      var completed = new LinkedHashMap<String, Component>();
+      next.forEach((id, component) -> completed.put(id, new Component(
+        component.code(),
+        component.snippets(),
+        transcript.results(id),
+        transcript.errors(id)
+      )));
+      components = completed;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ShellSession(shell=%s, components=%d)"
+      .formatted(prepared.shell(), components.size());
+  }
+}
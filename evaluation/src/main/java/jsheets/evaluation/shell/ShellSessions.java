@@ -0,0 +1,151 @@
+package jsheets.evaluation.shell;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Objects;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+
+import jsheets.Snippet;
+
+/**
+ * Keeps the shell of a snippet alive between its evaluations, so that only
+ * the components that changed have to be evaluated again.
+ * <p>
+ * A session is checked out for the duration of an evaluation. Concurrent
+ * evaluations of the same snippet use separate sessions, the session of
+ * the evaluation that completes last is kept. Sessions are closed if they
+ * have not been used for {@link Options#idleTimeout()} or if more than
+ * {@link Options#size()} sessions are kept.
+ * <p>
+ * Every session is identified by the snippet's reference and a random token
+ * that is sent to the client with the results. Requests only continue a
+ * session if they present its token, since references are chosen by
+ * clients and anyone could send the reference of another user's snippet.
+ * <p>
+ * Only environments that {@link
+ * jsheets.evaluation.shell.environment.ExecutionEnvironment#supportsShellReuse()
+ * support reuse} can keep sessions.
+ */
+public final class ShellSessions {
+  /**
+   * @param size Number of idle sessions that are kept.
+   * @param idleTimeout Duration after which an unused session is closed.
+   */
+  public record Options(int size, Duration idleTimeout) {
+    public Options {
+      Objects.requireNonNull(idleTimeout, "idleTimeout");
+      if (size < 1) {
+        throw new IllegalArgumentException("size must be positive");
+      }
+      if (idleTimeout.isNegative() || idleTimeout.isZero()) {
+        throw new IllegalArgumentException("idleTimeout must be positive");
+      }
+    }
+  }
+
+  private static final ShellSessions disabled = new ShellSessions(null, null);
+
+  static ShellSessions disabled() {
+    return disabled;
+  }
+
+  static ShellSessions create(ShellFactory factory, Options options) {
+    Objects.requireNonNull(factory, "factory");
+    Objects.requireNonNull(options, "options");
+    Cache<SessionKey, ShellSession> sessions = CacheBuilder.newBuilder()
+      .maximumSize(options.size())
+      .expireAfterAccess(options.idleTimeout())
+      .<SessionKey, ShellSession>removalListener(removal -> {
+        // Sessions are removed explicitly when they are checked out
+        if (removal.getCause() != RemovalCause.EXPLICIT) {
+          removal.getValue().close();
+        }
+      })
+      .build();
+    return new ShellSessions(factory, sessions);
+  }
+
+  private record SessionKey(Snippet.Reference reference, String token) {}
+
+  private static final int tokenLength = 16;
+
+  private final ShellFactory factory;
+  private final Cache<SessionKey, ShellSession> sessions;
+  private final SecureRandom random = new SecureRandom();
+
+  private ShellSessions(
+    ShellFactory factory,
+    Cache<SessionKey, ShellSession> sessions
+  ) {
+    this.factory = factory;
+    this.sessions = sessions;
+  }
+
+  boolean isEnabled() {
+    return sessions != null;
+  }
+
+  /**
+   * Returns the session of the snippet with the token, or a new one if
+   * there is none, and writes its output to the {@code output}.
+   */
+  ShellSession checkout(
+    Snippet.Reference reference,
+    String token,
+    MessageOutput output
+  ) {
+    var session = token.isEmpty()
+      ? null
+      : sessions.asMap().remove(new SessionKey(reference, token));
+    if (session == null) {
+      session = createSession();
+    }
+    session.bind(output);
+    return session;
+  }
+
+  private ShellSession createSession() {
+    var output = new RedirectedOutput();
+    var prepared = factory.create(
+      output.createStandardSink(),
+      output.createErrorSink()
+    );
+    return new ShellSession(createToken(), prepared, output);
+  }
+
+  private String createToken() {
+    var token = new byte[tokenLength];
+    random.nextBytes(token);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+  }
+
+  /**
+   * Keeps the session for the next evaluation of the snippet.
+   *
+   * @param reusable False if the shell may be in an inconsistent state,
+   *   for example because the evaluation failed or was stopped.
+   */
+  void checkin(
+    Snippet.Reference reference,
+    ShellSession session,
+    boolean reusable
+  ) {
+    session.unbind();
+    if (reusable) {
+      sessions.put(new SessionKey(reference, session.token()), session);
+    } else {
+      session.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return isEnabled()
+      ? "ShellSessions(size=%d, factory=%s)".formatted(sessions.size(), factory)
+      : "ShellSessions(disabled)";
+  }
+}
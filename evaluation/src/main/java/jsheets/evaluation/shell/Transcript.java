@@ -0,0 +1,59 @@
+package jsheets.evaluation.shell;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jsheets.EvaluateResponse;
+import jsheets.EvaluationError;
+import jsheets.EvaluationResult;
+import jsheets.evaluation.Evaluation;
+
+/**
+ * Forwards responses to the listener of an evaluation and keeps the results
+ * and errors that were sent for each component, including the output that
+ * components printed.
+ */
+final class Transcript implements Evaluation.Listener {
+  private final Evaluation.Listener listener;
+  private final Map<String, List<EvaluationResult>> results = new HashMap<>();
+  private final Map<String, List<EvaluationError>> errors = new HashMap<>();
+
+  Transcript(Evaluation.Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void send(EvaluateResponse response) {
+    synchronized (this) {
+      for (var result : response.getResultList()) {
+        results.computeIfAbsent(result.getComponentId(), id -> new ArrayList<>())
+          .add(result);
+      }
+      for (var error : response.getErrorList()) {
+        errors.computeIfAbsent(error.getComponentId(), id -> new ArrayList<>())
+          .add(error);
+      }
+    }
+    listener.send(response);
+  }
+
+  @Override
+  public void close() {
+    listener.close();
+  }
+
+  synchronized List<EvaluationResult> results(String componentId) {
+    return List.copyOf(results.getOrDefault(componentId, List.of()));
+  }
+
+  synchronized List<EvaluationError> errors(String componentId) {
+    return List.copyOf(errors.getOrDefault(componentId, List.of()));
+  }
+
+  @Override
+  public String toString() {
+    return "Transcript(listener=%s)".formatted(listener);
+  }
+}
@@ -0,0 +1,41 @@
+package jsheets.evaluation.shell;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.flogger.FluentLogger;
+
+/**
+ * Creates executors that run on virtual threads. The evaluation library
+ * targets a release without virtual threads, which is why they are looked
+ * up reflectively and only used if the running JVM supports them.
+ */
+final class VirtualThreads {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private VirtualThreads() {}
+
+  /**
+   * Returns an executor that starts a new virtual thread for every task, or
+   * nothing if the running JVM does not support virtual threads. Releases
+   * that only preview virtual threads reject them unless previews are
+   * enabled.
+   */
+  static Optional<ExecutorService> newPerTaskExecutor() {
+    try {
+      var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return Optional.of((ExecutorService) factory.invoke(null));
+    } catch (NoSuchMethodException unsupported) {
+      return Optional.empty();
+    } catch (InvocationTargetException | IllegalAccessException failure) {
+      log.atWarning()
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .withCause(failure)
+        .log("virtual threads are not available");
+      return Optional.empty();
+    }
+  }
+}
@@ -5,4 +5,13 @@ import jdk.jshell.spi.ExecutionControl;
 public interface ClassFileStore {
   void redefine(ExecutionControl.ClassBytecodes[] bytecodes);
   void load(ExecutionControl.ClassBytecodes[] bytecodes);
+
+  /**
+   * Returns the store that is used by a single shell. Stores that change
+   * over time return a view of their current state, so that the classes of
+   * a shell are handled consistently until it is closed.
+   */
+  default ClassFileStore pin() {
+    return this;
+  }
 }
@@ -23,6 +23,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BooleanSupplier;
 
 import jdk.jshell.execution.LoaderDelegate;
 import jdk.jshell.spi.ExecutionControl;
@@ -31,15 +32,27 @@ public final class ClassFileStoreLoader implements LoaderDelegate {
   // This class is based on Java's loader for DirectExecution.
   public static ClassFileStoreLoader of(ClassFileStore store) {
     Objects.requireNonNull(store, "store");
-    return new ClassFileStoreLoader(store);
+    return new ClassFileStoreLoader(store, PreemptionCheckpoints.create());
+  }
+
+  /**
+   * Creates a loader that rejects classes which can not be instrumented
+   * with preemption checkpoints, for environments that can only stop and
+   * meter snippets at their checkpoints.
+   */
+  public static ClassFileStoreLoader requiringCheckpoints(ClassFileStore store) {
+    Objects.requireNonNull(store, "store");
+    return new ClassFileStoreLoader(store, PreemptionCheckpoints.createRequired());
   }
 
   private final Map<String, Class<?>> types = new HashMap<>();
   private final ClassFileStore store;
   private final RemoteClassLoader remote = new RemoteClassLoader();
+  private final PreemptionCheckpoints checkpoints;
 
-  private ClassFileStoreLoader(ClassFileStore store) {
+  private ClassFileStoreLoader(ClassFileStore store, PreemptionCheckpoints checkpoints) {
     this.store = store;
+    this.checkpoints = checkpoints;
   }
 
   public Runnable install() {
@@ -54,12 +67,41 @@ public final class ClassFileStoreLoader implements LoaderDelegate {
     throws ExecutionControl.ClassInstallException
   {
     store.load(binaries);
-    for (var binary : binaries) {
+    ExecutionControl.ClassBytecodes[] instrumented;
+    try {
+      instrumented = checkpoints.instrument(binaries);
+    } catch (IllegalArgumentException failure) {
+      throw new ExecutionControl.ClassInstallException(
+        "load: " + failure.getMessage(),
+        new boolean[binaries.length]
+      );
+    }
+    for (var binary : instrumented) {
       remote.declare(binary.name(), binary.bytecodes());
     }
     preload(binaries);
   }
 
+  /**
+   * Requests the loaded snippets to stop at their next preemption
+   * checkpoint.
+   *
+   * @return False if no snippets were loaded yet.
+   */
+  public boolean preempt() {
+    return PreemptionCheckpoints.requestStop(remote);
+  }
+
+  /**
+   * Charges the instructions of the loaded snippets to the meter, which
+   * stops them once it returns false. A null meter removes the limits.
+   *
+   * @return False if no snippets were loaded yet.
+   */
+  public boolean meter(BooleanSupplier meter) {
+    return PreemptionCheckpoints.installMeter(remote, meter);
+  }
+
   private void preload(ExecutionControl.ClassBytecodes[] binaries)
     throws ExecutionControl.ClassInstallException
   {
@@ -86,7 +128,7 @@ public final class ClassFileStoreLoader implements LoaderDelegate {
   @Override
   public void classesRedefined(ExecutionControl.ClassBytecodes[] binaries) {
     store.redefine(binaries);
-    for (var binary : binaries) {
+    for (var binary : checkpoints.instrument(binaries)) {
       remote.declare(binary.name(), binary.bytecodes());
     }
   }
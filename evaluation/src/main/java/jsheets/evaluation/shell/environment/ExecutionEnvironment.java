@@ -6,6 +6,15 @@ public interface ExecutionEnvironment {
   ExecutionControlProvider control(String name);
   Installation install();
 
+  /**
+   * Whether a shell of this environment may evaluate more than one request.
+   * Environments that isolate every evaluation, for example in a new process,
+   * must not share shells between evaluations.
+   */
+  default boolean supportsShellReuse() {
+    return false;
+  }
+
   interface Installation extends AutoCloseable {
     void close();
   }
@@ -0,0 +1,520 @@
+package jsheets.evaluation.shell.environment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import com.google.common.flogger.FluentLogger;
+
+import jdk.jshell.spi.ExecutionControl;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Injects preemption checkpoints into the classes of snippets, so that
+ * running snippets can be stopped without suspending the machine or
+ * calling {@code Thread.stop}.
+ * <p>
+ * A checkpoint is a call to a static method, which throws once a stop was
+ * requested. Checkpoints are injected at the entry of every method and
+ * before every jump to an earlier instruction, which are the back edges of
+ * loops. Snippets that wait in library code, for example while sleeping,
+ * only reach the next checkpoint once they return and still have to be
+ * interrupted.
+ * <p>
+ * The class that holds the stop flag is generated and loaded along with
+ * the first classes of a shell, so every class loader has its own flag.
+ * Classes are instrumented after the sandbox checked them and snippets can
+ * not reference the checkpoint class, which is not known to the compiler.
+ * <p>
+ * Checkpoints also count the instructions that snippets execute. Every
+ * checkpoint is charged with the instructions since the target of its jump,
+ * which is the size of the loop body, or with one instruction at the entry
+ * of a method. After {@link #instructionsPerSample} instructions, the
+ * checkpoint asks the {@link #installMeter installed meter} whether the
+ * execution may continue, and stops it otherwise. The counts are estimates,
+ * branches that are skipped within a loop are counted nonetheless.
+ * <p>
+ * Classes that can not be instrumented, for example because the
+ * checkpoints make a method exceed its maximum size, are loaded without
+ * checkpoints, unless the checkpoints are {@link #createRequired()
+ * required}. Environments that have no other way to stop or meter snippets
+ * have to require them.
+ */
+public final class PreemptionCheckpoints {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  public static PreemptionCheckpoints create() {
+    return new PreemptionCheckpoints(/* required */ false);
+  }
+
+  /** Creates checkpoints that reject classes which can not be instrumented. */
+  public static PreemptionCheckpoints createRequired() {
+    return new PreemptionCheckpoints(/* required */ true);
+  }
+
+  /** Binary name of the generated class that holds the stop flag. */
+  public static final String checkpointClassName = "jsheets.checkpoint.Checkpoint";
+
+  /** Name of the static boolean field that requests a stop. */
+  public static final String stopFieldName = "stopRequested";
+
+  /** Number of instructions between two samples of the installed meter. */
+  public static final long instructionsPerSample = 1 << 16;
+
+  private static final String meterFieldName = "meter";
+  private static final String creditFieldName = "credit";
+  private static final String checkpointInternalName =
+    checkpointClassName.replace('.', '/');
+  private static final String checkMethodName = "check";
+  private static final String sampleMethodName = "sample";
+
+  private final AtomicBoolean checkpointDeclared = new AtomicBoolean();
+  private final boolean required;
+
+  private PreemptionCheckpoints(boolean required) {
+    this.required = required;
+  }
+
+  /**
+   * Injects checkpoints into the classes. The checkpoint class is appended
+   * to the first classes that are instrumented, the indices of the given
+   * classes do not change.
+   *
+   * @throws IllegalArgumentException If checkpoints are required and a
+   *   class can not be instrumented.
+   */
+  public ExecutionControl.ClassBytecodes[] instrument(
+    ExecutionControl.ClassBytecodes[] bytecodes
+  ) {
+    var instrumented = new ArrayList<ExecutionControl.ClassBytecodes>(bytecodes.length + 1);
+    for (var binary : bytecodes) {
+      instrumented.add(new ExecutionControl.ClassBytecodes(
+        binary.name(),
+        instrumentClass(binary.name(), binary.bytecodes())
+      ));
+    }
+    if (checkpointDeclared.compareAndSet(false, true)) {
+      instrumented.add(new ExecutionControl.ClassBytecodes(
+        checkpointClassName,
+        createCheckpointClass()
+      ));
+    }
+    return instrumented.toArray(ExecutionControl.ClassBytecodes[]::new);
+  }
+
+  /**
+   * Requests snippets whose classes were loaded by the loader to stop at
+   * their next checkpoint.
+   *
+   * @return False if the loader did not load the checkpoint class yet.
+   */
+  public static boolean requestStop(ClassLoader loader) {
+    return setField(loader, stopFieldName, true);
+  }
+
+  /**
+   * Installs the meter that is sampled every {@link #instructionsPerSample}
+   * instructions of snippets whose classes were loaded by the loader. The
+   * snippets are stopped once the meter returns false, a null meter lets
+   * them run without limits.
+   *
+   * @return False if the loader did not load the checkpoint class yet.
+   */
+  public static boolean installMeter(ClassLoader loader, BooleanSupplier meter) {
+    return setField(loader, meterFieldName, meter)
+      && setField(loader, creditFieldName, instructionsPerSample);
+  }
+
+  private static boolean setField(ClassLoader loader, String name, Object value) {
+    try {
+      var checkpoint = Class.forName(checkpointClassName, false, loader);
+      checkpoint.getField(name).set(null, value);
+      return true;
+    } catch (ClassNotFoundException notLoaded) {
+      return false;
+    } catch (ReflectiveOperationException failure) {
+      throw new IllegalStateException("checkpoint class is malformed", failure);
+    }
+  }
+
+  /** Checks if the failure was caused by reaching a checkpoint. */
+  public static boolean isPreemption(Throwable failure) {
+    while (failure != null) {
+      if (failure.getClass().getName().equals(checkpointClassName)) {
+        return true;
+      }
+      failure = failure.getCause();
+    }
+    return false;
+  }
+
+  private byte[] instrumentClass(String name, byte[] bytecodes) {
+    try {
+      var reader = new ClassReader(bytecodes);
+      var writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+      reader.accept(new CheckpointInjection(writer), 0);
+      return writer.toByteArray();
+    } catch (RuntimeException failure) {
+      if (required) {
+        throw new IllegalArgumentException(
+          "failed to inject preemption checkpoints into " + name,
+          failure
+        );
+      }
+      log.atWarning()
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .withCause(failure)
+        .log("failed to inject preemption checkpoints");
+      return bytecodes;
+    }
+  }
+
+  private static final class CheckpointInjection extends ClassVisitor {
+    CheckpointInjection(ClassVisitor target) {
+      super(Opcodes.ASM9, target);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+      int access,
+      String name,
+      String descriptor,
+      String signature,
+      String[] exceptions
+    ) {
+      var target = super.visitMethod(access, name, descriptor, signature, exceptions);
+      return new MethodCheckpoints(target);
+    }
+  }
+
+  /*
+   * The checkpoint takes the number of instructions that it is charged with
+   * and returns nothing, so it can be placed in front of conditional jumps
+   * while their operands are on the stack and does not change the stack map
+   * frames. The pushed count raises the maximum stack size, which the writer
+   * computes.
+   */
+  private static final class MethodCheckpoints extends MethodVisitor {
+    private final Map<Label, Integer> visitedLabels = new HashMap<>();
+    private int instructions;
+
+    MethodCheckpoints(MethodVisitor target) {
+      super(Opcodes.ASM9, target);
+    }
+
+    @Override
+    public void visitCode() {
+      super.visitCode();
+      visitCheckpoint(1);
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+      visitedLabels.put(label, instructions);
+      super.visitLabel(label);
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+      instructions++;
+      var target = visitedLabels.get(label);
+      if (target != null) {
+        visitCheckpoint(instructions - target);
+      }
+      super.visitJumpInsn(opcode, label);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+      instructions++;
+      super.visitInsn(opcode);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+      instructions++;
+      super.visitIntInsn(opcode, operand);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int variable) {
+      instructions++;
+      super.visitVarInsn(opcode, variable);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+      instructions++;
+      super.visitTypeInsn(opcode, type);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+      instructions++;
+      super.visitFieldInsn(opcode, owner, name, descriptor);
+    }
+
+    @Override
+    public void visitMethodInsn(
+      int opcode,
+      String owner,
+      String name,
+      String descriptor,
+      boolean isInterface
+    ) {
+      instructions++;
+      super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(
+      String name,
+      String descriptor,
+      Handle bootstrapMethod,
+      Object... bootstrapArguments
+    ) {
+      instructions++;
+      super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethod, bootstrapArguments);
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+      instructions++;
+      super.visitLdcInsn(value);
+    }
+
+    @Override
+    public void visitIincInsn(int variable, int increment) {
+      instructions++;
+      super.visitIincInsn(variable, increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label fallback, Label... labels) {
+      instructions++;
+      super.visitTableSwitchInsn(min, max, fallback, labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label fallback, int[] keys, Label[] labels) {
+      instructions++;
+      super.visitLookupSwitchInsn(fallback, keys, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int dimensions) {
+      instructions++;
+      super.visitMultiANewArrayInsn(descriptor, dimensions);
+    }
+
+    /* Calls the super methods, so that the checkpoint is not counted */
+    private void visitCheckpoint(int cost) {
+      if (cost <= Short.MAX_VALUE) {
+        super.visitIntInsn(Opcodes.SIPUSH, cost);
+      } else {
+        super.visitLdcInsn(cost);
+      }
+      super.visitMethodInsn(
+        Opcodes.INVOKESTATIC,
+        checkpointInternalName,
+        checkMethodName,
+        "(I)V",
+        /* isInterface */ false
+      );
+    }
+  }
+
+  /*
+   * The checkpoint class is the error that it throws, so that a single
+   * class has to be loaded:
+   *
+   *   public final class Checkpoint extends Error {
+   *     public static volatile boolean stopRequested;
+   *     public static volatile BooleanSupplier meter;
+   *     public static long credit;
+   *
+   *     public static void check(int instructions) {
+   *       if (stopRequested) {
+   *         throw new Checkpoint();
+   *       }
+   *       if ((credit -= instructions) < 0) {
+   *         sample();
+   *       }
+   *     }
+   *
+   *     private static void sample() {
+   *       credit = instructionsPerSample;
+   *       if (meter != null && !meter.getAsBoolean()) {
+   *         stopRequested = true;
+   *         throw new Checkpoint();
+   *       }
+   *     }
+   *
+   *     private Checkpoint() {
+   *       super("the execution was stopped", null, false, false);
+   *     }
+   *   }
+   *
+   * The credit is not volatile, threads of a snippet that race on it only
+   * make the count less accurate.
+   */
+  private static byte[] createCheckpointClass() {
+    var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+      Opcodes.V11,
+      Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+      checkpointInternalName,
+      /* signature */ null,
+      "java/lang/Error",
+      /* interfaces */ null
+    );
+    writer.visitField(
+      Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_VOLATILE,
+      stopFieldName,
+      "Z",
+      /* signature */ null,
+      /* value */ null
+    ).visitEnd();
+    writer.visitField(
+      Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_VOLATILE,
+      meterFieldName,
+      meterDescriptor,
+      /* signature */ null,
+      /* value */ null
+    ).visitEnd();
+    writer.visitField(
+      Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+      creditFieldName,
+      "J",
+      /* signature */ null,
+      /* value */ null
+    ).visitEnd();
+    writeCheckMethod(writer);
+    writeSampleMethod(writer);
+    writeConstructor(writer);
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static final String meterDescriptor = "Ljava/util/function/BooleanSupplier;";
+
+  private static void writeCheckMethod(ClassWriter writer) {
+    var method = writer.visitMethod(
+      Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+      checkMethodName,
+      "(I)V",
+      /* signature */ null,
+      /* exceptions */ null
+    );
+    method.visitCode();
+    var running = new Label();
+    method.visitFieldInsn(Opcodes.GETSTATIC, checkpointInternalName, stopFieldName, "Z");
+    method.visitJumpInsn(Opcodes.IFEQ, running);
+    writeThrow(method);
+    method.visitLabel(running);
+    method.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+    var credited = new Label();
+    method.visitFieldInsn(Opcodes.GETSTATIC, checkpointInternalName, creditFieldName, "J");
+    method.visitVarInsn(Opcodes.ILOAD, 0);
+    method.visitInsn(Opcodes.I2L);
+    method.visitInsn(Opcodes.LSUB);
+    method.visitInsn(Opcodes.DUP2);
+    method.visitFieldInsn(Opcodes.PUTSTATIC, checkpointInternalName, creditFieldName, "J");
+    method.visitInsn(Opcodes.LCONST_0);
+    method.visitInsn(Opcodes.LCMP);
+    method.visitJumpInsn(Opcodes.IFGE, credited);
+    method.visitMethodInsn(
+      Opcodes.INVOKESTATIC,
+      checkpointInternalName,
+      sampleMethodName,
+      "()V",
+      /* isInterface */ false
+    );
+    method.visitLabel(credited);
+    method.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+    method.visitInsn(Opcodes.RETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  private static void writeSampleMethod(ClassWriter writer) {
+    var method = writer.visitMethod(
+      Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC,
+      sampleMethodName,
+      "()V",
+      /* signature */ null,
+      /* exceptions */ null
+    );
+    method.visitCode();
+    method.visitLdcInsn(instructionsPerSample);
+    method.visitFieldInsn(Opcodes.PUTSTATIC, checkpointInternalName, creditFieldName, "J");
+    var permitted = new Label();
+    method.visitFieldInsn(Opcodes.GETSTATIC, checkpointInternalName, meterFieldName, meterDescriptor);
+    method.visitJumpInsn(Opcodes.IFNULL, permitted);
+    method.visitFieldInsn(Opcodes.GETSTATIC, checkpointInternalName, meterFieldName, meterDescriptor);
+    method.visitMethodInsn(
+      Opcodes.INVOKEINTERFACE,
+      "java/util/function/BooleanSupplier",
+      "getAsBoolean",
+      "()Z",
+      /* isInterface */ true
+    );
+    method.visitJumpInsn(Opcodes.IFNE, permitted);
+    method.visitInsn(Opcodes.ICONST_1);
+    method.visitFieldInsn(Opcodes.PUTSTATIC, checkpointInternalName, stopFieldName, "Z");
+    writeThrow(method);
+    method.visitLabel(permitted);
+    method.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+    method.visitInsn(Opcodes.RETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+
+  private static void writeThrow(MethodVisitor method) {
+    method.visitTypeInsn(Opcodes.NEW, checkpointInternalName);
+    method.visitInsn(Opcodes.DUP);
+    method.visitMethodInsn(
+      Opcodes.INVOKESPECIAL,
+      checkpointInternalName,
+      "<init>",
+      "()V",
+      /* isInterface */ false
+    );
+    method.visitInsn(Opcodes.ATHROW);
+  }
+
+  private static void writeConstructor(ClassWriter writer) {
+    var method = writer.visitMethod(
+      Opcodes.ACC_PRIVATE,
+      "<init>",
+      "()V",
+      /* signature */ null,
+      /* exceptions */ null
+    );
+    method.visitCode();
+    method.visitVarInsn(Opcodes.ALOAD, 0);
+    method.visitLdcInsn("the execution was stopped");
+    method.visitInsn(Opcodes.ACONST_NULL);
+    method.visitInsn(Opcodes.ICONST_0);
+    method.visitInsn(Opcodes.ICONST_0);
+    method.visitMethodInsn(
+      Opcodes.INVOKESPECIAL,
+      "java/lang/Error",
+      "<init>",
+      "(Ljava/lang/String;Ljava/lang/Throwable;ZZ)V",
+      /* isInterface */ false
+    );
+    method.visitInsn(Opcodes.RETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+  }
+}
@@ -0,0 +1,153 @@
+package jsheets.evaluation.shell.environment.fork;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import com.google.common.flogger.FluentLogger;
+
+import com.sun.jdi.VirtualMachine;
+import jdk.jshell.execution.JdiInitiator;
+import jdk.jshell.execution.RemoteExecutionControl;
+import jdk.jshell.execution.Util;
+import jsheets.evaluation.shell.environment.fork.ForkingExecutionControlProvider.Box;
+import jsheets.event.EventSink;
+
+/**
+ * Launches boxes and connects to their remote agent. Launched boxes are not
+ * yet bound to a shell and can therefore be kept around in a {@link BoxPool}.
+ */
+final class BoxLauncher implements BoxPool.Launcher {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final Duration connectTimeout;
+  private final List<String> rawVirtualMachineOptions;
+  private final EventSink events;
+  private final Clock clock;
+
+  BoxLauncher(
+    Duration connectTimeout,
+    List<String> rawVirtualMachineOptions,
+    EventSink events,
+    Clock clock
+  ) {
+    this.connectTimeout = connectTimeout;
+    this.rawVirtualMachineOptions = rawVirtualMachineOptions;
+    this.events = events;
+    this.clock = clock;
+  }
+
+  static final String remoteAgentClassName =
+    RemoteExecutionControl.class.getName();
+
+  /**
+   * A box that is connected to its remote agent but not yet bound to a shell.
+   * The {@code closeHooks} are called once the remote machine exits.
+   */
+  record PreparedBox(
+    Box box,
+    Socket socket,
+    Collection<Consumer<String>> closeHooks,
+    Instant launchTime
+  ) {
+    boolean isAlive() {
+      return box.process().isAlive() && !socket.isClosed();
+    }
+
+    void dispose() {
+      try {
+        socket.close();
+      } catch (IOException failure) {
+        log.atFiner().withCause(failure).log("failed to close box socket");
+      }
+      try {
+        box.machine().dispose();
+      } catch (Throwable failure) {
+        log.atFiner().withCause(failure).log("failed to dispose remote");
+      } finally {
+        box.process().destroy();
+      }
+    }
+  }
+
+  private static final int backlog = 1;
+
+  @Override
+  public PreparedBox launch() throws IOException {
+    var address = InetAddress.getLoopbackAddress();
+    try (var listener = new ServerSocket(0, backlog, address)) {
+      listener.setSoTimeout((int) connectTimeout.toMillis());
+      var box = initiate(listener.getLocalPort());
+      try {
+        var hooks = registerCloseHooks(box.machine());
+        var socket = listener.accept();
+        return new PreparedBox(box, socket, hooks, clock.instant());
+      } catch (IOException failedAccept) {
+        box.process().destroy();
+        throw failedAccept;
+      }
+    }
+  }
+
+  private Box initiate(int port) {
+    var initiator = new JdiInitiator(
+      /* port */ port,
+      /* options */ rawVirtualMachineOptions,
+      /* remoteAgentClassName */ remoteAgentClassName,
+      /* controlledLaunch */ false,
+      /* host */ "",
+      /* timeout */ (int) connectTimeout.toMillis(),
+      /* connectorOptions*/ Collections.emptyMap()
+    );
+    var box = new Box(initiator.vm(), initiator.process());
+    postLifecycleEvent(box, BoxLifecycleEvent.Stage.Starting);
+    return box;
+  }
+
+  private Collection<Consumer<String>> registerCloseHooks(VirtualMachine machine) {
+    var hooks = new CopyOnWriteArrayList<Consumer<String>>();
+    Util.detectJdiExitEvent(machine, event -> {
+      for (var hook : hooks) {
+        hook.accept(event);
+      }
+    });
+    return hooks;
+  }
+
+  @Override
+  public void dispose(PreparedBox box) {
+    postLifecycleEvent(box.box(), BoxLifecycleEvent.Stage.Stopping);
+    box.dispose();
+  }
+
+  void postLifecycleEvent(Box box, BoxLifecycleEvent.Stage stage) {
+    events.postIfEnabled(() -> {
+      var labels = Map.<String, Object>of(
+        "connectTimeout", connectTimeout.toMillis(),
+        "remoteAgentClassName", remoteAgentClassName,
+        "virtualMachineOptions", String.join(" ", rawVirtualMachineOptions)
+      );
+      return BoxLifecycleEventBuilder.builder()
+        .processId(box.process().pid())
+        .stage(stage)
+        .labels(labels)
+        .build();
+    });
+  }
+
+  @Override
+  public String toString() {
+    return "BoxLauncher(connectTimeout=%s, virtualMachineOptions=%s)"
+      .formatted(connectTimeout, rawVirtualMachineOptions);
+  }
+}
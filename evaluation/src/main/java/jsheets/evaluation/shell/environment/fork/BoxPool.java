@@ -0,0 +1,289 @@
+package jsheets.evaluation.shell.environment.fork;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsheets.evaluation.shell.environment.fork.BoxLauncher.PreparedBox;
+import jsheets.event.EventSink;
+
+/**
+ * Keeps a number of launched and connected boxes warm, so that evaluations
+ * do not have to wait for a virtual machine to boot.
+ * <p>
+ * Boxes are handed out exactly once and are never returned to the pool,
+ * a box that has run user code is always disposed. If the pool is empty,
+ * {@link #take()} falls back to launching a box synchronously.
+ */
+public final class BoxPool implements AutoCloseable {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /**
+   * @param size Number of boxes that are kept warm. A size of zero disables
+   *   the pool.
+   * @param refillConcurrency Maximum number of boxes launched in parallel.
+   * @param maxIdleAge Age after which an unused box is disposed and replaced.
+   */
+  public record Options(int size, int refillConcurrency, Duration maxIdleAge) {
+    private static final Options disabled =
+      new Options(0, 1, Duration.ofMinutes(5));
+
+    public static Options disabled() {
+      return disabled;
+    }
+
+    public Options {
+      Objects.requireNonNull(maxIdleAge, "maxIdleAge");
+      if (size < 0) {
+        throw new IllegalArgumentException("size may not be negative");
+      }
+      if (refillConcurrency < 1) {
+        throw new IllegalArgumentException("refillConcurrency must be positive");
+      }
+    }
+
+    boolean isEnabled() {
+      return size > 0;
+    }
+  }
+
+  /** Launches and disposes the boxes of a pool. */
+  interface Launcher {
+    PreparedBox launch() throws IOException;
+
+    void dispose(PreparedBox box);
+  }
+
+  static BoxPool create(
+    Launcher launcher,
+    Options options,
+    ScheduledExecutorService scheduler,
+    EventSink events,
+    Clock clock
+  ) {
+    Objects.requireNonNull(options, "options");
+    var launchWorkers = options.isEnabled()
+      ? createLaunchWorkers(options.refillConcurrency())
+      : null;
+    return create(launcher, options, scheduler, launchWorkers, events, clock);
+  }
+
+  /**
+   * Creates a pool that launches boxes in the background on the
+   * {@code launchWorkers}, which are shut down once the pool is closed.
+   */
+  static BoxPool create(
+    Launcher launcher,
+    Options options,
+    ScheduledExecutorService scheduler,
+    ExecutorService launchWorkers,
+    EventSink events,
+    Clock clock
+  ) {
+    Objects.requireNonNull(launcher, "launcher");
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(scheduler, "scheduler");
+    Objects.requireNonNull(events, "events");
+    Objects.requireNonNull(clock, "clock");
+    if (options.isEnabled()) {
+      Objects.requireNonNull(launchWorkers, "launchWorkers");
+    }
+    return new BoxPool(launcher, options, scheduler, launchWorkers, events, clock);
+  }
+
+  private final Launcher launcher;
+  private final Options options;
+  private final ScheduledExecutorService scheduler;
+  private final EventSink events;
+  private final Clock clock;
+  private final Deque<PreparedBox> warmBoxes = new ConcurrentLinkedDeque<>();
+  private final AtomicInteger warmBoxCount = new AtomicInteger();
+  private final AtomicInteger pendingLaunches = new AtomicInteger();
+  private final ExecutorService launchWorkers;
+  private volatile ScheduledFuture<?> maintenance;
+  private volatile boolean closed;
+
+  private BoxPool(
+    Launcher launcher,
+    Options options,
+    ScheduledExecutorService scheduler,
+    ExecutorService launchWorkers,
+    EventSink events,
+    Clock clock
+  ) {
+    this.launcher = launcher;
+    this.options = options;
+    this.scheduler = scheduler;
+    this.launchWorkers = launchWorkers;
+    this.events = events;
+    this.clock = clock;
+  }
+
+  private static ExecutorService createLaunchWorkers(int concurrency) {
+    return Executors.newFixedThreadPool(
+      concurrency,
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("box-pool-launcher-%d")
+        .build()
+    );
+  }
+
+  private static final Duration maintenanceInterval = Duration.ofSeconds(1);
+
+  /** Starts to fill the pool and to periodically replace expired boxes. */
+  public void start() {
+    if (!options.isEnabled() || closed || maintenance != null) {
+      return;
+    }
+    maintenance = scheduler.scheduleWithFixedDelay(
+      this::maintain,
+      0,
+      maintenanceInterval.toMillis(),
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  PreparedBox take() throws IOException {
+    PreparedBox box;
+    while ((box = warmBoxes.pollFirst()) != null) {
+      warmBoxCount.decrementAndGet();
+      if (box.isAlive()) {
+        postDepth();
+        refill();
+        return box;
+      }
+      discard(box);
+    }
+    refill();
+    return launcher.launch();
+  }
+
+  /* Called periodically once the pool was started */
+  @VisibleForTesting
+  void maintain() {
+    try {
+      evictExpiredBoxes();
+      refill();
+    } catch (Throwable failure) {
+      log.atWarning()
+        .withCause(failure)
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .log("failed to maintain box pool");
+    }
+  }
+
+  private void evictExpiredBoxes() {
+    var now = clock.instant();
+    for (var box : warmBoxes) {
+      var age = Duration.between(box.launchTime(), now);
+      boolean expired = age.compareTo(options.maxIdleAge()) > 0;
+      if ((expired || !box.isAlive()) && warmBoxes.remove(box)) {
+        warmBoxCount.decrementAndGet();
+        discard(box);
+        postDepth();
+      }
+    }
+  }
+
+  private void refill() {
+    if (closed || !options.isEnabled()) {
+      return;
+    }
+    while (true) {
+      int pending = pendingLaunches.get();
+      if (warmBoxCount.get() + pending >= options.size()) {
+        return;
+      }
+      if (pendingLaunches.compareAndSet(pending, pending + 1)) {
+        try {
+          launchWorkers.execute(this::launchIntoPool);
+        } catch (RejectedExecutionException rejected) {
+          // The workers only reject launches once they were shut down
+          pendingLaunches.decrementAndGet();
+          log.atFine().withCause(rejected).log("box launch was rejected");
+          return;
+        }
+      }
+    }
+  }
+
+  private void launchIntoPool() {
+    try {
+      var box = launcher.launch();
+      warmBoxes.addLast(box);
+      warmBoxCount.incrementAndGet();
+      postDepth();
+      if (closed) {
+        disposeWarmBoxes();
+      }
+    } catch (Throwable failure) {
+      log.atWarning()
+        .withCause(failure)
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .log("failed to launch box into pool");
+    } finally {
+      pendingLaunches.decrementAndGet();
+    }
+  }
+
+  private void discard(PreparedBox box) {
+    launcher.dispose(box);
+  }
+
+  private void postDepth() {
+    events.postIfEnabled(() -> BoxPoolEventBuilder.builder()
+      .warmBoxes(warmBoxCount.get())
+      .capacity(options.size())
+      .labels(Map.of("maxIdleAge", options.maxIdleAge().toMillis()))
+      .build()
+    );
+  }
+
+  public int warmBoxCount() {
+    return warmBoxCount.get();
+  }
+
+  private void disposeWarmBoxes() {
+    PreparedBox box;
+    while ((box = warmBoxes.pollFirst()) != null) {
+      warmBoxCount.decrementAndGet();
+      discard(box);
+    }
+    postDepth();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    var currentMaintenance = maintenance;
+    if (currentMaintenance != null) {
+      currentMaintenance.cancel(/* mayInterrupt */ false);
+    }
+    if (launchWorkers != null) {
+      launchWorkers.shutdown();
+    }
+    disposeWarmBoxes();
+  }
+
+  @Override
+  public String toString() {
+    return "BoxPool(options=%s, warmBoxes=%d, pendingLaunches=%d)"
+      .formatted(options, warmBoxCount.get(), pendingLaunches.get());
+  }
+}
@@ -0,0 +1,16 @@
+package jsheets.evaluation.shell.environment.fork;
+
+import java.util.Map;
+
+import io.soabase.recordbuilder.core.RecordBuilder;
+import jsheets.event.LabeledEvent;
+
+/**
+ * Posted by the {@link BoxPool} whenever the number of warm boxes changes.
+ */
+@RecordBuilder
+public record BoxPoolEvent(
+  int warmBoxes,
+  int capacity,
+  Map<String, Object> labels
+) implements LabeledEvent {}
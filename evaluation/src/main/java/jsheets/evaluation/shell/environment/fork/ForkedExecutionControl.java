@@ -2,6 +2,9 @@ package jsheets.evaluation.shell.environment.fork;
 
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -11,6 +14,7 @@ import com.sun.jdi.VMDisconnectedException;
 import com.sun.jdi.VirtualMachine;
 import jdk.jshell.execution.JdiExecutionControl;
 import jsheets.evaluation.shell.environment.ClassFileStore;
+import jsheets.evaluation.shell.environment.PreemptionCheckpoints;
 
 /*
  * This class is based on the JdiDefaultExecutionControl and is highly
@@ -23,11 +27,15 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
   private Process process;
 
   private final Lock stopLock = new ReentrantLock();
+  private final Condition userCodeLeft = stopLock.newCondition();
+  /* Disposing blocks on the connection, which would pin a virtual thread in a monitor */
+  private final Lock machineLock = new ReentrantLock();
   private boolean userCodeRunning = false;
   private volatile boolean closed;
 
   private final String remoteAgentClass;
   private final ClassFileStore classFileStore;
+  private final PreemptionCheckpoints checkpoints = PreemptionCheckpoints.create();
 
   ForkedExecutionControl(
     ObjectOutput output,
@@ -45,11 +53,16 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
   }
 
   @Override
-  protected synchronized VirtualMachine vm() throws EngineTerminationException {
-    if (machine == null) {
-      throw new EngineTerminationException("virtual machine is closed");
+  protected VirtualMachine vm() throws EngineTerminationException {
+    machineLock.lock();
+    try {
+      if (machine == null) {
+        throw new EngineTerminationException("virtual machine is closed");
+      }
+      return machine;
+    } finally {
+      machineLock.unlock();
     }
-    return machine;
   }
 
   @Override
@@ -57,7 +70,7 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
     throws ClassInstallException, NotImplementedException, EngineTerminationException
   {
     classFileStore.load(bytecodes);
-    super.load(bytecodes);
+    super.load(checkpoints.instrument(bytecodes));
   }
 
   @Override
@@ -65,7 +78,7 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
     throws ClassInstallException, EngineTerminationException
   {
     classFileStore.redefine(bytecodes);
-    super.redefine(bytecodes);
+    super.redefine(checkpoints.instrument(bytecodes));
   }
 
   @Override
@@ -89,6 +102,9 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
     stopLock.lock();
     try {
       userCodeRunning = target;
+      if (!target) {
+        userCodeLeft.signalAll();
+      }
     } finally {
       stopLock.unlock();
     }
@@ -99,7 +115,10 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
     stopLock.lock();
     try {
       if (userCodeRunning) {
-        new RemoteInterrupt(vm(), remoteAgentClass).runInSuspendedMode();
+        var interrupt = new RemoteInterrupt(vm(), remoteAgentClass);
+        if (!interrupt.stopAtCheckpoint() || !awaitUserCodeLeft()) {
+          interrupt.runInSuspendedMode();
+        }
         closed = true;
       }
     } finally {
@@ -107,6 +126,25 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
     }
   }
 
+  /*
+   * Snippets that wait in library code do not reach a checkpoint, they are
+   * stopped by suspending the remote once the grace period passed.
+   */
+  private static final Duration checkpointGracePeriod = Duration.ofMillis(100);
+
+  /* Is called while holding the stopLock */
+  private boolean awaitUserCodeLeft() {
+    long remaining = checkpointGracePeriod.toNanos();
+    try {
+      while (userCodeRunning && remaining > 0) {
+        remaining = userCodeLeft.awaitNanos(remaining);
+      }
+    } catch (InterruptedException interruption) {
+      Thread.currentThread().interrupt();
+    }
+    return !userCodeRunning;
+  }
+
   @Override
   public void close() {
     super.close();
@@ -119,7 +157,8 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
     return closed;
   }
 
-  synchronized void disposeMachine() {
+  void disposeMachine() {
+    machineLock.lock();
     try {
       if (machine != null) {
         machine.dispose();
@@ -134,6 +173,7 @@ public final class ForkedExecutionControl extends JdiExecutionControl {
         process.destroy();
         process = null;
       }
+      machineLock.unlock();
     }
   }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package jsheets.evaluation.shell.environment.fork;
 
+import java.time.Clock;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.concurrent.Executors;
@@ -17,15 +18,36 @@ public final class ForkedExecutionEnvironment implements ExecutionEnvironment {
     ClassFileStore store,
     Collection<String> virtualMachineOptions,
     EventSink events
+  ) {
+    return create(store, virtualMachineOptions, BoxPool.Options.disabled(), events);
+  }
+
+  /**
+   * Creates an environment that keeps warm boxes in a pool once it is
+   * {@link #install() installed}.
+   */
+  public static ForkedExecutionEnvironment create(
+    ClassFileStore store,
+    Collection<String> virtualMachineOptions,
+    BoxPool.Options poolOptions,
+    EventSink events
   ) {
     Objects.requireNonNull(store, "store");
     Objects.requireNonNull(virtualMachineOptions, "virtualMachineOptions");
-    return new ForkedExecutionEnvironment(
-      store,
+    Objects.requireNonNull(poolOptions, "poolOptions");
+    var scheduler = createDaemonScheduler();
+    var launcher = ForkingExecutionControlProvider.createLauncher(
       virtualMachineOptions,
-      createDaemonScheduler(),
       events
     );
+    var pool = BoxPool.create(
+      launcher,
+      poolOptions,
+      scheduler,
+      events,
+      Clock.systemUTC()
+    );
+    return new ForkedExecutionEnvironment(store, launcher, pool, scheduler);
   }
 
   private static ScheduledExecutorService createDaemonScheduler() {
@@ -34,34 +56,47 @@ public final class ForkedExecutionEnvironment implements ExecutionEnvironment {
   }
 
   private final ClassFileStore store;
-  private final Collection<String> virtualMachineOptions;
+  private final BoxLauncher launcher;
+  private final BoxPool pool;
   private final ScheduledExecutorService scheduler;
-  private final EventSink events;
 
   private ForkedExecutionEnvironment(
     ClassFileStore store,
-    Collection<String> virtualMachineOptions,
-    ScheduledExecutorService scheduler,
-    EventSink events
+    BoxLauncher launcher,
+    BoxPool pool,
+    ScheduledExecutorService scheduler
   ) {
     this.store = store;
-    this.virtualMachineOptions = virtualMachineOptions;
+    this.launcher = launcher;
+    this.pool = pool;
     this.scheduler = scheduler;
-    this.events = events;
   }
 
   @Override
   public ExecutionControlProvider control(String name) {
     return ForkingExecutionControlProvider.create(
-      virtualMachineOptions,
+      launcher,
+      pool,
       store,
-      scheduler,
-      events
+      scheduler
     );
   }
 
+  /** Starts the box pool, closing the installation disposes all warm boxes. */
   @Override
   public Installation install() {
-    return () -> {};
+    pool.start();
+    return pool::close;
+  }
+
+  /** Number of boxes that are prepared for the next evaluations. */
+  public int warmBoxCount() {
+    return pool.warmBoxCount();
+  }
+
+  @Override
+  public String toString() {
+    return "ForkedExecutionEnvironment(launcher=%s, pool=%s)"
+      .formatted(launcher, pool);
   }
-}
\ No newline at end of file
+}
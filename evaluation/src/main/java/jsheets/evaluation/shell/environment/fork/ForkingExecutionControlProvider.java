@@ -5,33 +5,27 @@ import java.io.InputStream;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
-import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.time.Clock;
 import java.time.Duration;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
-import java.util.function.Consumer;
 
 import com.google.common.flogger.FluentLogger;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.sun.jdi.VirtualMachine;
-import jdk.jshell.execution.JdiInitiator;
-import jdk.jshell.execution.RemoteExecutionControl;
-import jdk.jshell.execution.Util;
 import jdk.jshell.spi.ExecutionControl;
 import jdk.jshell.spi.ExecutionControlProvider;
 import jdk.jshell.spi.ExecutionEnv;
 import jsheets.evaluation.shell.environment.ClassFileStore;
 import jsheets.evaluation.shell.environment.EmptyClassFileStore;
+import jsheets.evaluation.shell.environment.fork.BoxLauncher.PreparedBox;
 import jsheets.event.EventSink;
 
 import static jdk.jshell.execution.Util.remoteInputOutput;
@@ -65,37 +59,62 @@ public final class ForkingExecutionControlProvider
   ) {
     Objects.requireNonNull(classFileStore, "classFileStore");
     Objects.requireNonNull(rawVirtualMachineOptions, "rawVirtualMachineOptions");
-    return new ForkingExecutionControlProvider(
-      defaultExecutionTimeout,
+    var launcher = createLauncher(rawVirtualMachineOptions, events);
+    var pool = BoxPool.create(
+      launcher,
+      BoxPool.Options.disabled(),
+      scheduler,
+      events,
+      Clock.systemUTC()
+    );
+    return create(launcher, pool, classFileStore, scheduler);
+  }
+
+  static BoxLauncher createLauncher(
+    Collection<String> rawVirtualMachineOptions,
+    EventSink events
+  ) {
+    return new BoxLauncher(
       defaultTimeout,
       List.copyOf(rawVirtualMachineOptions),
+      events,
+      Clock.systemUTC()
+    );
+  }
+
+  static ForkingExecutionControlProvider create(
+    BoxLauncher launcher,
+    BoxPool pool,
+    ClassFileStore classFileStore,
+    ScheduledExecutorService scheduler
+  ) {
+    return new ForkingExecutionControlProvider(
+      defaultExecutionTimeout,
+      launcher,
+      pool,
       classFileStore,
-      scheduler,
-      events
+      scheduler
     );
   }
 
-  private final Duration connectTimeout;
   private final Duration executionTimeout;
-  private final List<String> rawVirtualMachineOptions;
+  private final BoxLauncher launcher;
+  private final BoxPool pool;
   private final ScheduledExecutorService scheduler;
   private final ClassFileStore classFileStore;
-  private final EventSink events;
 
   private ForkingExecutionControlProvider(
     Duration executionTimeout,
-    Duration connectTimeout,
-    List<String> rawVirtualMachineOptions,
+    BoxLauncher launcher,
+    BoxPool pool,
     ClassFileStore classFileStore,
-    ScheduledExecutorService scheduler,
-    EventSink events
+    ScheduledExecutorService scheduler
   ) {
     this.executionTimeout = executionTimeout;
-    this.connectTimeout = connectTimeout;
-    this.rawVirtualMachineOptions = rawVirtualMachineOptions;
+    this.launcher = launcher;
+    this.pool = pool;
     this.classFileStore = classFileStore;
     this.scheduler = scheduler;
-    this.events = events;
   }
 
   @Override
@@ -118,97 +137,50 @@ public final class ForkingExecutionControlProvider
 
   record Box(VirtualMachine machine, Process process) {}
 
-  private static final String remoteAgentClassName =
-    RemoteExecutionControl.class.getName();
-
-  private Box initiate(int port) {
-    var initiator = new JdiInitiator(
-      /* port */ port,
-      /* options */ rawVirtualMachineOptions,
-      /* remoteAgentClassName */ remoteAgentClassName,
-      /* controlledLaunch */ false,
-      /* host */ "",
-      /* timeout */ (int) connectTimeout.toMillis(),
-      /* connectorOptions*/ Collections.emptyMap()
-    );
-    var box =  new Box(initiator.vm(), initiator.process());
-    postLifecycleEvent(box, BoxLifecycleEvent.Stage.Starting);
-    return box;
-  }
-
-  private void postLifecycleEvent(Box box, BoxLifecycleEvent.Stage stage) {
-    events.postIfEnabled(() -> {
-      var labels = Map.<String, Object>of(
-        "executionTimeout", executionTimeout.toMillis(),
-        "connectTimeout", connectTimeout.toMillis(),
-        "remoteAgentClassName", remoteAgentClassName,
-        "virtualMachineOptions", String.join(" ", rawVirtualMachineOptions)
-      );
-      return BoxLifecycleEventBuilder.builder()
-        .processId(box.process.pid())
-        .stage(stage)
-        .labels(labels)
-        .build();
-    });
-  }
-
-  private static final int backlog = 1;
-
   ExecutionControl create(ExecutionEnv environment) throws IOException {
-    var address = InetAddress.getLoopbackAddress();
-    try (var listener = new ServerSocket(0, backlog, address)) {
-      listener.setSoTimeout((int) connectTimeout.toMillis());
-      var box = initiate(listener.getLocalPort());
-      return accept(listener, environment, box);
+    var box = pool.take();
+    try {
+      return accept(box, environment);
+    } catch (IOException | RuntimeException failure) {
+      box.dispose();
+      throw failure;
     }
   }
 
-
   private ExecutionControl accept(
-    ServerSocket listener,
-    ExecutionEnv environment,
-    Box box
+    PreparedBox box,
+    ExecutionEnv environment
   ) throws IOException {
-    var hooks = registerCloseHooks(box.machine());
-    var socket = listener.accept();
-    var output = socket.getOutputStream();
+    var socket = box.socket();
     return remoteInputOutput(
       socket.getInputStream(),
-      output,
+      socket.getOutputStream(),
       createOutputs(environment),
       createInputs(environment),
-      createControl(box, environment, hooks)
+      createControl(box, environment)
     );
   }
 
-  private Collection<Consumer<String>> registerCloseHooks(VirtualMachine machine) {
-    var hooks = new CopyOnWriteArrayList<Consumer<String>>();
-    Util.detectJdiExitEvent(machine, event -> {
-      for (var hook : hooks) {
-        hook.accept(event);
-      }
-    });
-    return hooks;
-  }
-
   private BiFunction<ObjectInput, ObjectOutput, ExecutionControl> createControl(
-    Box box,
-    ExecutionEnv environment,
-    Collection<Consumer<String>> hooks
+    PreparedBox prepared,
+    ExecutionEnv environment
   ) {
+    var box = prepared.box();
+    var hooks = prepared.closeHooks();
+    var store = classFileStore.pin();
     return (input, output) -> {
       var control = new ForkedExecutionControl(
         output,
         input,
         box.machine(),
         box.process(),
-        remoteAgentClassName,
-        classFileStore
+        BoxLauncher.remoteAgentClassName,
+        store
       );
-      postLifecycleEvent(box, BoxLifecycleEvent.Stage.Running);
+      launcher.postLifecycleEvent(box, BoxLifecycleEvent.Stage.Running);
       hooks.add(event -> environment.closeDown());
       hooks.add(event -> control.disposeMachine());
-      hooks.add(event -> postLifecycleEvent(box, BoxLifecycleEvent.Stage.Stopping));
+      hooks.add(event -> launcher.postLifecycleEvent(box, BoxLifecycleEvent.Stage.Stopping));
       scheduleExecutionTimeout(control);
       return control;
     };
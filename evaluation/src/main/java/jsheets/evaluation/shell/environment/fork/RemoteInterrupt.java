@@ -6,11 +6,15 @@ import java.util.Set;
 import com.google.common.flogger.FluentLogger;
 
 import com.sun.jdi.BooleanValue;
+import com.sun.jdi.ClassNotLoadedException;
+import com.sun.jdi.ClassType;
+import com.sun.jdi.InvalidTypeException;
 import com.sun.jdi.ObjectReference;
 import com.sun.jdi.StackFrame;
 import com.sun.jdi.ThreadReference;
 import com.sun.jdi.VirtualMachine;
 import jdk.jshell.spi.ExecutionControl;
+import jsheets.evaluation.shell.environment.PreemptionCheckpoints;
 
 final class RemoteInterrupt {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
@@ -23,6 +27,27 @@ final class RemoteInterrupt {
     this.remoteAgentClass = remoteAgentClass;
   }
 
+  /**
+   * Requests the snippets to stop at their next preemption checkpoint,
+   * without suspending the remote.
+   *
+   * @return False if the remote did not load the checkpoints.
+   */
+  public boolean stopAtCheckpoint() {
+    var types = virtualMachine.classesByName(PreemptionCheckpoints.checkpointClassName);
+    if (types.isEmpty() || !(types.get(0) instanceof ClassType checkpoint)) {
+      return false;
+    }
+    var stopField = checkpoint.fieldByName(PreemptionCheckpoints.stopFieldName);
+    try {
+      checkpoint.setValue(stopField, virtualMachine.mirrorOf(true));
+      return true;
+    } catch (InvalidTypeException | ClassNotLoadedException failure) {
+      log.atWarning().withCause(failure).log("failed to request a stop at checkpoints");
+      return false;
+    }
+  }
+
   public void runInSuspendedMode() throws ExecutionControl.InternalException {
     virtualMachine.suspend();
     try {
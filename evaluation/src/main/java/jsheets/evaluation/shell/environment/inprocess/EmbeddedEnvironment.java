@@ -29,6 +29,11 @@ public final class EmbeddedEnvironment implements ExecutionEnvironment {
     return new Provider(name, tenancy);
   }
 
+  @Override
+  public boolean supportsShellReuse() {
+    return true;
+  }
+
   @Override
   public Installation install() {
     var standardInstallation = TenantBasedOutput.installAsStandard();
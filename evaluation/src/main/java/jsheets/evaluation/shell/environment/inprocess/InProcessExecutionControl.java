@@ -11,6 +11,9 @@ import com.google.common.flogger.FluentLogger;
 
 import jdk.jshell.execution.DirectExecutionControl;
 import jdk.jshell.spi.ExecutionEnv;
+import jsheets.evaluation.shell.environment.ClassFileStoreLoader;
+import jsheets.evaluation.shell.environment.EmptyClassFileStore;
+import jsheets.evaluation.shell.environment.PreemptionCheckpoints;
 
 /**
  * Controls execution of the JShell in the current JVM.
@@ -25,12 +28,30 @@ public final class InProcessExecutionControl extends DirectExecutionControl {
   private final ExecutionEnv environment;
   private final Tenancy tenancy;
   private final String workerGroupName;
+  private final ClassFileStoreLoader loader;
 
   InProcessExecutionControl(
     ExecutionEnv environment,
     Tenancy tenancy,
     String workerGroupName
   ) {
+    this(
+      environment,
+      tenancy,
+      workerGroupName,
+      ClassFileStoreLoader.of(EmptyClassFileStore.create())
+    );
+  }
+
+  /* The loader injects the preemption checkpoints into snippet classes */
+  private InProcessExecutionControl(
+    ExecutionEnv environment,
+    Tenancy tenancy,
+    String workerGroupName,
+    ClassFileStoreLoader loader
+  ) {
+    super(loader);
+    this.loader = loader;
     this.tenancy = tenancy;
     this.environment = environment;
     this.workerGroupName = workerGroupName;
@@ -105,7 +126,7 @@ public final class InProcessExecutionControl extends DirectExecutionControl {
         child.join();
       } catch (Throwable failure) {
         failedJoin = failure;
-        if (isCausedByThreadDeath(failure)) {
+        if (isPreemption(failure)) {
           logPreemption.withCause(failure).log("jshell was preempted");
           wasPreempted = true;
         }
@@ -129,6 +150,8 @@ public final class InProcessExecutionControl extends DirectExecutionControl {
       workerGroupReference,
       "worker can not be null while running"
     );
+    // Snippets that wait in library code do not reach a checkpoint
+    loader.preempt();
     worker.interrupt();
   }
 
@@ -150,6 +173,11 @@ public final class InProcessExecutionControl extends DirectExecutionControl {
     }
   }
 
+  private boolean isPreemption(Throwable exception) {
+    return PreemptionCheckpoints.isPreemption(exception)
+      || isCausedByThreadDeath(exception);
+  }
+
   private boolean isCausedByThreadDeath(Throwable exception) {
     if (exception instanceof ThreadDeath) {
       return true;
@@ -162,7 +190,7 @@ public final class InProcessExecutionControl extends DirectExecutionControl {
   }
 
   private void throwCapture(Capture<Throwable> exception) {
-    if (isCausedByThreadDeath(exception.value)) {
+    if (isPreemption(exception.value)) {
       throw new Preemption();
     }
     if (exception.value != null) {
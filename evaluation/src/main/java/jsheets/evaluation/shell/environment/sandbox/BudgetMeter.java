@@ -0,0 +1,108 @@
+package jsheets.evaluation.shell.environment.sandbox;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import com.sun.management.ThreadMXBean;
+
+import jsheets.evaluation.shell.environment.PreemptionCheckpoints;
+
+/**
+ * Accounts the resources of a single evaluation. The meter is sampled by
+ * the checkpoints of snippets, on the threads that run them.
+ * <p>
+ * Allocations are measured by the allocation counter of each thread that
+ * samples the meter. The first sample of a thread that did not {@link
+ * #enter() enter} the meter only sets its baseline, so allocations before
+ * are not counted.
+ */
+final class BudgetMeter implements BooleanSupplier {
+  private static final ThreadMXBean threads =
+    (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  static BudgetMeter start(ExecutionBudget budget) {
+    var meter = new BudgetMeter(budget);
+    meter.enter();
+    return meter;
+  }
+
+  private final ExecutionBudget budget;
+  private final AtomicLong instructions = new AtomicLong();
+  private final AtomicLong allocatedBytes = new AtomicLong();
+  private final Map<Long, Long> allocationSamples = new ConcurrentHashMap<>();
+  private volatile String exceededLimit;
+
+  private BudgetMeter(ExecutionBudget budget) {
+    this.budget = budget;
+  }
+
+  /** Returns false once the execution exceeded its budget. */
+  @Override
+  public boolean getAsBoolean() {
+    var executed = instructions.addAndGet(PreemptionCheckpoints.instructionsPerSample);
+    var allocated = sampleAllocations();
+    if (budget.maxInstructions() > 0 && executed > budget.maxInstructions()) {
+      exceededLimit = "the execution exceeded its budget of %d instructions"
+        .formatted(budget.maxInstructions());
+      return false;
+    }
+    if (budget.maxAllocatedBytes() > 0 && allocated > budget.maxAllocatedBytes()) {
+      exceededLimit = "the execution exceeded its budget of %d allocated bytes"
+        .formatted(budget.maxAllocatedBytes());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Sets the allocation baseline of the current thread before it runs a
+   * snippet, so that allocations between executions are not counted.
+   */
+  void enter() {
+    var current = currentThreadAllocatedBytes();
+    if (current >= 0) {
+      allocationSamples.put(Thread.currentThread().getId(), current);
+    }
+  }
+
+  private long currentThreadAllocatedBytes() {
+    if (budget.maxAllocatedBytes() == 0 || !threads.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private long sampleAllocations() {
+    var current = currentThreadAllocatedBytes();
+    if (current < 0) {
+      return allocatedBytes.get();
+    }
+    var previous = allocationSamples.put(Thread.currentThread().getId(), current);
+    return previous == null
+      ? allocatedBytes.get()
+      : allocatedBytes.addAndGet(current - previous);
+  }
+
+  /** Describes the limit that the execution exceeded. */
+  Optional<String> exceededLimit() {
+    return Optional.ofNullable(exceededLimit);
+  }
+
+  long instructions() {
+    return instructions.get();
+  }
+
+  long allocatedBytes() {
+    return allocatedBytes.get();
+  }
+
+  @Override
+  public String toString() {
+    return "BudgetMeter(budget=%s, instructions=%d, allocatedBytes=%d)"
+      .formatted(budget, instructions(), allocatedBytes());
+  }
+}
@@ -0,0 +1,32 @@
+package jsheets.evaluation.shell.environment.sandbox;
+
+/**
+ * Limits the resources that the snippets of a single evaluation may use in
+ * process. Evaluations that exceed the budget are stopped at their next
+ * preemption checkpoint.
+ *
+ * @param maxInstructions Estimated number of bytecode instructions that an
+ *   evaluation may run, zero removes the limit.
+ * @param maxAllocatedBytes Bytes that the threads of an evaluation may
+ *   allocate, zero removes the limit.
+ */
+public record ExecutionBudget(long maxInstructions, long maxAllocatedBytes) {
+  public ExecutionBudget {
+    if (maxInstructions < 0) {
+      throw new IllegalArgumentException("maxInstructions must not be negative");
+    }
+    if (maxAllocatedBytes < 0) {
+      throw new IllegalArgumentException("maxAllocatedBytes must not be negative");
+    }
+  }
+
+  private static final ExecutionBudget unlimited = new ExecutionBudget(0, 0);
+
+  public static ExecutionBudget unlimited() {
+    return unlimited;
+  }
+
+  public boolean isUnlimited() {
+    return maxInstructions == 0 && maxAllocatedBytes == 0;
+  }
+}
@@ -0,0 +1,71 @@
+package jsheets.evaluation.shell.environment.sandbox;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import jdk.jshell.execution.DirectExecutionControl;
+import jsheets.evaluation.shell.environment.ClassFileStoreLoader;
+import jsheets.evaluation.shell.environment.PreemptionCheckpoints;
+
+/**
+ * Runs snippets in the current process and stops them once they exceed
+ * their budget. Controls are generated for the shell of a single
+ * evaluation, so all snippets of the evaluation share one budget, including
+ * the threads that they start. Once the budget is exceeded, every later
+ * snippet is stopped at its first checkpoint.
+ */
+final class MeteredExecutionControl extends DirectExecutionControl {
+  /* Reported as the class of the exception that stopped the execution */
+  private static final String budgetExceededName = "ExecutionBudgetExceeded";
+
+  static MeteredExecutionControl create(
+    ClassFileStoreLoader loader,
+    ExecutionBudget budget
+  ) {
+    return new MeteredExecutionControl(loader, budget);
+  }
+
+  private final ClassFileStoreLoader loader;
+  private final ExecutionBudget budget;
+  private final BudgetMeter meter;
+
+  private MeteredExecutionControl(ClassFileStoreLoader loader, ExecutionBudget budget) {
+    super(loader);
+    this.loader = loader;
+    this.budget = budget;
+    this.meter = BudgetMeter.start(budget);
+  }
+
+  @Override
+  protected String invoke(Method method) throws Exception {
+    if (budget.isUnlimited()) {
+      return super.invoke(method);
+    }
+    // The checkpoint class is only loaded with the first snippet
+    loader.meter(meter);
+    meter.enter();
+    try {
+      return super.invoke(method);
+    } catch (InvocationTargetException failure) {
+      var exceededLimit = meter.exceededLimit();
+      if (exceededLimit.isPresent() && PreemptionCheckpoints.isPreemption(failure)) {
+        throw new UserException(
+          exceededLimit.get(),
+          budgetExceededName,
+          failure.getCause().getStackTrace()
+        );
+      }
+      throw failure;
+    }
+  }
+
+  @Override
+  public void stop() {
+    loader.preempt();
+  }
+
+  @Override
+  public String toString() {
+    return "MeteredExecutionControl(budget=%s)".formatted(budget);
+  }
+}
@@ -1,7 +1,16 @@
 package jsheets.evaluation.shell.environment.sandbox;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import jdk.jshell.spi.ExecutionControl;
 import jsheets.evaluation.sandbox.SandboxBytecodeCheck;
@@ -9,34 +18,186 @@ import jsheets.evaluation.sandbox.validation.Analysis;
 import jsheets.evaluation.sandbox.validation.Rule;
 import jsheets.evaluation.shell.environment.ClassFileStore;
 
+/**
+ * Checks classes before they are loaded into the shell.
+ * <p>
+ * The violations of classes are cached by the SHA-256 digest of their
+ * bytecode, so that classes of snippets that are evaluated again without
+ * changes are not verified again. The cache keeps the most recently used
+ * verdicts.
+ * <p>
+ * The rules can be {@link #update updated} while classes are checked. Every
+ * update creates a new version, and {@link #pin() pinned} checks keep the
+ * version they were pinned to. Verdicts are cached per version, so that
+ * verdicts of older rules are never reused.
+ */
 public final class SandboxClassFileCheck implements ClassFileStore {
+  private static final int defaultVerdictCapacity = 4096;
+
   public static SandboxClassFileCheck of(Collection<Rule> rules) {
+    return of(rules, defaultVerdictCapacity);
+  }
+
+  public static SandboxClassFileCheck of(Collection<Rule> rules, int verdictCapacity) {
     Objects.requireNonNull(rules, "rules");
-    return new SandboxClassFileCheck(rules);
+    if (verdictCapacity < 0) {
+      throw new IllegalArgumentException("verdictCapacity must not be negative");
+    }
+    return new SandboxClassFileCheck(Version.first(rules), verdictCapacity);
+  }
+
+  private record Version(
+    long number,
+    Collection<Rule> rules,
+    SandboxBytecodeCheck check
+  ) {
+    static Version first(Collection<Rule> rules) {
+      return create(1, rules);
+    }
+
+    static Version create(long number, Collection<Rule> rules) {
+      var copy = List.copyOf(rules);
+      return new Version(number, copy, SandboxBytecodeCheck.withRules(copy));
+    }
+
+    Version next(Collection<Rule> rules) {
+      return create(number + 1, rules);
+    }
   }
 
-  private final Collection<Rule> rules;
+  private record VerdictKey(long version, ByteBuffer digest) {}
+
+  private final AtomicReference<Version> version;
+  private final Lock lock = new ReentrantLock();
+  /* Guarded by lock */
+  private final Map<VerdictKey, Collection<Analysis.Violation>> verdicts;
 
-  private SandboxClassFileCheck(Collection<Rule> rules) {
-    this.rules = rules;
+  private SandboxClassFileCheck(Version version, int verdictCapacity) {
+    this.version = new AtomicReference<>(version);
+    this.verdicts = new LinkedHashMap<>(16, 0.75f, /* accessOrder */ true) {
+      @Override
+      protected boolean removeEldestEntry(
+        Map.Entry<VerdictKey, Collection<Analysis.Violation>> eldest
+      ) {
+        return size() > verdictCapacity;
+      }
+    };
+  }
+
+  /**
+   * Replaces the rules that classes are checked with. Checks that are
+   * already pinned keep using the previous rules.
+   *
+   * @return Number of the new version.
+   */
+  public long update(Collection<Rule> rules) {
+    Objects.requireNonNull(rules, "rules");
+    return version.updateAndGet(current -> current.next(rules)).number();
+  }
+
+  /** Number of the current version, which starts at one. */
+  public long version() {
+    return version.get().number();
+  }
+
+  /** Rules of the current version. */
+  public Collection<Rule> rules() {
+    return version.get().rules();
+  }
+
+  @Override
+  public ClassFileStore pin() {
+    return new PinnedCheck(version.get());
   }
 
   @Override
   public void redefine(ExecutionControl.ClassBytecodes[] bytecodes) {
-    analyze(bytecodes);
+    analyze(version.get(), bytecodes);
   }
 
   @Override
   public void load(ExecutionControl.ClassBytecodes[] bytecodes) {
-    analyze(bytecodes);
+    analyze(version.get(), bytecodes);
+  }
+
+  private final class PinnedCheck implements ClassFileStore {
+    private final Version version;
+
+    private PinnedCheck(Version version) {
+      this.version = version;
+    }
+
+    @Override
+    public void redefine(ExecutionControl.ClassBytecodes[] bytecodes) {
+      analyze(version, bytecodes);
+    }
+
+    @Override
+    public void load(ExecutionControl.ClassBytecodes[] bytecodes) {
+      analyze(version, bytecodes);
+    }
+
+    @Override
+    public String toString() {
+      return "PinnedCheck(version=%d)".formatted(version.number());
+    }
   }
 
-  private void analyze(ExecutionControl.ClassBytecodes[] bytecodes) {
+  private void analyze(Version version, ExecutionControl.ClassBytecodes[] bytecodes) {
     var analysis = Analysis.create();
-    var check = SandboxBytecodeCheck.withRules(rules);
+    var digest = createDigest();
     for (var binary : bytecodes) {
-      check.run(analysis, binary.bytecodes());
+      var key = new VerdictKey(
+        version.number(),
+        ByteBuffer.wrap(digest.digest(binary.bytecodes()))
+      );
+      for (var violation : findViolations(version, key, binary.bytecodes())) {
+        analysis.report(violation);
+      }
     }
     analysis.reportViolations();
   }
-}
\ No newline at end of file
+
+  private Collection<Analysis.Violation> findViolations(
+    Version version,
+    VerdictKey key,
+    byte[] bytecodes
+  ) {
+    var cached = lookupVerdict(key);
+    if (cached != null) {
+      return cached;
+    }
+    var analysis = Analysis.create();
+    version.check().run(analysis, bytecodes);
+    var violations = analysis.violations();
+    lock.lock();
+    try {
+      verdicts.put(key, violations);
+    } finally {
+      lock.unlock();
+    }
+    return violations;
+  }
+
+  private Collection<Analysis.Violation> lookupVerdict(VerdictKey key) {
+    lock.lock();
+    try {
+      return verdicts.get(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException missingAlgorithm) {
+      throw new IllegalStateException("SHA-256 is not supported", missingAlgorithm);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SandboxClassFileCheck(version=%d)".formatted(version());
+  }
+}
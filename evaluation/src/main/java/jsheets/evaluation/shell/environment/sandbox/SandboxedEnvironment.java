@@ -1,6 +1,5 @@
 package jsheets.evaluation.shell.environment.sandbox;
 
-import jdk.jshell.execution.DirectExecutionControl;
 import jdk.jshell.spi.ExecutionControl;
 import jdk.jshell.spi.ExecutionControlProvider;
 import jdk.jshell.spi.ExecutionEnv;
@@ -14,18 +13,63 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.function.Supplier;
 
+/**
+ * Runs snippets in the current process after the sandbox checked them.
+ * <p>
+ * Without a budget, snippets may use as much processor time and memory as
+ * they like. Environments that are created with an {@link ExecutionBudget}
+ * meter the instructions and allocations of every evaluation at its
+ * preemption checkpoints and stop evaluations that exceed the budget.
+ * Classes that can not be instrumented with checkpoints are rejected.
+ */
 public final class SandboxedEnvironment
   implements ExecutionEnvironment, ExecutionControlProvider {
 
   public static SandboxedEnvironment create(Collection<Rule> rules) {
-    Objects.requireNonNull(rules);
-    return new SandboxedEnvironment(() -> SandboxClassFileCheck.of(rules));
+    return create(rules, ExecutionBudget.unlimited());
+  }
+
+  public static SandboxedEnvironment create(
+    Collection<Rule> rules,
+    ExecutionBudget budget
+  ) {
+    Objects.requireNonNull(rules, "rules");
+    // Shells share the check and its cached verdicts
+    return create(SandboxClassFileCheck.of(rules), budget);
+  }
+
+  /**
+   * Creates an environment that checks classes with the shared check, whose
+   * rules may be updated while the environment is used.
+   */
+  public static SandboxedEnvironment create(
+    SandboxClassFileCheck check,
+    ExecutionBudget budget
+  ) {
+    Objects.requireNonNull(check, "check");
+    Objects.requireNonNull(budget, "budget");
+    return new SandboxedEnvironment(() -> check, budget);
   }
 
   private final Supplier<ClassFileStore> loader;
+  private final ExecutionBudget budget;
 
-  private SandboxedEnvironment(Supplier<ClassFileStore> loader) {
+  private SandboxedEnvironment(
+    Supplier<ClassFileStore> loader,
+    ExecutionBudget budget
+  ) {
     this.loader = loader;
+    this.budget = budget;
+  }
+
+  public ExecutionBudget budget() {
+    return budget;
+  }
+
+  /* Budgets are spent by a shell's evaluation, shells can not be reused */
+  @Override
+  public boolean supportsShellReuse() {
+    return budget.isUnlimited();
   }
 
   @Override
@@ -48,6 +92,7 @@ public final class SandboxedEnvironment
     ExecutionEnv environment,
     Map<String, String> parameters
   ) {
-    return new DirectExecutionControl(ClassFileStoreLoader.of(loader.get()));
+    var classLoader = ClassFileStoreLoader.requiringCheckpoints(loader.get().pin());
+    return MeteredExecutionControl.create(classLoader, budget);
   }
 }
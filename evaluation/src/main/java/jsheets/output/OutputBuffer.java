@@ -0,0 +1,146 @@
+package jsheets.output;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+/**
+ * Buffers UTF-8 encoded output in fixed size chunks, which are reused once
+ * the output has been {@link #drain() drained}. Writes do not allocate after
+ * the buffer has grown to the size of the output between two drains.
+ * <p>
+ * Text is encoded directly into the chunks. The bytes of a character that
+ * was only partially written are kept until the character is complete, so
+ * that drained output always ends on a character boundary.
+ */
+public final class OutputBuffer extends OutputStream {
+  private static final int chunkSize = 8 * 1024;
+  /* Chunks beyond this number are released when the buffer is drained */
+  private static final int retainedChunks = 8;
+
+  private final List<byte[]> chunks = new ArrayList<>();
+  private int size;
+
+  public OutputBuffer() {}
+
+  @Override
+  public synchronized void write(int value) {
+    append(value);
+  }
+
+  @Override
+  public synchronized void write(byte[] bytes, int offset, int length) {
+    Objects.checkFromIndexSize(offset, length, bytes.length);
+    while (length > 0) {
+      var chunk = currentChunk();
+      int position = size % chunkSize;
+      int count = Math.min(length, chunkSize - position);
+      System.arraycopy(bytes, offset, chunk, position, count);
+      offset += count;
+      length -= count;
+      size += count;
+    }
+  }
+
+  /**
+   * Writes the UTF-8 encoding of the text. Unpaired surrogates are replaced
+   * with {@code ?}, like they are by {@link String#getBytes}.
+   */
+  public synchronized void writeUtf8(CharSequence text) {
+    int length = text.length();
+    for (int index = 0; index < length; index++) {
+      char character = text.charAt(index);
+      if (character < 0x80) {
+        append(character);
+      } else if (character < 0x800) {
+        append(0xC0 | (character >> 6));
+        append(0x80 | (character & 0x3F));
+      } else if (!Character.isSurrogate(character)) {
+        append(0xE0 | (character >> 12));
+        append(0x80 | ((character >> 6) & 0x3F));
+        append(0x80 | (character & 0x3F));
+      } else if (Character.isHighSurrogate(character)
+        && index + 1 < length
+        && Character.isLowSurrogate(text.charAt(index + 1))) {
+        int codePoint = Character.toCodePoint(character, text.charAt(++index));
+        append(0xF0 | (codePoint >> 18));
+        append(0x80 | ((codePoint >> 12) & 0x3F));
+        append(0x80 | ((codePoint >> 6) & 0x3F));
+        append(0x80 | (codePoint & 0x3F));
+      } else {
+        append('?');
+      }
+    }
+  }
+
+  private void append(int value) {
+    currentChunk()[size % chunkSize] = (byte) value;
+    size++;
+  }
+
+  private byte[] currentChunk() {
+    int index = size / chunkSize;
+    if (index == chunks.size()) {
+      chunks.add(new byte[chunkSize]);
+    }
+    return chunks.get(index);
+  }
+
+  public synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Number of bytes that are buffered and not yet drained. */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Removes the buffered output and returns it. Bytes of a trailing
+   * character that is incomplete stay in the buffer.
+   */
+  public synchronized ByteString drain() {
+    int complete = size - countIncompleteBytes();
+    if (complete == 0) {
+      return ByteString.EMPTY;
+    }
+    var drained = new byte[complete];
+    for (int offset = 0; offset < complete; offset += chunkSize) {
+      var chunk = chunks.get(offset / chunkSize);
+      System.arraycopy(chunk, 0, drained, offset, Math.min(chunkSize, complete - offset));
+    }
+    int remaining = size - complete;
+    for (int index = 0; index < remaining; index++) {
+      int position = complete + index;
+      chunks.get(0)[index] = chunks.get(position / chunkSize)[position % chunkSize];
+    }
+    size = remaining;
+    while (chunks.size() > retainedChunks) {
+      chunks.remove(chunks.size() - 1);
+    }
+    // The array is never written again, wrapping it saves another copy
+    return UnsafeByteOperations.unsafeWrap(drained);
+  }
+
+  /* Finds the lead byte of the last character and compares its length */
+  private int countIncompleteBytes() {
+    for (int count = 1; count <= Math.min(4, size); count++) {
+      int position = size - count;
+      int value = chunks.get(position / chunkSize)[position % chunkSize] & 0xFF;
+      if ((value & 0xC0) != 0x80) {
+        int expected = value >= 0xF0 ? 4 : value >= 0xE0 ? 3 : value >= 0xC0 ? 2 : 1;
+        return expected > count ? count : 0;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return "OutputBuffer(size=%d, chunks=%d)".formatted(size, chunks.size());
+  }
+}
@@ -11,6 +11,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 /**
@@ -22,7 +24,9 @@ import java.util.function.Consumer;
  * the actual application to be ignored.
  * <p>
  * Each {@link ThreadGroup} has an associated buffer that is used to store
- * a message before it is sent to the listener.
+ * a message before it is sent to the listener. Buffers are guarded by a
+ * {@link Lock}, since listeners may block while it is held and blocking in a
+ * monitor pins virtual threads to their carrier.
  */
 public final class TenantBasedOutput extends ListeningPrintStream {
   public static final class Installation implements AutoCloseable {
@@ -104,6 +108,7 @@ public final class TenantBasedOutput extends ListeningPrintStream {
   private final Consumer<String> fallback;
   private final Map<String, Consumer<String>> groupListeners = new ConcurrentHashMap<>();
   private final Map<String, StringBuilder> buffers = new HashMap<>();
+  private final Lock lock = new ReentrantLock();
 
   private TenantBasedOutput(Consumer<String> fallback) {
     super(new PrintStream(OutputStream.nullOutputStream()));
@@ -112,8 +117,11 @@ public final class TenantBasedOutput extends ListeningPrintStream {
 
   public void removeGroup(String name) {
     groupListeners.remove(name);
-    synchronized (this) {
+    lock.lock();
+    try {
       buffers.remove(name);
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -122,12 +130,17 @@ public final class TenantBasedOutput extends ListeningPrintStream {
   }
 
   @Override
-  public synchronized boolean capture(String text) {
+  public boolean capture(String text) {
     var group = currentGroup();
-    var buffer = removeBuffer(group);
-    var message = buffer == null ? text : buffer.append(text).toString();
-    write(group, message);
-    return true;
+    lock.lock();
+    try {
+      var buffer = removeBuffer(group);
+      var message = buffer == null ? text : buffer.append(text).toString();
+      write(group, message);
+      return true;
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Nullable
@@ -143,8 +156,13 @@ public final class TenantBasedOutput extends ListeningPrintStream {
   }
 
   @Override
-  public synchronized void flush() {
-    flushToGroup(currentGroup());
+  public void flush() {
+    lock.lock();
+    try {
+      flushToGroup(currentGroup());
+    } finally {
+      lock.unlock();
+    }
   }
 
   private void flushToGroup(@Nullable ThreadGroup group) {
@@ -169,7 +187,7 @@ public final class TenantBasedOutput extends ListeningPrintStream {
     }
   }
 
-  private synchronized void write(@Nullable ThreadGroup group, String content) {
+  private void write(@Nullable ThreadGroup group, String content) {
     if (group == null) {
       fallback.accept(content);
       return;
@@ -1,46 +1,100 @@
 package jsheets.source;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.Optional;
+
 import com.google.common.base.MoreObjects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
-import java.time.Clock;
-import java.time.Instant;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import jsheets.SnippetSources;
 
+/**
+ * Bounded store of snippet sources that are addressed by their hash.
+ * Clients may reference sources that they sent before by their hash alone,
+ * instead of sending the same code on every evaluation.
+ * <p>
+ * The hash is the hex encoded SHA-256 digest over the code components,
+ * ordered by their {@code order}. Every component contributes its id, order
+ * and code, strings are encoded as UTF-8 and prefixed with their length in
+ * bytes, numbers are encoded as 32 bit little-endian integers.
+ * Sources are always saved under the hash that is computed by the store,
+ * hashes that are sent by clients are not trusted.
+ */
 public final class SharedSources {
-  public static SharedSources createEmpty() {
-    return createEmpty(Clock.systemUTC());
+  /**
+   * @param capacity Maximum number of characters of code that are stored.
+   */
+  public static SharedSources withCapacity(long capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity may not be negative");
+    }
+    return new SharedSources(capacity);
   }
 
-  public static SharedSources createEmpty(Clock clock) {
-    Objects.requireNonNull(clock, "a clock is required to track update time");
-    return new SharedSources(clock, new ConcurrentHashMap<>());
+  private final long capacity;
+  private final Cache<String, SnippetSources> sources;
+
+  private SharedSources(long capacity) {
+    this.capacity = capacity;
+    this.sources = CacheBuilder.newBuilder()
+      .maximumWeight(capacity)
+      .<String, SnippetSources>weigher((hash, entry) -> weigh(entry))
+      .build();
   }
 
-  public record Entry(String snippet, String hash, Instant lastUpdate) { }
+  private static int weigh(SnippetSources sources) {
+    long length = 0;
+    for (var component : sources.getCodeComponentsList()) {
+      length += component.getCode().length();
+    }
+    return (int) Math.min(Integer.MAX_VALUE, length);
+  }
 
-  private final Clock clock;
-  private final Map<String, Entry>  hashes;
+  public Optional<SnippetSources> find(String hash) {
+    Objects.requireNonNull(hash, "hash");
+    return Optional.ofNullable(sources.getIfPresent(hash));
+  }
 
-  private SharedSources(Clock clock, Map<String, Entry> hashes) {
-    this.hashes = hashes;
-    this.clock = clock;
+  /**
+   * Saves the sources under their computed hash and returns them with that
+   * hash, which may differ from the hash they were sent with.
+   */
+  public SnippetSources save(SnippetSources snippetSources) {
+    Objects.requireNonNull(snippetSources, "snippetSources");
+    var hashed = snippetSources.toBuilder()
+      .setHash(computeHash(snippetSources))
+      .build();
+    sources.put(hashed.getHash(), hashed);
+    return hashed;
   }
 
-  public boolean has(String snippet, Entry hash) {
-    var knownHash = hashes.get(snippet);
-    return knownHash != null && knownHash.equals(hash);
+  public static String computeHash(SnippetSources sources) {
+    var hasher = Hashing.sha256().newHasher();
+    sources.getCodeComponentsList().stream()
+      .sorted(Comparator.comparing(SnippetSources.CodeComponent::getOrder))
+      .forEachOrdered(component -> {
+        putString(hasher, component.getId());
+        hasher.putInt(component.getOrder());
+        putString(hasher, component.getCode());
+      });
+    return hasher.hash().toString();
   }
 
-  public void save(String snippet, String hash) {
-    hashes.put(snippet, new Entry(snippet, hash, clock.instant()));
+  private static void putString(Hasher hasher, String value) {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    hasher.putInt(bytes.length).putBytes(bytes);
   }
 
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
-      .add("hashes", hashes)
+      .add("capacity", capacity)
+      .add("size", sources.size())
       .toString();
   }
 }
@@ -0,0 +1,238 @@
+package jsheets.source;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsheets.EvaluateResponse;
+import jsheets.MissingSources;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
+import jsheets.SourceCachingPolicy;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+
+/**
+ * Resolves sources that are only referenced by their hash from the
+ * {@link SharedSources} before starting an evaluation.
+ * <p>
+ * If the store does not hold some of the sources, the listener receives
+ * {@link MissingSources} and the evaluation is only started after the client
+ * supplied them through {@link Evaluation#supplySources(Collection)}.
+ * Sources are only requested once, an evaluation that still misses sources
+ * after they were supplied is closed. So is an evaluation whose sources are
+ * not supplied before the timeout, it would otherwise hold its resources
+ * for clients that went away.
+ */
+public final class SharedSourcesEngine implements EvaluationEngine {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private static final Duration defaultSourcesTimeout = Duration.ofSeconds(30);
+
+  public static SharedSourcesEngine of(
+    EvaluationEngine engine,
+    SharedSources sources
+  ) {
+    return of(engine, sources, defaultSourcesTimeout);
+  }
+
+  /**
+   * @param sourcesTimeout Time that evaluations wait for missing sources
+   *   before they are closed.
+   */
+  public static SharedSourcesEngine of(
+    EvaluationEngine engine,
+    SharedSources sources,
+    Duration sourcesTimeout
+  ) {
+    Objects.requireNonNull(engine, "engine");
+    Objects.requireNonNull(sources, "sources");
+    Objects.requireNonNull(sourcesTimeout, "sourcesTimeout");
+    if (sourcesTimeout.isNegative() || sourcesTimeout.isZero()) {
+      throw new IllegalArgumentException("sourcesTimeout must be positive");
+    }
+    return new SharedSourcesEngine(engine, sources, sourcesTimeout);
+  }
+
+  /* Timeouts are cheap, engines share a single thread for them */
+  private static final class Timeouts {
+    static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("shared-sources-timeout-%d")
+        .build());
+  }
+
+  private final EvaluationEngine engine;
+  private final SharedSources sources;
+  private final Duration sourcesTimeout;
+
+  private SharedSourcesEngine(
+    EvaluationEngine engine,
+    SharedSources sources,
+    Duration sourcesTimeout
+  ) {
+    this.engine = engine;
+    this.sources = sources;
+    this.sourcesTimeout = sourcesTimeout;
+  }
+
+  @Override
+  public Evaluation start(
+    StartEvaluationRequest request,
+    Evaluation.Listener listener
+  ) {
+    var negotiation = new Negotiation(request, listener);
+    negotiation.resolve();
+    return negotiation;
+  }
+
+  /* Sources without code are complete and never have to be requested */
+  private static final String emptyHash =
+    SharedSources.computeHash(SnippetSources.getDefaultInstance());
+
+  private final class Negotiation implements Evaluation {
+    private final Evaluation.Listener listener;
+    private StartEvaluationRequest request;
+    private Evaluation evaluation;
+    private ScheduledFuture<?> timeout;
+    private boolean suppliedSources;
+    private boolean closed;
+
+    private Negotiation(
+      StartEvaluationRequest request,
+      Evaluation.Listener listener
+    ) {
+      this.request = request;
+      this.listener = listener;
+    }
+
+    synchronized void resolve() {
+      var resolved = new ArrayList<SnippetSources>();
+      var missing = new ArrayList<Snippet.Reference>();
+      for (var source : request.getSourcesList()) {
+        resolveSources(source).ifPresentOrElse(
+          resolved::add,
+          () -> missing.add(source.getReference())
+        );
+      }
+      if (missing.isEmpty()) {
+        evaluation = engine.start(replaceSources(resolved), listener);
+      } else if (suppliedSources) {
+        log.atWarning().log("sources are still missing after they were supplied");
+        close();
+      } else {
+        requestSources(missing);
+      }
+    }
+
+    private Optional<SnippetSources> resolveSources(SnippetSources source) {
+      if (source.getCodeComponentsCount() > 0) {
+        return Optional.of(sources.save(source));
+      }
+      if (source.getHash().isEmpty() || source.getHash().equals(emptyHash)) {
+        return Optional.of(source);
+      }
+      // Stored sources carry the reference of the request that saved them
+      return sources.find(source.getHash())
+        .map(stored -> stored.toBuilder()
+          .setReference(source.getReference())
+          .build());
+    }
+
+    private StartEvaluationRequest replaceSources(List<SnippetSources> resolved) {
+      return request.toBuilder()
+        .clearSources()
+        .addAllSources(resolved)
+        .build();
+    }
+
+    private void requestSources(List<Snippet.Reference> missing) {
+      timeout = Timeouts.scheduler.schedule(
+        this::expire,
+        sourcesTimeout.toMillis(),
+        TimeUnit.MILLISECONDS
+      );
+      listener.send(EvaluateResponse.newBuilder()
+        .addMissingSources(MissingSources.newBuilder()
+          .addAllMissingSnippets(missing)
+          .setCachingPolicy(SourceCachingPolicy.POLICY_HASH_ADDRESSED))
+        .build());
+    }
+
+    @Override
+    public synchronized void supplySources(Collection<SnippetSources> supplied) {
+      if (evaluation != null || closed || suppliedSources) {
+        throw new IllegalStateException("evaluation does not wait for sources");
+      }
+      cancelTimeout();
+      var suppliedByReference = new HashMap<Snippet.Reference, SnippetSources>();
+      for (var source : supplied) {
+        suppliedByReference.put(source.getReference(), source);
+      }
+      var merged = request.getSourcesList().stream()
+        .map(source -> suppliedByReference.getOrDefault(source.getReference(), source))
+        .toList();
+      request = replaceSources(merged);
+      suppliedSources = true;
+      resolve();
+    }
+
+    private synchronized void expire() {
+      if (evaluation == null && !closed) {
+        log.atInfo()
+          .atMostEvery(5, TimeUnit.SECONDS)
+          .log("closing evaluation whose sources were not supplied in time");
+        close();
+      }
+    }
+
+    private void cancelTimeout() {
+      if (timeout != null) {
+        timeout.cancel(/* mayInterruptIfRunning */ false);
+        timeout = null;
+      }
+    }
+
+    @Override
+    public synchronized void stop() {
+      cancelTimeout();
+      if (evaluation != null) {
+        evaluation.stop();
+      } else {
+        close();
+      }
+    }
+
+    private void close() {
+      if (!closed) {
+        closed = true;
+        listener.close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Negotiation(evaluation=%s, suppliedSources=%b)"
+        .formatted(evaluation, suppliedSources);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SharedSourcesEngine(engine=%s, sources=%s, sourcesTimeout=%s)"
+      .formatted(engine, sources, sourcesTimeout);
+  }
+}
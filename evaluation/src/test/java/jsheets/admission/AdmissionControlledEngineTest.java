@@ -0,0 +1,126 @@
+package jsheets.admission;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jsheets.EvaluateResponse;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+import jsheets.event.EventSink;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class AdmissionControlledEngineTest {
+  private final List<Evaluation.Listener> started = new ArrayList<>();
+  private final List<Evaluation.Listener> closed = new ArrayList<>();
+
+  /* Evaluations run until their listener is closed by the test */
+  private final EvaluationEngine recordingEngine = (request, listener) -> {
+    started.add(listener);
+    return () -> {};
+  };
+
+  private AdmissionControlledEngine createEngine(int maxConcurrency, int queueCapacity) {
+    return AdmissionControlledEngine.of(
+      recordingEngine,
+      new AdmissionControlledEngine.Options(
+        maxConcurrency,
+        queueCapacity,
+        Duration.ofSeconds(1)
+      ),
+      EventSink.ignore(),
+      Clock.systemUTC()
+    );
+  }
+
+  private Evaluation start(EvaluationEngine engine) {
+    return engine.start(StartEvaluationRequest.getDefaultInstance(), new Evaluation.Listener() {
+      @Override
+      public void close() {
+        closed.add(this);
+      }
+    });
+  }
+
+  @Test
+  public void testEvaluationsBeyondConcurrencyAreQueued() {
+    var engine = createEngine(1, 1);
+    start(engine);
+    start(engine);
+    Assertions.assertEquals(1, started.size());
+    Assertions.assertEquals(1, engine.queuedEvaluations());
+    started.get(0).close();
+    Assertions.assertEquals(2, started.size());
+    Assertions.assertEquals(0, engine.queuedEvaluations());
+    Assertions.assertEquals(1, engine.activeEvaluations());
+    started.get(1).close();
+    Assertions.assertEquals(0, engine.activeEvaluations());
+  }
+
+  @Test
+  public void testSourcesSuppliedWhileStartingArePassedOn() {
+    var supplied = new ArrayList<Collection<SnippetSources>>();
+    var queued = new AtomicReference<Evaluation>();
+    EvaluationEngine requestingEngine = (request, listener) -> {
+      started.add(listener);
+      listener.send(EvaluateResponse.getDefaultInstance());
+      return new Evaluation() {
+        @Override
+        public void stop() {}
+
+        @Override
+        public void supplySources(Collection<SnippetSources> sources) {
+          supplied.add(sources);
+        }
+      };
+    };
+    var engine = AdmissionControlledEngine.of(
+      requestingEngine,
+      new AdmissionControlledEngine.Options(1, 1, Duration.ofSeconds(1)),
+      EventSink.ignore(),
+      Clock.systemUTC()
+    );
+    var request = StartEvaluationRequest.getDefaultInstance();
+    engine.start(request, new Evaluation.Listener() {});
+    queued.set(engine.start(request, new Evaluation.Listener() {
+      @Override
+      public void send(EvaluateResponse response) {
+        queued.get().supplySources(List.of());
+      }
+    }));
+    started.get(0).close();
+    Assertions.assertEquals(2, started.size());
+    Assertions.assertEquals(1, supplied.size());
+  }
+
+  @Test
+  public void testEvaluationsBeyondQueueCapacityAreRejected() {
+    var engine = createEngine(1, 1);
+    start(engine);
+    start(engine);
+    var rejection = Assertions.assertThrows(
+      AdmissionRejectedException.class,
+      () -> start(engine)
+    );
+    Assertions.assertEquals(Duration.ofSeconds(1), rejection.retryAfter());
+  }
+
+  @Test
+  public void testStoppedEvaluationsLeaveTheQueue() {
+    var engine = createEngine(1, 1);
+    var running = start(engine);
+    var queued = start(engine);
+    queued.stop();
+    Assertions.assertEquals(0, engine.queuedEvaluations());
+    Assertions.assertEquals(1, closed.size());
+    running.stop();
+    Assertions.assertEquals(1, started.size());
+    Assertions.assertEquals(0, engine.activeEvaluations());
+  }
+}
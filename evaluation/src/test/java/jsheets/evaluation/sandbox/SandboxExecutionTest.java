@@ -1,9 +1,11 @@
 package jsheets.evaluation.sandbox;
 
+import jdk.jshell.EvalException;
 import jdk.jshell.JShell;
 import jsheets.evaluation.sandbox.access.AccessGraph;
 import jsheets.evaluation.sandbox.validation.Analysis;
 import jsheets.evaluation.sandbox.validation.ForbiddenMemberFilter;
+import jsheets.evaluation.shell.environment.sandbox.ExecutionBudget;
 import jsheets.evaluation.shell.environment.sandbox.SandboxedEnvironment;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -34,18 +36,78 @@ public final class SandboxExecutionTest {
     }
   }
 
+  @Test
+  public void testDeniedWithCachedVerdict() {
+    var environment = createSandboxedEnvironment();
+    // The second evaluation is denied by the verdict of the first one
+    for (int evaluation = 0; evaluation < 2; evaluation++) {
+      var shell = createShell(environment);
+      var failure = Assertions.assertThrows(
+        RuntimeException.class,
+        () -> shell.eval("System.err.println(\"Hello, World!\")")
+      );
+      Assertions.assertEquals(
+        List.of(
+          new ForbiddenMemberFilter.ForbiddenField("java.lang.System", "err")
+        ),
+        Analysis.captureViolations(failure).toList()
+      );
+    }
+  }
+
+  @Test
+  public void testStoppedAtInstructionBudget() {
+    var environment = SandboxedEnvironment.create(
+      List.of(),
+      new ExecutionBudget(1_000_000, 0)
+    );
+    var shell = createShell(environment);
+    var events = shell.eval("while (true) {}");
+    var failure = events.get(0).exception();
+    Assertions.assertTrue(failure instanceof EvalException);
+    Assertions.assertEquals(
+      "ExecutionBudgetExceeded",
+      ((EvalException) failure).getExceptionClassName()
+    );
+    // The budget is shared by all snippets of the evaluation
+    var next = shell.eval("1 + 1").get(0).exception();
+    Assertions.assertTrue(next instanceof EvalException);
+    Assertions.assertEquals(
+      "ExecutionBudgetExceeded",
+      ((EvalException) next).getExceptionClassName()
+    );
+  }
+
+  @Test
+  public void testBudgetedShellsAreNotReused() {
+    var budgeted = SandboxedEnvironment.create(
+      List.of(),
+      new ExecutionBudget(1_000_000, 0)
+    );
+    Assertions.assertFalse(budgeted.supportsShellReuse());
+    Assertions.assertTrue(createSandboxedEnvironment().supportsShellReuse());
+  }
+
   private JShell createSandboxedShell() {
+    return createShell(createSandboxedEnvironment());
+  }
+
+  private SandboxedEnvironment createSandboxedEnvironment() {
     var accessGraph = AccessGraph.of(
       "java.lang.Object",
       "java.lang.System.out",
       "java.io.PrintStream#println"
     );
+    return SandboxedEnvironment.create(
+      List.of(ForbiddenMemberFilter.create(accessGraph))
+    );
+  }
+
+  private JShell createShell(SandboxedEnvironment environment) {
     return JShell.builder()
       .out(System.out)
       .err(System.err)
-      .executionEngine(
-        SandboxedEnvironment.create(List.of(ForbiddenMemberFilter.create(accessGraph))),
-        Map.of()
-      ).build();
+      .executionEngine(environment, Map.of())
+      .build();
   }
 }
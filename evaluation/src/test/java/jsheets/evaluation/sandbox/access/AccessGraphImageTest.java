@@ -0,0 +1,90 @@
+package jsheets.evaluation.sandbox.access;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AccessGraphImageTest {
+  private static final String source = String.join("\n",
+    "java.lang",
+    "java.util.List",
+    "java.lang.Thread#sleep",
+    "java.lang.System",
+    "!java.lang.System#exit",
+    "a.b.c.Foo#run(String[], int):void",
+    "a.b.c.Foo#run(int):void",
+    "!a.b.c.Foo#run(long):void",
+    "a.b.\u00e4.Bar"
+  );
+
+  private static final CompiledAccessGraph compiled =
+    AccessGraph.of(source.split("\n")).compile();
+
+  @Test
+  public void testVerdictsMatchCompiledGraph() {
+    var image = AccessGraphImage.of(ByteBuffer.wrap(AccessGraphImage.compile(source)));
+    var keys = List.of(
+      "java.io",
+      "java.lang",
+      "java.util.List",
+      "java.util.Map",
+      "java.lang.System.out",
+      "java.lang.System#exit",
+      "a.b.c.Foo",
+      "a.b.\u00e4.Bar",
+      "a.b.\u00f6.Bar"
+    );
+    for (var key : keys) {
+      Assertions.assertEquals(
+        compiled.isPermitted(AccessKey.dotSeparated(key)),
+        image.isPermitted(AccessKey.dotSeparated(key)),
+        key
+      );
+    }
+    var methods = List.of(
+      "java.lang.System#exit(int):void",
+      "java.lang.System#nanoTime():long",
+      "java.lang.Thread#sleep(long):void",
+      "java.util.List#add(java.lang.Object):boolean",
+      "java.util.Map#get(java.lang.Object):java.lang.Object",
+      "a.b.c.Foo#run(String[], int):void",
+      "a.b.c.Foo#run(int):void",
+      "a.b.c.Foo#run(long):void",
+      "a.b.c.Foo#run():void"
+    );
+    for (var method : methods) {
+      var signature = MethodSignature.parse(method);
+      Assertions.assertEquals(
+        compiled.isMethodPermitted(signature),
+        image.isMethodPermitted(signature),
+        method
+      );
+    }
+  }
+
+  @Test
+  public void testMappedImage() throws Exception {
+    var file = Files.createTempFile("accessGraph", ".bin");
+    try {
+      Files.write(file, AccessGraphImage.compile(source));
+      var image = AccessGraphImage.map(file);
+      Assertions.assertTrue(image.isCompiledFrom(source));
+      Assertions.assertFalse(image.isCompiledFrom(source + "\njava.io"));
+      Assertions.assertTrue(image.isFieldPermitted("java.lang.System", "out"));
+      Assertions.assertFalse(image.isFieldPermitted("java.io.File", "separator"));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testRejectsOtherFiles() {
+    Assertions.assertThrows(
+      IllegalArgumentException.class,
+      () -> AccessGraphImage.of(ByteBuffer.wrap(source.getBytes()))
+    );
+  }
+}
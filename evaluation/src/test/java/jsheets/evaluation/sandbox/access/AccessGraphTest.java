@@ -34,6 +34,16 @@ public class AccessGraphTest {
     Assertions.assertFalse(graph.isMethodPermitted(MethodSignature.parse("a.b.c.Foo#run():void")));
   }
 
+  @Test
+  public void testMultipleOverloads() {
+    var graph = AccessGraph.of(
+      "a.b.c.Foo#run(int):void",
+      "!a.b.c.Foo#run(long):void"
+    );
+    Assertions.assertTrue(graph.isMethodPermitted(MethodSignature.parse("a.b.c.Foo#run(int):void")));
+    Assertions.assertFalse(graph.isMethodPermitted(MethodSignature.parse("a.b.c.Foo#run(long):void")));
+  }
+
   @Test
   public void testKeySplit() {
     Assertions.assertEquals(
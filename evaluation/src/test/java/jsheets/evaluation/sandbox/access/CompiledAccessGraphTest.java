@@ -0,0 +1,66 @@
+package jsheets.evaluation.sandbox.access;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompiledAccessGraphTest {
+  private static final AccessGraph graph = AccessGraph.of(
+    "java.lang",
+    "java.util.List",
+    "java.lang.Thread#sleep",
+    "java.lang.System",
+    "!java.lang.System#exit",
+    "a.b.c.Foo#run(String[], int):void",
+    "a.b.c.Foo#run(int):void",
+    "!a.b.c.Foo#run(long):void"
+  );
+
+  @Test
+  public void testVerdictsMatchGraph() {
+    var compiled = graph.compile();
+    var keys = List.of(
+      "java.io",
+      "java.lang",
+      "java.util.List",
+      "java.util.Map",
+      "java.lang.System.out",
+      "java.lang.System#exit",
+      "a.b.c.Foo"
+    );
+    for (var key : keys) {
+      Assertions.assertEquals(
+        graph.isPermitted(AccessKey.dotSeparated(key)),
+        compiled.isPermitted(AccessKey.dotSeparated(key)),
+        key
+      );
+    }
+    var methods = List.of(
+      "java.lang.System#exit(int):void",
+      "java.lang.System#nanoTime():long",
+      "java.lang.Thread#sleep(long):void",
+      "java.util.List#add(java.lang.Object):boolean",
+      "java.util.Map#get(java.lang.Object):java.lang.Object",
+      "a.b.c.Foo#run(String[], int):void",
+      "a.b.c.Foo#run(int):void",
+      "a.b.c.Foo#run(long):void",
+      "a.b.c.Foo#run():void"
+    );
+    for (var method : methods) {
+      var signature = MethodSignature.parse(method);
+      Assertions.assertEquals(
+        graph.isMethodPermitted(signature),
+        compiled.isMethodPermitted(signature),
+        method
+      );
+    }
+  }
+
+  @Test
+  public void testFieldAccess() {
+    var compiled = graph.compile();
+    Assertions.assertTrue(compiled.isFieldPermitted("java.lang.System", "out"));
+    Assertions.assertFalse(compiled.isFieldPermitted("java.io.File", "separator"));
+  }
+}
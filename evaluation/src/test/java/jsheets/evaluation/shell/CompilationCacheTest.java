@@ -0,0 +1,99 @@
+package jsheets.evaluation.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import jsheets.EvaluateResponse;
+import jsheets.EvaluationResult;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+import jsheets.evaluation.shell.CompilationCacheEvent.Outcome;
+import jsheets.evaluation.shell.environment.sandbox.SandboxedEnvironment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class CompilationCacheTest {
+  private final List<Outcome> outcomes = new CopyOnWriteArrayList<>();
+
+  private EvaluationEngine createEngine() {
+    return ShellEvaluationEngine.newBuilder()
+      .useEnvironment(SandboxedEnvironment.create(List.of()))
+      .useWorkerPool(Runnable::run)
+      .useBuiltinImports(List.of("java.util.*"))
+      .cacheCompilations(new CompilationCache.Options(1024 * 1024))
+      .withEventSink(event -> {
+        if (event instanceof CompilationCacheEvent cacheEvent) {
+          outcomes.add(cacheEvent.outcome());
+        }
+      })
+      .create();
+  }
+
+  private static StartEvaluationRequest createRequest(String... codes) {
+    var sources = SnippetSources.newBuilder();
+    for (int index = 0; index < codes.length; index++) {
+      sources.addCodeComponents(SnippetSources.CodeComponent.newBuilder()
+        .setId(String.valueOf(index))
+        .setOrder(index)
+        .setCode(codes[index])
+        .build());
+    }
+    return StartEvaluationRequest.newBuilder().addSources(sources).build();
+  }
+
+  private static List<EvaluationResult> evaluate(
+    EvaluationEngine engine,
+    StartEvaluationRequest request
+  ) {
+    var results = new ArrayList<EvaluationResult>();
+    engine.start(request, new Evaluation.Listener() {
+      @Override
+      public void send(EvaluateResponse response) {
+        results.addAll(response.getResultList());
+      }
+    });
+    return results;
+  }
+
+  @Test
+  public void testUnchangedSourcesAreReplayed() {
+    var engine = createEngine();
+    var request = createRequest(
+      "record Point(int x, int y) {}",
+      "var points = new ArrayList<Point>();",
+      "points.add(new Point(1, 2));",
+      "points",
+      "int sum(Point point) { return point.x() + point.y(); }",
+      "sum(points.get(0))"
+    );
+    var compiled = evaluate(engine, request);
+    var replayed = evaluate(engine, request);
+    Assertions.assertEquals(List.of(Outcome.Miss, Outcome.Hit), outcomes);
+    Assertions.assertEquals(compiled, replayed);
+    Assertions.assertEquals(
+      "[Point[x=1, y=2]]",
+      replayed.get(2).getOutput()
+    );
+  }
+
+  @Test
+  public void testChangedSourcesAreCompiled() {
+    var engine = createEngine();
+    evaluate(engine, createRequest("1 + 1"));
+    var results = evaluate(engine, createRequest("1 + 2"));
+    Assertions.assertEquals(List.of(Outcome.Miss, Outcome.Miss), outcomes);
+    Assertions.assertEquals("3", results.get(0).getOutput());
+  }
+
+  @Test
+  public void testFailedInvocationsAreNotCached() {
+    var engine = createEngine();
+    var request = createRequest("Integer.parseInt(\"none\")");
+    evaluate(engine, request);
+    evaluate(engine, request);
+    Assertions.assertEquals(List.of(Outcome.Miss, Outcome.Miss), outcomes);
+  }
+}
@@ -0,0 +1,86 @@
+package jsheets.evaluation.shell;
+
+import java.util.List;
+
+import jsheets.EvaluatedSnippet;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class DependencyOrderTest {
+  private static Snippet.Reference reference(String snippetId) {
+    return Snippet.Reference.newBuilder()
+      .setSheetId("sheet")
+      .setSnippetId(snippetId)
+      .build();
+  }
+
+  private static EvaluatedSnippet snippet(
+    String snippetId,
+    EvaluatedSnippet... dependencies
+  ) {
+    return EvaluatedSnippet.newBuilder()
+      .setReference(reference(snippetId))
+      .addAllDependencies(List.of(dependencies))
+      .build();
+  }
+
+  private static SnippetSources sources(String snippetId) {
+    return SnippetSources.newBuilder()
+      .setReference(reference(snippetId))
+      .build();
+  }
+
+  private static List<String> listSnippetIds(StartEvaluationRequest request) {
+    return request.getSourcesList().stream()
+      .map(source -> source.getReference().getSnippetId())
+      .toList();
+  }
+
+  @Test
+  public void testDependenciesAreEvaluatedFirst() {
+    var library = snippet("library");
+    var request = StartEvaluationRequest.newBuilder()
+      .setSnippet(snippet(
+        "root",
+        snippet("parser", library),
+        snippet("printer", library)
+      ))
+      .addSources(sources("root"))
+      .addSources(sources("printer"))
+      .addSources(sources("unreferenced"))
+      .addSources(sources("parser"))
+      .addSources(sources("library"))
+      .build();
+    Assertions.assertEquals(
+      List.of("library", "parser", "printer", "root", "unreferenced"),
+      listSnippetIds(DependencyOrder.sortSources(request))
+    );
+  }
+
+  @Test
+  public void testDuplicateSourcesAreRejected() {
+    var request = StartEvaluationRequest.newBuilder()
+      .setSnippet(snippet("root", snippet("library")))
+      .addSources(sources("library"))
+      .addSources(sources("root"))
+      .addSources(sources("library"))
+      .build();
+    Assertions.assertThrows(
+      IllegalArgumentException.class,
+      () -> DependencyOrder.sortSources(request)
+    );
+  }
+
+  @Test
+  public void testRequestWithoutDependenciesIsUnchanged() {
+    var request = StartEvaluationRequest.newBuilder()
+      .setSnippet(snippet("root"))
+      .addSources(sources("second"))
+      .addSources(sources("root"))
+      .build();
+    Assertions.assertSame(request, DependencyOrder.sortSources(request));
+  }
+}
@@ -0,0 +1,202 @@
+package jsheets.evaluation.shell;
+
+import java.time.Duration;
+import java.util.List;
+
+import jsheets.EvaluateResponse;
+import jsheets.EvaluatedSnippet;
+import jsheets.EvaluationResult;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+import jsheets.evaluation.shell.environment.sandbox.SandboxedEnvironment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class IncrementalEvaluationTest {
+  private static final Snippet.Reference reference = Snippet.Reference.newBuilder()
+    .setSheetId("sheet")
+    .setSnippetId("snippet")
+    .build();
+
+  private static EvaluationEngine createEngine() {
+    return ShellEvaluationEngine.newBuilder()
+      .useEnvironment(SandboxedEnvironment.create(List.of()))
+      .useWorkerPool(Runnable::run)
+      .useBuiltinImports(List.of("java.util.*"))
+      .evaluateIncrementally(new ShellSessions.Options(1, Duration.ofMinutes(1)))
+      .create();
+  }
+
+  private static StartEvaluationRequest createRequest(String... codes) {
+    return createRequestInSession("", codes);
+  }
+
+  private static StartEvaluationRequest createRequest(
+    EvaluateResponse previous,
+    String... codes
+  ) {
+    return createRequestInSession(previous.getSessionToken(), codes);
+  }
+
+  private static StartEvaluationRequest createRequestInSession(
+    String sessionToken,
+    String... codes
+  ) {
+    var sources = SnippetSources.newBuilder().setReference(reference);
+    for (int index = 0; index < codes.length; index++) {
+      sources.addCodeComponents(SnippetSources.CodeComponent.newBuilder()
+        .setId(String.valueOf(index))
+        .setOrder(index)
+        .setCode(codes[index])
+        .build());
+    }
+    return StartEvaluationRequest.newBuilder()
+      .setSnippet(EvaluatedSnippet.newBuilder()
+        .setReference(reference)
+        .setSessionToken(sessionToken))
+      .addSources(sources)
+      .build();
+  }
+
+  private static EvaluateResponse evaluate(
+    EvaluationEngine engine,
+    StartEvaluationRequest request
+  ) {
+    var responses = EvaluateResponse.newBuilder();
+    engine.start(request, new Evaluation.Listener() {
+      @Override
+      public void send(EvaluateResponse response) {
+        responses.mergeFrom(response);
+      }
+    });
+    return responses.build();
+  }
+
+  private static List<String> listOutputs(
+    EvaluateResponse response,
+    String componentId
+  ) {
+    return response.getResultList().stream()
+      .filter(result -> result.getComponentId().equals(componentId))
+      .map(EvaluationResult::getOutput)
+      .filter(output -> !output.isEmpty())
+      .toList();
+  }
+
+  @Test
+  public void testDependentsOfChangedComponentsAreEvaluated() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest("int x = 1;", "x * 10"));
+    var response = evaluate(engine, createRequest(first, "int x = 2;", "x * 10"));
+    Assertions.assertEquals(List.of("20"), listOutputs(response, "1"));
+  }
+
+  @Test
+  public void testUnchangedComponentsAreNotEvaluated() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest(
+      "var counter = new int[1];",
+      "counter[0] += 1"
+    ));
+    var response = evaluate(engine, createRequest(
+      first,
+      "var counter = new int[1];",
+      "counter[0] += 1",
+      "1 + 1"
+    ));
+    Assertions.assertEquals(List.of("1"), listOutputs(response, "1"));
+    Assertions.assertEquals(List.of("2"), listOutputs(response, "2"));
+  }
+
+  @Test
+  public void testUnrelatedComponentsAreNotEvaluated() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest(
+      "int x = 1;",
+      "x * 10",
+      "var start = System.nanoTime();",
+      "start"
+    ));
+    var response = evaluate(engine, createRequest(
+      first,
+      "int x = 2;",
+      "x * 10",
+      "var start = System.nanoTime();",
+      "start"
+    ));
+    Assertions.assertEquals(List.of("20"), listOutputs(response, "1"));
+    Assertions.assertEquals(1, listOutputs(first, "3").size());
+    Assertions.assertEquals(listOutputs(first, "3"), listOutputs(response, "3"));
+  }
+
+  @Test
+  public void testDependentsOfChangedMethodsAreEvaluated() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest(
+      "int twice(int value) { return 2 * value; }",
+      "int quadruple(int value) { return twice(twice(value)); }",
+      "quadruple(1)"
+    ));
+    var response = evaluate(engine, createRequest(
+      first,
+      "int twice(int value) { return 3 * value; }",
+      "int quadruple(int value) { return twice(twice(value)); }",
+      "quadruple(1)"
+    ));
+    Assertions.assertEquals(List.of("9"), listOutputs(response, "2"));
+  }
+
+  @Test
+  public void testMutatedDeclarationsAreReplayed() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest(
+      "var counter = new int[1];",
+      "counter[0] += 1"
+    ));
+    var response = evaluate(engine, createRequest(
+      first,
+      "var counter = new int[1];",
+      "counter[0] += 2"
+    ));
+    Assertions.assertEquals(List.of("2"), listOutputs(response, "1"));
+  }
+
+  @Test
+  public void testRemovedComponentsAreUndone() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest(
+      "var list = new ArrayList<Integer>();",
+      "list.add(1);",
+      "list.size()"
+    ));
+    var response = evaluate(engine, createRequest(
+      first,
+      "var list = new ArrayList<Integer>();",
+      "list.size()"
+    ));
+    Assertions.assertEquals(List.of("0"), listOutputs(response, "1"));
+  }
+
+  @Test
+  public void testSessionsRequireTheirToken() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest("int x = 1;"));
+    Assertions.assertFalse(first.getSessionToken().isEmpty());
+    var response = evaluate(engine, createRequestInSession("unknown", "x"));
+    Assertions.assertEquals(1, response.getErrorCount());
+    Assertions.assertNotEquals(first.getSessionToken(), response.getSessionToken());
+  }
+
+  @Test
+  public void testErrorsOfUnchangedComponentsAreReported() {
+    var engine = createEngine();
+    var first = evaluate(engine, createRequest("undeclared", "1 + 1"));
+    var response = evaluate(engine, createRequest(first, "undeclared", "1 + 2"));
+    Assertions.assertEquals(1, response.getErrorCount());
+    Assertions.assertEquals("0", response.getError(0).getComponentId());
+    Assertions.assertEquals(List.of("3"), listOutputs(response, "1"));
+  }
+}
@@ -0,0 +1,63 @@
+package jsheets.evaluation.shell;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import jsheets.EvaluateResponse;
+import jsheets.evaluation.Evaluation;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class MessageOutputTest {
+  private static final FlushWheel wheel =
+    FlushWheel.create(Executors.newSingleThreadScheduledExecutor());
+
+  private final BlockingQueue<String> flushed = new LinkedBlockingQueue<>();
+
+  private MessageOutput createOutput(Duration maxFlushDelay) {
+    var output = new MessageOutput(wheel, maxFlushDelay, new Evaluation.Listener() {
+      @Override
+      public void send(EvaluateResponse response) {
+        for (var result : response.getResultList()) {
+          flushed.add(result.getOutput());
+        }
+      }
+    });
+    output.updateCurrentComponentId("0");
+    return output;
+  }
+
+  @Test
+  public void testLinesAreFlushedBeforeTheMaximumDelay() throws Exception {
+    var output = createOutput(Duration.ofMinutes(1));
+    output.writeStandard("line\n");
+    Assertions.assertEquals("line\n", flushed.poll(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testIncompleteLinesWaitForTheMaximumDelay() throws Exception {
+    var output = createOutput(Duration.ofMillis(200));
+    output.writeStandard("incomplete");
+    Assertions.assertNull(flushed.poll(50, TimeUnit.MILLISECONDS));
+    Assertions.assertEquals("incomplete", flushed.poll(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testLargeOutputIsFlushedImmediately() {
+    var output = createOutput(Duration.ofMinutes(1));
+    var text = "x".repeat(32 * 1024);
+    output.writeStandard(text);
+    Assertions.assertEquals(text, flushed.poll());
+  }
+
+  @Test
+  public void testClosedOutputIsNotFlushed() throws Exception {
+    var output = createOutput(Duration.ofMillis(20));
+    output.writeStandard("line\n");
+    output.close();
+    Assertions.assertNull(flushed.poll(200, TimeUnit.MILLISECONDS));
+  }
+}
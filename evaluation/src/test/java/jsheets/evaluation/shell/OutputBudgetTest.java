@@ -0,0 +1,108 @@
+package jsheets.evaluation.shell;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import jsheets.EvaluateResponse;
+import jsheets.EvaluationResult;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.shell.environment.inprocess.EmbeddedEnvironment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class OutputBudgetTest {
+  private static final String printLines = """
+    for (int line = 0; line < 100; line++) {
+      System.out.println("0123456789");
+    }
+    """;
+
+  private static EvaluateResponse evaluate(
+    OutputBudget budget,
+    Clock clock,
+    String... codes
+  ) {
+    var environment = EmbeddedEnvironment.create();
+    try (var installation = environment.install()) {
+      var engine = ShellEvaluationEngine.newBuilder()
+        .useEnvironment(environment)
+        .useWorkerPool(Runnable::run)
+        .withClock(clock)
+        .limitOutput(budget)
+        .create();
+      var sources = SnippetSources.newBuilder();
+      for (int index = 0; index < codes.length; index++) {
+        sources.addCodeComponents(SnippetSources.CodeComponent.newBuilder()
+          .setId(String.valueOf(index))
+          .setOrder(index)
+          .setCode(codes[index]));
+      }
+      var responses = EvaluateResponse.newBuilder();
+      engine.start(
+        StartEvaluationRequest.newBuilder().addSources(sources).build(),
+        new Evaluation.Listener() {
+          @Override
+          public void send(EvaluateResponse response) {
+            responses.mergeFrom(response);
+          }
+        }
+      );
+      return responses.build();
+    }
+  }
+
+  private static String collectOutput(EvaluateResponse response) {
+    var output = new StringBuilder();
+    for (var result : response.getResultList()) {
+      output.append(result.getOutput());
+    }
+    return output.toString();
+  }
+
+  private static final Clock fixedClock =
+    Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+  @Test
+  public void testExceedingOutputIsTruncated() {
+    var response = evaluate(
+      new OutputBudget(100, 1000, OutputBudget.Policy.Truncate),
+      fixedClock,
+      printLines
+    );
+    var output = collectOutput(response);
+    Assertions.assertTrue(output.startsWith("0123456789\n"), output);
+    Assertions.assertTrue(output.contains("[truncated "), output);
+    Assertions.assertEquals(1, response.getErrorCount());
+    Assertions.assertEquals("output", response.getError(0).getKind());
+  }
+
+  @Test
+  public void testExceedingOutputStopsEvaluation() {
+    var response = evaluate(
+      new OutputBudget(100, 1000, OutputBudget.Policy.Stop),
+      fixedClock,
+      printLines,
+      "1 + 1"
+    );
+    Assertions.assertEquals(1, response.getErrorCount());
+    Assertions.assertEquals("output", response.getError(0).getKind());
+    Assertions.assertTrue(response.getResultList().stream()
+      .map(EvaluationResult::getComponentId)
+      .noneMatch("1"::equals));
+  }
+
+  @Test
+  public void testExceedingOutputIsDelayed() {
+    var response = evaluate(
+      new OutputBudget(1000, 1000, OutputBudget.Policy.Block),
+      Clock.systemUTC(),
+      printLines
+    );
+    Assertions.assertEquals("0123456789\n".repeat(100), collectOutput(response));
+    Assertions.assertEquals(List.of(), response.getErrorList());
+  }
+}
@@ -0,0 +1,77 @@
+package jsheets.evaluation.shell;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import jdk.jshell.Snippet;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.shell.environment.sandbox.SandboxedEnvironment;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class ShellPoolTest {
+  private static ShellPool createPool(int maxUses) {
+    var factory = new ShellFactory(
+      SandboxedEnvironment.create(List.of()),
+      List.of("java.util.*")
+    );
+    return ShellPool.create(
+      factory,
+      new ShellPool.Options(1, maxUses),
+      Runnable::run
+    );
+  }
+
+  private static MessageOutput createOutput() {
+    return new MessageOutput(
+      FlushWheel.create(Executors.newSingleThreadScheduledExecutor()),
+      Duration.ofMillis(500),
+      new Evaluation.Listener() {}
+    );
+  }
+
+  @Test
+  public void testDeclarationsAreDroppedOnRelease() {
+    var pool = createPool(10);
+    var first = pool.acquire("sheet", createOutput());
+    first.shell().eval("int value = 10;");
+    first.release(true);
+    var second = pool.acquire("sheet", createOutput());
+    Assertions.assertSame(first.shell(), second.shell());
+    var events = second.shell().eval("value");
+    Assertions.assertEquals(Snippet.Status.REJECTED, events.get(0).status());
+    var imported = second.shell().eval("List.of(1).size()");
+    Assertions.assertEquals("1", imported.get(0).value());
+  }
+
+  @Test
+  public void testUnusableShellIsDiscarded() {
+    var pool = createPool(10);
+    var first = pool.acquire("sheet", createOutput());
+    first.release(false);
+    var second = pool.acquire("sheet", createOutput());
+    Assertions.assertNotSame(first.shell(), second.shell());
+  }
+
+  @Test
+  public void testShellsAreNotPassedBetweenTenants() {
+    var pool = createPool(10);
+    var first = pool.acquire("sheet", createOutput());
+    first.release(true);
+    var other = pool.acquire("other", createOutput());
+    Assertions.assertNotSame(first.shell(), other.shell());
+    other.release(true);
+    var again = pool.acquire("other", createOutput());
+    Assertions.assertSame(other.shell(), again.shell());
+  }
+
+  @Test
+  public void testShellsOfUnknownTenantsAreDiscarded() {
+    var pool = createPool(10);
+    var first = pool.acquire("", createOutput());
+    first.release(true);
+    var second = pool.acquire("", createOutput());
+    Assertions.assertNotSame(first.shell(), second.shell());
+  }
+}
@@ -0,0 +1,110 @@
+package jsheets.evaluation.shell.environment;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jdk.jshell.spi.ExecutionControl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+
+public final class PreemptionCheckpointsTest {
+  private static final String loopingClassName = "REPL.Looping";
+
+  /* public final class Looping { public static void run() { while (true) {} } } */
+  private static byte[] createLoopingClass() {
+    var writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+      Opcodes.V11,
+      Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+      loopingClassName.replace('.', '/'),
+      null,
+      "java/lang/Object",
+      null
+    );
+    var method = writer.visitMethod(
+      Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+      "run",
+      "()V",
+      null,
+      null
+    );
+    method.visitCode();
+    var loop = new Label();
+    method.visitLabel(loop);
+    method.visitJumpInsn(Opcodes.GOTO, loop);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  @Test
+  public void testLoopsStopAtCheckpoints() throws Exception {
+    var loader = ClassFileStoreLoader.of(EmptyClassFileStore.create());
+    Assertions.assertFalse(loader.preempt());
+    loader.load(new ExecutionControl.ClassBytecodes[] {
+      new ExecutionControl.ClassBytecodes(loopingClassName, createLoopingClass())
+    });
+    var run = loader.findClass(loopingClassName).getMethod("run");
+    var execution = CompletableFuture.runAsync(() -> {
+      try {
+        run.invoke(null);
+      } catch (InvocationTargetException failure) {
+        throw new IllegalStateException(failure.getCause());
+      } catch (IllegalAccessException failure) {
+        throw new AssertionError(failure);
+      }
+    });
+    Assertions.assertThrows(
+      TimeoutException.class,
+      () -> execution.get(50, TimeUnit.MILLISECONDS)
+    );
+    Assertions.assertTrue(loader.preempt());
+    var failure = Assertions.assertThrows(
+      ExecutionException.class,
+      () -> execution.get(10, TimeUnit.SECONDS)
+    );
+    Assertions.assertTrue(PreemptionCheckpoints.isPreemption(failure));
+  }
+
+  @Test
+  public void testLoopsStopWhenMeterIsExhausted() throws Exception {
+    var loader = ClassFileStoreLoader.of(EmptyClassFileStore.create());
+    loader.load(new ExecutionControl.ClassBytecodes[] {
+      new ExecutionControl.ClassBytecodes(loopingClassName, createLoopingClass())
+    });
+    var samples = new AtomicInteger();
+    Assertions.assertTrue(loader.meter(() -> samples.incrementAndGet() < 3));
+    var run = loader.findClass(loopingClassName).getMethod("run");
+    var failure = Assertions.assertThrows(
+      InvocationTargetException.class,
+      () -> run.invoke(null)
+    );
+    Assertions.assertTrue(PreemptionCheckpoints.isPreemption(failure));
+    Assertions.assertEquals(3, samples.get());
+    var repeatedFailure = Assertions.assertThrows(
+      InvocationTargetException.class,
+      () -> run.invoke(null)
+    );
+    Assertions.assertTrue(PreemptionCheckpoints.isPreemption(repeatedFailure));
+    Assertions.assertTrue(loader.meter(null));
+  }
+
+  @Test
+  public void testRequiredCheckpointsRejectUninstrumentedClasses() {
+    var loader = ClassFileStoreLoader.requiringCheckpoints(EmptyClassFileStore.create());
+    Assertions.assertThrows(
+      ExecutionControl.ClassInstallException.class,
+      () -> loader.load(new ExecutionControl.ClassBytecodes[] {
+        new ExecutionControl.ClassBytecodes(loopingClassName, new byte[] {0, 1, 2})
+      })
+    );
+  }
+}
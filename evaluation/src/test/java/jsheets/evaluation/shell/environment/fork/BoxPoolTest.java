@@ -0,0 +1,246 @@
+package jsheets.evaluation.shell.environment.fork;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.jdi.VirtualMachine;
+import jsheets.evaluation.shell.environment.fork.BoxLauncher.PreparedBox;
+import jsheets.evaluation.shell.environment.fork.ForkingExecutionControlProvider.Box;
+import jsheets.event.EventSink;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class BoxPoolTest {
+  private static final Clock fixedClock =
+    Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+  private static final Duration maxIdleAge = Duration.ofMinutes(1);
+
+  /* Launches boxes without forking a virtual machine */
+  private static final class FakeLauncher implements BoxPool.Launcher {
+    private final List<PreparedBox> launched = new CopyOnWriteArrayList<>();
+    private final List<PreparedBox> disposed = new CopyOnWriteArrayList<>();
+    private volatile Instant launchTime = Instant.EPOCH;
+
+    @Override
+    public PreparedBox launch() {
+      var box = new PreparedBox(
+        new Box(createMachine(), new FakeProcess()),
+        new Socket(),
+        List.of(),
+        launchTime
+      );
+      launched.add(box);
+      return box;
+    }
+
+    @Override
+    public void dispose(PreparedBox box) {
+      disposed.add(box);
+      box.dispose();
+    }
+  }
+
+  private static VirtualMachine createMachine() {
+    return (VirtualMachine) Proxy.newProxyInstance(
+      VirtualMachine.class.getClassLoader(),
+      new Class<?>[] {VirtualMachine.class},
+      (proxy, method, arguments) -> null
+    );
+  }
+
+  private static final class FakeProcess extends Process {
+    private volatile boolean alive = true;
+
+    @Override
+    public OutputStream getOutputStream() {
+      return OutputStream.nullOutputStream();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return InputStream.nullInputStream();
+    }
+
+    @Override
+    public int waitFor() {
+      return 0;
+    }
+
+    @Override
+    public int exitValue() {
+      return 0;
+    }
+
+    @Override
+    public boolean isAlive() {
+      return alive;
+    }
+
+    @Override
+    public void destroy() {
+      alive = false;
+    }
+  }
+
+  /* Runs launches on the calling thread and rejects the first ones */
+  private static final class RejectingExecutor extends AbstractExecutorService {
+    private final AtomicInteger remainingRejections;
+
+    private RejectingExecutor(int rejections) {
+      this.remainingRejections = new AtomicInteger(rejections);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      if (remainingRejections.getAndDecrement() > 0) {
+        throw new RejectedExecutionException("rejected launch");
+      }
+      task.run();
+    }
+
+    @Override
+    public void shutdown() {}
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return List.of();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return true;
+    }
+  }
+
+  private static BoxPool createPool(
+    FakeLauncher launcher,
+    int size,
+    ExecutorService launchWorkers
+  ) {
+    return BoxPool.create(
+      launcher,
+      new BoxPool.Options(size, 1, maxIdleAge),
+      Executors.newSingleThreadScheduledExecutor(),
+      launchWorkers,
+      EventSink.ignore(),
+      fixedClock
+    );
+  }
+
+  @Test
+  public void testTakenBoxesAreReplaced() throws Exception {
+    var launcher = new FakeLauncher();
+    var pool = createPool(launcher, 2, new RejectingExecutor(0));
+    var taken = pool.take();
+    Assertions.assertEquals(2, pool.warmBoxCount());
+    var next = pool.take();
+    Assertions.assertNotSame(taken, next);
+    Assertions.assertTrue(launcher.launched.contains(next));
+    Assertions.assertEquals(2, pool.warmBoxCount());
+  }
+
+  @Test
+  public void testRejectedLaunchesAreNotCountedAsPending() throws Exception {
+    var launcher = new FakeLauncher();
+    var pool = createPool(launcher, 1, new RejectingExecutor(1));
+    // The launch is rejected and the box is launched synchronously
+    pool.take();
+    Assertions.assertEquals(0, pool.warmBoxCount());
+    Assertions.assertEquals(1, launcher.launched.size());
+    pool.take();
+    Assertions.assertEquals(1, pool.warmBoxCount());
+  }
+
+  @Test
+  public void testExpiredBoxesAreReplaced() throws Exception {
+    var launcher = new FakeLauncher();
+    launcher.launchTime = Instant.EPOCH.minus(maxIdleAge).minusSeconds(1);
+    var pool = createPool(launcher, 1, new RejectingExecutor(0));
+    // The pool is filled before the box is launched synchronously
+    pool.take();
+    var expired = launcher.launched.get(0);
+    launcher.launchTime = Instant.EPOCH;
+    pool.maintain();
+    Assertions.assertEquals(List.of(expired), launcher.disposed);
+    Assertions.assertEquals(1, pool.warmBoxCount());
+    Assertions.assertNotSame(expired, pool.take());
+  }
+
+  @Test
+  public void testDeadBoxesAreNotTaken() throws Exception {
+    var launcher = new FakeLauncher();
+    var pool = createPool(launcher, 1, new RejectingExecutor(0));
+    pool.take();
+    var dead = launcher.launched.get(0);
+    dead.box().process().destroy();
+    var taken = pool.take();
+    Assertions.assertNotSame(dead, taken);
+    Assertions.assertTrue(launcher.disposed.contains(dead));
+  }
+
+  @Test
+  public void testConcurrentTakesDoNotOverfillPool() throws Exception {
+    var launcher = new FakeLauncher();
+    var launchWorkers = Executors.newFixedThreadPool(4);
+    int size = 3;
+    var pool = createPool(launcher, size, launchWorkers);
+    int takers = 8;
+    var start = new CountDownLatch(1);
+    var done = new CountDownLatch(takers);
+    var taken = new CopyOnWriteArrayList<PreparedBox>();
+    for (int taker = 0; taker < takers; taker++) {
+      new Thread(() -> {
+        try {
+          start.await();
+          taken.add(pool.take());
+        } catch (Exception failure) {
+          throw new AssertionError(failure);
+        } finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    start.countDown();
+    Assertions.assertTrue(done.await(10, TimeUnit.SECONDS));
+    launchWorkers.shutdown();
+    Assertions.assertTrue(launchWorkers.awaitTermination(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(takers, taken.size());
+    Assertions.assertTrue(pool.warmBoxCount() <= size);
+    // Every launched box is either taken or warm
+    Assertions.assertEquals(
+      launcher.launched.size(),
+      taken.size() + pool.warmBoxCount()
+    );
+  }
+}
@@ -0,0 +1,44 @@
+package jsheets.evaluation.shell.environment.sandbox;
+
+import java.io.IOException;
+import java.util.List;
+
+import jdk.jshell.spi.ExecutionControl;
+import jsheets.evaluation.sandbox.access.AccessGraph;
+import jsheets.evaluation.sandbox.validation.ForbiddenMemberFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class SandboxClassFileCheckTest {
+  static final class Exiting {
+    static void run() {
+      System.exit(1);
+    }
+  }
+
+  private static ExecutionControl.ClassBytecodes[] readExitingClass() throws IOException {
+    var name = Exiting.class.getName();
+    var path = "/" + name.replace('.', '/') + ".class";
+    try (var input = SandboxClassFileCheckTest.class.getResourceAsStream(path)) {
+      return new ExecutionControl.ClassBytecodes[] {
+        new ExecutionControl.ClassBytecodes(name, input.readAllBytes())
+      };
+    }
+  }
+
+  @Test
+  public void testPinnedChecksKeepTheirVersion() throws Exception {
+    var bytecodes = readExitingClass();
+    var filter = ForbiddenMemberFilter.create(AccessGraph.of("java.lang"));
+    var check = SandboxClassFileCheck.of(List.of(filter));
+    check.load(bytecodes);
+    var pinned = check.pin();
+    var version = check.update(List.of(
+      filter.withAccessGraph(AccessGraph.of("java.lang", "!java.lang.System#exit").compile())
+    ));
+    Assertions.assertEquals(2, version);
+    pinned.load(bytecodes);
+    Assertions.assertThrows(RuntimeException.class, () -> check.load(bytecodes));
+    Assertions.assertThrows(RuntimeException.class, () -> check.pin().load(bytecodes));
+  }
+}
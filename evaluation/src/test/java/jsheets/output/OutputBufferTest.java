@@ -0,0 +1,42 @@
+package jsheets.output;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OutputBufferTest {
+  @Test
+  public void textIsEncodedAsUtf8() {
+    var buffer = new OutputBuffer();
+    var text = "jsheets: \u00E4 \u20AC \uD83D\uDE00 \uD800";
+    buffer.writeUtf8(text);
+    Assertions.assertEquals(
+      new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+      buffer.drain().toStringUtf8()
+    );
+    Assertions.assertTrue(buffer.isEmpty());
+  }
+
+  @Test
+  public void incompleteCharactersAreKept() {
+    var buffer = new OutputBuffer();
+    var bytes = "a\u20AC".getBytes(StandardCharsets.UTF_8);
+    buffer.write(bytes, 0, 2);
+    Assertions.assertEquals("a", buffer.drain().toStringUtf8());
+    buffer.write(bytes, 2, bytes.length - 2);
+    Assertions.assertEquals("\u20AC", buffer.drain().toStringUtf8());
+  }
+
+  @Test
+  public void outputSpansMultipleChunks() {
+    var buffer = new OutputBuffer();
+    var line = "x".repeat(999) + "\n";
+    for (int index = 0; index < 100; index++) {
+      buffer.writeUtf8(line);
+    }
+    Assertions.assertEquals(line.repeat(100), buffer.drain().toStringUtf8());
+    buffer.writeUtf8("reused");
+    Assertions.assertEquals("reused", buffer.drain().toStringUtf8());
+  }
+}
@@ -0,0 +1,158 @@
+package jsheets.source;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jsheets.EvaluateResponse;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class SharedSourcesEngineTest {
+  private final List<StartEvaluationRequest> started = new ArrayList<>();
+  private final List<EvaluateResponse> responses = new ArrayList<>();
+
+  private final EvaluationEngine recordingEngine = (request, listener) -> {
+    started.add(request);
+    return () -> {};
+  };
+
+  private final Evaluation.Listener listener = new Evaluation.Listener() {
+    @Override
+    public void send(EvaluateResponse response) {
+      responses.add(response);
+    }
+  };
+
+  private static SnippetSources createSources(String snippetId, String code) {
+    return SnippetSources.newBuilder()
+      .setReference(Snippet.Reference.newBuilder().setSnippetId(snippetId))
+      .addCodeComponents(SnippetSources.CodeComponent.newBuilder()
+        .setId("0")
+        .setOrder(1)
+        .setCode(code))
+      .build();
+  }
+
+  private static SnippetSources elide(SnippetSources sources) {
+    return sources.toBuilder()
+      .clearCodeComponents()
+      .setHash(SharedSources.computeHash(sources))
+      .build();
+  }
+
+  private static StartEvaluationRequest createRequest(SnippetSources... sources) {
+    return StartEvaluationRequest.newBuilder()
+      .addAllSources(List.of(sources))
+      .build();
+  }
+
+  @Test
+  public void testStoredSourcesAreResolved() {
+    var engine = SharedSourcesEngine.of(
+      recordingEngine,
+      SharedSources.withCapacity(1024)
+    );
+    var sources = createSources("a", "1 + 1");
+    engine.start(createRequest(sources), listener);
+    engine.start(createRequest(elide(sources)), listener);
+    Assertions.assertTrue(responses.isEmpty());
+    Assertions.assertEquals(2, started.size());
+    Assertions.assertEquals(started.get(0), started.get(1));
+  }
+
+  @Test
+  public void testResolvedSourcesKeepReferenceOfRequest() {
+    var engine = SharedSourcesEngine.of(
+      recordingEngine,
+      SharedSources.withCapacity(1024)
+    );
+    engine.start(createRequest(createSources("a", "1 + 1")), listener);
+    var sameCode = createSources("b", "1 + 1");
+    engine.start(createRequest(elide(sameCode)), listener);
+    Assertions.assertEquals(2, started.size());
+    Assertions.assertEquals(
+      sameCode.getReference(),
+      started.get(1).getSources(0).getReference()
+    );
+  }
+
+  @Test
+  public void testMissingSourcesAreRequested() {
+    var engine = SharedSourcesEngine.of(
+      recordingEngine,
+      SharedSources.withCapacity(1024)
+    );
+    var stored = createSources("a", "1 + 1");
+    var unknown = createSources("b", "2 + 2");
+    engine.start(createRequest(stored), listener);
+    started.clear();
+    var evaluation = engine.start(
+      createRequest(elide(stored), elide(unknown)),
+      listener
+    );
+    Assertions.assertTrue(started.isEmpty());
+    Assertions.assertEquals(
+      List.of(unknown.getReference()),
+      responses.get(0).getMissingSources(0).getMissingSnippetsList()
+    );
+    evaluation.supplySources(List.of(unknown));
+    Assertions.assertEquals(1, started.size());
+    Assertions.assertEquals(
+      List.of("1 + 1", "2 + 2"),
+      started.get(0).getSourcesList().stream()
+        .map(source -> source.getCodeComponents(0).getCode())
+        .toList()
+    );
+  }
+
+  @Test
+  public void testNegotiationIsClosedAfterTimeout() throws Exception {
+    var engine = SharedSourcesEngine.of(
+      recordingEngine,
+      SharedSources.withCapacity(1024),
+      Duration.ofMillis(10)
+    );
+    var closed = new CountDownLatch(1);
+    engine.start(
+      createRequest(elide(createSources("a", "1 + 1"))),
+      new Evaluation.Listener() {
+        @Override
+        public void send(EvaluateResponse response) {
+          responses.add(response);
+        }
+
+        @Override
+        public void close() {
+          closed.countDown();
+        }
+      }
+    );
+    Assertions.assertEquals(1, responses.size());
+    Assertions.assertTrue(closed.await(10, TimeUnit.SECONDS));
+    Assertions.assertTrue(started.isEmpty());
+  }
+
+  @Test
+  public void testClientHashesAreNotTrusted() {
+    var engine = SharedSourcesEngine.of(
+      recordingEngine,
+      SharedSources.withCapacity(1024)
+    );
+    var original = createSources("a", "1 + 1");
+    var forged = createSources("a", "2 + 2").toBuilder()
+      .setHash(SharedSources.computeHash(original))
+      .build();
+    engine.start(createRequest(forged), listener);
+    engine.start(createRequest(elide(original)), listener);
+    Assertions.assertEquals(1, started.size());
+    Assertions.assertEquals(1, responses.size());
+  }
+}
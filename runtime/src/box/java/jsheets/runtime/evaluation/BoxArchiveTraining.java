@@ -0,0 +1,110 @@
+package jsheets.runtime.evaluation;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.flogger.FluentLogger;
+
+import jdk.jshell.JShell;
+import jsheets.evaluation.shell.environment.EmptyClassFileStore;
+import jsheets.evaluation.shell.environment.fork.BoxLifecycleEvent;
+import jsheets.evaluation.shell.environment.fork.ForkedExecutionEnvironment;
+
+/**
+ * Creates the dynamic AppCDS archive of forked boxes by running typical
+ * evaluations in a box that dumps its loaded classes once it exits.
+ * <p>
+ * Run it with the same JVM and box options that are used by the runtime,
+ * otherwise the archive is rejected when boxes are launched:
+ * {@code java -cp app.jar:libs/box.jar jsheets.runtime.evaluation.BoxArchiveTraining <path>}
+ */
+public final class BoxArchiveTraining {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private BoxArchiveTraining() {}
+
+  public static void main(String[] arguments) throws Exception {
+    var archive = arguments.length > 0
+      ? Path.of(arguments[0])
+      : BoxArchive.defaultPath;
+    var config = EvaluationConfigSource.create().load();
+    var archivePath = archive.toAbsolutePath();
+    Files.createDirectories(archivePath.getParent());
+    Files.deleteIfExists(archivePath);
+    runTypicalEvaluation(
+      BoxArchive.createArchive(
+        EvaluationModule.listConfiguredVirtualMachineOptions(config),
+        archivePath
+      ),
+      EvaluationModule.listBuiltinImports(config)
+    );
+    if (!Files.isRegularFile(archivePath)) {
+      throw new IllegalStateException("box did not create " + archivePath);
+    }
+    log.atInfo().log("created box archive %s", archivePath);
+  }
+
+  /* Sources that load the classes which are commonly used by snippets */
+  private static final Collection<String> typicalSnippets = List.of(
+    "1 + 1",
+    "System.out.println(\"Hello, World!\")",
+    "var numbers = List.of(1, 2, 3)",
+    "numbers.stream().map(number -> number * 2).collect(Collectors.toList())",
+    "String.format(\"%s: %d\", \"count\", numbers.size())",
+    "new HashMap<String, Integer>(Map.of(\"a\", 1))",
+    "LocalDate.of(2021, 1, 1).plusDays(1)",
+    "new BigDecimal(\"1.5\").multiply(BigDecimal.TEN)",
+    "record Point(int x, int y) {}",
+    "new Point(1, 2)"
+  );
+
+  /**
+   * Evaluates typical snippets in a new box and waits until the box has exited.
+   */
+  static void runTypicalEvaluation(
+    Collection<String> virtualMachineOptions,
+    Collection<String> builtinImports
+  ) {
+    var boxes = ConcurrentHashMap.<Long>newKeySet();
+    var environment = ForkedExecutionEnvironment.create(
+      EmptyClassFileStore.create(),
+      virtualMachineOptions,
+      event -> recordBox(boxes, event)
+    );
+    var silent = new PrintStream(OutputStream.nullOutputStream());
+    try (var shell = JShell.builder()
+      .out(silent)
+      .err(silent)
+      .executionEngine(environment.control("box-archive-training"), Map.of())
+      .build()
+    ) {
+      for (var packagePath : builtinImports) {
+        shell.eval("import %s;".formatted(packagePath));
+      }
+      for (var snippet : typicalSnippets) {
+        shell.eval(snippet);
+      }
+    }
+    awaitExit(boxes);
+  }
+
+  private static void recordBox(Set<Long> boxes, Object event) {
+    if (event instanceof BoxLifecycleEvent lifecycle) {
+      boxes.add(lifecycle.processId());
+    }
+  }
+
+  /* The archive is written while the box exits */
+  private static void awaitExit(Set<Long> boxes) {
+    for (var processId : boxes) {
+      ProcessHandle.of(processId).ifPresent(box -> box.onExit().join());
+    }
+  }
+}
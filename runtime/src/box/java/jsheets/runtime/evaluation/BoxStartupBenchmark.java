@@ -0,0 +1,73 @@
+package jsheets.runtime.evaluation;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.flogger.FluentLogger;
+
+/**
+ * Compares the cold start of forked boxes with and without the AppCDS archive.
+ * <p>
+ * Each iteration launches a new box, evaluates the typical snippets of the
+ * {@link BoxArchiveTraining} and waits for the box to exit:
+ * {@code ./gradlew :runtime:benchmarkBoxStartup}
+ */
+public final class BoxStartupBenchmark {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private BoxStartupBenchmark() {}
+
+  private static final int defaultIterations = 10;
+  private static final int warmupIterations = 2;
+
+  public static void main(String[] arguments) {
+    var archive = arguments.length > 0
+      ? Path.of(arguments[0]).toAbsolutePath()
+      : BoxArchive.defaultPath.toAbsolutePath();
+    int iterations = arguments.length > 1
+      ? Integer.parseInt(arguments[1])
+      : defaultIterations;
+    var config = EvaluationConfigSource.create().load();
+    var imports = EvaluationModule.listBuiltinImports(config);
+    var options = EvaluationModule.listConfiguredVirtualMachineOptions(config);
+    var withArchive = BoxArchive.useArchive(options, archive);
+    measure(options, imports, warmupIterations);
+    report("without archive", measure(options, imports, iterations));
+    report("with archive", measure(withArchive, imports, iterations));
+  }
+
+  private static List<Duration> measure(
+    Collection<String> options,
+    Collection<String> imports,
+    int iterations
+  ) {
+    var samples = new ArrayList<Duration>(iterations);
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      long start = System.nanoTime();
+      BoxArchiveTraining.runTypicalEvaluation(options, imports);
+      samples.add(Duration.ofNanos(System.nanoTime() - start));
+    }
+    Collections.sort(samples);
+    return samples;
+  }
+
+  private static void report(String name, List<Duration> samples) {
+    log.atInfo().log(
+      "%s: median=%dms p90=%dms min=%dms (n=%d)",
+      name,
+      percentile(samples, 0.5).toMillis(),
+      percentile(samples, 0.9).toMillis(),
+      samples.get(0).toMillis(),
+      samples.size()
+    );
+  }
+
+  private static Duration percentile(List<Duration> sorted, double percentile) {
+    int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+    return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+  }
+}
@@ -13,7 +13,10 @@ import javax.inject.Provider;
 import javax.inject.Singleton;
 import jsheets.config.Config;
 import jsheets.runtime.discovery.AdvertisementHook;
+import jsheets.runtime.discovery.LoadProbe;
 import jsheets.runtime.discovery.ServiceAdvertisementChannel;
+import jsheets.runtime.evaluation.AccessGraphWatcher;
+import jsheets.runtime.evaluation.EvaluationConfigSource;
 
 /* Configures the ServerSetup. */
 final class ServerSetupModule extends AbstractModule {
@@ -80,15 +83,24 @@ final class ServerSetupModule extends AbstractModule {
   Collection<ServerSetup.Hook> setupHooks(
     Config config,
     @Named("serviceId") String serviceId,
-    Provider<Optional<ServiceAdvertisementChannel>> advertisementChannelFactory
+    Provider<Optional<ServiceAdvertisementChannel>> advertisementChannelFactory,
+    LoadProbe load,
+    Provider<AccessGraphWatcher> accessGraphWatcher
   ) {
-    return advertisedHostKey.in(config).orNone().map(host -> {
-      var hook = AdvertisementHook.create(
+    var hooks = new ArrayList<ServerSetup.Hook>();
+    advertisedHostKey.in(config).orNone().ifPresent(host -> hooks.add(
+      AdvertisementHook.create(
         serviceId,
         host,
-        advertisementChannelFactory.get().orElseThrow()
-      );
-      return List.<ServerSetup.Hook>of(hook);
-    }).orElse(List.of());
+        advertisementChannelFactory.get().orElseThrow(),
+        load
+      )
+    ));
+    boolean disableSandbox = EvaluationConfigSource.disableSandboxKey()
+      .in(config).orNone().orElse(false);
+    if (!disableSandbox) {
+      hooks.add(accessGraphWatcher.get());
+    }
+    return List.copyOf(hooks);
   }
 }
\ No newline at end of file
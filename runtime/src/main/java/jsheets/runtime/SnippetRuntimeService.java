@@ -1,19 +1,24 @@
 package jsheets.runtime;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.flogger.FluentLogger;
 
+import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import javax.inject.Inject;
 import jsheets.EvaluateRequest;
 import jsheets.EvaluateResponse;
+import jsheets.EvaluationEnd;
 import jsheets.SnippetRuntimeGrpc.SnippetRuntimeImplBase;
 import jsheets.StartEvaluationRequest;
 import jsheets.StopEvaluationRequest;
+import jsheets.admission.AdmissionRejectedException;
 import jsheets.evaluation.Evaluation;
 import jsheets.evaluation.EvaluationEngine;
 
@@ -34,6 +39,13 @@ final class SnippetRuntimeService extends SnippetRuntimeImplBase {
     return new Call(responseStream);
   }
 
+  @Override
+  public StreamObserver<EvaluateRequest> evaluateMultiplexed(
+    StreamObserver<EvaluateResponse> responseStream
+  ) {
+    return new MultiplexedCall(responseStream);
+  }
+
   final class Call
     implements StreamObserver<EvaluateRequest>, Evaluation.Listener {
 
@@ -75,12 +87,43 @@ final class SnippetRuntimeService extends SnippetRuntimeImplBase {
 
     private void processStart(StartEvaluationRequest request) {
       if (evaluation != null) {
+        supplySources(request);
+        return;
+      }
+      try {
+        evaluation = engine.start(request, this);
+        log.atFine().log("started evaluation");
+      } catch (AdmissionRejectedException rejected) {
+        log.atInfo()
+          .atMostEvery(5, TimeUnit.SECONDS)
+          .log("rejected evaluation: %s", rejected.getMessage());
+        responseStream.onError(createExhaustedStatus(rejected));
+      }
+    }
+
+    /* Clients that retry through gRPC's retry policy honor the pushback */
+    private static final Metadata.Key<String> retryPushbackKey =
+      Metadata.Key.of("grpc-retry-pushback-ms", Metadata.ASCII_STRING_MARSHALLER);
+
+    private Throwable createExhaustedStatus(AdmissionRejectedException rejected) {
+      var trailers = new Metadata();
+      trailers.put(
+        retryPushbackKey,
+        String.valueOf(rejected.retryAfter().toMillis())
+      );
+      return Status.RESOURCE_EXHAUSTED
+        .withDescription(rejected.getMessage())
+        .asRuntimeException(trailers);
+    }
+
+    /* Follow-up start requests carry sources that the evaluation misses */
+    private void supplySources(StartEvaluationRequest request) {
+      try {
+        evaluation.supplySources(request.getSourcesList());
+      } catch (IllegalStateException notWaitingForSources) {
         log.atWarning().log("received start request with active evaluation");
         responseStream.onError(invalidState.asException());
-        return;
       }
-      evaluation = engine.start(request, this);
-      log.atFine().log("started evaluation");
     }
 
     private void processUnknown(EvaluateRequest request) {
@@ -89,11 +132,18 @@ final class SnippetRuntimeService extends SnippetRuntimeImplBase {
         .log("received unknown request message: %s", request);
     }
 
+    /* Clients that cancel the call or disconnect do not wait for results */
     @Override
-    public void onError(Throwable failure) {}
+    public void onError(Throwable failure) {
+      stopEvaluation();
+    }
 
     @Override
     public void onCompleted() {
+      stopEvaluation();
+    }
+
+    private void stopEvaluation() {
       lock.lock();
       try {
         if (evaluation != null) {
@@ -117,4 +167,174 @@ final class SnippetRuntimeService extends SnippetRuntimeImplBase {
       responseStream.onCompleted();
     }
   }
+
+  /**
+   * Call that interleaves many evaluations, which are identified by the
+   * evaluation id of their requests and responses. The call stays open when
+   * evaluations end, every evaluation ends with an {@link EvaluationEnd}.
+   */
+  final class MultiplexedCall implements StreamObserver<EvaluateRequest> {
+    private final StreamObserver<EvaluateResponse> responseStream;
+    /* Responses of concurrent evaluations are sent one after another */
+    private final Lock sendLock = new ReentrantLock();
+    /* Guarded by sendLock */
+    private boolean closed;
+    private final Map<Long, Evaluation> evaluations = new ConcurrentHashMap<>();
+
+    private MultiplexedCall(StreamObserver<EvaluateResponse> responseStream) {
+      this.responseStream = responseStream;
+    }
+
+    @Override
+    public void onNext(EvaluateRequest request) {
+      long evaluationId = request.getEvaluationId();
+      switch (request.getMessageCase()) {
+        case STOP -> processStop(evaluationId);
+        case START -> processStart(evaluationId, request.getStart());
+        default -> processUnknown(request);
+      }
+    }
+
+    private void processStop(long evaluationId) {
+      var evaluation = evaluations.remove(evaluationId);
+      if (evaluation == null) {
+        // The evaluation may have ended while the stop was sent
+        log.atFine().log("received stop request of unknown evaluation");
+        return;
+      }
+      evaluation.stop();
+      log.atFine().log("closed evaluation");
+    }
+
+    private void processStart(long evaluationId, StartEvaluationRequest request) {
+      var evaluation = evaluations.get(evaluationId);
+      if (evaluation != null) {
+        supplySources(evaluationId, evaluation, request);
+        return;
+      }
+      var stream = new EvaluationStream(evaluationId);
+      try {
+        evaluation = engine.start(request, stream);
+        evaluations.put(evaluationId, evaluation);
+        // Evaluations may end before they are registered
+        if (stream.ended) {
+          evaluations.remove(evaluationId, evaluation);
+        }
+        log.atFine().log("started evaluation");
+      } catch (AdmissionRejectedException rejected) {
+        log.atInfo()
+          .atMostEvery(5, TimeUnit.SECONDS)
+          .log("rejected evaluation: %s", rejected.getMessage());
+        sendEnd(evaluationId, EvaluationEnd.newBuilder()
+          .setReason(EvaluationEnd.Reason.REJECTED)
+          .setRetryAfterMillis(rejected.retryAfter().toMillis())
+          .build());
+      }
+    }
+
+    private void supplySources(
+      long evaluationId,
+      Evaluation evaluation,
+      StartEvaluationRequest request
+    ) {
+      try {
+        evaluation.supplySources(request.getSourcesList());
+      } catch (IllegalStateException notWaitingForSources) {
+        log.atWarning().log("received start request with active evaluation");
+        evaluations.remove(evaluationId);
+        evaluation.stop();
+        sendEnd(evaluationId, EvaluationEnd.newBuilder()
+          .setReason(EvaluationEnd.Reason.INVALID)
+          .build());
+      }
+    }
+
+    private void processUnknown(EvaluateRequest request) {
+      log.atWarning()
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .log("received unknown request message: %s", request);
+    }
+
+    /* Evaluations that are stopped because the call ended may still respond */
+    private void send(EvaluateResponse response) {
+      sendLock.lock();
+      try {
+        if (!closed) {
+          responseStream.onNext(response);
+        }
+      } finally {
+        sendLock.unlock();
+      }
+    }
+
+    private void sendEnd(long evaluationId, EvaluationEnd end) {
+      send(EvaluateResponse.newBuilder()
+        .setEvaluationId(evaluationId)
+        .setEnd(end)
+        .build());
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+      markClosed();
+      stopAll();
+    }
+
+    @Override
+    public void onCompleted() {
+      stopAll();
+      sendLock.lock();
+      try {
+        if (!closed) {
+          closed = true;
+          responseStream.onCompleted();
+        }
+      } finally {
+        sendLock.unlock();
+      }
+    }
+
+    private void markClosed() {
+      sendLock.lock();
+      try {
+        closed = true;
+      } finally {
+        sendLock.unlock();
+      }
+    }
+
+    private void stopAll() {
+      for (var evaluationId : evaluations.keySet()) {
+        var evaluation = evaluations.remove(evaluationId);
+        if (evaluation != null) {
+          evaluation.stop();
+        }
+      }
+    }
+
+    private final class EvaluationStream implements Evaluation.Listener {
+      private final long evaluationId;
+      private volatile boolean ended;
+
+      private EvaluationStream(long evaluationId) {
+        this.evaluationId = evaluationId;
+      }
+
+      @Override
+      public void send(EvaluateResponse response) {
+        MultiplexedCall.this.send(response.toBuilder()
+          .setEvaluationId(evaluationId)
+          .build());
+      }
+
+      @Override
+      public void close() {
+        ended = true;
+        evaluations.remove(evaluationId);
+        sendEnd(evaluationId, EvaluationEnd.newBuilder()
+          .setReason(EvaluationEnd.Reason.COMPLETED)
+          .build());
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -16,34 +16,39 @@ public final class AdvertisementHook implements ServerSetup.Hook {
   public static AdvertisementHook create(
     String serviceId,
     HostAndPort advertisedHost,
-    ServiceAdvertisementChannel channel
+    ServiceAdvertisementChannel channel,
+    LoadProbe load
   ) {
     Objects.requireNonNull(advertisedHost, "advertisedHost");
     Objects.requireNonNull(channel, "channel");
-    return new AdvertisementHook(serviceId, advertisedHost, channel);
+    Objects.requireNonNull(load, "load");
+    return new AdvertisementHook(serviceId, advertisedHost, channel, load);
   }
 
   private final HostAndPort advertisedHost;
   private final ServiceAdvertisementChannel advertisementChannel;
   private final String serviceId;
+  private final LoadProbe load;
   private volatile ServiceAdvertisement advertisement;
 
   @Inject
   AdvertisementHook(
     @Named("serviceId") String serviceId,
     HostAndPort advertisedHost,
-    ServiceAdvertisementChannel advertisementChannel
+    ServiceAdvertisementChannel advertisementChannel,
+    LoadProbe load
   ) {
     this.serviceId = serviceId;
     this.advertisedHost = advertisedHost;
     this.advertisementChannel = advertisementChannel;
+    this.load = load;
   }
 
   @Override
   public void start() {
     try {
       advertisementChannel.open();
-      advertisement = advertisementChannel.advertise(serviceId, advertisedHost);
+      advertisement = advertisementChannel.advertise(serviceId, advertisedHost, load);
     } catch (Exception failure) {
       log.atSevere().withCause(failure)
         .log("failed to advertise service");
@@ -0,0 +1,11 @@
+package jsheets.runtime.discovery;
+
+import jsheets.discovery.ServiceLoad;
+
+/**
+ * Measures the current load of the runtime, which is advertised along with
+ * its address.
+ */
+public interface LoadProbe {
+  ServiceLoad measure();
+}
@@ -3,7 +3,15 @@ package jsheets.runtime.discovery;
 import com.google.common.net.HostAndPort;
 
 public interface ServiceAdvertisementChannel {
-  ServiceAdvertisement advertise(String serviceId, HostAndPort address);
+  /**
+   * Advertises the service at the address, along with its load, which is
+   * measured periodically for as long as the service is advertised.
+   */
+  ServiceAdvertisement advertise(
+    String serviceId,
+    HostAndPort address,
+    LoadProbe load
+  );
   void open();
   void close();
 }
@@ -1,29 +1,53 @@
 package jsheets.runtime.discovery;
 
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
 import org.apache.curator.x.discovery.ServiceInstance;
 import org.apache.curator.x.discovery.ServiceType;
 
+import jsheets.discovery.ServiceLoad;
+
+/**
+ * Advertises the runtime in Zookeeper. The load of the runtime is the
+ * payload of its service instance and is updated periodically, but only
+ * written if it changed.
+ */
 public final class ZookeeperServiceAdvertisementChannel
   implements ServiceAdvertisementChannel {
 
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
 
+  private static final Duration loadUpdateInterval = Duration.ofSeconds(2);
+
   public static ServiceAdvertisementChannel create(CuratorFramework curator) {
-    var discovery = ServiceDiscoveryBuilder.builder(Void.class)
+    var discovery = ServiceDiscoveryBuilder.builder(ServiceLoad.class)
       .basePath("jsheets/services")
       .client(curator)
       .build();
     return new ZookeeperServiceAdvertisementChannel(discovery);
   }
 
-  private final ServiceDiscovery<Void> discovery;
+  private final ServiceDiscovery<ServiceLoad> discovery;
+  private final ScheduledExecutorService scheduler =
+    Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("service-load-update-%d")
+        .build()
+    );
 
-  private ZookeeperServiceAdvertisementChannel(ServiceDiscovery<Void> discovery) {
+  private ZookeeperServiceAdvertisementChannel(
+    ServiceDiscovery<ServiceLoad> discovery
+  ) {
     this.discovery = discovery;
   }
 
@@ -38,6 +62,7 @@ public final class ZookeeperServiceAdvertisementChannel
 
   @Override
   public void close() {
+    scheduler.shutdownNow();
     try {
       discovery.close();
     } catch (Exception failure) {
@@ -46,36 +71,94 @@ public final class ZookeeperServiceAdvertisementChannel
   }
 
   @Override
-  public ServiceAdvertisement advertise(String serviceId, HostAndPort address) {
-    var service = createServiceInstance(serviceId, address);
+  public ServiceAdvertisement advertise(
+    String serviceId,
+    HostAndPort address,
+    LoadProbe load
+  ) {
+    var registrationTime = System.currentTimeMillis();
+    var advertised = new LoadUpdate(serviceId, address, registrationTime, load);
     try {
-      discovery.registerService(service);
+      advertised.register(load.measure());
     } catch (Exception failedRegistration) {
       throw new RuntimeException(failedRegistration);
     }
+    var updates = scheduler.scheduleWithFixedDelay(
+      advertised,
+      loadUpdateInterval.toMillis(),
+      loadUpdateInterval.toMillis(),
+      TimeUnit.MILLISECONDS
+    );
     return () -> {
+      updates.cancel(/* mayInterrupt */ false);
       try {
-        discovery.unregisterService(service);
+        discovery.unregisterService(advertised.currentInstance());
       } catch (Exception failure) {
         log.atWarning().withCause(failure).log("failed to unregister service");
       }
     };
   }
 
-  private ServiceInstance<Void> createServiceInstance(
-    String serviceId,
-    HostAndPort address
-  ) {
-    return new ServiceInstance<>(
-      /* name */ "runtime",
-      /* id */ serviceId,
-      /* address */ address.getHost(),
-      /* port */ address.getPort(),
-      /* ssl port */ address.getPort(),
-      /* payload */ null,
-      /* registrationTimeUTC */ System.currentTimeMillis(),
-      /* serviceType */ ServiceType.DYNAMIC,
-      /* uri */ null
-    );
+  private final class LoadUpdate implements Runnable {
+    private final String serviceId;
+    private final HostAndPort address;
+    private final long registrationTime;
+    private final LoadProbe load;
+    private volatile ServiceInstance<ServiceLoad> instance;
+
+    private LoadUpdate(
+      String serviceId,
+      HostAndPort address,
+      long registrationTime,
+      LoadProbe load
+    ) {
+      this.serviceId = serviceId;
+      this.address = address;
+      this.registrationTime = registrationTime;
+      this.load = load;
+    }
+
+    ServiceInstance<ServiceLoad> currentInstance() {
+      return instance;
+    }
+
+    void register(ServiceLoad initialLoad) throws Exception {
+      var registered = createServiceInstance(initialLoad);
+      discovery.registerService(registered);
+      instance = registered;
+    }
+
+    /* The instance is only replaced once the update succeeded, so that
+     * failed updates are retried with the next measurement */
+    @Override
+    public void run() {
+      try {
+        var measured = load.measure();
+        if (!measured.equals(instance.getPayload())) {
+          var updated = createServiceInstance(measured);
+          discovery.updateService(updated);
+          instance = updated;
+        }
+      } catch (Exception failure) {
+        log.atWarning()
+          .atMostEvery(1, TimeUnit.MINUTES)
+          .withCause(failure)
+          .log("failed to update the advertised load");
+      }
+    }
+
+    private ServiceInstance<ServiceLoad> createServiceInstance(ServiceLoad load) {
+      return new ServiceInstance<>(
+        /* name */ "runtime",
+        /* id */ serviceId,
+        /* address */ address.getHost(),
+        /* port */ address.getPort(),
+        /* ssl port */ address.getPort(),
+        /* payload */ load,
+        /* registrationTimeUTC */ registrationTime,
+        /* serviceType */ ServiceType.DYNAMIC,
+        /* uri */ null
+      );
+    }
   }
 }
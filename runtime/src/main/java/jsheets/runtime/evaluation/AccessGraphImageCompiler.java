@@ -0,0 +1,53 @@
+package jsheets.runtime.evaluation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import com.google.common.flogger.FluentLogger;
+
+import jsheets.evaluation.sandbox.access.AccessGraphImage;
+
+/**
+ * Compiles the configured access graph of the sandbox into the image that
+ * is memory-mapped by runtimes.
+ * <p>
+ * {@code java -cp app.jar jsheets.runtime.evaluation.AccessGraphImageCompiler <path>}
+ * <p>
+ * Runtimes keep earlier images mapped while evaluations use them, so the
+ * image is written to a temporary file and moved over the previous one
+ * instead of rewriting the mapped file.
+ */
+public final class AccessGraphImageCompiler {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private AccessGraphImageCompiler() {}
+
+  public static void main(String[] arguments) throws Exception {
+    var target = arguments.length > 0
+      ? Path.of(arguments[0])
+      : AccessGraphImageFile.defaultPath;
+    var config = EvaluationConfigSource.create().load();
+    var source = EvaluationConfigSource.accessGraphKey().in(config).require();
+    var image = AccessGraphImage.compile(source);
+    var imagePath = target.toAbsolutePath();
+    var directory = Files.createDirectories(imagePath.getParent());
+    var temporary = Files.createTempFile(directory, ".accessGraph", ".tmp");
+    try {
+      Files.write(temporary, image);
+      Files.move(
+        temporary,
+        imagePath,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING
+      );
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    log.atInfo().log(
+      "compiled access graph image %s (%d bytes)",
+      imagePath,
+      image.length
+    );
+  }
+}
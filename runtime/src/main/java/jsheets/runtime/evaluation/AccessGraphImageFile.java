@@ -0,0 +1,63 @@
+package jsheets.runtime.evaluation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import com.google.common.flogger.FluentLogger;
+
+import jsheets.config.Config;
+import jsheets.evaluation.sandbox.access.AccessGraph;
+import jsheets.evaluation.sandbox.access.AccessGraphImage;
+import jsheets.evaluation.sandbox.access.AccessLookup;
+
+/**
+ * Loads the access graph of the sandbox from its precompiled image.
+ * <p>
+ * The image is created by the {@link AccessGraphImageCompiler} and
+ * memory-mapped, so that large allow-lists neither have to be parsed on
+ * every start nor occupy the heap. Images that were compiled from another
+ * text form than the configured one are outdated and ignored, the text is
+ * then parsed as before.
+ */
+final class AccessGraphImageFile {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  static final Path defaultPath =
+    Path.of("runtime/evaluation/sandbox/accessGraph.bin");
+
+  private AccessGraphImageFile() {}
+
+  static Optional<Path> locate(Config config) {
+    var path = EvaluationConfigSource.accessGraphImageKey().in(config)
+      .orNone()
+      .map(Path::of)
+      .orElse(defaultPath);
+    var resolved = EvaluationConfigSource.determineConfigPath().resolve(path);
+    return Files.isRegularFile(resolved)
+      ? Optional.of(resolved.toAbsolutePath())
+      : Optional.empty();
+  }
+
+  static AccessLookup load(Config config) {
+    var source = EvaluationConfigSource.accessGraphKey().in(config).require();
+    return locate(config)
+      .flatMap(path -> mapImage(path, source))
+      .orElseGet(() -> AccessGraph.of(source.split("\n")).compile());
+  }
+
+  private static Optional<AccessLookup> mapImage(Path path, String source) {
+    try {
+      var image = AccessGraphImage.map(path);
+      if (image.isCompiledFrom(source)) {
+        log.atInfo().log("mapped access graph image %s", path);
+        return Optional.of(image);
+      }
+      log.atWarning().log("access graph image %s is outdated", path);
+    } catch (IOException | IllegalArgumentException failure) {
+      log.atWarning().withCause(failure).log("failed to map access graph image %s", path);
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,145 @@
+package jsheets.runtime.evaluation;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import jsheets.config.CombinedConfig;
+import jsheets.config.Config;
+import jsheets.evaluation.sandbox.access.AccessGraphImage;
+import jsheets.evaluation.sandbox.validation.ForbiddenMemberFilter;
+import jsheets.evaluation.shell.environment.sandbox.SandboxClassFileCheck;
+import jsheets.runtime.ServerSetup;
+
+/**
+ * Reloads the access graph of the sandbox while the runtime is serving.
+ * <p>
+ * The configured access graph is read periodically and rebuilt on the
+ * watcher's thread once the SHA-256 digest of its text changed. The rebuilt
+ * graph is swapped into the {@link SandboxClassFileCheck}, evaluations that
+ * already run keep checking their classes against the graph that they
+ * started with. The
+ * cached verdicts of the member filter are checked against the new graph
+ * before it is swapped in, so that changes of the policy do not start with
+ * a cold cache.
+ */
+public final class AccessGraphWatcher implements ServerSetup.Hook {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /**
+   * @param environment Config that overrides the reloaded config files.
+   * @param config Config that the runtime was started with.
+   * @param interval Time between reloads, zero disables them.
+   */
+  static AccessGraphWatcher create(
+    Config environment,
+    Config config,
+    Duration interval
+  ) {
+    Objects.requireNonNull(environment, "environment");
+    Objects.requireNonNull(config, "config");
+    Objects.requireNonNull(interval, "interval");
+    var source = EvaluationConfigSource.accessGraphKey().in(config).require();
+    var filter = ForbiddenMemberFilter.create(AccessGraphImageFile.load(config));
+    var check = SandboxClassFileCheck.of(List.of(filter));
+    return new AccessGraphWatcher(
+      environment,
+      interval,
+      check,
+      filter,
+      AccessGraphImage.digest(source)
+    );
+  }
+
+  private final Config environment;
+  private final Duration interval;
+  private final SandboxClassFileCheck check;
+  private final ScheduledExecutorService scheduler =
+    Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("access-graph-reload-%d")
+        .build()
+    );
+  /* Only accessed by the scheduler once the watcher is started */
+  private ForbiddenMemberFilter filter;
+  private byte[] digest;
+
+  private AccessGraphWatcher(
+    Config environment,
+    Duration interval,
+    SandboxClassFileCheck check,
+    ForbiddenMemberFilter filter,
+    byte[] digest
+  ) {
+    this.environment = environment;
+    this.interval = interval;
+    this.check = check;
+    this.filter = filter;
+    this.digest = digest;
+  }
+
+  /** Check that always uses the latest access graph. */
+  public SandboxClassFileCheck check() {
+    return check;
+  }
+
+  @Override
+  public void start() {
+    if (interval.isZero()) {
+      return;
+    }
+    scheduler.scheduleWithFixedDelay(
+      this::reload,
+      interval.toMillis(),
+      interval.toMillis(),
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  @Override
+  public void stop() {
+    scheduler.shutdownNow();
+  }
+
+  private void reload() {
+    try {
+      var config = CombinedConfig.of(
+        environment,
+        EvaluationConfigSource.create().load()
+      );
+      var source = EvaluationConfigSource.accessGraphKey().in(config).orNone();
+      if (source.isEmpty()) {
+        log.atWarning()
+          .atMostEvery(1, TimeUnit.MINUTES)
+          .log("access graph is no longer configured, keeping the current one");
+        return;
+      }
+      var changedDigest = AccessGraphImage.digest(source.get());
+      if (Arrays.equals(changedDigest, digest)) {
+        return;
+      }
+      filter = filter.withAccessGraph(AccessGraphImageFile.load(config));
+      long version = check.update(List.of(filter));
+      digest = changedDigest;
+      log.atInfo().log("swapped in version %d of the access graph", version);
+    } catch (RuntimeException failure) {
+      log.atWarning()
+        .atMostEvery(1, TimeUnit.MINUTES)
+        .withCause(failure)
+        .log("failed to reload the access graph");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AccessGraphWatcher(interval=%s, check=%s)".formatted(interval, check);
+  }
+}
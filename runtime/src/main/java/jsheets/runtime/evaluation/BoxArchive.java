@@ -0,0 +1,55 @@
+package jsheets.runtime.evaluation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import jsheets.config.Config;
+
+/**
+ * Locates the dynamic AppCDS archive of forked boxes.
+ * <p>
+ * The archive is created by the {@code BoxArchiveTraining} and contains the
+ * classes that are loaded while the remote agent starts and evaluates typical
+ * snippets. It is only valid for the JVM and class path that created it,
+ * the JVM silently ignores archives that do not match.
+ */
+final class BoxArchive {
+  static final Path defaultPath = Path.of("runtime/evaluation/fork/box.jsa");
+
+  private BoxArchive() {}
+
+  static Optional<Path> locate(Config config) {
+    var path = EvaluationConfigSource.sharedArchiveKey().in(config)
+      .orNone()
+      .map(Path::of)
+      .orElse(defaultPath);
+    var resolved = EvaluationConfigSource.determineConfigPath().resolve(path);
+    return Files.isRegularFile(resolved)
+      ? Optional.of(resolved.toAbsolutePath())
+      : Optional.empty();
+  }
+
+  private static final String sharedArchiveOption = "-XX:SharedArchiveFile=";
+
+  /** Adds the archive to the options, unless they already specify one. */
+  static Collection<String> useArchive(Collection<String> options, Path archive) {
+    if (options.stream().anyMatch(option -> option.startsWith(sharedArchiveOption))) {
+      return options;
+    }
+    var extended = new ArrayList<>(options);
+    extended.add(sharedArchiveOption + archive);
+    return List.copyOf(extended);
+  }
+
+  private static final String archiveAtExitOption = "-XX:ArchiveClassesAtExit=";
+
+  static Collection<String> createArchive(Collection<String> options, Path archive) {
+    var extended = new ArrayList<>(options);
+    extended.add(archiveAtExitOption + archive.toAbsolutePath());
+    return List.copyOf(extended);
+  }
+}
@@ -42,6 +42,61 @@ public final class EvaluationConfigSource implements Config.Source {
     return accessGraphKey;
   }
 
+  private static final Config.Key<String> accessGraphImageKey =
+    Config.Key.ofString("evaluation.sandbox.accessGraphImage");
+
+  /**
+   * Path of the precompiled image of the access graph, relative paths are
+   * resolved against the config directory.
+   */
+  public static Config.Key<String> accessGraphImageKey() {
+    return accessGraphImageKey;
+  }
+
+  private static final Config.Key<Integer> accessGraphReloadIntervalKey =
+    Config.Key.ofInt("evaluation.sandbox.reloadInterval");
+
+  /**
+   * Milliseconds between checks for changes of the access graph, zero
+   * disables reloads.
+   */
+  public static Config.Key<Integer> accessGraphReloadIntervalKey() {
+    return accessGraphReloadIntervalKey;
+  }
+
+  private static final Config.Key<Boolean> inProcessKey =
+    Config.Key.ofFlag("evaluation.inProcess.enable");
+
+  /**
+   * Runs snippets in the runtime's process instead of forking a virtual
+   * machine, only their budgets bound their processor time and memory.
+   */
+  public static Config.Key<Boolean> inProcessKey() {
+    return inProcessKey;
+  }
+
+  private static final Config.Key<Integer> inProcessMaxInstructionsKey =
+    Config.Key.ofInt("evaluation.inProcess.maxInstructions");
+
+  /**
+   * Millions of instructions that the snippets of an evaluation may run in
+   * process, zero removes the limit.
+   */
+  public static Config.Key<Integer> inProcessMaxInstructionsKey() {
+    return inProcessMaxInstructionsKey;
+  }
+
+  private static final Config.Key<Integer> inProcessMaxAllocationKey =
+    Config.Key.ofInt("evaluation.inProcess.maxAllocation");
+
+  /**
+   * Megabytes that the snippets of an evaluation may allocate in process,
+   * zero removes the limit.
+   */
+  public static Config.Key<Integer> inProcessMaxAllocationKey() {
+    return inProcessMaxAllocationKey;
+  }
+
   private static final Config.Key<String> virtualMachineOptionsKey =
     Config.Key.ofString("evaluation.fork.virtualMachineOptions");
 
@@ -49,6 +104,176 @@ public final class EvaluationConfigSource implements Config.Source {
     return virtualMachineOptionsKey;
   }
 
+  private static final Config.Key<Integer> boxPoolSizeKey =
+    Config.Key.ofInt("evaluation.fork.pool.size");
+
+  /** Number of boxes that are kept warm, zero disables the pool. */
+  public static Config.Key<Integer> boxPoolSizeKey() {
+    return boxPoolSizeKey;
+  }
+
+  private static final Config.Key<Integer> boxPoolRefillConcurrencyKey =
+    Config.Key.ofInt("evaluation.fork.pool.refillConcurrency");
+
+  /** Number of boxes that are launched in parallel to refill the pool. */
+  public static Config.Key<Integer> boxPoolRefillConcurrencyKey() {
+    return boxPoolRefillConcurrencyKey;
+  }
+
+  private static final Config.Key<Integer> boxPoolMaxIdleAgeKey =
+    Config.Key.ofInt("evaluation.fork.pool.maxIdleAge");
+
+  /** Age in seconds after which a warm box is replaced. */
+  public static Config.Key<Integer> boxPoolMaxIdleAgeKey() {
+    return boxPoolMaxIdleAgeKey;
+  }
+
+  private static final Config.Key<String> sharedArchiveKey =
+    Config.Key.ofString("evaluation.fork.sharedArchive");
+
+  /**
+   * Path of the AppCDS archive that is used by forked boxes, relative paths
+   * are resolved against the config directory.
+   */
+  public static Config.Key<String> sharedArchiveKey() {
+    return sharedArchiveKey;
+  }
+
+  private static final Config.Key<Integer> compilationCacheCapacityKey =
+    Config.Key.ofInt("evaluation.compilationCache.capacity");
+
+  /**
+   * Capacity of the compilation cache in megabytes, zero disables the cache.
+   */
+  public static Config.Key<Integer> compilationCacheCapacityKey() {
+    return compilationCacheCapacityKey;
+  }
+
+  private static final Config.Key<Integer> sharedSourcesCapacityKey =
+    Config.Key.ofInt("evaluation.sharedSources.capacity");
+
+  /**
+   * Capacity of the hash-addressed source store in megabytes of code.
+   */
+  public static Config.Key<Integer> sharedSourcesCapacityKey() {
+    return sharedSourcesCapacityKey;
+  }
+
+  private static final Config.Key<Integer> sharedSourcesTimeoutKey =
+    Config.Key.ofInt("evaluation.sharedSources.timeout");
+
+  /**
+   * Milliseconds that evaluations wait for missing sources before they are
+   * closed.
+   */
+  public static Config.Key<Integer> sharedSourcesTimeoutKey() {
+    return sharedSourcesTimeoutKey;
+  }
+
+  private static final Config.Key<Integer> shellPoolSizeKey =
+    Config.Key.ofInt("evaluation.shellPool.size");
+
+  /**
+   * Number of idle shells that are kept for reuse by in-process
+   * environments without budgets, zero disables the pool. Shells are only
+   * reused by evaluations of the same sheet.
+   */
+  public static Config.Key<Integer> shellPoolSizeKey() {
+    return shellPoolSizeKey;
+  }
+
+  private static final Config.Key<Integer> shellPoolMaxUsesKey =
+    Config.Key.ofInt("evaluation.shellPool.maxUses");
+
+  /** Number of evaluations after which a pooled shell is discarded. */
+  public static Config.Key<Integer> shellPoolMaxUsesKey() {
+    return shellPoolMaxUsesKey;
+  }
+
+  private static final Config.Key<Integer> sessionsSizeKey =
+    Config.Key.ofInt("evaluation.sessions.size");
+
+  /**
+   * Number of idle snippet sessions that in-process environments without
+   * budgets keep to evaluate only changed components again, zero disables
+   * incremental evaluation.
+   */
+  public static Config.Key<Integer> sessionsSizeKey() {
+    return sessionsSizeKey;
+  }
+
+  private static final Config.Key<Integer> sessionsIdleTimeoutKey =
+    Config.Key.ofInt("evaluation.sessions.idleTimeout");
+
+  /** Seconds after which an unused snippet session is closed. */
+  public static Config.Key<Integer> sessionsIdleTimeoutKey() {
+    return sessionsIdleTimeoutKey;
+  }
+
+  private static final Config.Key<Boolean> virtualThreadsKey =
+    Config.Key.ofFlag("evaluation.virtualThreads");
+
+  /**
+   * Runs evaluations on virtual threads, if the runtime's JVM supports them.
+   */
+  public static Config.Key<Boolean> virtualThreadsKey() {
+    return virtualThreadsKey;
+  }
+
+  private static final Config.Key<Integer> maxConcurrencyKey =
+    Config.Key.ofInt("evaluation.admission.maxConcurrency");
+
+  /** Number of evaluations that may run concurrently. */
+  public static Config.Key<Integer> maxConcurrencyKey() {
+    return maxConcurrencyKey;
+  }
+
+  private static final Config.Key<Integer> queueCapacityKey =
+    Config.Key.ofInt("evaluation.admission.queueCapacity");
+
+  /**
+   * Number of evaluations that may wait for a free slot, further
+   * evaluations are rejected.
+   */
+  public static Config.Key<Integer> queueCapacityKey() {
+    return queueCapacityKey;
+  }
+
+  private static final Config.Key<Integer> retryAfterKey =
+    Config.Key.ofInt("evaluation.admission.retryAfter");
+
+  /** Milliseconds after which clients should retry rejected evaluations. */
+  public static Config.Key<Integer> retryAfterKey() {
+    return retryAfterKey;
+  }
+
+  private static final Config.Key<Integer> outputBytesPerSecondKey =
+    Config.Key.ofInt("evaluation.output.bytesPerSecond");
+
+  /** Number of bytes that an evaluation may print per second. */
+  public static Config.Key<Integer> outputBytesPerSecondKey() {
+    return outputBytesPerSecondKey;
+  }
+
+  private static final Config.Key<Integer> outputWritesPerSecondKey =
+    Config.Key.ofInt("evaluation.output.writesPerSecond");
+
+  /** Number of writes that an evaluation may make to its output per second. */
+  public static Config.Key<Integer> outputWritesPerSecondKey() {
+    return outputWritesPerSecondKey;
+  }
+
+  private static final Config.Key<String> outputBudgetPolicyKey =
+    Config.Key.ofString("evaluation.output.policy");
+
+  /**
+   * Behavior of evaluations that exceed their output budget, one of
+   * {@code block}, {@code truncate} or {@code stop}.
+   */
+  public static Config.Key<String> outputBudgetPolicyKey() {
+    return outputBudgetPolicyKey;
+  }
+
   @Override
   public Config load() {
     var directory = determineConfigPath();
@@ -74,7 +299,7 @@ public final class EvaluationConfigSource implements Config.Source {
   private static final String configPathOverrideField =
     "JSHEETS_RUNTIME_CONFIG_PATH";
 
-  private static Path determineConfigPath() {
+  static Path determineConfigPath() {
     var specialPath = System.getenv(configPathOverrideField);
     return Strings.isNullOrEmpty(specialPath)
       ? Path.of(System.getProperty("user.dir"))
@@ -0,0 +1,72 @@
+package jsheets.runtime.evaluation;
+
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+
+import jsheets.admission.AdmissionControlledEngine;
+import jsheets.discovery.ServiceLoad;
+import jsheets.evaluation.shell.environment.ExecutionEnvironment;
+import jsheets.evaluation.shell.environment.fork.ForkedExecutionEnvironment;
+import jsheets.runtime.discovery.LoadProbe;
+
+/**
+ * Measures the load of the runtime from the slots of its admission control,
+ * the warm boxes of a forked environment and the CPU usage of the host.
+ */
+final class EvaluationLoadProbe implements LoadProbe {
+  static EvaluationLoadProbe create(
+    AdmissionControlledEngine engine,
+    ExecutionEnvironment environment
+  ) {
+    Objects.requireNonNull(engine, "engine");
+    Objects.requireNonNull(environment, "environment");
+    return new EvaluationLoadProbe(engine, environment);
+  }
+
+  private final AdmissionControlledEngine engine;
+  private final ExecutionEnvironment environment;
+
+  private EvaluationLoadProbe(
+    AdmissionControlledEngine engine,
+    ExecutionEnvironment environment
+  ) {
+    this.engine = engine;
+    this.environment = environment;
+  }
+
+  @Override
+  public ServiceLoad measure() {
+    return ServiceLoad.of(
+      engine.activeEvaluations(),
+      engine.queuedEvaluations(),
+      engine.options().maxConcurrency(),
+      countWarmBoxes(),
+      measureCpuLoad()
+    );
+  }
+
+  /* Other environments never boot a JVM for an evaluation */
+  private static final int noBoxes = -1;
+
+  private int countWarmBoxes() {
+    return environment instanceof ForkedExecutionEnvironment forked
+      ? forked.warmBoxCount()
+      : noBoxes;
+  }
+
+  /* Falls back to the load average if the JVM does not report CPU usage */
+  private static double measureCpuLoad() {
+    var system = ManagementFactory.getOperatingSystemMXBean();
+    if (system instanceof com.sun.management.OperatingSystemMXBean extended) {
+      return extended.getCpuLoad();
+    }
+    double average = system.getSystemLoadAverage();
+    return average < 0 ? -1 : Math.min(1, average / system.getAvailableProcessors());
+  }
+
+  @Override
+  public String toString() {
+    return "EvaluationLoadProbe(engine=%s, environment=%s)"
+      .formatted(engine, environment);
+  }
+}
@@ -4,18 +4,32 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import jsheets.admission.AdmissionControlledEngine;
 import jsheets.evaluation.EvaluationEngine;
-import jsheets.evaluation.sandbox.access.AccessGraph;
-import jsheets.evaluation.sandbox.validation.ForbiddenMemberFilter;
+import jsheets.evaluation.shell.CompilationCache;
+import jsheets.evaluation.shell.OutputBudget;
 import jsheets.evaluation.shell.ShellEvaluationEngine;
+import jsheets.evaluation.shell.ShellPool;
+import jsheets.evaluation.shell.ShellSessions;
 import jsheets.evaluation.shell.environment.ExecutionEnvironment;
+import jsheets.evaluation.shell.environment.fork.BoxPool;
 import jsheets.evaluation.shell.environment.fork.ForkedExecutionEnvironment;
-import jsheets.evaluation.shell.environment.sandbox.SandboxClassFileCheck;
 import jsheets.evaluation.shell.environment.StandardEnvironment;
+import jsheets.evaluation.shell.environment.sandbox.ExecutionBudget;
+import jsheets.evaluation.shell.environment.sandbox.SandboxedEnvironment;
 import jsheets.config.Config;
 import jsheets.evaluation.shell.execution.SystemBasedExecutionMethodFactory;
 import jsheets.event.EventSink;
+import jsheets.runtime.discovery.LoadProbe;
+import jsheets.source.SharedSources;
+import jsheets.source.SharedSourcesEngine;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -39,42 +53,222 @@ public final class EvaluationModule extends AbstractModule {
     java.util.stream.*
     """;
 
-  @Provides
-  @Singleton
-  EvaluationEngine evaluationEngine(Config config, ExecutionEnvironment environment) {
-    var builtinImports = defaultImportsKey().in(config)
+  static List<String> listBuiltinImports(Config config) {
+    return defaultImportsKey().in(config)
       .or(fallbackDefaultImports)
       .lines()
       .toList();
-    return ShellEvaluationEngine.newBuilder()
+  }
+
+  @Provides
+  @Singleton
+  EvaluationEngine evaluationEngine(AdmissionControlledEngine engine) {
+    return engine;
+  }
+
+  @Provides
+  @Singleton
+  LoadProbe loadProbe(
+    AdmissionControlledEngine engine,
+    ExecutionEnvironment environment
+  ) {
+    return EvaluationLoadProbe.create(engine, environment);
+  }
+
+  @Provides
+  @Singleton
+  AdmissionControlledEngine admissionControlledEngine(
+    Config config,
+    ExecutionEnvironment environment,
+    EventSink events
+  ) {
+    var builtinImports = listBuiltinImports(config);
+    var installation = environment.install();
+    Runtime.getRuntime().addShutdownHook(new Thread(installation::close));
+    var engine = ShellEvaluationEngine.newBuilder()
       .useEnvironment(environment)
       .useExecutionMethodFactory(SystemBasedExecutionMethodFactory.create())
       .useBuiltinImports(builtinImports)
-      .create();
+      .cacheCompilations(createCompilationCacheOptions(config))
+      .limitOutput(createOutputBudget(config))
+      .withEventSink(events);
+    if (virtualThreadsKey().in(config).orNone().orElse(false)) {
+      engine.useVirtualThreads();
+    }
+    int shellPoolSize = shellPoolSizeKey().in(config).or(defaultShellPoolSize);
+    if (shellPoolSize > 0) {
+      engine.reuseShells(new ShellPool.Options(
+        shellPoolSize,
+        shellPoolMaxUsesKey().in(config).or(defaultShellPoolMaxUses)
+      ));
+    }
+    int sessionsSize = sessionsSizeKey().in(config).or(defaultSessionsSize);
+    if (sessionsSize > 0) {
+      engine.evaluateIncrementally(new ShellSessions.Options(
+        sessionsSize,
+        Duration.ofSeconds(
+          sessionsIdleTimeoutKey().in(config).or(defaultSessionsIdleTimeout)
+        )
+      ));
+    }
+    var sharedSourcesEngine = SharedSourcesEngine.of(
+      engine.create(),
+      createSharedSources(config),
+      Duration.ofMillis(
+        sharedSourcesTimeoutKey().in(config).or(defaultSharedSourcesTimeout)
+      )
+    );
+    return AdmissionControlledEngine.of(
+      sharedSourcesEngine,
+      createAdmissionOptions(config),
+      events,
+      Clock.systemUTC()
+    );
+  }
+
+  private static final int defaultQueueCapacity = 64;
+  private static final int defaultRetryAfter = 1000;
+
+  private AdmissionControlledEngine.Options createAdmissionOptions(Config config) {
+    int defaultMaxConcurrency = 2 * Runtime.getRuntime().availableProcessors();
+    return new AdmissionControlledEngine.Options(
+      maxConcurrencyKey().in(config).or(defaultMaxConcurrency),
+      queueCapacityKey().in(config).or(defaultQueueCapacity),
+      Duration.ofMillis(retryAfterKey().in(config).or(defaultRetryAfter))
+    );
+  }
+
+  private static final int defaultShellPoolSize = 0;
+  private static final int defaultShellPoolMaxUses = 100;
+
+  private static final int defaultSessionsSize = 64;
+  private static final int defaultSessionsIdleTimeout = 600;
+
+  private static final int defaultSharedSourcesCapacity = 16;
+  private static final int defaultSharedSourcesTimeout = 30_000;
+
+  private SharedSources createSharedSources(Config config) {
+    int capacity = sharedSourcesCapacityKey().in(config)
+      .or(defaultSharedSourcesCapacity);
+    return SharedSources.withCapacity(capacity * bytesPerMegabyte);
+  }
+
+  private static final int defaultCompilationCacheCapacity = 64;
+  private static final long bytesPerMegabyte = 1024 * 1024;
+
+  private CompilationCache.Options createCompilationCacheOptions(Config config) {
+    int capacity = compilationCacheCapacityKey().in(config)
+      .or(defaultCompilationCacheCapacity);
+    return new CompilationCache.Options(capacity * bytesPerMegabyte);
+  }
+
+  private static final int defaultOutputBytesPerSecond = 1024 * 1024;
+  private static final int defaultOutputWritesPerSecond = 10_000;
+
+  private OutputBudget createOutputBudget(Config config) {
+    return new OutputBudget(
+      outputBytesPerSecondKey().in(config).or(defaultOutputBytesPerSecond),
+      outputWritesPerSecondKey().in(config).or(defaultOutputWritesPerSecond),
+      selectOutputBudgetPolicy(config)
+    );
+  }
+
+  private OutputBudget.Policy selectOutputBudgetPolicy(Config config) {
+    var name = outputBudgetPolicyKey().in(config).or("truncate");
+    return Arrays.stream(OutputBudget.Policy.values())
+      .filter(policy -> policy.name().equalsIgnoreCase(name.trim()))
+      .findFirst()
+      .orElseThrow(() -> new IllegalArgumentException(
+        "unknown output budget policy: " + name
+      ));
   }
 
   @Provides
   @Singleton
-  ExecutionEnvironment executionEnvironment(Config config, EventSink events) {
+  ExecutionEnvironment executionEnvironment(
+    Config config,
+    EventSink events,
+    Provider<AccessGraphWatcher> accessGraphWatcher
+  ) {
     boolean disableSandbox =
       disableSandboxKey().in(config).orNone().orElse(false);
     if (disableSandbox) {
       return StandardEnvironment.create();
     }
-    var accessGraphConfig = accessGraphKey().in(config).require();
-    var accessGraph = AccessGraph.of(accessGraphConfig.split("\n"));
+    if (inProcessKey().in(config).orNone().orElse(false)) {
+      return SandboxedEnvironment.create(
+        accessGraphWatcher.get().check(),
+        createExecutionBudget(config)
+      );
+    }
     return ForkedExecutionEnvironment.create(
-      SandboxClassFileCheck.of(
-        List.of(ForbiddenMemberFilter.create(accessGraph))
-      ),
+      accessGraphWatcher.get().check(),
       listVirtualMachineOptions(config),
+      createBoxPoolOptions(config),
       events
     );
   }
 
-  Collection<String> listVirtualMachineOptions(Config config) {
-    return List.of(
-      virtualMachineOptionsKey().in(config).or("").trim().split("\n")
+  private static final int defaultInProcessMaxInstructions = 1_000;
+  private static final int defaultInProcessMaxAllocation = 256;
+  private static final long instructionsPerMillion = 1_000_000;
+
+  private ExecutionBudget createExecutionBudget(Config config) {
+    long instructions = inProcessMaxInstructionsKey().in(config)
+      .or(defaultInProcessMaxInstructions);
+    long allocation = inProcessMaxAllocationKey().in(config)
+      .or(defaultInProcessMaxAllocation);
+    return new ExecutionBudget(
+      instructions * instructionsPerMillion,
+      allocation * bytesPerMegabyte
+    );
+  }
+
+  private static final int defaultAccessGraphReloadInterval = 10_000;
+
+  @Provides
+  @Singleton
+  AccessGraphWatcher accessGraphWatcher(
+    Config config,
+    @Named("environment") Config environment
+  ) {
+    var interval = accessGraphReloadIntervalKey().in(config)
+      .or(defaultAccessGraphReloadInterval);
+    return AccessGraphWatcher.create(
+      environment,
+      config,
+      Duration.ofMillis(interval)
+    );
+  }
+
+  private static final int defaultBoxPoolSize = 2;
+  private static final int defaultBoxPoolRefillConcurrency = 2;
+  private static final int defaultBoxPoolMaxIdleAge = 300;
+
+  private BoxPool.Options createBoxPoolOptions(Config config) {
+    return new BoxPool.Options(
+      boxPoolSizeKey().in(config).or(defaultBoxPoolSize),
+      boxPoolRefillConcurrencyKey().in(config)
+        .or(defaultBoxPoolRefillConcurrency),
+      Duration.ofSeconds(
+        boxPoolMaxIdleAgeKey().in(config).or(defaultBoxPoolMaxIdleAge)
+      )
     );
   }
+
+  static Collection<String> listVirtualMachineOptions(Config config) {
+    var options = listConfiguredVirtualMachineOptions(config);
+    return BoxArchive.locate(config)
+      .map(archive -> BoxArchive.useArchive(options, archive))
+      .orElse(options);
+  }
+
+  /* Options as they are configured, without the shared archive */
+  static List<String> listConfiguredVirtualMachineOptions(Config config) {
+    return virtualMachineOptionsKey().in(config).or("")
+      .lines()
+      .map(String::trim)
+      .filter(option -> !option.isEmpty())
+      .toList();
+  }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package jsheets.runtime.monitoring;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.eventbus.Subscribe;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jsheets.admission.AdmissionEvent;
+
+final class AdmissionMonitoring {
+  static AdmissionMonitoring register(MeterRegistry registry) {
+    return new AdmissionMonitoring(
+      registry.gauge(
+        "jsheets.runtime.admission.activeEvaluations",
+        new AtomicInteger(0)
+      ),
+      registry.gauge(
+        "jsheets.runtime.admission.queueDepth",
+        new AtomicInteger(0)
+      ),
+      Timer.builder("jsheets.runtime.admission.waitTime")
+        .description("Time that admitted evaluations waited in the queue")
+        .publishPercentileHistogram()
+        .register(registry),
+      Counter.builder("jsheets.runtime.admission.rejections")
+        .description("Count of evaluations that were rejected as the queue was full")
+        .register(registry)
+    );
+  }
+
+  private final AtomicInteger activeEvaluations;
+  private final AtomicInteger queueDepth;
+  private final Timer waitTime;
+  private final Counter rejections;
+
+  private AdmissionMonitoring(
+    AtomicInteger activeEvaluations,
+    AtomicInteger queueDepth,
+    Timer waitTime,
+    Counter rejections
+  ) {
+    this.activeEvaluations = activeEvaluations;
+    this.queueDepth = queueDepth;
+    this.waitTime = waitTime;
+    this.rejections = rejections;
+  }
+
+  @Subscribe
+  public void recordAdmission(AdmissionEvent event) {
+    activeEvaluations.set(event.activeEvaluations());
+    queueDepth.set(event.queuedEvaluations());
+    switch (event.outcome()) {
+      case Admitted -> waitTime.record(event.waitTime());
+      case Rejected -> rejections.increment();
+      default -> {}
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AdmissionMonitoring(queueDepth=%s, rejections=%s)"
+      .formatted(queueDepth, rejections);
+  }
+}
@@ -0,0 +1,64 @@
+package jsheets.runtime.monitoring;
+
+import com.google.common.eventbus.Subscribe;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jsheets.evaluation.shell.CompilationCacheEvent;
+
+final class CompilationCacheMonitoring {
+  static CompilationCacheMonitoring register(MeterRegistry registry) {
+    return new CompilationCacheMonitoring(
+      Counter.builder("jsheets.runtime.evaluation.compilationCache.hits")
+        .description("Count of evaluations that ran previously compiled classes")
+        .register(registry),
+      Counter.builder("jsheets.runtime.evaluation.compilationCache.misses")
+        .description("Count of evaluations that had to compile their sources")
+        .register(registry),
+      Counter.builder("jsheets.runtime.evaluation.compilationCache.evictions")
+        .description("Count of entries that were evicted to stay within capacity")
+        .register(registry),
+      DistributionSummary
+        .builder("jsheets.runtime.evaluation.compilationCache.entrySize")
+        .description("Size of the compiled classes of evaluations that hit")
+        .baseUnit("bytes")
+        .register(registry)
+    );
+  }
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter evictions;
+  private final DistributionSummary entrySize;
+
+  private CompilationCacheMonitoring(
+    Counter hits,
+    Counter misses,
+    Counter evictions,
+    DistributionSummary entrySize
+  ) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.entrySize = entrySize;
+  }
+
+  @Subscribe
+  public void recordLookup(CompilationCacheEvent event) {
+    switch (event.outcome()) {
+      case Hit -> {
+        hits.increment();
+        entrySize.record(event.size());
+      }
+      case Miss -> misses.increment();
+      case Eviction -> evictions.increment();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CompilationCacheMonitoring(hits=%s, misses=%s, evictions=%s)"
+      .formatted(hits, misses, evictions);
+  }
+}
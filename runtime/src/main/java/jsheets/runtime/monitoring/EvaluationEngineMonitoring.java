@@ -1,14 +1,20 @@
 package jsheets.runtime.monitoring;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.eventbus.Subscribe;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import jsheets.evaluation.EvaluationStartEvent;
 import jsheets.evaluation.EvaluationStopEvent;
+import jsheets.evaluation.shell.MessageFlushEvent;
+import jsheets.evaluation.shell.OutputBudget;
+import jsheets.evaluation.shell.OutputBudgetEvent;
 
 final class EvaluationEngineMonitoring {
   static EvaluationEngineMonitoring register(MeterRegistry registry) {
@@ -28,28 +34,77 @@ final class EvaluationEngineMonitoring {
         .register(registry),
       Timer.builder("jsheets.runtime.evaluation.duration")
         .description("Average duration of evaluations")
+        .register(registry),
+      registerOutputBudgetCounters(registry),
+      registerFlushLatencyTimers(registry),
+      DistributionSummary.builder("jsheets.runtime.evaluation.flushSize")
+        .description("Number of bytes that are sent per flush of output")
+        .baseUnit("bytes")
+        .publishPercentileHistogram()
         .register(registry)
     );
   }
 
+  private static Map<MessageFlushEvent.Trigger, Timer> registerFlushLatencyTimers(
+    MeterRegistry registry
+  ) {
+    var timers = new EnumMap<MessageFlushEvent.Trigger, Timer>(MessageFlushEvent.Trigger.class);
+    for (var trigger : MessageFlushEvent.Trigger.values()) {
+      timers.put(
+        trigger,
+        Timer.builder("jsheets.runtime.evaluation.flushLatency")
+          .description("Time between the first write of output and its flush")
+          .tag("trigger", trigger.name())
+          .publishPercentileHistogram()
+          .register(registry)
+      );
+    }
+    return timers;
+  }
+
+  private static Map<OutputBudget.Policy, Counter> registerOutputBudgetCounters(
+    MeterRegistry registry
+  ) {
+    var counters = new EnumMap<OutputBudget.Policy, Counter>(OutputBudget.Policy.class);
+    for (var policy : OutputBudget.Policy.values()) {
+      counters.put(
+        policy,
+        Counter.builder("jsheets.runtime.evaluation.exceededOutputBudgets")
+          .description("Count of evaluations whose output exceeded the budget")
+          .tag("policy", policy.name())
+          .register(registry)
+      );
+    }
+    return counters;
+  }
+
   private final AtomicInteger activeEvaluations;
   private final Counter successfulEvaluations;
   private final Counter failedEvaluations;
   private final Counter erroneousEvaluations;
   private final Timer evaluationDuration;
+  private final Map<OutputBudget.Policy, Counter> exceededOutputBudgets;
+  private final Map<MessageFlushEvent.Trigger, Timer> flushLatencies;
+  private final DistributionSummary flushSize;
 
   private EvaluationEngineMonitoring(
     AtomicInteger activeEvaluations,
     Counter successfulEvaluations,
     Counter erroneousEvaluations,
     Counter failedEvaluations,
-    Timer evaluationDuration
+    Timer evaluationDuration,
+    Map<OutputBudget.Policy, Counter> exceededOutputBudgets,
+    Map<MessageFlushEvent.Trigger, Timer> flushLatencies,
+    DistributionSummary flushSize
   ) {
     this.activeEvaluations = activeEvaluations;
     this.successfulEvaluations = successfulEvaluations;
     this.failedEvaluations = failedEvaluations;
     this.erroneousEvaluations = erroneousEvaluations;
     this.evaluationDuration = evaluationDuration;
+    this.exceededOutputBudgets = exceededOutputBudgets;
+    this.flushLatencies = flushLatencies;
+    this.flushSize = flushSize;
   }
 
   @Subscribe
@@ -72,4 +127,15 @@ final class EvaluationEngineMonitoring {
       case CompletedWithErrors -> erroneousEvaluations.increment();
     }
   }
-}
\ No newline at end of file
+
+  @Subscribe
+  public void recordExceededOutputBudget(OutputBudgetEvent event) {
+    exceededOutputBudgets.get(event.policy()).increment();
+  }
+
+  @Subscribe
+  public void recordFlush(MessageFlushEvent flush) {
+    flushLatencies.get(flush.trigger()).record(flush.latency());
+    flushSize.record(flush.size());
+  }
+}
@@ -7,6 +7,7 @@ import com.google.common.eventbus.Subscribe;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import jsheets.evaluation.shell.environment.fork.BoxLifecycleEvent;
+import jsheets.evaluation.shell.environment.fork.BoxPoolEvent;
 
 final class ForkEnvironmentMonitoring {
   static ForkEnvironmentMonitoring register(MeterRegistry metrics) {
@@ -14,21 +15,32 @@ final class ForkEnvironmentMonitoring {
       "jsheets.runtime.evaluation.fork.activeBoxCount",
       new AtomicInteger(0)
     );
+    var warmBoxCount = metrics.gauge(
+      "jsheets.runtime.evaluation.fork.warmBoxCount",
+      new AtomicInteger(0)
+    );
     var startedBoxes = Counter
       .builder("jsheets.runtime.evaluation.fork.startedBoxes")
       .description("The number of boxes that have been started")
       .register(metrics);
-    return new ForkEnvironmentMonitoring(activeBoxCount, startedBoxes);
+    return new ForkEnvironmentMonitoring(
+      activeBoxCount,
+      warmBoxCount,
+      startedBoxes
+    );
   }
 
   private final AtomicInteger activeBoxCount;
+  private final AtomicInteger warmBoxCount;
   private final Counter startedBoxes;
 
   private ForkEnvironmentMonitoring(
     AtomicInteger activeBoxCount,
+    AtomicInteger warmBoxCount,
     Counter startedBoxes
   ) {
     this.activeBoxCount = activeBoxCount;
+    this.warmBoxCount = warmBoxCount;
     this.startedBoxes = startedBoxes;
   }
 
@@ -43,9 +55,14 @@ final class ForkEnvironmentMonitoring {
     }
   }
 
+  @Subscribe
+  public void receivePoolUpdate(BoxPoolEvent event) {
+    warmBoxCount.set(event.warmBoxes());
+  }
+
   @Override
   public String toString() {
-    return "ForkEnvironmentMonitoring(activeBoxCount=%s, startedBoxes=%s)"
-      .formatted(activeBoxCount, startedBoxes);
+    return "ForkEnvironmentMonitoring(activeBoxCount=%s, warmBoxCount=%s, startedBoxes=%s)"
+      .formatted(activeBoxCount, warmBoxCount, startedBoxes);
   }
-}
\ No newline at end of file
+}
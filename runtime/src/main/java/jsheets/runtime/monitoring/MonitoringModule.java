@@ -40,6 +40,8 @@ public final class MonitoringModule extends AbstractModule {
       var bus = new AsyncEventBus("monitoring", executor);
       bus.register(EvaluationEngineMonitoring.register(registry));
       bus.register(ForkEnvironmentMonitoring.register(registry));
+      bus.register(CompilationCacheMonitoring.register(registry));
+      bus.register(AdmissionMonitoring.register(registry));
       return GuavaEventSink.forBus(bus);
     }).orElseGet(EventSink::ignore);
   }
@@ -57,7 +57,9 @@ import java.util.concurrent.atomic.AtomicReference;
  *     Active stage while the evaluation is taking place. Can be terminated by
  *     either the <italic>upstream</italic> or preemptively by receiving a
  *     {@link StopEvaluationRequest}. Any message send by the <italic>upstream</italic>
- *     is forwarded to the client. Once completed, transitions into <italic>Terminated</italic>.
+ *     is forwarded to the client. If the upstream reported {@link MissingSources},
+ *     another {@link StartEvaluationRequest} supplies them to the evaluation.
+ *     Once completed, transitions into <italic>Terminated</italic>.
  *   </li>
  *   <li>
  *     <strong>Terminated:</strong>
@@ -66,6 +68,11 @@ import java.util.concurrent.atomic.AtomicReference;
  *     connection is expected to be closed at this point.
  *   </li>
  * </ul>
+ * <p>
+ * Requests and responses are forwarded as they are, this includes the
+ * session tokens that let runtimes evaluate snippets incrementally. Since
+ * evaluations of a sheet are routed to the same runtime, the token of a
+ * previous response is usually known to the runtime of the next request.
  */
 public final class EvaluationConnection {
   private enum Stage { Initial, Connecting, Evaluating, Terminated }
@@ -135,9 +142,25 @@ public final class EvaluationConnection {
   }
 
   private void receiveStart(WsContext context, StartEvaluationRequest request) {
+    if (stage.get().equals(Stage.Evaluating)) {
+      supplySources(context, request);
+      return;
+    }
     establishConnection(context, request);
   }
 
+  private void supplySources(WsContext context, StartEvaluationRequest request) {
+    try {
+      evaluation.supplySources(request.getSourcesList());
+    } catch (IllegalStateException notWaitingForSources) {
+      log.atWarning()
+        .with(sessionIdMetadata, context.getSessionId())
+        .log("received start request for running evaluation");
+      stage.set(Stage.Terminated);
+      context.session.close(illegalStage);
+    }
+  }
+
   private static final CloseStatus cancelledStatus =
     new CloseStatus(HttpStatus.BAD_REQUEST_400, "cancelled");
 
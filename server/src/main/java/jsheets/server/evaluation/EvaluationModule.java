@@ -1,17 +1,28 @@
 package jsheets.server.evaluation;
 
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Metrics;
 import jsheets.config.Config;
+import jsheets.discovery.ServiceLoad;
 import jsheets.evaluation.EvaluationEngine;
 import jsheets.evaluation.shell.ShellEvaluationEngine;
+import jsheets.server.evaluation.client.ConsistentHashEnginePool;
+import jsheets.server.evaluation.client.EnginePool;
+import jsheets.server.evaluation.client.Hedging;
+import jsheets.server.evaluation.client.LeastLoadedStrategy;
+import jsheets.server.evaluation.client.OutlierDetector;
 import jsheets.server.evaluation.client.PooledEvaluationEngine;
+import jsheets.server.evaluation.client.RuntimeChannelPool;
 import jsheets.server.evaluation.client.ZookeeperEngineDiscovery;
+import jsheets.source.SharedSources;
+import jsheets.source.SharedSourcesEngine;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
 import org.apache.curator.retry.ExponentialBackoffRetry;
@@ -20,10 +31,10 @@ import org.apache.curator.x.discovery.ServiceProvider;
 
 import javax.annotation.Nullable;
 import javax.inject.Named;
+import java.time.Clock;
 import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 public final class EvaluationModule extends AbstractModule {
@@ -39,19 +50,14 @@ public final class EvaluationModule extends AbstractModule {
   @Provides
   @Singleton
   EvaluationEngine evaluationEngine(
-    Optional<CuratorFramework> curatorBinding,
-    Executor executor
+    Config config,
+    Optional<CuratorFramework> curatorBinding
   ) {
     return curatorBinding
-      .map(client -> createRemoteEvaluationEngine(client, executor))
+      .map(client -> createRemoteEvaluationEngine(config, client))
       .orElseGet(this::createEmbeddedEvaluationEngine);
   }
 
-  @Provides
-  Executor executor() {
-    return Executors.newCachedThreadPool();
-  }
-
   private static final Config.Key<Boolean> disableRateLimitKey =
     Config.Key.ofFlag("server.rateLimit.disable");
 
@@ -81,9 +87,17 @@ public final class EvaluationModule extends AbstractModule {
     );
   }
 
+  private static final Config.Key<Boolean> disableStickySessionsKey =
+    Config.Key.ofFlag("server.routing.disableStickySessions");
+
+  /**
+   * Evaluations of the same sheet are routed to the same runtime unless
+   * sticky sessions are disabled, in which case the least loaded runtime is
+   * selected.
+   */
   private EvaluationEngine createRemoteEvaluationEngine(
-    CuratorFramework client,
-    Executor executor
+    Config config,
+    CuratorFramework client
   ) {
     var provider = createServiceProvider(client);
     try {
@@ -98,13 +112,138 @@ public final class EvaluationModule extends AbstractModule {
         log.atWarning().withCause(failure).log("failed to close service discovery");
       }
     }));
+    var channels = RuntimeChannelPool.create(
+      createChannelPoolOptions(config),
+      Metrics.globalRegistry
+    );
+    Runtime.getRuntime().addShutdownHook(new Thread(channels::close));
+    var outliers = OutlierDetector.create(
+      createOutlierDetectionOptions(config),
+      Metrics.globalRegistry,
+      Clock.systemUTC()
+    );
+    EnginePool pool = disableStickySessionsKey.in(config).or(false)
+      ? ZookeeperEngineDiscovery.create(
+          channels,
+          outliers,
+          provider,
+          LeastLoadedStrategy.create()
+        )
+      : ConsistentHashEnginePool.create(channels, outliers, provider);
     return PooledEvaluationEngine.of(
-      ZookeeperEngineDiscovery.create(executor, provider)
+      pool,
+      outliers,
+      createHedging(config),
+      maxAttemptsKey.in(config).or(defaultMaxAttempts),
+      Clock.systemUTC()
+    );
+  }
+
+  private static final Config.Key<Boolean> enableHedgingKey =
+    Config.Key.ofFlag("server.hedging.enable");
+
+  private static final Config.Key<Double> hedgingPercentileKey =
+    Config.Key.ofDouble("server.hedging.percentile");
+
+  private static final Config.Key<Integer> hedgingMinDelayKey =
+    Config.Key.ofInt("server.hedging.minDelay");
+
+  private static final Config.Key<Double> hedgingBudgetRatioKey =
+    Config.Key.ofDouble("server.hedging.budgetRatio");
+
+  private static final double defaultHedgingPercentile = 0.95;
+  private static final int defaultHedgingMinDelay = 50;
+  private static final double defaultHedgingBudgetRatio = 0.05;
+  private static final double hedgingMaxBudget = 10;
+
+  /** Evaluations are only hedged if it is enabled. */
+  private static Hedging createHedging(Config config) {
+    if (!enableHedgingKey.in(config).or(false)) {
+      return Hedging.disabled();
+    }
+    var options = new Hedging.Options(
+      hedgingPercentileKey.in(config).or(defaultHedgingPercentile),
+      Duration.ofMillis(hedgingMinDelayKey.in(config).or(defaultHedgingMinDelay)),
+      hedgingBudgetRatioKey.in(config).or(defaultHedgingBudgetRatio),
+      hedgingMaxBudget
+    );
+    var scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("evaluation-hedging-%d")
+        .build()
+    );
+    return Hedging.create(options, scheduler, Metrics.globalRegistry);
+  }
+
+  private static final Config.Key<Integer> maxAttemptsKey =
+    Config.Key.ofInt("server.evaluation.maxAttempts");
+
+  private static final Config.Key<Integer> consecutiveFailuresKey =
+    Config.Key.ofInt("server.outlierDetection.consecutiveFailures");
+
+  private static final Config.Key<Integer> baseEjectionTimeKey =
+    Config.Key.ofInt("server.outlierDetection.baseEjectionTime");
+
+  private static final Config.Key<Double> maxEjectedShareKey =
+    Config.Key.ofDouble("server.outlierDetection.maxEjectedShare");
+
+  private static final int defaultMaxAttempts = 2;
+  private static final int defaultConsecutiveFailures = 5;
+  private static final int defaultBaseEjectionTime = 30_000;
+  private static final double defaultMaxEjectedShare = 0.5;
+
+  private static OutlierDetector.Options createOutlierDetectionOptions(
+    Config config
+  ) {
+    return new OutlierDetector.Options(
+      consecutiveFailuresKey.in(config).or(defaultConsecutiveFailures),
+      /* failureRate */ 0.5,
+      /* windowSize */ 20,
+      /* latencyFactor */ 3,
+      Duration.ofMillis(baseEjectionTimeKey.in(config).or(defaultBaseEjectionTime)),
+      /* maxEjectionTime */ Duration.ofMinutes(5),
+      maxEjectedShareKey.in(config).or(defaultMaxEjectedShare)
     );
   }
 
+  private static final Config.Key<Integer> maxChannelsKey =
+    Config.Key.ofInt("server.runtimeChannels.max");
+
+  private static final Config.Key<Integer> keepAliveTimeKey =
+    Config.Key.ofInt("server.runtimeChannels.keepAliveTime");
+
+  private static final Config.Key<Integer> flowControlWindowKey =
+    Config.Key.ofInt("server.runtimeChannels.flowControlWindow");
+
+  private static final Config.Key<Integer> callbackThreadsKey =
+    Config.Key.ofInt("server.runtimeChannels.callbackThreads");
+
+  private static final Config.Key<Integer> drainTimeoutKey =
+    Config.Key.ofInt("server.runtimeChannels.drainTimeout");
+
+  private static final int defaultMaxChannels = 64;
+  private static final int defaultKeepAliveTime = 30_000;
+  private static final int defaultFlowControlWindow = 1024 * 1024;
+  private static final int defaultCallbackThreads = 4;
+  private static final int defaultDrainTimeout = 30_000;
+
+  private static RuntimeChannelPool.Options createChannelPoolOptions(Config config) {
+    return new RuntimeChannelPool.Options(
+      maxChannelsKey.in(config).or(defaultMaxChannels),
+      Duration.ofMinutes(1),
+      Duration.ofMinutes(5),
+      Duration.ofMillis(keepAliveTimeKey.in(config).or(defaultKeepAliveTime)),
+      flowControlWindowKey.in(config).or(defaultFlowControlWindow),
+      callbackThreadsKey.in(config).or(defaultCallbackThreads),
+      Duration.ofMillis(drainTimeoutKey.in(config).or(defaultDrainTimeout))
+    );
+  }
+
+  private static final long embeddedSharedSourcesCapacity = 4 * 1024 * 1024;
+
   private EvaluationEngine createEmbeddedEvaluationEngine() {
-    return ShellEvaluationEngine.newBuilder()
+    var engine = ShellEvaluationEngine.newBuilder()
       .useWorkerPool(Executors.newCachedThreadPool())
       .useBuiltinImports(
         List.of(
@@ -118,10 +257,16 @@ public final class EvaluationModule extends AbstractModule {
         )
       )
       .create();
+    return SharedSourcesEngine.of(
+      engine,
+      SharedSources.withCapacity(embeddedSharedSourcesCapacity)
+    );
   }
 
-  private ServiceProvider<Void> createServiceProvider(CuratorFramework curator) {
-    return ServiceDiscoveryBuilder.builder(Void.class)
+  private ServiceProvider<ServiceLoad> createServiceProvider(
+    CuratorFramework curator
+  ) {
+    return ServiceDiscoveryBuilder.builder(ServiceLoad.class)
       .client(curator)
       .basePath("/jsheets/services")
       .build()
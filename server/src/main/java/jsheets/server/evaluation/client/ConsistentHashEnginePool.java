@@ -0,0 +1,223 @@
+package jsheets.server.evaluation.client;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.google.common.flogger.FluentLogger;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.ServiceProvider;
+
+import jsheets.EvaluateResponse;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.discovery.ServiceLoad;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+
+/**
+ * Routes evaluations of the same sheet to the same runtime, so that the
+ * runtime's caches of sources and warm shells are reused. Runtimes are
+ * placed on a {@link HashRing}, which only moves the sheets of runtimes that
+ * join or leave the discovery.
+ * <p>
+ * The load of runtimes is bounded: a runtime only accepts another evaluation
+ * while the evaluations that this pool runs on it stay below
+ * {@code 1 + balanceFactor} times the average. Evaluations of a hot runtime
+ * are passed on to the next runtime on the ring.
+ */
+public final class ConsistentHashEnginePool implements EnginePool {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  public static ConsistentHashEnginePool create(
+    RuntimeChannelPool channels,
+    OutlierDetector outliers,
+    ServiceProvider<ServiceLoad> services
+  ) {
+    Objects.requireNonNull(channels, "channels");
+    Objects.requireNonNull(outliers, "outliers");
+    Objects.requireNonNull(services, "services");
+    return new ConsistentHashEnginePool(channels, outliers, services);
+  }
+
+  private static final double balanceFactor = 0.25;
+
+  private final ServiceProvider<ServiceLoad> services;
+  private final RuntimeChannelPool channels;
+  private final OutlierDetector outliers;
+  private final Map<String, AtomicInteger> activeEvaluations =
+    new ConcurrentHashMap<>();
+  private volatile HashRing ring = HashRing.of(Set.of());
+
+  private ConsistentHashEnginePool(
+    RuntimeChannelPool channels,
+    OutlierDetector outliers,
+    ServiceProvider<ServiceLoad> services
+  ) {
+    this.services = services;
+    this.channels = channels;
+    this.outliers = outliers;
+  }
+
+  @Override
+  public Optional<Selection> select(
+    StartEvaluationRequest request,
+    Set<String> excluded
+  ) {
+    try {
+      var instances = services.getAllInstances().stream()
+        .collect(Collectors.toMap(ServiceInstance::getId, Function.identity()));
+      if (instances.isEmpty()) {
+        return Optional.empty();
+      }
+      var ring = updateRing(instances.keySet());
+      var key = selectKey(request);
+      int capacity = computeCapacity(ring.nodes());
+      Predicate<String> available = node -> !excluded.contains(node)
+        && !outliers.isEjected(node);
+      var selected = ring.select(
+          key,
+          node -> available.test(node) && countActive(node) < capacity
+        )
+        .or(() -> ring.select(key, available))
+        .or(() -> ring.select(key, node -> true))
+        .orElseThrow();
+      var engine = channels.connect(instances.get(selected));
+      return Optional.of(new Selection(
+        selected,
+        new LoadTrackingEngine(engine, counter(selected))
+      ));
+    } catch (Exception failure) {
+      log.atWarning()
+        .withCause(failure)
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .log("failed to find runtime instance");
+      return Optional.empty();
+    }
+  }
+
+  /* The ring is only rebuilt if runtimes joined or left */
+  private HashRing updateRing(Set<String> nodes) {
+    var current = ring;
+    if (current.nodes().equals(nodes)) {
+      return current;
+    }
+    var updated = HashRing.of(nodes);
+    ring = updated;
+    activeEvaluations.keySet().retainAll(nodes);
+    channels.retainAll(nodes);
+    outliers.retainAll(nodes);
+    return updated;
+  }
+
+  /* Evaluations without a sheet are spread over all runtimes */
+  private static String selectKey(StartEvaluationRequest request) {
+    var sheetId = request.getSnippet().getReference().getSheetId();
+    return sheetId.isEmpty() ? UUID.randomUUID().toString() : sheetId;
+  }
+
+  private int computeCapacity(Collection<String> nodes) {
+    int total = 0;
+    for (var node : nodes) {
+      total += countActive(node);
+    }
+    return (int) Math.ceil((1 + balanceFactor) * (total + 1) / nodes.size());
+  }
+
+  private int countActive(String node) {
+    var counter = activeEvaluations.get(node);
+    return counter == null ? 0 : counter.get();
+  }
+
+  private AtomicInteger counter(String node) {
+    return activeEvaluations.computeIfAbsent(node, key -> new AtomicInteger());
+  }
+
+  /** Counts the evaluations that run on a runtime until they complete. */
+  private record LoadTrackingEngine(
+    EvaluationEngine engine,
+    AtomicInteger activeEvaluations
+  ) implements EvaluationEngine {
+    @Override
+    public Evaluation start(
+      StartEvaluationRequest request,
+      Evaluation.Listener listener
+    ) {
+      activeEvaluations.incrementAndGet();
+      var tracked = new TrackedEvaluation(listener, activeEvaluations);
+      try {
+        tracked.evaluation = engine.start(request, tracked);
+      } catch (RuntimeException failure) {
+        tracked.complete();
+        throw failure;
+      }
+      return tracked;
+    }
+  }
+
+  private static final class TrackedEvaluation
+    implements Evaluation, FailureAwareListener {
+
+    private final Evaluation.Listener listener;
+    private final AtomicInteger activeEvaluations;
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile Evaluation evaluation;
+
+    private TrackedEvaluation(
+      Evaluation.Listener listener,
+      AtomicInteger activeEvaluations
+    ) {
+      this.listener = listener;
+      this.activeEvaluations = activeEvaluations;
+    }
+
+    void complete() {
+      if (completed.compareAndSet(false, true)) {
+        activeEvaluations.decrementAndGet();
+      }
+    }
+
+    @Override
+    public void send(EvaluateResponse response) {
+      listener.send(response);
+    }
+
+    @Override
+    public void close() {
+      complete();
+      listener.close();
+    }
+
+    @Override
+    public void fail(Throwable failure) {
+      complete();
+      FailureAwareListener.failOrClose(listener, failure);
+    }
+
+    @Override
+    public void stop() {
+      complete();
+      evaluation.stop();
+    }
+
+    @Override
+    public void supplySources(Collection<SnippetSources> sources) {
+      evaluation.supplySources(sources);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ConsistentHashEnginePool(ring=%s)".formatted(ring);
+  }
+}
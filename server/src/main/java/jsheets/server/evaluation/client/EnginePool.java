@@ -1,9 +1,25 @@
 package jsheets.server.evaluation.client;
 
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
+import jsheets.StartEvaluationRequest;
 import jsheets.evaluation.EvaluationEngine;
 
 public interface EnginePool {
-  Optional<EvaluationEngine> select();
+  /** Engine of the runtime with the id that was selected by the pool. */
+  record Selection(String runtimeId, EvaluationEngine engine) {
+    public Selection {
+      Objects.requireNonNull(runtimeId, "runtimeId");
+      Objects.requireNonNull(engine, "engine");
+    }
+  }
+
+  /**
+   * Selects the engine that evaluates the {@code request}, or nothing if no
+   * engine is available. Runtimes with an {@code excluded} id are only
+   * selected if no other runtime is available.
+   */
+  Optional<Selection> select(StartEvaluationRequest request, Set<String> excluded);
 }
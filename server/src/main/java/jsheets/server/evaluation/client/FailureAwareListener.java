@@ -0,0 +1,21 @@
+package jsheets.server.evaluation.client;
+
+import jsheets.evaluation.Evaluation;
+
+/**
+ * Listener of evaluations on a runtime that is told when the evaluation
+ * failed because of the runtime or the connection to it. Failed evaluations
+ * are not closed, so that they can be retried on another runtime.
+ */
+interface FailureAwareListener extends Evaluation.Listener {
+  void fail(Throwable failure);
+
+  /** Fails the {@code listener} if it is aware of failures or closes it. */
+  static void failOrClose(Evaluation.Listener listener, Throwable failure) {
+    if (listener instanceof FailureAwareListener failureAware) {
+      failureAware.fail(failure);
+    } else {
+      listener.close();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package jsheets.server.evaluation.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Consistent hash ring over the ids of runtimes. Every runtime is placed at
+ * several points of the ring and keys belong to the next runtime clockwise
+ * from their hash. When a runtime joins or leaves the ring, only the keys
+ * next to its points change their runtime.
+ */
+final class HashRing {
+  private static final int pointsPerNode = 100;
+  private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+  static HashRing of(Collection<String> nodes) {
+    var points = new TreeMap<Long, String>();
+    for (var node : nodes) {
+      for (int point = 0; point < pointsPerNode; point++) {
+        points.put(hash(node + '#' + point), node);
+      }
+    }
+    return new HashRing(Set.copyOf(nodes), points);
+  }
+
+  private final Set<String> nodes;
+  private final NavigableMap<Long, String> points;
+
+  private HashRing(Set<String> nodes, NavigableMap<Long, String> points) {
+    this.nodes = nodes;
+    this.points = points;
+  }
+
+  Set<String> nodes() {
+    return nodes;
+  }
+
+  /**
+   * Walks the ring clockwise from the hash of the {@code key} and selects the
+   * first node that is accepted, or nothing if no node is accepted.
+   */
+  Optional<String> select(String key, Predicate<String> accepts) {
+    long position = hash(key);
+    var candidates = Iterables.concat(
+      points.tailMap(position, true).values(),
+      points.headMap(position, false).values()
+    );
+    var visited = new HashSet<String>();
+    for (var node : candidates) {
+      if (visited.add(node)) {
+        if (accepts.test(node)) {
+          return Optional.of(node);
+        }
+        if (visited.size() == nodes.size()) {
+          break;
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static long hash(String value) {
+    return hashFunction.hashString(value, StandardCharsets.UTF_8).asLong();
+  }
+
+  @Override
+  public String toString() {
+    return "HashRing(nodes=%s)".formatted(nodes);
+  }
+}
@@ -0,0 +1,164 @@
+package jsheets.server.evaluation.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Decides when evaluations are hedged: if the runtime of an evaluation did
+ * not respond within the given percentile of recent first response times,
+ * the evaluation is started on a second runtime as well.
+ * <p>
+ * Hedges are limited by a budget: every evaluation adds a share of a hedge
+ * to the budget and every hedge takes a whole one. This keeps hedges from
+ * amplifying the load when all runtimes are slow.
+ */
+public final class Hedging {
+  /**
+   * @param percentile Percentile of recent first response times after which
+   *   evaluations are hedged, between 0 and 1.
+   * @param minDelay Time that evaluations wait at least before they are
+   *   hedged.
+   * @param budgetRatio Share of evaluations that may be hedged.
+   * @param maxBudget Number of hedges that can be saved up for bursts.
+   */
+  public record Options(
+    double percentile,
+    Duration minDelay,
+    double budgetRatio,
+    double maxBudget
+  ) {
+    public Options {
+      Objects.requireNonNull(minDelay, "minDelay");
+      if (percentile <= 0 || percentile > 1) {
+        throw new IllegalArgumentException("percentile must be in (0, 1]");
+      }
+    }
+  }
+
+  public static Hedging disabled() {
+    return new Hedging(null, null);
+  }
+
+  public static Hedging create(
+    Options options,
+    ScheduledExecutorService scheduler,
+    MeterRegistry registry
+  ) {
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(scheduler, "scheduler");
+    Objects.requireNonNull(registry, "registry");
+    var hedging = new Hedging(options, scheduler);
+    hedging.registerMetrics(registry);
+    return hedging;
+  }
+
+  private static final int sampleCount = 512;
+  /* The delay is recomputed after this many samples */
+  private static final int estimateInterval = 64;
+
+  private final Options options;
+  private final ScheduledExecutorService scheduler;
+  private final Lock lock = new ReentrantLock();
+  /* Guarded by lock */
+  private final long[] samples = new long[sampleCount];
+  private int sampleIndex;
+  private int recordedSamples;
+  private long delayNanos;
+  private double budget;
+  private Counter hedges;
+  private Counter wonHedges;
+
+  private Hedging(Options options, ScheduledExecutorService scheduler) {
+    this.options = options;
+    this.scheduler = scheduler;
+    this.delayNanos = options == null ? 0 : options.minDelay().toNanos();
+  }
+
+  private void registerMetrics(MeterRegistry registry) {
+    hedges = Counter.builder("jsheets.server.evaluation.hedges")
+      .description("Evaluations that were started on a second runtime")
+      .register(registry);
+    wonHedges = Counter.builder("jsheets.server.evaluation.wonHedges")
+      .description("Hedged evaluations whose second runtime responded first")
+      .register(registry);
+  }
+
+  boolean isEnabled() {
+    return options != null;
+  }
+
+  /**
+   * Schedules the {@code hedge} of an evaluation that is started now and
+   * adds its share to the budget.
+   */
+  ScheduledFuture<?> schedule(Runnable hedge) {
+    long delay;
+    lock.lock();
+    try {
+      budget = Math.min(options.maxBudget(), budget + options.budgetRatio());
+      delay = delayNanos;
+    } finally {
+      lock.unlock();
+    }
+    return scheduler.schedule(hedge, delay, TimeUnit.NANOSECONDS);
+  }
+
+  /** Takes a hedge from the budget if there is one left. */
+  boolean tryAcquire() {
+    lock.lock();
+    try {
+      if (budget < 1) {
+        return false;
+      }
+      budget--;
+    } finally {
+      lock.unlock();
+    }
+    hedges.increment();
+    return true;
+  }
+
+  void recordHedgeWon() {
+    wonHedges.increment();
+  }
+
+  /** Records the time until the first response of an evaluation. */
+  void recordLatency(Duration latency) {
+    if (!isEnabled()) {
+      return;
+    }
+    lock.lock();
+    try {
+      samples[sampleIndex] = latency.toNanos();
+      sampleIndex = (sampleIndex + 1) % samples.length;
+      recordedSamples++;
+      if (recordedSamples % estimateInterval == 0) {
+        delayNanos = estimateDelay();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long estimateDelay() {
+    int count = Math.min(recordedSamples, samples.length);
+    var sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(options.percentile() * count) - 1;
+    return Math.max(options.minDelay().toNanos(), sorted[Math.max(0, index)]);
+  }
+
+  @Override
+  public String toString() {
+    return "Hedging(options=%s)".formatted(options);
+  }
+}
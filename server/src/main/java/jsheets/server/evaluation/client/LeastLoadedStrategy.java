@@ -0,0 +1,80 @@
+package jsheets.server.evaluation.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.curator.x.discovery.ProviderStrategy;
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.apache.curator.x.discovery.details.InstanceProvider;
+
+import jsheets.discovery.ServiceLoad;
+
+/**
+ * Selects runtimes by the power of two choices: two random runtimes are
+ * compared by their advertised {@link ServiceLoad} and the less loaded one is
+ * selected.
+ * <p>
+ * Advertised loads are only updated every few seconds. Always selecting the
+ * least loaded runtime would send a whole burst of evaluations to the same
+ * runtime, while comparing two random runtimes spreads the burst and still
+ * avoids runtimes that are busy.
+ */
+public final class LeastLoadedStrategy implements ProviderStrategy<ServiceLoad> {
+  public static LeastLoadedStrategy create() {
+    return new LeastLoadedStrategy();
+  }
+
+  private LeastLoadedStrategy() {}
+
+  @Override
+  public ServiceInstance<ServiceLoad> getInstance(
+    InstanceProvider<ServiceLoad> instanceProvider
+  ) throws Exception {
+    var instances = instanceProvider.getInstances();
+    if (instances.isEmpty()) {
+      return null;
+    }
+    if (instances.size() == 1) {
+      return instances.get(0);
+    }
+    var random = ThreadLocalRandom.current();
+    int first = random.nextInt(instances.size());
+    int second = random.nextInt(instances.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    var firstInstance = instances.get(first);
+    var secondInstance = instances.get(second);
+    return computeLoad(firstInstance.getPayload())
+      <= computeLoad(secondInstance.getPayload())
+      ? firstInstance
+      : secondInstance;
+  }
+
+  /* Runtimes that do not advertise their load are treated as fully used */
+  private static final double unknownLoad = 1;
+  /*
+   * Runtimes without warm boxes have to boot a JVM for the next evaluation,
+   * runtimes that do not run snippets in boxes advertise a negative count
+   */
+  private static final double coldStartPenalty = 0.5;
+
+  /**
+   * Computes the load as the share of used slots, including queued
+   * evaluations, plus the CPU usage and a penalty if the runtime runs
+   * snippets in boxes and none is warm.
+   */
+  static double computeLoad(ServiceLoad load) {
+    if (load == null || load.getMaxConcurrency() <= 0) {
+      return unknownLoad;
+    }
+    double usedSlots = (load.getActiveEvaluations() + load.getQueuedEvaluations())
+      / (double) load.getMaxConcurrency();
+    double coldStart = load.getWarmBoxes() == 0 ? coldStartPenalty : 0;
+    return usedSlots + Math.max(0, load.getCpuLoad()) + coldStart;
+  }
+
+  @Override
+  public String toString() {
+    return "LeastLoadedStrategy()";
+  }
+}
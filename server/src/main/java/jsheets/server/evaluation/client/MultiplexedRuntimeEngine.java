@@ -0,0 +1,267 @@
+package jsheets.server.evaluation.client;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.flogger.FluentLogger;
+
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import jsheets.EvaluateRequest;
+import jsheets.EvaluateResponse;
+import jsheets.EvaluationEnd;
+import jsheets.SnippetRuntimeGrpc;
+import jsheets.SnippetRuntimeGrpc.SnippetRuntimeStub;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.StopEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+
+/**
+ * Client side {@link EvaluationEngine} that interleaves evaluations on a few
+ * long-lived {@code EvaluateMultiplexed} calls to a {@code SnippetRuntime},
+ * instead of opening a call for every evaluation. Calls are opened once they
+ * are first used and reopened after they failed.
+ */
+public final class MultiplexedRuntimeEngine implements EvaluationEngine {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /* Calls have their own flow control window, a few calls share the load */
+  private static final int defaultCallCount = 4;
+
+  public static MultiplexedRuntimeEngine forChannel(Channel channel) {
+    return forChannel(channel, defaultCallCount);
+  }
+
+  public static MultiplexedRuntimeEngine forChannel(Channel channel, int callCount) {
+    Objects.requireNonNull(channel, "channel");
+    if (callCount < 1) {
+      throw new IllegalArgumentException("callCount must be positive");
+    }
+    return new MultiplexedRuntimeEngine(
+      SnippetRuntimeGrpc.newStub(channel),
+      callCount
+    );
+  }
+
+  private final SnippetRuntimeStub client;
+  private final Lock lock = new ReentrantLock();
+  /* Guarded by lock */
+  private final MultiplexedCall[] calls;
+  private final AtomicLong nextEvaluationId = new AtomicLong(1);
+  /* Guarded by lock */
+  private boolean draining;
+
+  private MultiplexedRuntimeEngine(SnippetRuntimeStub client, int callCount) {
+    this.client = client;
+    this.calls = new MultiplexedCall[callCount];
+  }
+
+  @Override
+  public Evaluation start(
+    StartEvaluationRequest request,
+    Evaluation.Listener listener
+  ) {
+    long evaluationId = nextEvaluationId.getAndIncrement();
+    var call = selectCall(evaluationId);
+    call.start(evaluationId, request, listener);
+    return new RemoteEvaluation(call, evaluationId);
+  }
+
+  private MultiplexedCall selectCall(long evaluationId) {
+    int slot = (int) (evaluationId % calls.length);
+    lock.lock();
+    try {
+      var call = calls[slot];
+      if (call == null || call.closed || draining) {
+        call = MultiplexedCall.open(client);
+        calls[slot] = call;
+      }
+      return call;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Completes the calls once their running evaluations ended, so that the
+   * channel can be shut down without cutting off evaluations. Evaluations
+   * that are started afterwards open a new call.
+   */
+  void drain() {
+    lock.lock();
+    try {
+      draining = true;
+      for (var call : calls) {
+        if (call != null) {
+          call.drain();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private record RemoteEvaluation(
+    MultiplexedCall call,
+    long evaluationId
+  ) implements Evaluation {
+    @Override
+    public void stop() {
+      call.send(EvaluateRequest.newBuilder()
+        .setEvaluationId(evaluationId)
+        .setStop(StopEvaluationRequest.getDefaultInstance())
+        .build());
+    }
+
+    /** Sources are sent in another start request of the same evaluation. */
+    @Override
+    public void supplySources(Collection<SnippetSources> sources) {
+      call.send(EvaluateRequest.newBuilder()
+        .setEvaluationId(evaluationId)
+        .setStart(StartEvaluationRequest.newBuilder().addAllSources(sources))
+        .build());
+    }
+  }
+
+  static final class MultiplexedCall implements StreamObserver<EvaluateResponse> {
+    static MultiplexedCall open(SnippetRuntimeStub client) {
+      var call = new MultiplexedCall();
+      call.requests = client.evaluateMultiplexed(call);
+      return call;
+    }
+
+    private final Map<Long, Evaluation.Listener> listeners =
+      new ConcurrentHashMap<>();
+    /* Requests of concurrent evaluations are sent one after another */
+    private final Lock sendLock = new ReentrantLock();
+    private StreamObserver<EvaluateRequest> requests;
+    private volatile boolean closed;
+    private volatile boolean draining;
+
+    private static final Status rejectedStatus =
+      Status.RESOURCE_EXHAUSTED.withDescription("runtime rejected evaluation");
+    private static final Status unexpectedCompletion =
+      Status.UNAVAILABLE.withDescription("runtime completed call");
+
+    private MultiplexedCall() {}
+
+    void start(
+      long evaluationId,
+      StartEvaluationRequest request,
+      Evaluation.Listener listener
+    ) {
+      listeners.put(evaluationId, listener);
+      send(EvaluateRequest.newBuilder()
+        .setEvaluationId(evaluationId)
+        .setStart(request)
+        .build());
+      // The call may have ended before the listener was registered, the
+      // request was then never sent and has to be retried elsewhere
+      if (closed && listeners.remove(evaluationId) != null) {
+        FailureAwareListener.failOrClose(listener, unexpectedCompletion.asException());
+      }
+    }
+
+    void send(EvaluateRequest request) {
+      sendLock.lock();
+      try {
+        if (!closed) {
+          requests.onNext(request);
+        }
+      } finally {
+        sendLock.unlock();
+      }
+    }
+
+    @Override
+    public void onNext(EvaluateResponse response) {
+      long evaluationId = response.getEvaluationId();
+      var listener = response.hasEnd()
+        ? listeners.remove(evaluationId)
+        : listeners.get(evaluationId);
+      if (listener == null) {
+        log.atFine().log("received response of unknown evaluation");
+        return;
+      }
+      if (!response.hasEnd()) {
+        listener.send(response);
+        return;
+      }
+      if (response.getEnd().getReason() == EvaluationEnd.Reason.REJECTED) {
+        log.atInfo()
+          .atMostEvery(5, TimeUnit.SECONDS)
+          .log("runtime rejected evaluation, retry after %dms",
+            response.getEnd().getRetryAfterMillis());
+        FailureAwareListener.failOrClose(listener, rejectedStatus.asException());
+      } else {
+        listener.close();
+      }
+      if (draining) {
+        completeIfIdle();
+      }
+    }
+
+    void drain() {
+      draining = true;
+      completeIfIdle();
+    }
+
+    private void completeIfIdle() {
+      sendLock.lock();
+      try {
+        if (!closed && listeners.isEmpty()) {
+          closed = true;
+          requests.onCompleted();
+        }
+      } finally {
+        sendLock.unlock();
+      }
+    }
+
+    @Override
+    public void onError(Throwable failure) {
+      log.atWarning()
+        .withCause(failure)
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .log("received error in multiplexed evaluate call");
+      failAll(failure);
+    }
+
+    /* Runtimes complete calls that were drained once they are idle */
+    @Override
+    public void onCompleted() {
+      failAll(unexpectedCompletion.asException());
+    }
+
+    private void failAll(Throwable failure) {
+      closed = true;
+      for (var evaluationId : listeners.keySet()) {
+        var listener = listeners.remove(evaluationId);
+        if (listener != null) {
+          FailureAwareListener.failOrClose(listener, failure);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "MultiplexedCall(evaluations=%d, closed=%b)"
+        .formatted(listeners.size(), closed);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MultiplexedRuntimeEngine(client=%s)".formatted(client);
+  }
+}
@@ -0,0 +1,283 @@
+package jsheets.server.evaluation.client;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.flogger.FluentLogger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Tracks the outcome and latency of evaluations per runtime and temporarily
+ * ejects runtimes that fail or respond much slower than the others.
+ * <p>
+ * A runtime is ejected if its recent evaluations failed in a row or at a high
+ * rate, or if its time to the first response is a multiple of the average
+ * over all runtimes. Ejections grow longer while a runtime keeps getting
+ * ejected. At most a share of the known runtimes is ejected at once, so that
+ * a failure of all runtimes does not eject every one of them.
+ */
+public final class OutlierDetector {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /**
+   * @param consecutiveFailures Failures in a row that eject a runtime.
+   * @param failureRate Share of failed evaluations in the window that ejects
+   *   a runtime.
+   * @param windowSize Number of recent evaluations that are considered.
+   * @param latencyFactor Factor by which the latency of a runtime has to
+   *   exceed the average latency to be ejected.
+   * @param baseEjectionTime Time of the first ejection, every further
+   *   ejection adds the same time.
+   * @param maxEjectionTime Time that runtimes are ejected at most.
+   * @param maxEjectedShare Share of the known runtimes that may be ejected.
+   */
+  public record Options(
+    int consecutiveFailures,
+    double failureRate,
+    int windowSize,
+    double latencyFactor,
+    Duration baseEjectionTime,
+    Duration maxEjectionTime,
+    double maxEjectedShare
+  ) {
+    public Options {
+      Objects.requireNonNull(baseEjectionTime, "baseEjectionTime");
+      Objects.requireNonNull(maxEjectionTime, "maxEjectionTime");
+      if (windowSize < 1) {
+        throw new IllegalArgumentException("windowSize must be positive");
+      }
+    }
+  }
+
+  enum Reason {
+    ConsecutiveFailures,
+    FailureRate,
+    Latency
+  }
+
+  public static OutlierDetector create(
+    Options options,
+    MeterRegistry registry,
+    Clock clock
+  ) {
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(registry, "registry");
+    Objects.requireNonNull(clock, "clock");
+    var detector = new OutlierDetector(options, clock);
+    detector.registerMetrics(registry);
+    return detector;
+  }
+
+  /* Runtimes need a few samples before their latency is compared */
+  private static final int minimumLatencySamples = 10;
+  private static final int minimumComparedRuntimes = 3;
+  private static final double latencySmoothing = 0.2;
+
+  private final Options options;
+  private final Clock clock;
+  private final Map<String, RuntimeStats> runtimes = new ConcurrentHashMap<>();
+  private final Map<Reason, Counter> ejections = new EnumMap<>(Reason.class);
+
+  private OutlierDetector(Options options, Clock clock) {
+    this.options = options;
+    this.clock = clock;
+  }
+
+  private void registerMetrics(MeterRegistry registry) {
+    for (var reason : Reason.values()) {
+      ejections.put(reason, Counter.builder("jsheets.server.runtimes.ejections")
+        .description("Runtimes that were ejected as outliers")
+        .tag("reason", reason.name())
+        .register(registry));
+    }
+    Gauge.builder("jsheets.server.runtimes.ejected", this, OutlierDetector::countEjected)
+      .description("Runtimes that are currently ejected")
+      .register(registry);
+  }
+
+  /** Returns true if the runtime is ejected and should not be selected. */
+  public boolean isEjected(String runtimeId) {
+    var stats = runtimes.get(runtimeId);
+    return stats != null && stats.isEjected(clock.instant());
+  }
+
+  /** Forgets runtimes that are no longer discovered. */
+  void retainAll(Set<String> runtimeIds) {
+    runtimes.keySet().retainAll(runtimeIds);
+  }
+
+  void recordSuccess(String runtimeId) {
+    stats(runtimeId).recordOutcome(false);
+  }
+
+  void recordFailure(String runtimeId) {
+    var stats = stats(runtimeId);
+    stats.recordOutcome(true);
+    if (stats.consecutiveFailures() >= options.consecutiveFailures()) {
+      eject(runtimeId, stats, Reason.ConsecutiveFailures);
+    } else if (stats.isWindowFull()
+      && stats.failureRate() >= options.failureRate()) {
+      eject(runtimeId, stats, Reason.FailureRate);
+    }
+  }
+
+  /** Records the time until the first response of an evaluation. */
+  void recordLatency(String runtimeId, Duration latency) {
+    var stats = stats(runtimeId);
+    double smoothedLatency = stats.recordLatency(latency.toNanos());
+    if (stats.latencySamples() < minimumLatencySamples) {
+      return;
+    }
+    double total = 0;
+    int compared = 0;
+    for (var runtime : runtimes.values()) {
+      if (runtime.latencySamples() >= minimumLatencySamples) {
+        total += runtime.smoothedLatency();
+        compared++;
+      }
+    }
+    if (compared >= minimumComparedRuntimes
+      && smoothedLatency > options.latencyFactor() * (total / compared)) {
+      eject(runtimeId, stats, Reason.Latency);
+    }
+  }
+
+  private RuntimeStats stats(String runtimeId) {
+    return runtimes.computeIfAbsent(
+      runtimeId,
+      id -> new RuntimeStats(options.windowSize())
+    );
+  }
+
+  private void eject(String runtimeId, RuntimeStats stats, Reason reason) {
+    var now = clock.instant();
+    if (stats.isEjected(now)) {
+      return;
+    }
+    if (countEjected() + 1 > options.maxEjectedShare() * runtimes.size()) {
+      log.atWarning().log(
+        "not ejecting runtime %s, too many runtimes are ejected",
+        runtimeId
+      );
+      return;
+    }
+    var ejectionTime = stats.eject(now, options);
+    ejections.get(reason).increment();
+    log.atInfo().log(
+      "ejected runtime %s for %s because of %s",
+      runtimeId,
+      ejectionTime,
+      reason
+    );
+  }
+
+  private int countEjected() {
+    var now = clock.instant();
+    int ejected = 0;
+    for (var stats : runtimes.values()) {
+      if (stats.isEjected(now)) {
+        ejected++;
+      }
+    }
+    return ejected;
+  }
+
+  private static final class RuntimeStats {
+    private final boolean[] window;
+    private int position;
+    private int samples;
+    private int failures;
+    private int consecutiveFailures;
+    private int latencySamples;
+    private double smoothedLatency;
+    private int ejections;
+    private Instant ejectedUntil = Instant.MIN;
+
+    RuntimeStats(int windowSize) {
+      this.window = new boolean[windowSize];
+    }
+
+    synchronized void recordOutcome(boolean failed) {
+      if (samples == window.length && window[position]) {
+        failures--;
+      }
+      window[position] = failed;
+      position = (position + 1) % window.length;
+      samples = Math.min(samples + 1, window.length);
+      if (failed) {
+        failures++;
+        consecutiveFailures++;
+      } else {
+        consecutiveFailures = 0;
+        // Runtimes that recovered start over with short ejections
+        if (failures == 0 && samples == window.length) {
+          ejections = 0;
+        }
+      }
+    }
+
+    synchronized double recordLatency(long latency) {
+      smoothedLatency = latencySamples == 0
+        ? latency
+        : smoothedLatency + latencySmoothing * (latency - smoothedLatency);
+      latencySamples++;
+      return smoothedLatency;
+    }
+
+    synchronized int consecutiveFailures() {
+      return consecutiveFailures;
+    }
+
+    synchronized boolean isWindowFull() {
+      return samples == window.length;
+    }
+
+    synchronized double failureRate() {
+      return samples == 0 ? 0 : failures / (double) samples;
+    }
+
+    synchronized int latencySamples() {
+      return latencySamples;
+    }
+
+    synchronized double smoothedLatency() {
+      return smoothedLatency;
+    }
+
+    synchronized boolean isEjected(Instant now) {
+      return now.isBefore(ejectedUntil);
+    }
+
+    /* Runtimes start with a clean record once they return */
+    synchronized Duration eject(Instant now, Options options) {
+      ejections++;
+      var ejectionTime = options.baseEjectionTime().multipliedBy(ejections);
+      if (ejectionTime.compareTo(options.maxEjectionTime()) > 0) {
+        ejectionTime = options.maxEjectionTime();
+      }
+      ejectedUntil = now.plus(ejectionTime);
+      Arrays.fill(window, false);
+      position = 0;
+      samples = 0;
+      failures = 0;
+      consecutiveFailures = 0;
+      latencySamples = 0;
+      return ejectionTime;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "OutlierDetector(options=%s, runtimes=%d)"
+      .formatted(options, runtimes.size());
+  }
+}
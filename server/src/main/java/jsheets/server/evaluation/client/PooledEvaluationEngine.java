@@ -1,34 +1,416 @@
 package jsheets.server.evaluation.client;
 
+import jsheets.EvaluateResponse;
+import jsheets.MissingSources;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
 import jsheets.StartEvaluationRequest;
 import jsheets.evaluation.Evaluation;
 import jsheets.evaluation.EvaluationEngine;
 
-import javax.inject.Inject;
+import com.google.common.flogger.FluentLogger;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * Evaluates snippets on the runtimes of a pool. The outcome and latency of
+ * evaluations are reported to an {@link OutlierDetector}, which ejects
+ * runtimes that misbehave. Evaluations that fail before their runtime sent
+ * any response are retried on another runtime.
+ * <p>
+ * If {@link Hedging} is enabled, evaluations whose runtime is slow to respond
+ * are started on a second runtime. The runtime that first responds with
+ * output or results serves the evaluation and the other one is stopped.
+ * Requests for missing sources are no such response, since a hedge usually
+ * lacks the sources that the first runtime has cached.
+ * <p>
+ * Every attempt that misses sources has its request forwarded, unless
+ * another attempt already waits for the same sources. Supplied sources are
+ * passed to every attempt whose missing sources they cover, so that retries
+ * and hedges that start after the client supplied the sources of an earlier
+ * attempt still get theirs.
+ */
 public final class PooledEvaluationEngine implements EvaluationEngine {
-  public static PooledEvaluationEngine of(EnginePool pool) {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  public static PooledEvaluationEngine of(
+    EnginePool pool,
+    OutlierDetector outliers,
+    Hedging hedging,
+    int maxAttempts,
+    Clock clock
+  ) {
     Objects.requireNonNull(pool, "pool");
-    return new PooledEvaluationEngine(pool);
+    Objects.requireNonNull(outliers, "outliers");
+    Objects.requireNonNull(hedging, "hedging");
+    Objects.requireNonNull(clock, "clock");
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be positive");
+    }
+    return new PooledEvaluationEngine(pool, outliers, hedging, maxAttempts, clock);
   }
-  
+
   private final EnginePool pool;
+  private final OutlierDetector outliers;
+  private final Hedging hedging;
+  private final int maxAttempts;
+  private final Clock clock;
 
-  @Inject
-  PooledEvaluationEngine(EnginePool pool) {
+  private PooledEvaluationEngine(
+    EnginePool pool,
+    OutlierDetector outliers,
+    Hedging hedging,
+    int maxAttempts,
+    Clock clock
+  ) {
     this.pool = pool;
+    this.outliers = outliers;
+    this.hedging = hedging;
+    this.maxAttempts = maxAttempts;
+    this.clock = clock;
   }
 
   @Override
   public Evaluation start(StartEvaluationRequest request, Evaluation.Listener listener) {
-    return pool.select()
-      .map(engine -> engine.start(request, listener))
-      .orElseGet(() -> reportNoEngineFound(listener));
+    var evaluation = new PooledEvaluation(request, listener);
+    if (evaluation.attempt(/* hedge */ false) && hedging.isEnabled()) {
+      evaluation.scheduleHedge();
+    }
+    return evaluation;
   }
 
-  private Evaluation reportNoEngineFound(Evaluation.Listener listener) {
-    listener.close();
-    return () -> {};
+  private final class PooledEvaluation implements Evaluation {
+    private final StartEvaluationRequest request;
+    private final Evaluation.Listener listener;
+    private final Set<String> attemptedRuntimes = ConcurrentHashMap.newKeySet();
+    /* Guarded by this */
+    private final List<Attempt> activeAttempts = new ArrayList<>(2);
+    private Attempt hedgeAttempt;
+    private Attempt winner;
+    /* Set once any attempt requested sources */
+    private boolean sourcesRequested;
+    private int startedAttempts;
+    private boolean stopped;
+    private Future<?> hedge;
+
+    private PooledEvaluation(
+      StartEvaluationRequest request,
+      Evaluation.Listener listener
+    ) {
+      this.request = request;
+      this.listener = listener;
+    }
+
+    /**
+     * Starts the evaluation on another runtime and returns true if it was
+     * started. The listener is closed if there is no runtime left. Hedges are
+     * only started on runtimes that were not attempted yet, retries may fall
+     * back to attempted runtimes, but the evaluation is started at most
+     * {@code maxAttempts} times.
+     */
+    boolean attempt(boolean hedge) {
+      var selection = pool.select(request, attemptedRuntimes);
+      if (selection.isEmpty()) {
+        if (!hedge) {
+          closeUnlessActive();
+        }
+        return false;
+      }
+      var runtimeId = selection.get().runtimeId();
+      if (!attemptedRuntimes.add(runtimeId) && hedge) {
+        return false;
+      }
+      var attempt = new Attempt(runtimeId, clock.instant());
+      synchronized (this) {
+        startedAttempts++;
+        activeAttempts.add(attempt);
+        if (hedge) {
+          hedgeAttempt = attempt;
+        }
+      }
+      Evaluation started;
+      try {
+        started = selection.get().engine().start(request, attempt);
+      } catch (RuntimeException failure) {
+        attempt.fail(failure);
+        return false;
+      }
+      boolean cancelled;
+      synchronized (this) {
+        attempt.evaluation = started;
+        cancelled = stopped || (winner != null && winner != attempt);
+      }
+      if (cancelled) {
+        started.stop();
+      }
+      return true;
+    }
+
+    private void closeUnlessActive() {
+      boolean active;
+      synchronized (this) {
+        active = !activeAttempts.isEmpty();
+      }
+      if (!active) {
+        listener.close();
+      }
+    }
+
+    void scheduleHedge() {
+      var scheduled = hedging.schedule(this::startHedge);
+      synchronized (this) {
+        hedge = scheduled;
+      }
+    }
+
+    private void startHedge() {
+      synchronized (this) {
+        if (stopped || winner != null || activeAttempts.size() != 1) {
+          return;
+        }
+      }
+      if (hedging.tryAcquire()) {
+        log.atFine().log("hedging slow evaluation");
+        attempt(/* hedge */ true);
+      }
+    }
+
+    /* The first attempt that responds serves the evaluation */
+    private synchronized boolean selectWinner(Attempt attempt) {
+      if (winner == null) {
+        winner = attempt;
+        if (hedge != null) {
+          hedge.cancel(/* mayInterruptIfRunning */ false);
+        }
+      }
+      return winner == attempt;
+    }
+
+    private void stopLosers(Attempt winner) {
+      List<Attempt> losers;
+      boolean hedgeWon;
+      synchronized (this) {
+        losers = new ArrayList<>(activeAttempts);
+        losers.remove(winner);
+        activeAttempts.retainAll(List.of(winner));
+        hedgeWon = winner == hedgeAttempt;
+      }
+      for (var loser : losers) {
+        loser.cancel();
+      }
+      if (hedgeWon) {
+        hedging.recordHedgeWon();
+      }
+    }
+
+    /* Only evaluations that did not respond yet can be restarted safely */
+    private synchronized boolean canRetry() {
+      return !stopped
+        && winner == null
+        && activeAttempts.isEmpty()
+        && startedAttempts < maxAttempts;
+    }
+
+    @Override
+    public void stop() {
+      List<Attempt> attempts;
+      synchronized (this) {
+        stopped = true;
+        attempts = new ArrayList<>(activeAttempts);
+        if (hedge != null) {
+          hedge.cancel(/* mayInterruptIfRunning */ false);
+        }
+      }
+      for (var attempt : attempts) {
+        attempt.stop();
+      }
+    }
+
+    /* Before an attempt won, every attempt that requested sources gets them */
+    @Override
+    public void supplySources(Collection<SnippetSources> sources) {
+      var supplied = sources.stream()
+        .map(SnippetSources::getReference)
+        .collect(Collectors.toSet());
+      var evaluations = new ArrayList<Evaluation>(2);
+      synchronized (this) {
+        if (stopped || !sourcesRequested) {
+          throw new IllegalStateException("evaluation does not wait for sources");
+        }
+        var attempts = winner == null ? activeAttempts : List.of(winner);
+        for (var attempt : attempts) {
+          if (attempt.evaluation != null && attempt.isCoveredBy(supplied)) {
+            attempt.missingSources = null;
+            attempt.forwardedSourceRequest = false;
+            evaluations.add(attempt.evaluation);
+          }
+        }
+      }
+      if (evaluations.isEmpty()) {
+        // The attempt that requested the sources may have failed since
+        log.atFine().log("dropping sources that no attempt waits for");
+        return;
+      }
+      for (var evaluation : evaluations) {
+        evaluation.supplySources(sources);
+      }
+    }
+
+    /*
+     * Requests of attempts that miss the same sources as an attempt whose
+     * request was already forwarded are served by the same supply
+     */
+    private synchronized boolean shouldForwardSourceRequest(
+      Attempt attempt,
+      Set<Snippet.Reference> missing
+    ) {
+      sourcesRequested = true;
+      attempt.missingSources = missing;
+      if (winner != null && winner != attempt) {
+        return false;
+      }
+      boolean awaitedByOther = activeAttempts.stream()
+        .anyMatch(other -> other != attempt
+          && other.forwardedSourceRequest
+          && missing.equals(other.missingSources));
+      attempt.forwardedSourceRequest = !awaitedByOther;
+      return attempt.forwardedSourceRequest;
+    }
+
+    private final class Attempt implements FailureAwareListener {
+      private final String runtimeId;
+      private final Instant startTime;
+      /* Guarded by the evaluation */
+      private Evaluation evaluation;
+      /* Guarded by the evaluation, null unless the attempt waits for sources */
+      private Set<Snippet.Reference> missingSources;
+      /* Guarded by the evaluation */
+      private boolean forwardedSourceRequest;
+      private volatile boolean responded;
+      /* Cancelled attempts lost against another one */
+      private volatile boolean cancelled;
+
+      private Attempt(String runtimeId, Instant startTime) {
+        this.runtimeId = runtimeId;
+        this.startTime = startTime;
+      }
+
+      void cancel() {
+        cancelled = true;
+        stop();
+      }
+
+      void stop() {
+        Evaluation evaluation;
+        synchronized (PooledEvaluation.this) {
+          evaluation = this.evaluation;
+        }
+        if (evaluation != null) {
+          evaluation.stop();
+        }
+      }
+
+      @Override
+      public void send(EvaluateResponse response) {
+        if (isSourceRequest(response)) {
+          requestSources(response);
+          return;
+        }
+        if (!responded) {
+          responded = true;
+          var latency = Duration.between(startTime, clock.instant());
+          outliers.recordLatency(runtimeId, latency);
+          hedging.recordLatency(latency);
+          if (selectWinner(this)) {
+            stopLosers(this);
+          }
+        }
+        if (isWinner()) {
+          listener.send(response);
+        }
+      }
+
+      private void requestSources(EvaluateResponse response) {
+        var missing = response.getMissingSourcesList().stream()
+          .map(MissingSources::getMissingSnippetsList)
+          .flatMap(List::stream)
+          .collect(Collectors.toSet());
+        if (shouldForwardSourceRequest(this, missing)) {
+          listener.send(response);
+        }
+      }
+
+      /* Guarded by the evaluation */
+      private boolean isCoveredBy(Set<Snippet.Reference> supplied) {
+        return missingSources != null && supplied.containsAll(missingSources);
+      }
+
+      private boolean isWinner() {
+        synchronized (PooledEvaluation.this) {
+          return winner == this;
+        }
+      }
+
+      @Override
+      public void close() {
+        if (cancelled) {
+          return;
+        }
+        outliers.recordSuccess(runtimeId);
+        // Attempts that complete without responses win as well
+        if (selectWinner(this)) {
+          stopLosers(this);
+          listener.close();
+        }
+      }
+
+      @Override
+      public void fail(Throwable failure) {
+        if (cancelled) {
+          return;
+        }
+        synchronized (PooledEvaluation.this) {
+          activeAttempts.remove(this);
+        }
+        outliers.recordFailure(runtimeId);
+        if (isWinner()) {
+          listener.close();
+          return;
+        }
+        if (!canRetry()) {
+          closeUnlessActive();
+          return;
+        }
+        log.atInfo()
+          .atMostEvery(5, TimeUnit.SECONDS)
+          .withCause(failure)
+          .log("retrying evaluation that failed on runtime %s", runtimeId);
+        attempt(/* hedge */ false);
+      }
+    }
+  }
+
+  private static boolean isSourceRequest(EvaluateResponse response) {
+    return response.getMissingSourcesCount() > 0
+      && response.getTextCount() == 0
+      && response.getResultCount() == 0
+      && response.getErrorCount() == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "PooledEvaluationEngine(pool=%s, hedging=%s, maxAttempts=%d)"
+      .formatted(pool, hedging, maxAttempts);
   }
 }
@@ -0,0 +1,235 @@
+package jsheets.server.evaluation.client;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.ConnectivityState;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.NettyChannelBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.curator.x.discovery.ServiceInstance;
+
+import jsheets.evaluation.EvaluationEngine;
+
+/**
+ * Bounded pool of channels to discovered runtimes, which are kept by the id
+ * of the runtime's service instance.
+ * <p>
+ * Channels that are evicted, because they were idle, too old, exceeded the
+ * pool's size or their runtime left, are drained: their calls are completed
+ * once the running evaluations ended and the channel is shut down. Channels
+ * that did not terminate within the drain timeout are shut down forcefully.
+ */
+public final class RuntimeChannelPool implements AutoCloseable {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /**
+   * @param maxChannels Number of channels that are kept at most.
+   * @param idleTimeout Time after which unused channels are evicted.
+   * @param maxAge Time after which channels are evicted and reconnected.
+   * @param keepAliveTime Interval of keepalive pings on open channels.
+   * @param flowControlWindow Initial HTTP/2 flow control window in bytes.
+   * @param callbackThreads Threads that run the callbacks of a channel. With
+   *   zero threads, callbacks run on the network event loop and must not block.
+   * @param drainTimeout Time after which draining channels are shut down
+   *   forcefully.
+   */
+  public record Options(
+    int maxChannels,
+    Duration idleTimeout,
+    Duration maxAge,
+    Duration keepAliveTime,
+    int flowControlWindow,
+    int callbackThreads,
+    Duration drainTimeout
+  ) {
+    public Options {
+      Objects.requireNonNull(idleTimeout, "idleTimeout");
+      Objects.requireNonNull(maxAge, "maxAge");
+      Objects.requireNonNull(keepAliveTime, "keepAliveTime");
+      Objects.requireNonNull(drainTimeout, "drainTimeout");
+      if (maxChannels < 1) {
+        throw new IllegalArgumentException("maxChannels must be positive");
+      }
+      if (callbackThreads < 0) {
+        throw new IllegalArgumentException("callbackThreads must not be negative");
+      }
+    }
+  }
+
+  public static RuntimeChannelPool create(Options options, MeterRegistry registry) {
+    Objects.requireNonNull(options, "options");
+    Objects.requireNonNull(registry, "registry");
+    var pool = new RuntimeChannelPool(options, registry);
+    pool.registerMetrics();
+    pool.scheduleCleanUp();
+    return pool;
+  }
+
+  private final Options options;
+  private final MeterRegistry registry;
+  private final Cache<String, Connection> connections;
+  private final ScheduledExecutorService scheduler =
+    Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("runtime-channel-pool-%d")
+        .build()
+    );
+  private final Counter createdChannels;
+  private final Counter forcedShutdowns;
+  private final Map<RemovalCause, Counter> evictedChannels =
+    new EnumMap<>(RemovalCause.class);
+
+  private RuntimeChannelPool(Options options, MeterRegistry registry) {
+    this.options = options;
+    this.registry = registry;
+    this.connections = CacheBuilder.newBuilder()
+      .maximumSize(options.maxChannels())
+      .expireAfterAccess(options.idleTimeout().toMillis(), TimeUnit.MILLISECONDS)
+      .expireAfterWrite(options.maxAge().toMillis(), TimeUnit.MILLISECONDS)
+      .<String, Connection>removalListener(this::drain)
+      .build();
+    this.createdChannels = Counter.builder("jsheets.server.runtimeChannels.created")
+      .description("Channels that were opened to runtimes")
+      .register(registry);
+    this.forcedShutdowns = Counter.builder("jsheets.server.runtimeChannels.forcedShutdowns")
+      .description("Channels that did not drain within the drain timeout")
+      .register(registry);
+  }
+
+  private void registerMetrics() {
+    for (var cause : RemovalCause.values()) {
+      evictedChannels.put(cause, Counter.builder("jsheets.server.runtimeChannels.evicted")
+        .description("Channels that were evicted from the pool and drained")
+        .tag("cause", cause.name())
+        .register(registry));
+    }
+    for (var state : ConnectivityState.values()) {
+      Gauge.builder("jsheets.server.runtimeChannels", this, pool -> pool.countChannels(state))
+        .description("Pooled channels by their connectivity state")
+        .tag("state", state.name())
+        .register(registry);
+    }
+  }
+
+  private double countChannels(ConnectivityState state) {
+    return connections.asMap().values().stream()
+      .filter(connection -> connection.channel().getState(false) == state)
+      .count();
+  }
+
+  /* Expired channels are otherwise only evicted once the pool is accessed */
+  private void scheduleCleanUp() {
+    long interval = options.idleTimeout().toMillis();
+    scheduler.scheduleWithFixedDelay(
+      connections::cleanUp,
+      interval,
+      interval,
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  EvaluationEngine connect(ServiceInstance<?> target) throws ExecutionException {
+    return connections.get(target.getId(), () -> createConnection(target)).engine();
+  }
+
+  /** Drains the channels of runtimes that are no longer discovered. */
+  void retainAll(Set<String> ids) {
+    connections.asMap().keySet().removeIf(id -> !ids.contains(id));
+  }
+
+  private Connection createConnection(ServiceInstance<?> target) {
+    var callbacks = options.callbackThreads() == 0
+      ? MoreExecutors.newDirectExecutorService()
+      : Executors.newFixedThreadPool(
+          options.callbackThreads(),
+          new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("runtime-" + target.getId() + "-%d")
+            .build()
+        );
+    var channel = NettyChannelBuilder.forAddress(target.getAddress(), target.getPort())
+      .usePlaintext()
+      .executor(callbacks)
+      .idleTimeout(options.idleTimeout().toMillis(), TimeUnit.MILLISECONDS)
+      .keepAliveTime(options.keepAliveTime().toMillis(), TimeUnit.MILLISECONDS)
+      .flowControlWindow(options.flowControlWindow())
+      .build();
+    createdChannels.increment();
+    return new Connection(channel, MultiplexedRuntimeEngine.forChannel(channel), callbacks);
+  }
+
+  private void drain(RemovalNotification<String, Connection> removal) {
+    var connection = removal.getValue();
+    if (connection == null) {
+      return;
+    }
+    evictedChannels.get(removal.getCause()).increment();
+    connection.engine().drain();
+    connection.channel().shutdown();
+    scheduler.schedule(
+      () -> forceShutdown(connection),
+      options.drainTimeout().toMillis(),
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  private void forceShutdown(Connection connection) {
+    if (!connection.channel().isTerminated()) {
+      log.atWarning()
+        .atMostEvery(5, TimeUnit.SECONDS)
+        .log("runtime channel did not drain in time: %s", connection.channel());
+      forcedShutdowns.increment();
+      connection.channel().shutdownNow();
+    }
+    connection.callbacks().shutdown();
+  }
+
+  /** Drains all channels and waits until they are shut down. */
+  @Override
+  public void close() {
+    connections.invalidateAll();
+    scheduler.shutdown();
+    try {
+      if (!scheduler.awaitTermination(
+        options.drainTimeout().toMillis() * 2,
+        TimeUnit.MILLISECONDS
+      )) {
+        scheduler.shutdownNow();
+      }
+    } catch (InterruptedException interrupted) {
+      Thread.currentThread().interrupt();
+      scheduler.shutdownNow();
+    }
+  }
+
+  private record Connection(
+    ManagedChannel channel,
+    MultiplexedRuntimeEngine engine,
+    ExecutorService callbacks
+  ) {}
+
+  @Override
+  public String toString() {
+    return "RuntimeChannelPool(options=%s, channels=%d)"
+      .formatted(options, connections.size());
+  }
+}
@@ -1,5 +1,6 @@
 package jsheets.server.evaluation.client;
 
+import java.util.Collection;
 import java.util.Objects;
 
 import com.google.common.flogger.FluentLogger;
@@ -12,6 +13,7 @@ import jsheets.EvaluateRequest;
 import jsheets.EvaluateResponse;
 import jsheets.SnippetRuntimeGrpc;
 import jsheets.SnippetRuntimeGrpc.SnippetRuntimeStub;
+import jsheets.SnippetSources;
 import jsheets.StartEvaluationRequest;
 import jsheets.StopEvaluationRequest;
 import jsheets.evaluation.Evaluation;
@@ -44,21 +46,38 @@ public final class SnippetRuntimeEngine implements EvaluationEngine {
     var observer = new ListenerBoundObserver(snippetId, listener);
     var call = client.evaluate(observer);
     call.onNext(wrapStartRequest(request));
-    return () -> call.onNext(createStopRequest());
+    return new RemoteEvaluation(call);
   }
 
-  private EvaluateRequest wrapStartRequest(StartEvaluationRequest request) {
+  private static EvaluateRequest wrapStartRequest(StartEvaluationRequest request) {
     return EvaluateRequest.newBuilder()
       .setStart(request)
       .build();
   }
 
-  private EvaluateRequest createStopRequest() {
+  private static EvaluateRequest createStopRequest() {
     return EvaluateRequest.newBuilder()
       .setStop(StopEvaluationRequest.getDefaultInstance())
       .build();
   }
 
+  private record RemoteEvaluation(
+    StreamObserver<EvaluateRequest> call
+  ) implements Evaluation {
+    @Override
+    public void stop() {
+      call.onNext(createStopRequest());
+    }
+
+    /** Sources are sent in another start request of the same call. */
+    @Override
+    public void supplySources(Collection<SnippetSources> sources) {
+      call.onNext(wrapStartRequest(StartEvaluationRequest.newBuilder()
+        .addAllSources(sources)
+        .build()));
+    }
+  }
+
   static final class ListenerBoundObserver implements StreamObserver<EvaluateResponse> {
     private final String snippetId;
     private final Evaluation.Listener listener;
@@ -90,6 +109,7 @@ public final class SnippetRuntimeEngine implements EvaluationEngine {
         .withCause(failure)
         .with(snippetIdKey, snippetId)
         .log("received error response in evaluate call");
+      FailureAwareListener.failOrClose(listener, failure);
     }
   }
 
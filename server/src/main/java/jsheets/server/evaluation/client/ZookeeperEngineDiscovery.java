@@ -1,56 +1,74 @@
 package jsheets.server.evaluation.client;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.flogger.FluentLogger;
 
-import io.grpc.ManagedChannelBuilder;
-import jsheets.evaluation.EvaluationEngine;
+import jsheets.StartEvaluationRequest;
+import jsheets.discovery.ServiceLoad;
+import org.apache.curator.x.discovery.ProviderStrategy;
 import org.apache.curator.x.discovery.ServiceInstance;
 import org.apache.curator.x.discovery.ServiceProvider;
 
-import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.Executor;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public final class ZookeeperEngineDiscovery implements EnginePool {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
 
   public static ZookeeperEngineDiscovery create(
-    Executor executor,
-    ServiceProvider<Void> services
+    RuntimeChannelPool channels,
+    OutlierDetector outliers,
+    ServiceProvider<ServiceLoad> services,
+    ProviderStrategy<ServiceLoad> strategy
   ) {
-    Objects.requireNonNull(executor, "executor");
+    Objects.requireNonNull(channels, "channels");
+    Objects.requireNonNull(outliers, "outliers");
     Objects.requireNonNull(services, "services");
-    return new ZookeeperEngineDiscovery(executor, services);
+    Objects.requireNonNull(strategy, "strategy");
+    return new ZookeeperEngineDiscovery(channels, outliers, services, strategy);
   }
 
-  private final ServiceProvider<Void> services;
-  private final Executor executor;
-
-  private static final Duration idleTimeout = Duration.ofMinutes(1);
-  private final Cache<String, EvaluationEngine> connectionPool =
-    CacheBuilder.newBuilder()
-      .expireAfterAccess(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
-      .expireAfterWrite(5, TimeUnit.MINUTES)
-      .build();
+  private final ServiceProvider<ServiceLoad> services;
+  private final ProviderStrategy<ServiceLoad> strategy;
+  private final RuntimeChannelPool channels;
+  private final OutlierDetector outliers;
 
   private ZookeeperEngineDiscovery(
-    Executor executor,
-    ServiceProvider<Void> services
+    RuntimeChannelPool channels,
+    OutlierDetector outliers,
+    ServiceProvider<ServiceLoad> services,
+    ProviderStrategy<ServiceLoad> strategy
   ) {
-    this.executor = executor;
     this.services = services;
+    this.strategy = strategy;
+    this.channels = channels;
+    this.outliers = outliers;
   }
 
   @Override
-  public Optional<EvaluationEngine> select() {
+  public Optional<Selection> select(
+    StartEvaluationRequest request,
+    Set<String> excluded
+  ) {
     try {
-      var service = services.getInstance();
-      var connection = connectionPool.get(service.getId(), () -> connect(service));
-      return Optional.of(connection);
+      var instances = List.copyOf(services.getAllInstances());
+      outliers.retainAll(instances.stream()
+        .map(ServiceInstance::getId)
+        .collect(Collectors.toSet()));
+      var available = instances.stream()
+        .filter(instance -> !excluded.contains(instance.getId()))
+        .filter(instance -> !outliers.isEjected(instance.getId()))
+        .toList();
+      var service = strategy.getInstance(
+        () -> available.isEmpty() ? instances : available
+      );
+      if (service == null) {
+        return Optional.empty();
+      }
+      return Optional.of(new Selection(service.getId(), channels.connect(service)));
     } catch (Exception failure) {
       log.atWarning()
         .withCause(failure)
@@ -59,13 +77,4 @@ public final class ZookeeperEngineDiscovery implements EnginePool {
       return Optional.empty();
     }
   }
-
-  private EvaluationEngine connect(ServiceInstance<?> target) {
-    var channel = ManagedChannelBuilder.forAddress(target.getAddress(), target.getPort())
-      .usePlaintext()
-      .executor(executor)
-      .idleTimeout(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
-      .build();
-    return SnippetRuntimeEngine.forChannel(channel);
-  }
 }
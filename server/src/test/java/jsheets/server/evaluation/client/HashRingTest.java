@@ -0,0 +1,49 @@
+package jsheets.server.evaluation.client;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class HashRingTest {
+  private static final List<String> keys = IntStream.range(0, 1000)
+    .mapToObj(key -> "sheet-" + key)
+    .toList();
+
+  private static String select(HashRing ring, String key) {
+    return ring.select(key, node -> true).orElseThrow();
+  }
+
+  @Test
+  public void testOnlyKeysOfLeavingNodeAreMoved() {
+    var ring = HashRing.of(List.of("a", "b", "c", "d"));
+    var reduced = HashRing.of(List.of("a", "b", "c"));
+    for (var key : keys) {
+      var node = select(ring, key);
+      if (!node.equals("d")) {
+        Assertions.assertEquals(node, select(reduced, key));
+      }
+    }
+  }
+
+  @Test
+  public void testKeysAreSpreadOverNodes() {
+    var ring = HashRing.of(List.of("a", "b", "c", "d"));
+    var selectedNodes = keys.stream()
+      .map(key -> select(ring, key))
+      .distinct()
+      .count();
+    Assertions.assertEquals(4, selectedNodes);
+  }
+
+  @Test
+  public void testRejectedNodeIsSkipped() {
+    var ring = HashRing.of(List.of("a", "b"));
+    var preferred = select(ring, "sheet");
+    var fallback = ring.select("sheet", node -> !node.equals(preferred));
+    Assertions.assertTrue(fallback.isPresent());
+    Assertions.assertNotEquals(preferred, fallback.get());
+    Assertions.assertTrue(ring.select("sheet", node -> false).isEmpty());
+  }
+}
@@ -0,0 +1,55 @@
+package jsheets.server.evaluation.client;
+
+import java.util.List;
+
+import org.apache.curator.x.discovery.ServiceInstance;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import jsheets.discovery.ServiceLoad;
+
+public final class LeastLoadedStrategyTest {
+  private static ServiceInstance<ServiceLoad> createInstance(
+    String id,
+    ServiceLoad load
+  ) throws Exception {
+    return ServiceInstance.<ServiceLoad>builder()
+      .name("runtime")
+      .id(id)
+      .address("localhost")
+      .port(8080)
+      .payload(load)
+      .build();
+  }
+
+  @Test
+  public void testLessLoadedOfTwoRuntimesIsSelected() throws Exception {
+    var idle = createInstance("idle", ServiceLoad.of(0, 0, 4, 1, 0.1));
+    var busy = createInstance("busy", ServiceLoad.of(4, 2, 4, 0, 0.9));
+    var strategy = LeastLoadedStrategy.create();
+    for (int attempt = 0; attempt < 10; attempt++) {
+      Assertions.assertSame(idle, strategy.getInstance(() -> List.of(idle, busy)));
+    }
+  }
+
+  @Test
+  public void testRuntimesWithoutLoadAreConsideredUsed() {
+    Assertions.assertTrue(
+      LeastLoadedStrategy.computeLoad(null)
+        > LeastLoadedStrategy.computeLoad(ServiceLoad.of(1, 0, 4, 1, 0.2))
+    );
+  }
+
+  @Test
+  public void testRuntimesWithoutBoxesHaveNoColdStartPenalty() {
+    Assertions.assertTrue(
+      LeastLoadedStrategy.computeLoad(ServiceLoad.of(1, 0, 4, -1, 0.2))
+        < LeastLoadedStrategy.computeLoad(ServiceLoad.of(1, 0, 4, 0, 0.2))
+    );
+  }
+
+  @Test
+  public void testNoRuntimeIsSelectedWithoutInstances() throws Exception {
+    Assertions.assertNull(LeastLoadedStrategy.create().getInstance(List::of));
+  }
+}
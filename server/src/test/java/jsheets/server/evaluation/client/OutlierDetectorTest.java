@@ -0,0 +1,84 @@
+package jsheets.server.evaluation.client;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class OutlierDetectorTest {
+  private static final OutlierDetector.Options options = new OutlierDetector.Options(
+    /* consecutiveFailures */ 3,
+    /* failureRate */ 0.5,
+    /* windowSize */ 10,
+    /* latencyFactor */ 3,
+    /* baseEjectionTime */ Duration.ofSeconds(10),
+    /* maxEjectionTime */ Duration.ofMinutes(1),
+    /* maxEjectedShare */ 0.5
+  );
+
+  private final MutableClock clock = new MutableClock();
+  private final OutlierDetector detector =
+    OutlierDetector.create(options, new SimpleMeterRegistry(), clock);
+
+  @Test
+  public void testRuntimeIsEjectedAfterConsecutiveFailures() {
+    detector.recordSuccess("healthy");
+    for (int failure = 0; failure < 3; failure++) {
+      detector.recordFailure("failing");
+    }
+    Assertions.assertTrue(detector.isEjected("failing"));
+    Assertions.assertFalse(detector.isEjected("healthy"));
+    clock.advance(Duration.ofSeconds(11));
+    Assertions.assertFalse(detector.isEjected("failing"));
+  }
+
+  @Test
+  public void testOnlyShareOfRuntimesIsEjected() {
+    for (int failure = 0; failure < 3; failure++) {
+      detector.recordFailure("first");
+      detector.recordFailure("second");
+    }
+    Assertions.assertTrue(detector.isEjected("first"));
+    Assertions.assertFalse(detector.isEjected("second"));
+  }
+
+  @Test
+  public void testSlowRuntimeIsEjected() {
+    for (int sample = 0; sample < 10; sample++) {
+      detector.recordLatency("first", Duration.ofMillis(10));
+      detector.recordLatency("second", Duration.ofMillis(10));
+      detector.recordLatency("third", Duration.ofMillis(10));
+      detector.recordLatency("slow", Duration.ofSeconds(1));
+    }
+    Assertions.assertTrue(detector.isEjected("slow"));
+    Assertions.assertFalse(detector.isEjected("first"));
+  }
+
+  private static final class MutableClock extends Clock {
+    private Instant now = Instant.EPOCH;
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
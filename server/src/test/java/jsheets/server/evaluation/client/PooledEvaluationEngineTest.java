@@ -0,0 +1,200 @@
+package jsheets.server.evaluation.client;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jsheets.EvaluateResponse;
+import jsheets.EvaluationResult;
+import jsheets.MissingSources;
+import jsheets.Snippet;
+import jsheets.SnippetSources;
+import jsheets.StartEvaluationRequest;
+import jsheets.evaluation.Evaluation;
+import jsheets.evaluation.EvaluationEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public final class PooledEvaluationEngineTest {
+  private final Map<String, RecordingEngine> runtimes = new LinkedHashMap<>();
+
+  /*
+   * Selects the first runtime that is not excluded and falls back to the
+   * excluded ones, like the pools do
+   */
+  private final EnginePool pool = (request, excluded) -> runtimes.entrySet()
+    .stream()
+    .filter(runtime -> !excluded.contains(runtime.getKey()))
+    .findFirst()
+    .or(() -> runtimes.entrySet().stream().findFirst())
+    .map(runtime -> new EnginePool.Selection(runtime.getKey(), runtime.getValue()));
+
+  private final List<EvaluateResponse> received = new ArrayList<>();
+  private final CountDownLatch closed = new CountDownLatch(1);
+  private final Evaluation.Listener listener = new Evaluation.Listener() {
+    @Override
+    public synchronized void send(EvaluateResponse response) {
+      received.add(response);
+    }
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+  };
+
+  private PooledEvaluationEngine createEngine(Hedging hedging) {
+    var outliers = OutlierDetector.create(
+      new OutlierDetector.Options(
+        5, 0.5, 20, 3, Duration.ofSeconds(30), Duration.ofMinutes(5), 0.5
+      ),
+      new SimpleMeterRegistry(),
+      Clock.systemUTC()
+    );
+    return PooledEvaluationEngine.of(pool, outliers, hedging, 2, Clock.systemUTC());
+  }
+
+  @Test
+  public void testFailedEvaluationIsRetriedOnAnotherRuntime() {
+    runtimes.put("first", new RecordingEngine());
+    runtimes.put("second", new RecordingEngine());
+    createEngine(Hedging.disabled())
+      .start(StartEvaluationRequest.getDefaultInstance(), listener);
+    runtimes.get("first").listener.fail(new RuntimeException("failed"));
+    Assertions.assertNotNull(runtimes.get("second").listener);
+    runtimes.get("second").listener.close();
+    Assertions.assertEquals(0, closed.getCount());
+  }
+
+  @Test
+  public void testRetriesAreLimitedWithSingleRuntime() {
+    runtimes.put("only", new RecordingEngine());
+    createEngine(Hedging.disabled())
+      .start(StartEvaluationRequest.getDefaultInstance(), listener);
+    var only = runtimes.get("only");
+    only.listener.fail(new RuntimeException("failed"));
+    only.listener.fail(new RuntimeException("failed"));
+    Assertions.assertEquals(2, only.starts.get());
+    Assertions.assertEquals(0, closed.getCount());
+  }
+
+  @Test
+  public void testEvaluationIsNotRetriedAfterResponse() {
+    runtimes.put("first", new RecordingEngine());
+    runtimes.put("second", new RecordingEngine());
+    createEngine(Hedging.disabled())
+      .start(StartEvaluationRequest.getDefaultInstance(), listener);
+    var first = runtimes.get("first").listener;
+    first.send(EvaluateResponse.getDefaultInstance());
+    first.fail(new RuntimeException("failed"));
+    Assertions.assertNull(runtimes.get("second").listener);
+    Assertions.assertEquals(0, closed.getCount());
+  }
+
+  @Test
+  public void testHedgedEvaluationIsServedByFirstResponse() throws Exception {
+    runtimes.put("slow", new RecordingEngine());
+    runtimes.put("fast", new RecordingEngine());
+    var hedging = Hedging.create(
+      new Hedging.Options(0.9, Duration.ofMillis(10), 1, 1),
+      Executors.newSingleThreadScheduledExecutor(),
+      new SimpleMeterRegistry()
+    );
+    createEngine(hedging)
+      .start(StartEvaluationRequest.getDefaultInstance(), listener);
+    var fast = runtimes.get("fast");
+    Assertions.assertTrue(fast.started.await(10, TimeUnit.SECONDS));
+    fast.listener.send(EvaluateResponse.getDefaultInstance());
+    Assertions.assertTrue(runtimes.get("slow").stopped);
+    runtimes.get("slow").listener.send(EvaluateResponse.getDefaultInstance());
+    Assertions.assertEquals(1, received.size());
+  }
+
+  @Test
+  public void testSourceRequestDoesNotWinHedge() throws Exception {
+    runtimes.put("cached", new RecordingEngine());
+    runtimes.put("hedge", new RecordingEngine());
+    var hedging = Hedging.create(
+      new Hedging.Options(0.9, Duration.ofMillis(10), 1, 1),
+      Executors.newSingleThreadScheduledExecutor(),
+      new SimpleMeterRegistry()
+    );
+    createEngine(hedging)
+      .start(StartEvaluationRequest.getDefaultInstance(), listener);
+    var hedge = runtimes.get("hedge");
+    Assertions.assertTrue(hedge.started.await(10, TimeUnit.SECONDS));
+    hedge.listener.send(EvaluateResponse.newBuilder()
+      .addMissingSources(MissingSources.getDefaultInstance())
+      .build());
+    var cached = runtimes.get("cached");
+    Assertions.assertFalse(cached.stopped);
+    cached.listener.send(EvaluateResponse.newBuilder()
+      .addResult(EvaluationResult.getDefaultInstance())
+      .build());
+    Assertions.assertTrue(hedge.stopped);
+    Assertions.assertFalse(cached.stopped);
+    Assertions.assertEquals(2, received.size());
+  }
+
+  @Test
+  public void testRetryRequestsSourcesAfterEarlierSupply() {
+    runtimes.put("first", new RecordingEngine());
+    runtimes.put("second", new RecordingEngine());
+    var evaluation = createEngine(Hedging.disabled())
+      .start(StartEvaluationRequest.getDefaultInstance(), listener);
+    var reference = Snippet.Reference.newBuilder().setSnippetId("a").build();
+    var sourceRequest = EvaluateResponse.newBuilder()
+      .addMissingSources(MissingSources.newBuilder().addMissingSnippets(reference))
+      .build();
+    var sources = List.of(SnippetSources.newBuilder().setReference(reference).build());
+    var first = runtimes.get("first");
+    first.listener.send(sourceRequest);
+    evaluation.supplySources(sources);
+    Assertions.assertEquals(1, first.supplies.get());
+    first.listener.fail(new RuntimeException("failed"));
+    var second = runtimes.get("second");
+    second.listener.send(sourceRequest);
+    Assertions.assertEquals(List.of(sourceRequest, sourceRequest), received);
+    evaluation.supplySources(sources);
+    Assertions.assertEquals(1, second.supplies.get());
+    Assertions.assertEquals(1, first.supplies.get());
+  }
+
+  private static final class RecordingEngine implements EvaluationEngine {
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final AtomicInteger starts = new AtomicInteger();
+    private final AtomicInteger supplies = new AtomicInteger();
+    private volatile FailureAwareListener listener;
+    private volatile boolean stopped;
+
+    @Override
+    public Evaluation start(
+      StartEvaluationRequest request,
+      Evaluation.Listener listener
+    ) {
+      this.listener = (FailureAwareListener) listener;
+      starts.incrementAndGet();
+      started.countDown();
+      return new Evaluation() {
+        @Override
+        public void stop() {
+          stopped = true;
+        }
+
+        @Override
+        public void supplySources(Collection<SnippetSources> sources) {
+          supplies.incrementAndGet();
+        }
+      };
+    }
+  }
+}
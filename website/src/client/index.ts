@@ -5,17 +5,19 @@ import {
   StopEvaluationRequest,
   EvaluationError,
   MissingSources,
-  EvaluateRequest
+  EvaluateRequest,
+  EvaluatedSnippet,
+  SnippetSources
 } from "@jsheets/protocol/src/jsheets/api/snippet_runtime_pb";
 import * as SheetProtocol from "@jsheets/protocol/src/jsheets/api/sheet_pb";
 import {ComponentState, SheetState, SnippetState} from '../sheet'
+import computeSourceHash from './sourceHash'
 
 export interface EvaluationListener {
   onEnd(): void
   onResult(result: EvaluationResult): void
   onServiceError(code: number): void
   onEvaluationError(error: EvaluationError): void
-  onMissingSources(sources: MissingSources): void
 }
 
 export interface Evaluation {
@@ -60,9 +62,9 @@ export default class Client {
       listener.onEnd()
     }
 
-    client.onopen = () => {
+    client.onopen = async () => {
       const request = new EvaluateRequest()
-      request.setStart(start)
+      request.setStart(await this.elideSharedSources(start))
       client.send(request.serializeBinary())
     }
 
@@ -78,8 +80,11 @@ export default class Client {
       } catch (error) {
         throw new Error(JSON.stringify({error, note: 'received invalid message', message: message.data}))
       }
+      rememberSessionToken(start, response)
       response.getErrorList()?.forEach(listener.onEvaluationError)
-      response.getMissingSourcesList()?.forEach(listener.onMissingSources)
+      response.getMissingSourcesList()?.forEach(missing => {
+        client.send(createSupplyRequest(start, missing).serializeBinary())
+      })
       response.getResultList()?.forEach(listener.onResult)
     }
 
@@ -94,11 +99,81 @@ export default class Client {
     return new WebSocketEvaluation(client)
   }
 
+  /**
+   * Hashes the sources and omits the code of sources that were sent before,
+   * since the runtime keeps them by their hash. If the runtime no longer
+   * holds them, it responds with `MissingSources` and they are sent again.
+   */
+  private async elideSharedSources(start: StartEvaluationRequest) {
+    const elided = new StartEvaluationRequest()
+    elided.setSnippet(continueSession(start.getSnippet()))
+    for (const sources of start.getSourcesList()) {
+      const hash = await computeSourceHash(sources)
+      sources.setHash(hash)
+      const hasCode = sources.getCodeComponentsList().length > 0
+      if (hasCode && sharedSourceHashes.has(hash)) {
+        const reference = new SnippetSources()
+        reference.setReference(sources.getReference())
+        reference.setHash(hash)
+        elided.addSources(reference)
+      } else {
+        sharedSourceHashes.add(hash)
+        elided.addSources(sources)
+      }
+    }
+    return elided
+  }
+
   sheets(): SheetClient {
     return this.sheets_
   }
 }
 
+const sharedSourceHashes = new Set<string>()
+
+/**
+ * Tokens of the sessions that the runtime keeps for snippets, keyed by the
+ * snippet's reference. Sending the token back lets the runtime only evaluate
+ * the components that changed since the previous evaluation.
+ */
+const sessionTokens = new Map<string, string>()
+
+function createSessionKey(snippet?: EvaluatedSnippet) {
+  const reference = snippet?.getReference()
+  return `${reference?.getSheetId()}/${reference?.getSnippetId()}`
+}
+
+function continueSession(snippet?: EvaluatedSnippet) {
+  const token = sessionTokens.get(createSessionKey(snippet))
+  if (snippet && token) {
+    snippet.setSessionToken(token)
+  }
+  return snippet
+}
+
+function rememberSessionToken(start: StartEvaluationRequest, response: EvaluateResponse) {
+  const token = response.getSessionToken()
+  if (token) {
+    sessionTokens.set(createSessionKey(start.getSnippet()), token)
+  }
+}
+
+function createSupplyRequest(start: StartEvaluationRequest, missing: MissingSources) {
+  const supply = new StartEvaluationRequest()
+  for (const reference of missing.getMissingSnippetsList()) {
+    const sources = start.getSourcesList().find(sources =>
+      sources.getReference()?.getSheetId() === reference.getSheetId()
+      && sources.getReference()?.getSnippetId() === reference.getSnippetId()
+    )
+    if (sources) {
+      supply.addSources(sources)
+    }
+  }
+  const request = new EvaluateRequest()
+  request.setStart(supply)
+  return request
+}
+
 function isWebSocketErrorCode(code: number) {
   return code >= 400 && code < 600
 }
@@ -0,0 +1,47 @@
+import {SnippetSources} from "@jsheets/protocol/src/jsheets/api/snippet_runtime_pb";
+
+/**
+ * Computes the hash under which the runtime stores sources. It has to match
+ * the hash that is computed by `jsheets.source.SharedSources`: a hex encoded
+ * SHA-256 digest over the id, order and code of every component, ordered by
+ * their order. Strings are UTF-8 encoded and prefixed with their length,
+ * numbers are encoded as 32 bit little-endian integers.
+ */
+export default async function computeSourceHash(sources: SnippetSources): Promise<string> {
+  const components = [...sources.getCodeComponentsList()]
+    .sort((left, right) => left.getOrder() - right.getOrder())
+  const chunks: Uint8Array[] = []
+  for (const component of components) {
+    chunks.push(...encodeString(component.getId()))
+    chunks.push(encodeInt(component.getOrder()))
+    chunks.push(...encodeString(component.getCode()))
+  }
+  const digest = await crypto.subtle.digest('SHA-256', concat(chunks))
+  return Array.from(new Uint8Array(digest))
+    .map(byte => byte.toString(16).padStart(2, '0'))
+    .join('')
+}
+
+const encoder = new TextEncoder()
+
+function encodeString(value: string): Uint8Array[] {
+  const bytes = encoder.encode(value)
+  return [encodeInt(bytes.length), bytes]
+}
+
+function encodeInt(value: number): Uint8Array {
+  const bytes = new Uint8Array(4)
+  new DataView(bytes.buffer).setInt32(0, value, true)
+  return bytes
+}
+
+function concat(chunks: Uint8Array[]): Uint8Array {
+  const length = chunks.reduce((sum, chunk) => sum + chunk.length, 0)
+  const output = new Uint8Array(length)
+  let offset = 0
+  for (const chunk of chunks) {
+    output.set(chunk, offset)
+    offset += chunk.length
+  }
+  return output
+}
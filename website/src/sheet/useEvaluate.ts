@@ -1,5 +1,5 @@
 import {
-  EvaluationError, EvaluationResult, MissingSources,
+  EvaluationError, EvaluationResult,
   StartEvaluationRequest
 } from "@jsheets/protocol/src/jsheets/api/snippet_runtime_pb";
 import Client, {EvaluationListener} from "../client";
@@ -77,10 +77,6 @@ class Listener implements EvaluationListener {
     })
   }
 
-  onMissingSources(sources: MissingSources): void {
-    console.log({sources: sources.toObject()})
-  }
-
   onResult = (result: EvaluationResult) => {
     this.callback.reportOutput(result.getComponentId(), {
       type: result.getKind() === 1 ? 'info' : 'error',